@@ -0,0 +1 @@
+INSERT INTO Data VALUES (1)
\ No newline at end of file
@@ -0,0 +1 @@
+INSERT INTO Data VALUES (2)
\ No newline at end of file
@@ -0,0 +1,11 @@
+CREATE TABLE Test (
+    ID INT,
+    VALUE VARCHAR(255)
+);
+CREATE TABLE Test2 (
+    ID INT,
+    VALUE VARCHAR(255)
+);
+insert into test(id, value) values (1,'222');
+insert into test(id, value) values (2,'333');
+insert into test(id, value) values (3,'444');
\ No newline at end of file
@@ -0,0 +1 @@
+insert into test2(id, value) values (3,'444');
\ No newline at end of file
@@ -17,6 +17,7 @@ package scriptella.configuration;
 
 import scriptella.expression.PropertiesSubstitutor;
 import scriptella.spi.Resource;
+import scriptella.util.CompressionCodec;
 import scriptella.util.IOUtils;
 
 import java.io.IOException;
@@ -38,6 +39,7 @@ public class IncludeEl extends XmlConfigurableBase implements Resource {
     private URL url;
     private String href;
     private String charset;
+    private CompressionCodec compression;
     private static final Logger LOG = Logger.getLogger(IncludeEl.class.getName());
     private FallbackEl fallbackEl;
     private PropertiesSubstitutor substitutor;
@@ -88,6 +90,17 @@ public class IncludeEl extends XmlConfigurableBase implements Resource {
             throw new ConfigurationException("Encoding " + enc + " is not supported", element);
         }
         charset = enc;
+        String c = element.getAttribute("compression");
+        if ("auto".equalsIgnoreCase(c)) {
+            compression = null;
+        } else {
+            try {
+                compression = CompressionCodec.forName(c);
+            } catch (IllegalArgumentException e) {
+                throw new ConfigurationException("Unsupported include compression " + c +
+                        ". Valid values are none, gzip, deflate or auto", element);
+            }
+        }
         final XmlElement fallbackElement = element.getChild("fallback");
         if (fallbackElement != null) {
             fallbackEl = new FallbackEl(fallbackElement);
@@ -100,7 +113,9 @@ public class IncludeEl extends XmlConfigurableBase implements Resource {
             String path = substitutor == null || substitutor.getParameters() == null
                     ? href : substitutor.substitute(href);
             URL u = IOUtils.resolve(url, path);
-            return IOUtils.getReader(u.openStream(), charset);
+            //Compressed files, e.g. data.ldif.gz, are decompressed on the fly if compression is set
+            CompressionCodec codec = compression == null ? CompressionCodec.detect(u) : compression;
+            return IOUtils.getReader(codec.decompress(u.openStream()), charset);
         } catch (MalformedURLException e) {
             throw (IOException) new IOException("Malformed include url: " + href).initCause(e);
         } catch (IOException e) {
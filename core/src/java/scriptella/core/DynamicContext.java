@@ -53,6 +53,15 @@ public class DynamicContext implements ParametersCallback {
         return cf.getConnection();
     }
 
+    /**
+     * Returns true if parameters of this context are resolved from properties of the ETL file only
+     * and do not change during the execution.
+     * <p>Contexts of query rows return false.
+     */
+    boolean isConstantScope() {
+        return true;
+    }
+
     protected EtlContext getGlobalContext() {
         return globalContext;
     }
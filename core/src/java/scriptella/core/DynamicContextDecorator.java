@@ -46,6 +46,11 @@ public class DynamicContextDecorator extends DynamicContext {
         return context.getParameter(name);
     }
 
+    @Override
+    boolean isConstantScope() {
+        return context.isConstantScope();
+    }
+
     @Override
     public Connection getConnection() {
         if (cachedConnection==null) {
@@ -27,6 +27,10 @@ import java.util.logging.Logger;
 
 /**
  * Handles if expressions specified by if attribute on query/script elements.
+ * <p>Conditions which depend only on properties of the ETL file, e.g. <code>if="mode=='full'"</code>,
+ * are evaluated once when the executor is prepared. Nested elements may see query columns with the same names
+ * as properties, therefore the folded result is used only if referenced variables have the same values as
+ * the properties, otherwise the condition is evaluated as usual.
  *
  * @author Fyodor Kupolov
  * @version 1.0
@@ -45,26 +49,33 @@ public final class IfInterceptor extends ElementInterceptor {
 
     private Expression expression;
     private Location location;
+    private Folded folded;
 
     public IfInterceptor(ExecutableElement next, ScriptingElement scr) {
+        this(next, scr, null);
+    }
+
+    /**
+     * Creates an interceptor and folds the condition if possible.
+     *
+     * @param next       next element in the chain.
+     * @param scr        element with if condition.
+     * @param scope      top level context used to fold the condition or null to disable folding.
+     */
+    IfInterceptor(ExecutableElement next, ScriptingElement scr, DynamicContext scope) {
         super(next);
         expression = Expression.compile(scr.getIf());
         location = scr.getLocation();
+        if (scope != null) {
+            folded = Folded.fold(expression, scope);
+        }
     }
 
     public void execute(final DynamicContext ctx) {
         boolean ok = false;
 
         try {
-            final Object res = expression.evaluate(ctx);
-
-            if (res != null) {
-                if (res instanceof Boolean) {
-                    ok = (Boolean) res;
-                } else if (trueStrs.contains(String.valueOf(res))) {
-                    ok = true;
-                }
-            }
+            ok = folded != null && folded.isValid(ctx) ? folded.value : isTrue(expression.evaluate(ctx));
         } catch (Expression.EvaluationException e) {
             LOG.log(Level.WARNING,
                     "Unable to evaluate if condition \"" +
@@ -81,14 +92,119 @@ public final class IfInterceptor extends ElementInterceptor {
         }
     }
 
+    private static boolean isTrue(Object res) {
+        if (res instanceof Boolean) {
+            return (Boolean) res;
+        }
+        return res != null && trueStrs.contains(String.valueOf(res));
+    }
+
     public static ExecutableElement prepare(
             final ExecutableElement next, final ScriptingElement s) {
+        return prepare(next, s, null);
+    }
+
+    /**
+     * Prepares an interceptor for the element.
+     *
+     * @param next       next element in the chain.
+     * @param s          scripting element.
+     * @param scope top level context used to fold constant conditions, or null.
+     * @return interceptor or next element if the element has no condition.
+     */
+    public static ExecutableElement prepare(
+            final ExecutableElement next, final ScriptingElement s, final DynamicContext scope) {
         final String ifExpr = s.getIf();
 
         if ((ifExpr == null) || (ifExpr.length() == 0)) {
             return next;
         }
 
-        return new IfInterceptor(next, s);
+        return new IfInterceptor(next, s, scope);
+    }
+
+    /**
+     * Checks if the prepared element has a condition which is false for the properties of the ETL file.
+     *
+     * @param e prepared element.
+     * @return true if the element is never executed in a top level context.
+     */
+    static boolean isFoldedFalse(final ExecutableElement e) {
+        if (e instanceof IfInterceptor) {
+            Folded f = ((IfInterceptor) e).folded;
+            return f != null && !f.value;
+        }
+        return false;
+    }
+
+    /**
+     * Condition evaluated in advance and values of properties it depends on.
+     */
+    private static final class Folded {
+        final boolean value;
+        private final String[] names;
+        private final Object[] values;
+
+        private Folded(boolean value, String[] names, Object[] values) {
+            this.value = value;
+            this.names = names;
+            this.values = values;
+        }
+
+        static Folded fold(Expression expression, DynamicContext scope) {
+            Set<String> vars = expression.getVariables();
+            if (vars == null) {
+                return null;
+            }
+            String[] names = vars.toArray(new String[vars.size()]);
+            Object[] values = new Object[names.length];
+            for (int i = 0; i < names.length; i++) {
+                values[i] = scope.getParameter(names[i]);
+                //Variables provided by the context itself, e.g. etl, are not properties
+                if (!same(values[i], scope.getGlobalContext().getParameter(names[i]))) {
+                    return null;
+                }
+            }
+            for (int i = 0; i < names.length; i++) {
+                //Undefined names are allowed only as parts of property paths, e.g. a.b if a is a property
+                if (values[i] == null && !isPathOfProperty(names[i], names, values)) {
+                    return null;
+                }
+            }
+            try {
+                return new Folded(isTrue(expression.evaluate(scope)), names, values);
+            } catch (Expression.EvaluationException e) {
+                return null; //Errors are reported when the condition is evaluated
+            }
+        }
+
+        private static boolean isPathOfProperty(String name, String[] names, Object[] values) {
+            for (int i = 0; i < names.length; i++) {
+                String n = names[i];
+                if (values[i] != null && (name.startsWith(n + '.') || n.startsWith(name + '.'))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Checks if the referenced variables have the same values as the properties.
+         */
+        boolean isValid(DynamicContext ctx) {
+            if (ctx.isConstantScope()) {
+                return true;
+            }
+            for (int i = 0; i < names.length; i++) {
+                if (!same(ctx.getParameter(names[i]), values[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean same(Object v1, Object v2) {
+            return v1 == v2 || (v1 != null && v1.equals(v2));
+        }
     }
 }
@@ -40,21 +40,21 @@ public final class QueryExecutor extends ContentExecutor<QueryEl> {
     private static final Object NULL = new Object(); //NULL object flag
     private ExecutableElement[] nestedElements;
 
-    private QueryExecutor(QueryEl queryEl) {
+    private QueryExecutor(QueryEl queryEl, DynamicContext scope) {
         super(queryEl);
-        initNestedExecutors();
+        initNestedExecutors(scope);
     }
 
-    private void initNestedExecutors() {
+    private void initNestedExecutors(DynamicContext scope) {
         final List<ScriptingElement> childElements = getElement().getChildScriptinglElements();
         nestedElements = new ExecutableElement[childElements.size()];
 
         for (int i = 0; i < nestedElements.length; i++) {
             ScriptingElement element = childElements.get(i);
             if (element instanceof QueryEl) {
-                nestedElements[i] = QueryExecutor.prepare((QueryEl) element);
+                nestedElements[i] = QueryExecutor.prepare((QueryEl) element, scope);
             } else if (element instanceof ScriptEl) {
-                nestedElements[i] = ScriptExecutor.prepare((ScriptEl) element);
+                nestedElements[i] = ScriptExecutor.prepare((ScriptEl) element, scope);
             } else {
                 throw new IllegalStateException("Type " + element.getClass() +
                         " not supported");
@@ -82,11 +82,22 @@ public final class QueryExecutor extends ContentExecutor<QueryEl> {
 
 
     public static ExecutableElement prepare(final QueryEl queryEl) {
-        ExecutableElement q = new QueryExecutor(queryEl);
+        return prepare(queryEl, null);
+    }
+
+    /**
+     * Prepares an executor for the query element and its nested elements.
+     *
+     * @param queryEl    query element.
+     * @param scope      top level context used to fold constant conditions, or null.
+     * @return executor for the element.
+     */
+    public static ExecutableElement prepare(final QueryEl queryEl, final DynamicContext scope) {
+        ExecutableElement q = new QueryExecutor(queryEl, scope);
         q = StatisticInterceptor.prepare(q, queryEl.getLocation());
         q = ConnectionInterceptor.prepare(q, queryEl);
         q = ExceptionInterceptor.prepare(q, queryEl.getLocation());
-        q = IfInterceptor.prepare(q, queryEl);
+        q = IfInterceptor.prepare(q, queryEl, scope);
 
         return q;
     }
@@ -100,6 +111,10 @@ public final class QueryExecutor extends ContentExecutor<QueryEl> {
             super(context);
         }
 
+        @Override
+        boolean isConstantScope() {
+            return false; //query columns may shadow properties
+        }
 
         public void processRow(final ParametersCallback parameters) {
             EtlCancelledException.checkEtlCancelled();
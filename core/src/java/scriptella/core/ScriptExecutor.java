@@ -111,12 +111,23 @@ public final class ScriptExecutor extends ContentExecutor<ScriptEl> {
     }
 
     public static ExecutableElement prepare(final ScriptEl s) {
+        return prepare(s, null);
+    }
+
+    /**
+     * Prepares an executor for the script element.
+     *
+     * @param s          script element.
+     * @param scope top level context used to fold constant conditions, or null.
+     * @return executor for the element.
+     */
+    public static ExecutableElement prepare(final ScriptEl s, final DynamicContext scope) {
         ExecutableElement se = new ScriptExecutor(s);
         se = StatisticInterceptor.prepare(se, s.getLocation());
         se = TxInterceptor.prepare(se, s);
         se = ConnectionInterceptor.prepare(se, s);
         se = ExceptionInterceptor.prepare(se, s.getLocation());
-        se = IfInterceptor.prepare(se, s);
+        se = IfInterceptor.prepare(se, s, scope);
 
         return se;
     }
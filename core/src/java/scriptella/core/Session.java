@@ -29,6 +29,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Logger;
 
 
 /**
@@ -39,6 +40,7 @@ import java.util.Map;
  * @version 1.0
  */
 public class Session {
+    private static final Logger LOG = Logger.getLogger(Session.class.getName());
     Map<String, ConnectionManager> managedConnections = new HashMap<String, ConnectionManager>();
     private List<ExecutableElement> executors;
     private List<Location> locations;
@@ -67,15 +69,24 @@ public class Session {
         executors = new ArrayList<ExecutableElement>(scripts.size());
         locations = new ArrayList<Location>(scripts.size());
 
+        final DynamicContext scope = new DynamicContext(ctx);
         for (ScriptingElement s : scripts) {
-            locations.add(s.getLocation());
-
+            ExecutableElement e = null;
             if (s instanceof QueryEl) {
-                executors.add(QueryExecutor.prepare((QueryEl) s));
+                e = QueryExecutor.prepare((QueryEl) s, scope);
             } else if (s instanceof ScriptEl) {
-                executors.add(ScriptExecutor.prepare((ScriptEl) s));
+                e = ScriptExecutor.prepare((ScriptEl) s, scope);
             }
-            progressCallback.step(1, s.getLocation() + " prepared");
+            //Elements with conditions which are false for the specified properties are never executed
+            if (IfInterceptor.isFoldedFalse(e)) {
+                LOG.fine("if=\"" + s.getIf() + "\" is false, " + s.getLocation() + " is skipped.");
+                e = StatisticInterceptor.skipped(s.getLocation());
+                progressCallback.step(1, s.getLocation() + " skipped");
+            } else {
+                progressCallback.step(1, s.getLocation() + " prepared");
+            }
+            locations.add(s.getLocation());
+            executors.add(e);
         }
 
     }
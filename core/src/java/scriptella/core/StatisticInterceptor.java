@@ -55,5 +55,19 @@ public final class StatisticInterceptor extends ElementInterceptor {
         return new StatisticInterceptor(next, location);
     }
 
+    /**
+     * Returns an element which is never executed, but still reported in statistics.
+     *
+     * @param location element location.
+     * @return element registering zero executions.
+     */
+    public static ExecutableElement skipped(final Location location) {
+        return new ExecutableElement() {
+            public void execute(final DynamicContext ctx) {
+                ctx.getGlobalContext().getStatisticsBuilder().elementSkipped(location);
+            }
+        };
+    }
+
 
 }
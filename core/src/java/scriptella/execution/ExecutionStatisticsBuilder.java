@@ -29,6 +29,7 @@ import java.util.Date;
  * <li>{@link #etlStarted()} invoked on ETL start.
  * <li>Call {@link #elementStarted(Location,Connection)} before executing an element.
  * <li>Call {@link #elementExecuted()} or {@link #elementFailed()} after executing an element.
+ * <li>Call {@link #elementSkipped(Location)} for an element which is not executed.
  * <li>{@link #etlComplete()} invoked when ETL completes.
  * <li>{@link #getStatistics() Obtain statistics} after ETL completes.
  * </ul>
@@ -67,6 +68,16 @@ public class ExecutionStatisticsBuilder {
         setElementState(true);
     }
 
+    /**
+     * Called for an element which is not executed, e.g. if its condition is always false.
+     * <p>The element is reported with zero executions.
+     *
+     * @param loc element location.
+     */
+    public void elementSkipped(final Location loc) {
+        getInfo(loc);
+    }
+
     /**
      * Invoked on ETL start
      */
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.expression;
+
+import scriptella.spi.ParametersCallback;
+import scriptella.util.StringUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * Precompiled template for properties substitution.
+ * <p>The template string is parsed once into a sequence of literal text and
+ * <code>$property</code>/<code>${expression}</code> references.
+ * Expressions are compiled on first use, so parse errors are reported when the template is rendered,
+ * as in {@link PropertiesSubstitutor}.
+ * Rendering appends segments to the output without scanning the template string.
+ * <p>Substitution rules are the same as in {@link PropertiesSubstitutor},
+ * i.e. if a reference has no value it is written as is.
+ * <p><u>Example:</u>
+ * <code><pre>
+ * CompiledTemplate t = CompiledTemplate.compile("$id;${name.toUpperCase()}");
+ * for (...) {
+ *     t.render(row, writer);
+ * }
+ * </pre></code>
+ * <p>Templates assembled from several parts, e.g. lines of a script, are built with {@link Builder},
+ * adjacent literal parts are merged into a single segment.
+ * <p>Compiled templates are immutable and can be shared between threads.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ * @see PropertiesSubstitutor#substitute(CompiledTemplate, Appendable)
+ */
+public final class CompiledTemplate {
+    private final String template;
+    private final Object[] segments;
+
+    private CompiledTemplate(String template, Object[] segments) {
+        this.template = template;
+        this.segments = segments;
+    }
+
+    /**
+     * Compiles a template.
+     *
+     * @param template template string. Null is allowed and rendered as null string.
+     * @return compiled template.
+     */
+    public static CompiledTemplate compile(String template) {
+        if (PropertiesSubstitutor.firstCandidate(template) < 0) { //Fast path for constant strings
+            return new CompiledTemplate(template, StringUtils.isEmpty(template) ? new Object[0] : new Object[]{template});
+        }
+        return new Builder().append(template).build();
+    }
+
+    /**
+     * @return original template string.
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return true if the template has no references, i.e. it is rendered as is.
+     */
+    public boolean isConstant() {
+        for (Object s : segments) {
+            if (s instanceof Reference) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds a reference without a value, e.g. to report an error.
+     *
+     * @param parameters parameters to check.
+     * @return text of the first reference evaluated to null, e.g. <code>${region}</code>,
+     *         or null if all references have values.
+     */
+    public String getNullReference(ParametersCallback parameters) {
+        for (Object s : segments) {
+            if (s instanceof Reference && ((Reference) s).evaluate(parameters) == null) {
+                return ((Reference) s).text;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Renders the template.
+     * <p>Parameter values are converted to strings using {@link Object#toString()}, references to null values are
+     * written as is. Use {@link PropertiesSubstitutor#substitute(CompiledTemplate, Appendable)}
+     * to customize conversion.
+     *
+     * @param parameters parameters to substitute.
+     * @param out        output to append the result to.
+     * @throws IOException if output fails.
+     */
+    public void render(ParametersCallback parameters, Appendable out) throws IOException {
+        render(parameters, null, out);
+    }
+
+    /**
+     * Renders the template into a string.
+     *
+     * @param parameters parameters to substitute.
+     * @return rendered template.
+     * @see #render(ParametersCallback, Appendable)
+     */
+    public String render(ParametersCallback parameters) {
+        return render(parameters, (PropertiesSubstitutor) null);
+    }
+
+    String render(ParametersCallback parameters, PropertiesSubstitutor ps) {
+        if (segments.length == 0 || (segments.length == 1 && segments[0] instanceof String)) {
+            return template;
+        }
+        StringBuilder sb = new StringBuilder(template.length() + 16);
+        try {
+            render(parameters, ps, sb);
+        } catch (IOException e) {
+            throw new IllegalStateException("StringBuilder should not throw IOException", e);
+        }
+        return sb.toString();
+    }
+
+    void render(ParametersCallback parameters, PropertiesSubstitutor ps, Appendable out) throws IOException {
+        for (Object s : segments) {
+            if (s instanceof String) {
+                out.append((String) s);
+            } else {
+                Reference ref = (Reference) s;
+                Object v = ref.evaluate(parameters);
+                String str = ps == null ? (v == null ? null : v.toString()) : ps.toString(v);
+                out.append(str == null ? ref.text : str);
+            }
+        }
+    }
+
+    public String toString() {
+        return template;
+    }
+
+    /**
+     * Builds a template from several parts.
+     * <p>Not thread safe.
+     */
+    public static class Builder {
+        private final StringBuilder template = new StringBuilder();
+        private final StringBuilder literal = new StringBuilder();
+        private final List<Object> segments = new ArrayList<Object>();
+        private final Matcher prop = PropertiesSubstitutor.PROP_PTR.matcher("");
+        private final Matcher expr = PropertiesSubstitutor.EXPR_PTR.matcher("");
+
+        /**
+         * Appends a text with property and expression references.
+         *
+         * @param text text to parse.
+         * @return this builder.
+         */
+        public Builder append(String text) {
+            template.append(text);
+            int i = PropertiesSubstitutor.firstCandidate(text);
+            if (i < 0) {
+                literal.append(text);
+                return this;
+            }
+            prop.reset(text);
+            expr.reset(text);
+            final int n = text.length();
+            int pos = 0;
+            for (; i >= 0 && i < n - 1; i = text.indexOf('$', i + 1)) {
+                Reference ref;
+                int end;
+                if (prop.region(i + 1, n).lookingAt()) {
+                    end = prop.end();
+                    ref = new Reference(text.substring(i, end), prop.group(1), false);
+                } else if (expr.region(i + 1, n).lookingAt()) {
+                    end = expr.end();
+                    ref = new Reference(text.substring(i, end), expr.group(1), true);
+                } else { //not an expression
+                    continue;
+                }
+                literal.append(text, pos, i);
+                flushLiteral();
+                segments.add(ref);
+                pos = end;
+                i = end - 1;
+            }
+            literal.append(text, pos, n);
+            return this;
+        }
+
+        /**
+         * Appends a text which is rendered as is.
+         *
+         * @param text literal text.
+         * @return this builder.
+         */
+        public Builder appendLiteral(String text) {
+            template.append(text);
+            literal.append(text);
+            return this;
+        }
+
+        /**
+         * @return compiled template.
+         */
+        public CompiledTemplate build() {
+            flushLiteral();
+            return new CompiledTemplate(template.toString(), segments.toArray());
+        }
+
+        private void flushLiteral() {
+            if (literal.length() > 0) {
+                segments.add(literal.toString());
+                literal.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * Reference to a property or an expression.
+     */
+    private static class Reference {
+        final String text;
+        final String name;
+        final boolean expression;
+        private volatile Expression compiled;
+
+        Reference(String text, String name, boolean expression) {
+            this.text = text;
+            this.name = name;
+            this.expression = expression;
+        }
+
+        Object evaluate(ParametersCallback parameters) {
+            if (!expression) {
+                return parameters.getParameter(name);
+            }
+            Expression e = compiled;
+            if (e == null) { //Compiled lazily to report parse errors only when the expression is used
+                compiled = e = Expression.compile(name);
+            }
+            return e.evaluate(parameters);
+        }
+    }
+}
@@ -17,9 +17,10 @@ package scriptella.expression;
 
 import scriptella.core.SystemException;
 import scriptella.spi.ParametersCallback;
+import scriptella.util.ConcurrentCache;
 
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 
 /**
@@ -29,7 +30,19 @@ import java.util.WeakHashMap;
  * @version 1.0
  */
 public abstract class Expression {
-    private static final Map<String, Expression> EXPRESSIONS_CACHE = new WeakHashMap<String, Expression>();
+    /**
+     * Name of the system property to configure expressions compilation.
+     * <p>Set to <code>janino</code> to compile frequently evaluated expressions to bytecode
+     * if Janino is present in the classpath. By default expressions are interpreted.
+     */
+    public static final String COMPILER_PROPERTY = "expression.compiler";
+    static final String JANINO_COMPILER = "janino";
+    //Updated only if the compiler is enabled to keep interpreted evaluations free of contention
+    static final LongAdder COMPILED_EVALUATIONS = new LongAdder();
+    static final LongAdder INTERPRETED_EVALUATIONS = new LongAdder();
+    private static final int CACHE_SIZE = 4096;
+    private static final ConcurrentCache<String, Expression> EXPRESSIONS_CACHE =
+            new ConcurrentCache<String, Expression>(CACHE_SIZE);
     private String expression;
 
     protected Expression(String expression) {
@@ -43,6 +56,18 @@ public abstract class Expression {
         return expression;
     }
 
+    /**
+     * Returns names of variables referenced by this expression if the expression is a pure function of them.
+     * <p>Dotted names like <code>a.b</code> are also returned for property paths,
+     * because they may be resolved as variables.
+     *
+     * @return names of referenced variables or null if the result may depend on something else,
+     *         e.g. functions or methods are invoked.
+     */
+    public Set<String> getVariables() {
+        return null;
+    }
+
     public static Expression compile(final String expression)
             throws ParseException {
         Expression ex = EXPRESSIONS_CACHE.get(expression);
@@ -57,6 +82,32 @@ public abstract class Expression {
         return ex;
     }
 
+    /**
+     * @return statistics of the compiled expressions cache shared by all ETL executions.
+     */
+    public static ConcurrentCache.Stats getCacheStats() {
+        return EXPRESSIONS_CACHE.getStats();
+    }
+
+    /**
+     * @return number of evaluations performed by expressions compiled to bytecode.
+     * @see #COMPILER_PROPERTY
+     */
+    public static long getCompiledEvaluations() {
+        return COMPILED_EVALUATIONS.sum();
+    }
+
+    /**
+     * Returns the number of evaluations performed by the expressions interpreter.
+     * <p>Evaluations are counted only if the expressions compiler is enabled.
+     *
+     * @return number of interpreted evaluations.
+     * @see #COMPILER_PROPERTY
+     */
+    public static long getInterpretedEvaluations() {
+        return INTERPRETED_EVALUATIONS.sum();
+    }
+
     public static class ParseException extends SystemException {
         public ParseException() {
         }
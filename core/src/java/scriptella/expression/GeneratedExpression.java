@@ -0,0 +1,97 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.expression;
+
+import org.apache.commons.jexl2.JexlArithmetic;
+import scriptella.spi.ParametersCallback;
+
+/**
+ * Base class for expressions compiled to bytecode by {@link JaninoExpressionCompiler}.
+ * <p>This class is public only to be accessible from generated classes, it is not a part of the API.
+ * <p>Generated code inlines the control flow of the expression, i.e. logical and conditional operators,
+ * while variables, property paths and comparisons are delegated to the methods of this class
+ * to keep the same semantics as the JEXL interpreter.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+public abstract class GeneratedExpression {
+    /**
+     * Literal values and variable names referenced by index from the generated code.
+     */
+    protected Object[] k;
+    private SimpleJexlEvaluator[] paths;
+    private JexlArithmetic arithmetic;
+
+    final void init(Object[] constants, SimpleJexlEvaluator[] paths, JexlArithmetic arithmetic) {
+        this.k = constants;
+        this.paths = paths;
+        this.arithmetic = arithmetic;
+    }
+
+    /**
+     * Evaluates the expression.
+     *
+     * @param p parameters.
+     * @return result of evaluation.
+     * @throws RuntimeException if evaluation failed, the expression is not evaluated again by JEXL interpreter.
+     */
+    public abstract Object evaluate(ParametersCallback p);
+
+    protected final Object var(ParametersCallback p, int name) {
+        return p.getParameter((String) k[name]);
+    }
+
+    protected final Object path(ParametersCallback p, int path) {
+        return paths[path].evaluate(p);
+    }
+
+    protected final boolean bool(Object o) {
+        return arithmetic.toBoolean(o);
+    }
+
+    protected final boolean cond(Object o) {
+        return o != null && arithmetic.toBoolean(o);
+    }
+
+    protected static boolean present(Object o) {
+        return o != null && !Boolean.FALSE.equals(o);
+    }
+
+    protected static Boolean box(boolean b) {
+        return b ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    protected final boolean eq(Object l, Object r) {
+        return arithmetic.equals(l, r);
+    }
+
+    protected final boolean lt(Object l, Object r) {
+        return arithmetic.lessThan(l, r);
+    }
+
+    protected final boolean le(Object l, Object r) {
+        return arithmetic.lessThanOrEqual(l, r);
+    }
+
+    protected final boolean gt(Object l, Object r) {
+        return arithmetic.greaterThan(l, r);
+    }
+
+    protected final boolean ge(Object l, Object r) {
+        return arithmetic.greaterThanOrEqual(l, r);
+    }
+}
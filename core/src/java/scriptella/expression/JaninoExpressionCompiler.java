@@ -0,0 +1,248 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.expression;
+
+import org.apache.commons.jexl2.JexlArithmetic;
+import org.apache.commons.jexl2.introspection.Uberspect;
+import org.apache.commons.jexl2.parser.ASTAndNode;
+import org.apache.commons.jexl2.parser.ASTEQNode;
+import org.apache.commons.jexl2.parser.ASTFalseNode;
+import org.apache.commons.jexl2.parser.ASTFloatLiteral;
+import org.apache.commons.jexl2.parser.ASTGENode;
+import org.apache.commons.jexl2.parser.ASTGTNode;
+import org.apache.commons.jexl2.parser.ASTIdentifier;
+import org.apache.commons.jexl2.parser.ASTIntegerLiteral;
+import org.apache.commons.jexl2.parser.ASTJexlScript;
+import org.apache.commons.jexl2.parser.ASTLENode;
+import org.apache.commons.jexl2.parser.ASTLTNode;
+import org.apache.commons.jexl2.parser.ASTNENode;
+import org.apache.commons.jexl2.parser.ASTNotNode;
+import org.apache.commons.jexl2.parser.ASTNullLiteral;
+import org.apache.commons.jexl2.parser.ASTOrNode;
+import org.apache.commons.jexl2.parser.ASTReference;
+import org.apache.commons.jexl2.parser.ASTStringLiteral;
+import org.apache.commons.jexl2.parser.ASTTernaryNode;
+import org.apache.commons.jexl2.parser.ASTTrueNode;
+import org.apache.commons.jexl2.parser.JexlNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Translates JEXL expressions to Java classes compiled by
+ * <a href="http://janino-compiler.github.io/janino/">Janino</a>.
+ * <p>The same subset of JEXL as in {@link SimpleJexlEvaluator} is supported. Boolean subexpressions
+ * are translated to primitive Java operators, so conditions like <code>a &gt; 1 &amp;&amp; b == 'x'</code>
+ * are evaluated without boxing and virtual calls per operator.
+ * <p>Janino is an optional dependency, it is loaded reflectively.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+final class JaninoExpressionCompiler {
+    private static final Logger LOG = Logger.getLogger(JaninoExpressionCompiler.class.getName());
+    private static final String COMPILER_CLASS = "org.codehaus.janino.SimpleCompiler";
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+    private static final boolean AVAILABLE = isJaninoAvailable();
+
+    private final Uberspect uberspect;
+    private final JexlArithmetic arithmetic;
+    private final List<Object> constants = new ArrayList<Object>();
+    private final List<SimpleJexlEvaluator> paths = new ArrayList<SimpleJexlEvaluator>();
+    private int temps;
+
+    private JaninoExpressionCompiler(Uberspect uberspect, JexlArithmetic arithmetic) {
+        this.uberspect = uberspect;
+        this.arithmetic = arithmetic;
+    }
+
+    /**
+     * @return true if Janino is present in the classpath.
+     */
+    static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Compiles a parsed JEXL expression to bytecode.
+     *
+     * @param script     parsed expression.
+     * @param uberspect  introspector to use for properties access.
+     * @param arithmetic arithmetic to use for comparisons.
+     * @return compiled expression or null if expression is not supported or compilation failed.
+     */
+    static GeneratedExpression compile(ASTJexlScript script, Uberspect uberspect, JexlArithmetic arithmetic) {
+        if (!AVAILABLE || script.jjtGetNumChildren() != 1) {
+            return null;
+        }
+        JaninoExpressionCompiler c = new JaninoExpressionCompiler(uberspect, arithmetic);
+        Code code = c.translate((JexlNode) script.jjtGetChild(0));
+        if (code == null) {
+            return null;
+        }
+        String className = "ScriptellaExpression" + COUNTER.incrementAndGet();
+        StringBuilder src = new StringBuilder(256);
+        src.append("public class ").append(className).append(" extends ")
+                .append(GeneratedExpression.class.getName()).append(" {\n")
+                .append("    public Object evaluate(scriptella.spi.ParametersCallback p) {\n");
+        for (int i = 0; i < c.temps; i++) {
+            src.append("        Object t").append(i).append(";\n");
+        }
+        src.append("        return ").append(code.asObject()).append(";\n    }\n}\n");
+        try {
+            GeneratedExpression e = (GeneratedExpression) cook(src.toString(), className).getConstructor().newInstance();
+            e.init(c.constants.toArray(), c.paths.toArray(new SimpleJexlEvaluator[c.paths.size()]), arithmetic);
+            return e;
+        } catch (Exception e) {
+            LOG.log(Level.FINE, "Unable to compile expression class\n" + src, e);
+            return null;
+        }
+    }
+
+    private static Class<?> cook(String source, String className) throws Exception {
+        Class<?> compilerClass = Class.forName(COMPILER_CLASS);
+        Object compiler = compilerClass.getConstructor().newInstance();
+        compilerClass.getMethod("setParentClassLoader", ClassLoader.class)
+                .invoke(compiler, GeneratedExpression.class.getClassLoader());
+        compilerClass.getMethod("cook", String.class).invoke(compiler, source);
+        ClassLoader cl = (ClassLoader) compilerClass.getMethod("getClassLoader").invoke(compiler);
+        return cl.loadClass(className);
+    }
+
+    private static boolean isJaninoAvailable() {
+        try {
+            Class.forName(COMPILER_CLASS);
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    private Code translate(JexlNode node) {
+        if (node instanceof ASTReference) {
+            int n = node.jjtGetNumChildren();
+            for (int i = 0; i < n; i++) {
+                if (!(node.jjtGetChild(i) instanceof ASTIdentifier)) {
+                    return null;
+                }
+            }
+            if (n == 1) {
+                return new Code("var(p, " + constant(((JexlNode) node.jjtGetChild(0)).image) + ")", false);
+            }
+            paths.add(SimpleJexlEvaluator.compile(node, uberspect, arithmetic));
+            return new Code("path(p, " + (paths.size() - 1) + ")", false);
+        }
+        if (node instanceof ASTStringLiteral) {
+            return literal(node.image);
+        }
+        if (node instanceof ASTIntegerLiteral) {
+            return literal(((ASTIntegerLiteral) node).getLiteral());
+        }
+        if (node instanceof ASTFloatLiteral) {
+            return literal(((ASTFloatLiteral) node).getLiteral());
+        }
+        if (node instanceof ASTNullLiteral) {
+            return new Code("null", false);
+        }
+        if (node instanceof ASTTrueNode) {
+            return new Code("true", true);
+        }
+        if (node instanceof ASTFalseNode) {
+            return new Code("false", true);
+        }
+        Code[] args = new Code[node.jjtGetNumChildren()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = translate((JexlNode) node.jjtGetChild(i));
+            if (args[i] == null) {
+                return null;
+            }
+        }
+        if (node instanceof ASTNotNode) {
+            return new Code("!" + args[0].asBoolean(), true);
+        }
+        if (node instanceof ASTTernaryNode) {
+            if (args.length == 2) {
+                String t = "t" + temps++;
+                return new Code("(present(" + t + " = " + args[0].asObject() + ") ? " + t + " : " +
+                        args[1].asObject() + ")", false);
+            }
+            String c = args[0].bool ? args[0].src : "cond(" + args[0].src + ")";
+            if (args[1].bool && args[2].bool) {
+                return new Code("(" + c + " ? " + args[1].src + " : " + args[2].src + ")", true);
+            }
+            return new Code("(" + c + " ? " + args[1].asObject() + " : " + args[2].asObject() + ")", false);
+        }
+        if (node instanceof ASTAndNode) {
+            return new Code("(" + args[0].asBoolean() + " && " + args[1].asBoolean() + ")", true);
+        }
+        if (node instanceof ASTOrNode) {
+            return new Code("(" + args[0].asBoolean() + " || " + args[1].asBoolean() + ")", true);
+        }
+        String op;
+        if (node instanceof ASTEQNode) {
+            op = "eq";
+        } else if (node instanceof ASTNENode) {
+            op = "!eq";
+        } else if (node instanceof ASTLTNode) {
+            op = "lt";
+        } else if (node instanceof ASTLENode) {
+            op = "le";
+        } else if (node instanceof ASTGTNode) {
+            op = "gt";
+        } else if (node instanceof ASTGENode) {
+            op = "ge";
+        } else {
+            return null;
+        }
+        return new Code(op + "(" + args[0].asObject() + ", " + args[1].asObject() + ")", true);
+    }
+
+    private Code literal(Object value) {
+        return new Code("k[" + constant(value) + "]", false);
+    }
+
+    private int constant(Object value) {
+        constants.add(value);
+        return constants.size() - 1;
+    }
+
+    /**
+     * Java code of a subexpression.
+     */
+    private static class Code {
+        final String src;
+        /**
+         * True if the code has a primitive boolean type, otherwise Object.
+         */
+        final boolean bool;
+
+        Code(String src, boolean bool) {
+            this.src = src;
+            this.bool = bool;
+        }
+
+        String asObject() {
+            return bool ? "box(" + src + ")" : src;
+        }
+
+        String asBoolean() {
+            return bool ? src : "bool(" + src + ")";
+        }
+    }
+}
@@ -17,37 +17,107 @@ package scriptella.expression;
 
 import org.apache.commons.jexl2.JexlContext;
 import org.apache.commons.jexl2.JexlEngine;
+import org.apache.commons.jexl2.parser.ASTAssignment;
+import org.apache.commons.jexl2.parser.ASTBlock;
+import org.apache.commons.jexl2.parser.ASTConstructorNode;
+import org.apache.commons.jexl2.parser.ASTForeachStatement;
+import org.apache.commons.jexl2.parser.ASTFunctionNode;
+import org.apache.commons.jexl2.parser.ASTIdentifier;
+import org.apache.commons.jexl2.parser.ASTIfStatement;
+import org.apache.commons.jexl2.parser.ASTJexlScript;
+import org.apache.commons.jexl2.parser.ASTMethodNode;
+import org.apache.commons.jexl2.parser.ASTReference;
+import org.apache.commons.jexl2.parser.ASTSizeMethod;
+import org.apache.commons.jexl2.parser.ASTWhileStatement;
+import org.apache.commons.jexl2.parser.JexlNode;
 import org.apache.commons.jexl2.parser.TokenMgrError;
 import scriptella.core.EtlVariable;
 import scriptella.spi.ParametersCallback;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Represents <a href="jakarta.apache.org/commons/jexl">JEXL</a> expression.
+ * <p>Simple expressions like property paths, literals and comparisons are evaluated
+ * by {@link SimpleJexlEvaluator} without the JEXL interpreter. The expression is parsed once,
+ * the same syntax tree is used by the interpreter and the compilers.
+ * <p>If <code>{@value #COMPILER_PROPERTY}=janino</code> system property is set and Janino is available,
+ * expressions evaluated more than {@link #COMPILE_THRESHOLD} times are compiled to bytecode
+ * by {@link JaninoExpressionCompiler}. Expressions which cannot be compiled are evaluated as usual.
  *
  * @author Fyodor Kupolov
  * @version 1.0
  */
 public final class JexlExpression extends Expression {
+    /**
+     * Number of evaluations after which the expression is compiled to bytecode.
+     */
+    static final int COMPILE_THRESHOLD = 1000;
+    private final ASTJexlScript tree;
     private org.apache.commons.jexl2.Expression expression;
-    private static final JexlEngine jexlEngine = newJexlEngine();
+    private SimpleJexlEvaluator simpleEvaluator;
+    private final boolean bytecodeEnabled;
+    private int evaluations; //Updates may be lost, it only delays compilation
+    private volatile boolean bytecodeCompiled;
+    private volatile GeneratedExpression generated;
+    private Set<String> variables;
+    private boolean variablesResolved;
+    private static final Engine jexlEngine = new Engine();
 
     protected JexlExpression(String expression) throws ParseException {
         super(expression);
 
         try {
-            this.expression = jexlEngine.createExpression(expression);
+            tree = jexlEngine.parse(expression);
+            this.expression = jexlEngine.newExpression(tree, expression);
+            simpleEvaluator = jexlEngine.compileSimple(tree);
         } catch (Exception e) {
             throw new ParseException(e.getMessage(), e);
         } catch (TokenMgrError e) {
             throw new ParseException(e.getMessage(), e);
         }
+        bytecodeEnabled = JANINO_COMPILER.equalsIgnoreCase(System.getProperty(COMPILER_PROPERTY))
+                && JaninoExpressionCompiler.isAvailable();
     }
 
     public Object evaluate(final ParametersCallback callback)
             throws EvaluationException {
+        if (bytecodeEnabled) {
+            GeneratedExpression g = generated;
+            if (g == null && !bytecodeCompiled && ++evaluations >= COMPILE_THRESHOLD) {
+                g = compileBytecode();
+            }
+            if (g != null) {
+                Object result;
+                try {
+                    result = g.evaluate(callback);
+                } catch (LinkageError e) {
+                    //The generated class cannot be linked, the expression is interpreted from now on
+                    generated = null;
+                    return evaluateInterpreted(callback);
+                } catch (Exception e) {
+                    throw new EvaluationException(e);
+                }
+                COMPILED_EVALUATIONS.increment();
+                return result;
+            }
+            INTERPRETED_EVALUATIONS.increment();
+        }
+        return evaluateInterpreted(callback);
+    }
+
+    private Object evaluateInterpreted(final ParametersCallback callback) {
+        if (simpleEvaluator != null) {
+            try {
+                return simpleEvaluator.evaluate(callback);
+            } catch (Exception e) {
+                throw new EvaluationException(e);
+            }
+        }
         JexlContextAdapter a = new JexlContextAdapter(callback);
         try {
             return expression.evaluate(a);
@@ -57,6 +127,40 @@ public final class JexlExpression extends Expression {
 
     }
 
+    @Override
+    public synchronized Set<String> getVariables() {
+        if (!variablesResolved) {
+            variables = jexlEngine.getVariables(tree);
+            variablesResolved = true;
+        }
+        return variables;
+    }
+
+    /**
+     * @return evaluator for simple expressions or null if the expression is evaluated by JEXL interpreter.
+     */
+    SimpleJexlEvaluator getSimpleEvaluator() {
+        return simpleEvaluator;
+    }
+
+    /**
+     * @return expression compiled to bytecode or null if the expression is not compiled.
+     */
+    GeneratedExpression getGenerated() {
+        return generated;
+    }
+
+    /**
+     * Compiles the expression to bytecode once, expressions which cannot be compiled are not retried.
+     */
+    private synchronized GeneratedExpression compileBytecode() {
+        if (!bytecodeCompiled) {
+            generated = jexlEngine.compileBytecode(tree);
+            bytecodeCompiled = true;
+        }
+        return generated;
+    }
+
     /**
      * Creates a preconfigured JexlEngine.
      * <p>The instance is configured to use function namespaces from {@link scriptella.core.EtlVariable}.
@@ -65,13 +169,108 @@ public final class JexlExpression extends Expression {
      */
     public static JexlEngine newJexlEngine() {
         JexlEngine je = new JexlEngine();
+        je.setFunctions(newFunctions());
+        return je;
+    }
+
+    private static Map<String, Object> newFunctions() {
         Map<String, Object> fMap = new HashMap<String, Object>();
         EtlVariable etl = new EtlVariable();
         fMap.put("date", etl.getDate());
         fMap.put("text", etl.getText());
         fMap.put("class", etl.getClazz());
-        je.setFunctions(fMap);
-        return je;
+        return fMap;
+    }
+
+    /**
+     * JEXL engine which also compiles simple expressions.
+     */
+    private static class Engine extends JexlEngine {
+        Engine() {
+            setFunctions(newFunctions());
+        }
+
+        /**
+         * Parses an expression.
+         *
+         * @param expression expression text.
+         * @return syntax tree.
+         */
+        ASTJexlScript parse(String expression) {
+            return parse(cleanExpression(expression), null);
+        }
+
+        /**
+         * Creates an interpreted expression for a parsed syntax tree.
+         *
+         * @param tree       syntax tree.
+         * @param expression expression text.
+         * @return JEXL expression.
+         */
+        org.apache.commons.jexl2.Expression newExpression(ASTJexlScript tree, String expression) {
+            //Scripts of several expressions are rare, they are parsed again to log the JEXL warning
+            return tree.jjtGetNumChildren() > 1 ? createExpression(expression) : createExpression(tree, expression);
+        }
+
+        /**
+         * Compiles an expression to be evaluated without the interpreter.
+         *
+         * @param tree syntax tree.
+         * @return evaluator or null if expression is not simple.
+         */
+        SimpleJexlEvaluator compileSimple(ASTJexlScript tree) {
+            return SimpleJexlEvaluator.compile(tree, getUberspect(), arithmetic);
+        }
+
+        /**
+         * Compiles an expression to bytecode.
+         *
+         * @param tree syntax tree.
+         * @return compiled expression or null if expression is not supported.
+         */
+        GeneratedExpression compileBytecode(ASTJexlScript tree) {
+            return JaninoExpressionCompiler.compile(tree, getUberspect(), arithmetic);
+        }
+
+        /**
+         * Collects names of variables referenced by the expression.
+         *
+         * @param tree syntax tree.
+         * @return names of variables or null if the expression is not a pure function of variables.
+         */
+        Set<String> getVariables(ASTJexlScript tree) {
+            Set<String> names = new LinkedHashSet<String>();
+            return collectVariables(tree, names) ? Collections.unmodifiableSet(names) : null;
+        }
+
+        private static boolean collectVariables(JexlNode node, Set<String> names) {
+            if (node instanceof ASTFunctionNode || node instanceof ASTMethodNode || node instanceof ASTSizeMethod ||
+                    node instanceof ASTConstructorNode || node instanceof ASTAssignment || node instanceof ASTBlock ||
+                    node instanceof ASTIfStatement || node instanceof ASTForeachStatement ||
+                    node instanceof ASTWhileStatement) {
+                return false;
+            }
+            if (node instanceof ASTReference) {
+                StringBuilder name = new StringBuilder();
+                for (int i = 0, n = node.jjtGetNumChildren(); i < n; i++) {
+                    JexlNode c = (JexlNode) node.jjtGetChild(i);
+                    if (!(c instanceof ASTIdentifier)) {
+                        return false;
+                    }
+                    if (i > 0) {
+                        name.append('.');
+                    }
+                    names.add(name.append(c.image).toString());
+                }
+                return true;
+            }
+            for (int i = 0, n = node.jjtGetNumChildren(); i < n; i++) {
+                if (!collectVariables((JexlNode) node.jjtGetChild(i), names)) {
+                    return false;
+                }
+            }
+            return true;
+        }
     }
 
     /**
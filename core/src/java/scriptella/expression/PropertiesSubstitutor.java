@@ -160,6 +160,35 @@ public class PropertiesSubstitutor {
         return res.toString();
     }
 
+    /**
+     * Substitutes properties/expressions in a precompiled template.
+     * <p>Use this method instead of {@link #substitute(String)} if the same template is substituted repeatedly.
+     *
+     * @param template compiled template.
+     * @return substituted string.
+     * @see CompiledTemplate#compile(String)
+     */
+    public String substitute(final CompiledTemplate template) {
+        if (parameters == null) {
+            throw new IllegalStateException("setParameters must be called before calling substitute");
+        }
+        return template.render(parameters, this);
+    }
+
+    /**
+     * Substitutes properties/expressions in a precompiled template and appends the result to the output.
+     *
+     * @param template compiled template.
+     * @param out      output to append the result to.
+     * @throws IOException if output fails.
+     */
+    public void substitute(final CompiledTemplate template, final Appendable out) throws IOException {
+        if (parameters == null) {
+            throw new IllegalStateException("setParameters must be called before calling substitute");
+        }
+        template.render(parameters, this, out);
+    }
+
     /**
      * Copies content from reader to writer and expands properties.
      *
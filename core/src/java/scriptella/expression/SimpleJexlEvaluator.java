@@ -0,0 +1,414 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.expression;
+
+import org.apache.commons.jexl2.JexlArithmetic;
+import org.apache.commons.jexl2.JexlException;
+import org.apache.commons.jexl2.introspection.JexlPropertyGet;
+import org.apache.commons.jexl2.introspection.Uberspect;
+import org.apache.commons.jexl2.parser.ASTAndNode;
+import org.apache.commons.jexl2.parser.ASTEQNode;
+import org.apache.commons.jexl2.parser.ASTFalseNode;
+import org.apache.commons.jexl2.parser.ASTFloatLiteral;
+import org.apache.commons.jexl2.parser.ASTGENode;
+import org.apache.commons.jexl2.parser.ASTGTNode;
+import org.apache.commons.jexl2.parser.ASTIdentifier;
+import org.apache.commons.jexl2.parser.ASTIntegerLiteral;
+import org.apache.commons.jexl2.parser.ASTJexlScript;
+import org.apache.commons.jexl2.parser.ASTLENode;
+import org.apache.commons.jexl2.parser.ASTLTNode;
+import org.apache.commons.jexl2.parser.ASTNENode;
+import org.apache.commons.jexl2.parser.ASTNotNode;
+import org.apache.commons.jexl2.parser.ASTNullLiteral;
+import org.apache.commons.jexl2.parser.ASTOrNode;
+import org.apache.commons.jexl2.parser.ASTReference;
+import org.apache.commons.jexl2.parser.ASTStringLiteral;
+import org.apache.commons.jexl2.parser.ASTTernaryNode;
+import org.apache.commons.jexl2.parser.ASTTrueNode;
+import org.apache.commons.jexl2.parser.JexlNode;
+import scriptella.spi.ParametersCallback;
+
+import java.util.logging.Logger;
+
+/**
+ * Evaluates simple JEXL expressions without the JEXL interpreter.
+ * <p>The following constructs are supported:
+ * <ul>
+ * <li>Variables and property paths, e.g. <code>id</code>, <code>row.name</code>, <code>etl.globals.x</code></li>
+ * <li>String, integer, float, boolean and null literals</li>
+ * <li>Comparisons <code>== != &lt; &lt;= &gt; &gt;=</code>, logical <code>&amp;&amp; || !</code></li>
+ * <li>Conditional expressions including null coalescing, e.g. <code>a ?: 'default'</code></li>
+ * </ul>
+ * The evaluation rules are the same as in JEXL interpreter: properties are resolved by JEXL introspection,
+ * comparisons and boolean conversions are performed by JEXL arithmetic.
+ * Property accessors are cached per expression node.
+ * <p>Errors are reported the same way as by the interpreter: failed comparisons and boolean coercions throw
+ * {@link JexlException}, failed property getters are logged as warnings and evaluated to null.
+ * <p>If an expression contains other constructs it is not compiled and should be evaluated by JEXL interpreter.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+abstract class SimpleJexlEvaluator {
+    private static final Logger LOG = Logger.getLogger(SimpleJexlEvaluator.class.getName());
+
+    /**
+     * Evaluates the expression.
+     *
+     * @param callback parameters.
+     * @return result of evaluation.
+     * @throws JexlException if comparison or boolean coercion fails.
+     */
+    abstract Object evaluate(ParametersCallback callback);
+
+    /**
+     * Compiles a parsed JEXL expression.
+     *
+     * @param script     parsed expression.
+     * @param uberspect  introspector to use for properties access.
+     * @param arithmetic arithmetic to use for comparisons.
+     * @return compiled evaluator or null if expression is not supported.
+     */
+    static SimpleJexlEvaluator compile(ASTJexlScript script, Uberspect uberspect, JexlArithmetic arithmetic) {
+        if (script.jjtGetNumChildren() != 1) {
+            return null;
+        }
+        return compile((JexlNode) script.jjtGetChild(0), uberspect, arithmetic);
+    }
+
+    /**
+     * Compiles an expression node.
+     *
+     * @param node       expression node.
+     * @param uberspect  introspector to use for properties access.
+     * @param arithmetic arithmetic to use for comparisons.
+     * @return compiled evaluator or null if expression is not supported.
+     */
+    static SimpleJexlEvaluator compile(JexlNode node, Uberspect uberspect, JexlArithmetic arithmetic) {
+        return new Compiler(uberspect, arithmetic).compile(node);
+    }
+
+    private static class Compiler {
+        private final Uberspect uberspect;
+        private final JexlArithmetic arithmetic;
+
+        Compiler(Uberspect uberspect, JexlArithmetic arithmetic) {
+            this.uberspect = uberspect;
+            this.arithmetic = arithmetic;
+        }
+
+        SimpleJexlEvaluator compile(JexlNode node) {
+            if (node instanceof ASTReference) {
+                int n = node.jjtGetNumChildren();
+                JexlNode[] path = new JexlNode[n];
+                for (int i = 0; i < n; i++) {
+                    JexlNode c = (JexlNode) node.jjtGetChild(i);
+                    if (!(c instanceof ASTIdentifier)) {
+                        return null;
+                    }
+                    path[i] = c;
+                }
+                return n == 1 ? new Variable(path[0].image) : new Path(path, uberspect);
+            }
+            if (node instanceof ASTStringLiteral) {
+                return new Literal(node.image);
+            }
+            if (node instanceof ASTIntegerLiteral) {
+                return new Literal(((ASTIntegerLiteral) node).getLiteral());
+            }
+            if (node instanceof ASTFloatLiteral) {
+                return new Literal(((ASTFloatLiteral) node).getLiteral());
+            }
+            if (node instanceof ASTNullLiteral) {
+                return new Literal(null);
+            }
+            if (node instanceof ASTTrueNode) {
+                return new Literal(Boolean.TRUE);
+            }
+            if (node instanceof ASTFalseNode) {
+                return new Literal(Boolean.FALSE);
+            }
+            SimpleJexlEvaluator[] args = new SimpleJexlEvaluator[node.jjtGetNumChildren()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = compile((JexlNode) node.jjtGetChild(i));
+                if (args[i] == null) {
+                    return null;
+                }
+            }
+            if (node instanceof ASTNotNode) {
+                return new Not(args[0], arithmetic);
+            }
+            if (node instanceof ASTTernaryNode) {
+                return args.length == 2 ? new Elvis(args[0], args[1]) : new Conditional(args[0], args[1], args[2], arithmetic);
+            }
+            if (node instanceof ASTAndNode) {
+                return new Logical(node, args[0], args[1], true, arithmetic);
+            }
+            if (node instanceof ASTOrNode) {
+                return new Logical(node, args[0], args[1], false, arithmetic);
+            }
+            int op;
+            if (node instanceof ASTEQNode) {
+                op = Comparison.EQ;
+            } else if (node instanceof ASTNENode) {
+                op = Comparison.NE;
+            } else if (node instanceof ASTLTNode) {
+                op = Comparison.LT;
+            } else if (node instanceof ASTLENode) {
+                op = Comparison.LE;
+            } else if (node instanceof ASTGTNode) {
+                op = Comparison.GT;
+            } else if (node instanceof ASTGENode) {
+                op = Comparison.GE;
+            } else {
+                return null;
+            }
+            return new Comparison(node, op, args[0], args[1], arithmetic);
+        }
+    }
+
+    private static class Literal extends SimpleJexlEvaluator {
+        private final Object value;
+
+        Literal(Object value) {
+            this.value = value;
+        }
+
+        Object evaluate(ParametersCallback callback) {
+            return value;
+        }
+    }
+
+    private static class Variable extends SimpleJexlEvaluator {
+        private final String name;
+
+        Variable(String name) {
+            this.name = name;
+        }
+
+        Object evaluate(ParametersCallback callback) {
+            return callback.getParameter(name);
+        }
+    }
+
+    /**
+     * Property path. If a path element is null, the value of a dotted variable name is used,
+     * e.g. <code>etl.globals</code>, the same way as JEXL resolves ant-style variables.
+     */
+    private static class Path extends SimpleJexlEvaluator {
+        private final JexlNode[] path;
+        private final String[] antNames;
+        private final Uberspect uberspect;
+        private final PropertyGet[] getters;
+
+        Path(JexlNode[] path, Uberspect uberspect) {
+            this.path = path;
+            this.uberspect = uberspect;
+            antNames = new String[path.length];
+            getters = new PropertyGet[path.length];
+            StringBuilder sb = new StringBuilder(path[0].image);
+            antNames[0] = path[0].image;
+            for (int i = 1; i < path.length; i++) {
+                antNames[i] = sb.append('.').append(path[i].image).toString();
+            }
+        }
+
+        Object evaluate(ParametersCallback callback) {
+            Object result = null;
+            for (int i = 0; i < path.length; i++) {
+                if (result == null) { //JEXL resolves an identifier as a variable if the previous value is null
+                    result = callback.getParameter(path[i].image);
+                } else {
+                    result = getProperty(i, result);
+                }
+                if (result == null && i > 0) {
+                    result = callback.getParameter(antNames[i]);
+                }
+            }
+            return result;
+        }
+
+        private Object getProperty(int i, Object object) {
+            String name = path[i].image;
+            PropertyGet cached = getters[i];
+            if (cached != null && cached.type == object.getClass()) {
+                Object r = cached.getter.tryInvoke(object, name);
+                if (!cached.getter.tryFailed(r)) {
+                    return r;
+                }
+            }
+            JexlPropertyGet getter = uberspect.getPropertyGet(object, name, null);
+            if (getter == null) {
+                return null;
+            }
+            try {
+                Object r = getter.invoke(object);
+                if (getter.isCacheable()) {
+                    getters[i] = new PropertyGet(object.getClass(), getter);
+                }
+                return r;
+            } catch (Exception e) {
+                //Same as in the lenient JEXL interpreter
+                LOG.warning(new JexlException(path[i], "get object property error", e).getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Cached property accessor for a class.
+     */
+    private static class PropertyGet {
+        final Class<?> type;
+        final JexlPropertyGet getter;
+
+        PropertyGet(Class<?> type, JexlPropertyGet getter) {
+            this.type = type;
+            this.getter = getter;
+        }
+    }
+
+    private static class Not extends SimpleJexlEvaluator {
+        private final SimpleJexlEvaluator arg;
+        private final JexlArithmetic arithmetic;
+
+        Not(SimpleJexlEvaluator arg, JexlArithmetic arithmetic) {
+            this.arg = arg;
+            this.arithmetic = arithmetic;
+        }
+
+        Object evaluate(ParametersCallback callback) {
+            return arithmetic.toBoolean(arg.evaluate(callback)) ? Boolean.FALSE : Boolean.TRUE;
+        }
+    }
+
+    private static class Logical extends SimpleJexlEvaluator {
+        private final JexlNode node;
+        private final SimpleJexlEvaluator left;
+        private final SimpleJexlEvaluator right;
+        private final boolean and;
+        private final JexlArithmetic arithmetic;
+
+        Logical(JexlNode node, SimpleJexlEvaluator left, SimpleJexlEvaluator right, boolean and, JexlArithmetic arithmetic) {
+            this.node = node;
+            this.left = left;
+            this.right = right;
+            this.and = and;
+            this.arithmetic = arithmetic;
+        }
+
+        Object evaluate(ParametersCallback callback) {
+            if (toBoolean(left.evaluate(callback), 0) != and) { //Short-circuit
+                return !and;
+            }
+            return toBoolean(right.evaluate(callback), 1);
+        }
+
+        private boolean toBoolean(Object v, int child) {
+            try {
+                return arithmetic.toBoolean(v);
+            } catch (RuntimeException e) {
+                throw new JexlException((JexlNode) node.jjtGetChild(child), "boolean coercion error", e);
+            }
+        }
+    }
+
+    private static class Comparison extends SimpleJexlEvaluator {
+        static final int EQ = 0;
+        static final int NE = 1;
+        static final int LT = 2;
+        static final int LE = 3;
+        static final int GT = 4;
+        static final int GE = 5;
+        private static final String[] OPERATORS = {"==", "!=", "<", "<=", ">", ">="};
+        private final JexlNode node;
+        private final int op;
+        private final SimpleJexlEvaluator left;
+        private final SimpleJexlEvaluator right;
+        private final JexlArithmetic arithmetic;
+
+        Comparison(JexlNode node, int op, SimpleJexlEvaluator left, SimpleJexlEvaluator right, JexlArithmetic arithmetic) {
+            this.node = node;
+            this.op = op;
+            this.left = left;
+            this.right = right;
+            this.arithmetic = arithmetic;
+        }
+
+        Object evaluate(ParametersCallback callback) {
+            Object l = left.evaluate(callback);
+            Object r = right.evaluate(callback);
+            try {
+                switch (op) {
+                    case EQ:
+                        return arithmetic.equals(l, r);
+                    case NE:
+                        return !arithmetic.equals(l, r);
+                    case LT:
+                        return arithmetic.lessThan(l, r);
+                    case LE:
+                        return arithmetic.lessThanOrEqual(l, r);
+                    case GT:
+                        return arithmetic.greaterThan(l, r);
+                    default:
+                        return arithmetic.greaterThanOrEqual(l, r);
+                }
+            } catch (RuntimeException e) {
+                throw new JexlException(node, OPERATORS[op] + " error", e);
+            }
+        }
+    }
+
+    private static class Conditional extends SimpleJexlEvaluator {
+        private final SimpleJexlEvaluator condition;
+        private final SimpleJexlEvaluator then;
+        private final SimpleJexlEvaluator otherwise;
+        private final JexlArithmetic arithmetic;
+
+        Conditional(SimpleJexlEvaluator condition, SimpleJexlEvaluator then, SimpleJexlEvaluator otherwise, JexlArithmetic arithmetic) {
+            this.condition = condition;
+            this.then = then;
+            this.otherwise = otherwise;
+            this.arithmetic = arithmetic;
+        }
+
+        Object evaluate(ParametersCallback callback) {
+            Object c = condition.evaluate(callback);
+            return c != null && arithmetic.toBoolean(c) ? then.evaluate(callback) : otherwise.evaluate(callback);
+        }
+    }
+
+    /**
+     * <code>a ?: b</code> returns <code>a</code> unless it is null or false.
+     */
+    private static class Elvis extends SimpleJexlEvaluator {
+        private final SimpleJexlEvaluator value;
+        private final SimpleJexlEvaluator otherwise;
+
+        Elvis(SimpleJexlEvaluator value, SimpleJexlEvaluator otherwise) {
+            this.value = value;
+            this.otherwise = otherwise;
+        }
+
+        Object evaluate(ParametersCallback callback) {
+            Object v = value.evaluate(callback);
+            if (v != null && !Boolean.FALSE.equals(v)) {
+                return v;
+            }
+            return otherwise.evaluate(callback);
+        }
+    }
+}
@@ -24,6 +24,7 @@ import scriptella.spi.ParametersCallback;
 import scriptella.spi.ProviderException;
 import scriptella.spi.QueryCallback;
 import scriptella.spi.Resource;
+import scriptella.util.ConcurrentCache;
 import scriptella.util.StringUtils;
 
 import java.sql.Connection;
@@ -288,10 +289,18 @@ public class JdbcConnection extends AbstractConnection implements NativeConnecti
     public void close() {
         if (con != null) {
             //Closing resources
+            ConcurrentCache.Stats stats = null;
             for (SqlExecutor element : resourcesMap.values()) {
+                ConcurrentCache.Stats s = element.cache.getStats();
+                if (s != null) {
+                    stats = stats == null ? s : stats.add(s);
+                }
                 element.close();
             }
             resourcesMap.clear();
+            if (stats != null && LOG.isLoggable(Level.FINE)) {
+                LOG.fine("Statement cache statistics for " + toString() + ": " + stats);
+            }
             try {
                 con.close();
                 con = null;
@@ -90,8 +90,7 @@ public class ResultSetAdapter implements ParametersCallback, Closeable {
             initMetaData();
         }
         try {
-            Integer index = columnsMap.find(name);
-            int ind = index==null?-1:index - 1;
+            int ind = columnsMap.indexOf(name) - 1;
             if (ind >= 0 && ind < columnsCount) { //if index found and in range
                 return converter.getObject(resultSet, ind + 1, jdbcTypes[ind]);
             } else { //otherwise call uppper level params
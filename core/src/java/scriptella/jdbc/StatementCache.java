@@ -15,8 +15,8 @@
  */
 package scriptella.jdbc;
 
+import scriptella.util.ConcurrentCache;
 import scriptella.util.IOUtils;
-import scriptella.util.LRUMap;
 
 import java.io.Closeable;
 import java.sql.Connection;
@@ -24,7 +24,6 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
-import java.util.Map;
 
 import static scriptella.util.CollectionUtils.isEmpty;
 
@@ -37,7 +36,7 @@ import static scriptella.util.CollectionUtils.isEmpty;
  * @version 1.0
  */
 class StatementCache implements Closeable {
-    private Map<String, StatementWrapper> map;
+    private CacheMap map;
     private final Connection connection;
     private final JdbcTypesConverter converter;
     private int batchSize;
@@ -194,17 +193,30 @@ class StatementCache implements Closeable {
     }
 
     /**
-     * LRU Map implementation for statement cache.
+     * @return statistics of the statements cache or null if cache is disabled.
      */
-    private static class CacheMap extends LRUMap<String, StatementWrapper> {
-        private static final long serialVersionUID = 1;
+    public ConcurrentCache.Stats getStats() {
+        return map == null ? null : map.getStats();
+    }
 
+    /**
+     * Bounded cache of statements.
+     * <p>New statements are always admitted because they are about to be used by the caller,
+     * least frequently used statements are closed on eviction.
+     */
+    private static class CacheMap extends ConcurrentCache<String, StatementWrapper> {
         public CacheMap(int size) {
             super(size);
         }
 
-        protected void onEldestEntryRemove(Map.Entry<String, StatementWrapper> eldest) {
-            eldest.getValue().close();
+        @Override
+        protected boolean admit(int candidateFrequency, int victimFrequency) {
+            return true;
+        }
+
+        @Override
+        protected void onEviction(String key, StatementWrapper value) {
+            value.close();
         }
     }
 }
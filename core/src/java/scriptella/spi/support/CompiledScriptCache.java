@@ -0,0 +1,111 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.spi.support;
+
+import scriptella.util.ConcurrentCache;
+
+/**
+ * JVM-wide cache of compiled scripts shared by connections of scripting drivers.
+ * <p>Entries are keyed by the script text, so the same script is compiled only once
+ * for all connections and ETL executions in the JVM, e.g. for connections opened by <code>new-tx</code> elements
+ * or by nested Scriptella executions. The cache is bounded by the number of entries and the total length of scripts.
+ * <p>Compiled artifacts must be thread-safe and must not depend on a connection. Artifacts of different drivers
+ * or compilation settings are separated by a namespace.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+public final class CompiledScriptCache {
+    private static final int MAX_SIZE = 2048;
+    private static final long MAX_LENGTH = 16 * 1024 * 1024; //Total length of cached scripts
+    private static final ConcurrentCache<Key, Object> CACHE = new ConcurrentCache<Key, Object>(MAX_SIZE, MAX_LENGTH) {
+        @Override
+        protected int weigh(Key key, Object value) {
+            return key.source.length() + 1;
+        }
+    };
+
+    private CompiledScriptCache() {
+    }
+
+    /**
+     * Returns a compiled script.
+     *
+     * @param namespace namespace of compiled artifacts, e.g. driver name and compilation settings.
+     * @param source    script text.
+     * @return compiled script or null if the script is not cached.
+     */
+    public static Object get(String namespace, String source) {
+        return CACHE.get(new Key(namespace, source));
+    }
+
+    /**
+     * Caches a compiled script.
+     *
+     * @param namespace namespace of compiled artifacts.
+     * @param source    script text.
+     * @param compiled  thread-safe compiled script.
+     */
+    public static void put(String namespace, String source, Object compiled) {
+        CACHE.put(new Key(namespace, source), compiled);
+    }
+
+    /**
+     * Removes all cached scripts.
+     */
+    public static void clear() {
+        CACHE.clear();
+    }
+
+    /**
+     * @return statistics of the cache.
+     */
+    public static ConcurrentCache.Stats getStats() {
+        return CACHE.getStats();
+    }
+
+    private static final class Key {
+        final String namespace;
+        final String source;
+        final int hash;
+
+        Key(String namespace, String source) {
+            if (namespace == null || source == null) {
+                throw new IllegalArgumentException("Namespace and source cannot be null");
+            }
+            this.namespace = namespace;
+            this.source = source;
+            hash = 31 * namespace.hashCode() + source.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hash == key.hash && namespace.equals(key.namespace) && source.equals(key.source);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
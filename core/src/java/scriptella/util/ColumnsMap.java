@@ -22,12 +22,30 @@ import java.util.Map;
 /**
  * Represents a map of columns accessible by name and index.
  * <p>This class is useful for queries producing results similar to ResultSet.
+ * <p>Column names are case insensitive, the case insensitive rules are simplified to ASCII chars
+ * for performance reasons. Names are stored in an open-addressing hash table with a case-folded hash.
+ * Results of lookups by names which are not registered, e.g. numeric indexes or names of outer
+ * parameters, are also cached to avoid parsing on every access.
+ * <p>This class is not thread-safe.
  *
  * @author Fyodor Kupolov
  * @version 1.0
  */
 public class ColumnsMap {
-    private Map<String, Integer> map;
+    /**
+     * Maximum number of cached lookups for unregistered names.
+     */
+    private static final int MAX_DERIVED = 1024;
+    private static final int NOT_FOUND = -1;
+    private String[] names;
+    private int[] hashes;
+    private int[] indexes;
+    /**
+     * True for cached lookups of unregistered names.
+     */
+    private boolean[] derived;
+    private int size;
+    private int derivedCount;
 
     /**
      * Registers column to for later lookup.
@@ -40,10 +58,7 @@ public class ColumnsMap {
         if (index <= 0) {
             throw new IllegalArgumentException("Index must be positive integer");
         }
-        if (map == null) {
-            map = CollectionUtils.newCaseInsensitiveAsciiMap();
-        }
-        map.put(name, index);
+        put(name, hash(name), index, false);
     }
 
     /**
@@ -51,15 +66,41 @@ public class ColumnsMap {
      *
      * @param name column name.
      * @return column index, or null if column not found.
+     * @see #indexOf(String)
      */
     public Integer find(String name) {
+        int index = indexOf(name);
+        return index == NOT_FOUND ? null : index;
+    }
+
+    /**
+     * Finds column index by name.
+     * <p>If the name is not registered and is a decimal integer, it is treated as column index.
+     *
+     * @param name column name.
+     * @return column index, or -1 if column not found.
+     */
+    public int indexOf(String name) {
         if (name == null) {
             throw new IllegalArgumentException("Parameter name cannot be null");
         }
-        Integer index = map == null ? null : map.get(name);
+        int h = hash(name);
+        if (names != null) {
+            int mask = names.length - 1;
+            for (int i = h & mask; ; i = (i + 1) & mask) {
+                String n = names[i];
+                if (n == null) {
+                    break;
+                }
+                if (hashes[i] == h && (n == name || equalsIgnoreCase(n, name))) {
+                    return indexes[i];
+                }
+            }
+        }
         //If name is not a column name and is integer
-        if (index == null && StringUtils.isDecimalInt(name)) {
-            index = Integer.valueOf(name); //Try to parse name as index
+        int index = StringUtils.isDecimalInt(name) ? Integer.parseInt(name) : NOT_FOUND; //Try to parse name as index
+        if (derivedCount < MAX_DERIVED) {
+            put(name, h, index, true);
         }
         return index;
     }
@@ -69,14 +110,112 @@ public class ColumnsMap {
      * @return index->name column map.
      */
     public Map<Integer, String> asIndexNameMap() {
-        if (map==null) {
+        if (size == derivedCount) {
             return Collections.emptyMap();
         }
         Map<Integer, String> m = new HashMap<Integer, String>();
-
-        for (Map.Entry<String, Integer> e : map.entrySet()) {
-            m.put(e.getValue(), e.getKey());
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] != null && !derived[i]) {
+                m.put(indexes[i], names[i]);
+            }
         }
         return m;
     }
+
+    private void put(String name, int h, int index, boolean cached) {
+        if (names == null) {
+            names = new String[16];
+            hashes = new int[16];
+            indexes = new int[16];
+            derived = new boolean[16];
+        }
+        int mask = names.length - 1;
+        int i = h & mask;
+        for (String n; (n = names[i]) != null; i = (i + 1) & mask) {
+            if (hashes[i] == h && (n == name || equalsIgnoreCase(n, name))) {
+                if (derived[i]) { //Registered column replaces a cached lookup
+                    derivedCount--;
+                    names[i] = name;
+                    derived[i] = false;
+                }
+                indexes[i] = index;
+                return;
+            }
+        }
+        names[i] = name;
+        hashes[i] = h;
+        indexes[i] = index;
+        derived[i] = cached;
+        if (cached) {
+            derivedCount++;
+        }
+        if (++size * 2 > names.length) { //Keep load factor below 0.5
+            resize();
+        }
+    }
+
+    private void resize() {
+        String[] oldNames = names;
+        int[] oldHashes = hashes;
+        int[] oldIndexes = indexes;
+        boolean[] oldDerived = derived;
+        int n = oldNames.length * 2;
+        names = new String[n];
+        hashes = new int[n];
+        indexes = new int[n];
+        derived = new boolean[n];
+        int mask = n - 1;
+        for (int j = 0; j < oldNames.length; j++) {
+            if (oldNames[j] != null) {
+                int i = oldHashes[j] & mask;
+                while (names[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                names[i] = oldNames[j];
+                hashes[i] = oldHashes[j];
+                indexes[i] = oldIndexes[j];
+                derived[i] = oldDerived[j];
+            }
+        }
+    }
+
+    /**
+     * Computes a hash code of ASCII lower case version of the string.
+     */
+    private static int hash(String s) {
+        int h = 0;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 'A' && c <= 'Z') { //Fast lower case
+                c = (char) (c | 0x20);
+            }
+            h = 31 * h + c;
+        }
+        //Spread sequential hashes of similar names to avoid long probe sequences
+        h *= 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equalsIgnoreCase(String s1, String s2) {
+        int n = s1.length();
+        if (n != s2.length()) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            char c1 = s1.charAt(i);
+            char c2 = s2.charAt(i);
+            if (c1 != c2) {
+                if (c1 >= 'A' && c1 <= 'Z') {
+                    c1 = (char) (c1 | 0x20);
+                }
+                if (c2 >= 'A' && c2 <= 'Z') {
+                    c2 = (char) (c2 | 0x20);
+                }
+                if (c1 != c2) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Streaming compression codecs supported for file based content.
+ * <p>The codec is either specified explicitly by name or detected from the file extension:
+ * <ul>
+ * <li><code>.gz</code>, <code>.gzip</code> - {@link #GZIP}</li>
+ * <li><code>.zz</code>, <code>.deflate</code> - {@link #DEFLATE} (zlib format)</li>
+ * </ul>
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+public enum CompressionCodec {
+    NONE {
+        public InputStream decompress(InputStream in) {
+            return in;
+        }
+
+        public OutputStream compress(OutputStream out, int threads) {
+            return out;
+        }
+    },
+    GZIP {
+        public InputStream decompress(InputStream in) throws IOException {
+            //Concatenated gzip members are supported by GZIPInputStream
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+
+        public OutputStream compress(OutputStream out, int threads) throws IOException {
+            if (threads > 1) {
+                return new ParallelGzipOutputStream(out, threads);
+            }
+            return new BufferedOutputStream(new GZIPOutputStream(out, BUFFER_SIZE), BUFFER_SIZE);
+        }
+    },
+    DEFLATE {
+        public InputStream decompress(InputStream in) {
+            return new InflaterInputStream(in);
+        }
+
+        public OutputStream compress(OutputStream out, int threads) {
+            return new BufferedOutputStream(new DeflaterOutputStream(out), BUFFER_SIZE);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Wraps a stream with the compressed content into a decompressing stream.
+     *
+     * @param in compressed input.
+     * @return decompressed input.
+     * @throws IOException if I/O error occurs.
+     */
+    public abstract InputStream decompress(InputStream in) throws IOException;
+
+    /**
+     * Wraps an output stream into a compressing stream.
+     *
+     * @param out     stream to send compressed content to.
+     * @param threads number of threads to use for compression. Values greater than 1 are only
+     *                supported by {@link #GZIP} codec, other codecs use a single thread.
+     * @return compressing output stream. Closing this stream closes the underlying one.
+     * @throws IOException if I/O error occurs.
+     */
+    public abstract OutputStream compress(OutputStream out, int threads) throws IOException;
+
+    /**
+     * Returns a codec for the specified name.
+     *
+     * @param name codec name, case insensitive. Null or empty string means {@link #NONE}.
+     * @return codec.
+     * @throws IllegalArgumentException if codec is not supported.
+     */
+    public static CompressionCodec forName(String name) throws IllegalArgumentException {
+        if (StringUtils.isEmpty(name)) {
+            return NONE;
+        }
+        String n = name.trim().toLowerCase();
+        if ("gz".equals(n)) {
+            return GZIP;
+        }
+        try {
+            return valueOf(n.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported compression " + name + ". Valid values are none, gzip or deflate");
+        }
+    }
+
+    /**
+     * Detects the codec by the file extension.
+     *
+     * @param path file path or name.
+     * @return detected codec or {@link #NONE}.
+     */
+    public static CompressionCodec detect(String path) {
+        if (path == null) {
+            return NONE;
+        }
+        String p = path.toLowerCase();
+        if (p.endsWith(".gz") || p.endsWith(".gzip")) {
+            return GZIP;
+        }
+        if (p.endsWith(".zz") || p.endsWith(".deflate")) {
+            return DEFLATE;
+        }
+        return NONE;
+    }
+
+    /**
+     * Detects the codec by the URL path.
+     *
+     * @param url URL of the file, may be null.
+     * @return detected codec or {@link #NONE}.
+     * @see #detect(String)
+     */
+    public static CompressionCodec detect(URL url) {
+        return url == null ? NONE : detect(url.getPath());
+    }
+
+    /**
+     * Returns explicitly configured codec or detects it by the URL.
+     *
+     * @param name name of configured codec, null means auto detection.
+     * @param url  file URL.
+     * @return codec to use.
+     * @throws IllegalArgumentException if codec is not supported.
+     */
+    public static CompressionCodec forNameOrUrl(String name, URL url) throws IllegalArgumentException {
+        return name == null ? detect(url) : forName(name);
+    }
+}
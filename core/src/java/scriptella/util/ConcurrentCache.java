@@ -0,0 +1,430 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe bounded cache with a frequency-aware eviction policy.
+ * <p>Lookups are lock-free. Access frequencies of keys, including missing ones, are tracked by a compact
+ * count-min sketch which is periodically aged, so the cache adapts to changes of the workload.
+ * When the cache exceeds its bounds, a sample of entries is examined and the least frequently
+ * used one is evicted, ties are resolved in favor of recently used entries. A new entry is admitted only if
+ * it is used more frequently than the eviction victim (TinyLFU admission policy),
+ * so one-off keys do not flush frequently used entries.
+ * <p>The cache can be bounded by the number of entries and by the total weight of entries,
+ * see {@link #weigh(Object, Object)}. Subclasses can be notified about evicted entries by overriding
+ * {@link #onEviction(Object, Object)}.
+ * <p>Null keys and values are not allowed.
+ *
+ * @param <K> type of keys.
+ * @param <V> type of values.
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+public class ConcurrentCache<K, V> {
+    private static final int SAMPLE_SIZE = 8;
+    private final ConcurrentHashMap<K, Node<K, V>> map;
+    private final int maxSize;
+    private final long maxWeight;
+    private final AtomicLong weight = new AtomicLong();
+    private final FrequencySketch sketch;
+    private final Object evictionLock = new Object();
+    private Iterator<Node<K, V>> evictionCursor;
+    private long ticks; //Approximate access clock, updated without synchronization
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * Creates a cache bounded by the number of entries.
+     *
+     * @param maxSize maximum number of entries.
+     */
+    public ConcurrentCache(int maxSize) {
+        this(maxSize, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a cache bounded by the number of entries and their total weight.
+     *
+     * @param maxSize   maximum number of entries.
+     * @param maxWeight maximum total weight of entries.
+     * @see #weigh(Object, Object)
+     */
+    public ConcurrentCache(int maxSize, long maxWeight) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive, but was " + maxSize);
+        }
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("Cache weight must be positive, but was " + maxWeight);
+        }
+        this.maxSize = maxSize;
+        this.maxWeight = maxWeight;
+        map = new ConcurrentHashMap<K, Node<K, V>>(Math.min(maxSize, 1024));
+        sketch = new FrequencySketch(maxSize);
+    }
+
+    /**
+     * Returns the cached value.
+     *
+     * @param key key to lookup.
+     * @return cached value or null if the key is not cached.
+     */
+    public V get(K key) {
+        sketch.increment(key);
+        Node<K, V> node = map.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        node.access = ++ticks;
+        hits.increment();
+        return node.value;
+    }
+
+    /**
+     * Puts the value into the cache.
+     * <p>If the cache is full, the least frequently used entries are evicted or the new entry is not admitted.
+     * Replaced values are not reported to {@link #onEviction(Object, Object)}.
+     *
+     * @param key   key.
+     * @param value value to cache.
+     * @return true if the value was cached, false if it was rejected by the admission policy.
+     */
+    public boolean put(K key, V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Null keys and values are not allowed");
+        }
+        int w = weigh(key, value);
+        Node<K, V> node = new Node<K, V>(key, value, w, ++ticks);
+        Node<K, V> old = map.put(key, node);
+        weight.addAndGet(old == null ? w : w - old.weight);
+        if (map.size() <= maxSize && weight.get() <= maxWeight) {
+            return true;
+        }
+        return evict(node, old == null);
+    }
+
+    /**
+     * Removes the value from the cache.
+     * <p>Removed value is not reported to {@link #onEviction(Object, Object)}.
+     *
+     * @param key key to remove.
+     * @return removed value or null if the key was not cached.
+     */
+    public V remove(K key) {
+        Node<K, V> node = map.remove(key);
+        if (node == null) {
+            return null;
+        }
+        weight.addAndGet(-node.weight);
+        return node.value;
+    }
+
+    /**
+     * Removes all entries from the cache.
+     * <p>Removed values are not reported to {@link #onEviction(Object, Object)}.
+     */
+    public void clear() {
+        for (K key : map.keySet()) {
+            remove(key);
+        }
+    }
+
+    /**
+     * @return number of cached entries.
+     */
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * @return total weight of cached entries.
+     */
+    public long weight() {
+        return weight.get();
+    }
+
+    /**
+     * @return snapshot of cached values.
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<V>(map.size());
+        for (Node<K, V> node : map.values()) {
+            values.add(node.value);
+        }
+        return values;
+    }
+
+    /**
+     * @return statistics of this cache.
+     */
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), rejections.sum());
+    }
+
+    /**
+     * Returns the weight of an entry. The default weight of all entries is 1.
+     *
+     * @param key   key.
+     * @param value value.
+     * @return weight of an entry.
+     */
+    protected int weigh(K key, V value) {
+        return 1;
+    }
+
+    /**
+     * Decides if a new entry should be cached instead of the eviction victim.
+     * <p>By default the candidate is admitted if it is used more frequently than the victim.
+     * Subclasses may override this method to always admit new entries.
+     *
+     * @param candidateFrequency estimated frequency of the new entry.
+     * @param victimFrequency    estimated frequency of the victim.
+     * @return true if the candidate should be admitted.
+     */
+    protected boolean admit(int candidateFrequency, int victimFrequency) {
+        return candidateFrequency > victimFrequency;
+    }
+
+    /**
+     * Invoked when an entry is evicted from the cache.
+     *
+     * @param key   evicted key.
+     * @param value evicted value.
+     */
+    protected void onEviction(K key, V value) {
+    }
+
+    /**
+     * Evicts entries while the cache exceeds its bounds.
+     *
+     * @param candidate new entry.
+     * @param checkAdmission true if the candidate should be checked by the admission policy.
+     * @return true if the candidate remains in the cache.
+     */
+    private boolean evict(Node<K, V> candidate, boolean checkAdmission) {
+        List<Node<K, V>> evicted = null;
+        boolean admitted = true;
+        synchronized (evictionLock) {
+            while (map.size() > maxSize || weight.get() > maxWeight) {
+                Node<K, V> victim = sampleVictim(candidate);
+                if (victim == null) { //only the candidate is left
+                    break;
+                }
+                if (checkAdmission && admitted && !admit(sketch.frequency(candidate.key), sketch.frequency(victim.key))) {
+                    victim = candidate;
+                    admitted = false;
+                }
+                if (map.remove(victim.key, victim)) {
+                    weight.addAndGet(-victim.weight);
+                    if (victim == candidate) {
+                        rejections.increment();
+                        break;
+                    }
+                    evictions.increment();
+                    if (evicted == null) {
+                        evicted = new ArrayList<Node<K, V>>(1);
+                    }
+                    evicted.add(victim);
+                }
+            }
+        }
+        if (evicted != null) { //Notify outside of the lock
+            for (Node<K, V> node : evicted) {
+                onEviction(node.key, node.value);
+            }
+        }
+        return admitted;
+    }
+
+    private Node<K, V> sampleVictim(Node<K, V> candidate) {
+        Node<K, V> victim = null;
+        int victimFreq = 0;
+        int sampled = 0;
+        boolean restarted = false;
+        while (sampled < SAMPLE_SIZE) {
+            if (evictionCursor == null || !evictionCursor.hasNext()) {
+                if (restarted) {
+                    break;
+                }
+                evictionCursor = map.values().iterator();
+                restarted = true;
+                if (!evictionCursor.hasNext()) {
+                    break;
+                }
+            }
+            Node<K, V> node = evictionCursor.next();
+            if (node == candidate || map.get(node.key) != node) {
+                continue;
+            }
+            sampled++;
+            int freq = sketch.frequency(node.key);
+            if (victim == null || freq < victimFreq || (freq == victimFreq && node.access < victim.access)) {
+                victim = node;
+                victimFreq = freq;
+            }
+        }
+        return victim;
+    }
+
+    private static class Node<K, V> {
+        final K key;
+        final V value;
+        final int weight;
+        volatile long access;
+
+        Node(K key, V value, int weight, long access) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.access = access;
+        }
+    }
+
+    /**
+     * Count-min sketch with 4-bit counters. Counters are halved when the number of increments reaches
+     * 10 times the cache size. Updates are not synchronized, lost increments only affect the precision.
+     */
+    static final class FrequencySketch {
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+                0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final int MAX = 15;
+        private final byte[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maxSize) {
+            //4 counters per entry in each row to reduce collisions
+            int width = Integer.highestOneBit(Math.max(16, Math.min(maxSize, 1 << 22)) * 8 - 1);
+            table = new byte[width * SEEDS.length];
+            mask = width - 1;
+            sampleSize = maxSize >= Integer.MAX_VALUE / 10 ? Integer.MAX_VALUE : maxSize * 10;
+        }
+
+        void increment(Object key) {
+            int h = key.hashCode();
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int idx = index(h, i);
+                if (table[idx] < MAX) {
+                    table[idx]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(Object key) {
+            int h = key.hashCode();
+            int min = MAX;
+            for (int i = 0; i < SEEDS.length; i++) {
+                min = Math.min(min, table[index(h, i)]);
+            }
+            return min;
+        }
+
+        private int index(int h, int i) {
+            long hash = (h + SEEDS[i]) * SEEDS[i];
+            hash += hash >>> 32;
+            return (i * (mask + 1)) + ((int) hash & mask);
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] >>= 1;
+            }
+            additions /= 2;
+        }
+    }
+
+    /**
+     * Cache statistics.
+     */
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long rejections;
+
+        Stats(long hits, long misses, long evictions, long rejections) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.rejections = rejections;
+        }
+
+        /**
+         * @return number of lookups which found a cached value.
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * @return number of lookups which did not find a cached value.
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return number of entries evicted by size or weight bounds.
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * @return number of new entries rejected by the admission policy.
+         */
+        public long getRejections() {
+            return rejections;
+        }
+
+        /**
+         * @return ratio of hits to the number of lookups or 1 if there were no lookups.
+         */
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 1 : (double) hits / total;
+        }
+
+        /**
+         * @param other statistics of another cache.
+         * @return combined statistics of both caches.
+         */
+        public Stats add(Stats other) {
+            return new Stats(hits + other.hits, misses + other.misses, evictions + other.evictions,
+                    rejections + other.rejections);
+        }
+
+        public String toString() {
+            return "hits=" + hits + ", misses=" + misses + ", hitRate=" + String.format("%.2f", getHitRate()) +
+                    ", evictions=" + evictions + ", rejections=" + rejections;
+        }
+    }
+}
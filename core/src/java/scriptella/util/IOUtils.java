@@ -34,6 +34,10 @@ import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.regex.Pattern;
 
 /**
@@ -174,8 +178,24 @@ public final class IOUtils {
      * @throws IOException if an I/O error occurs while creating the output stream.
      */
     public static OutputStream getOutputStream(final URL url) throws IOException {
+        return getOutputStream(url, false);
+    }
+
+    /**
+     * Opens output stream for specified URL.
+     *
+     * @param url    URL to open an output stream.
+     * @param append true if the content should be appended to the existing file.
+     *               Appending is supported only for file: URLs.
+     * @return output stream for URL.
+     * @throws IOException if an I/O error occurs while creating the output stream.
+     * @see #getOutputStream(java.net.URL)
+     */
+    public static OutputStream getOutputStream(final URL url, final boolean append) throws IOException {
         if ("file".equals(url.getProtocol())) {
-            return new FileOutputStream(url.getFile());
+            return new FileOutputStream(url.getFile(), append);
+        } else if (append) {
+            throw new IOException("Append mode is not supported for URL " + url);
         } else {
             final URLConnection con = url.openConnection();
             con.setDoOutput(true);
@@ -191,6 +211,37 @@ public final class IOUtils {
 
     }
 
+    /**
+     * Opens a writable channel for specified URL.
+     * <p>For file: URLs a {@link FileChannel} is returned, otherwise the channel
+     * wraps an {@link #getOutputStream(java.net.URL) output stream} of the URL.
+     *
+     * @param url URL to open a channel.
+     * @return channel for URL.
+     * @throws IOException if an I/O error occurs while opening the channel.
+     */
+    public static WritableByteChannel getOutputChannel(final URL url) throws IOException {
+        return getOutputChannel(url, false);
+    }
+
+    /**
+     * Opens a writable channel for specified URL.
+     *
+     * @param url    URL to open a channel.
+     * @param append true if the content should be appended to the existing file.
+     *               Appending is supported only for file: URLs.
+     * @return channel for URL.
+     * @throws IOException if an I/O error occurs while opening the channel.
+     * @see #getOutputChannel(java.net.URL)
+     */
+    public static WritableByteChannel getOutputChannel(final URL url, final boolean append) throws IOException {
+        if ("file".equals(url.getProtocol())) {
+            return FileChannel.open(new File(url.getFile()).toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        return Channels.newChannel(getOutputStream(url, append));
+    }
+
     /**
      * @return buffered reader for specified input stream.
      * @see #getReader(java.io.InputStream, String, boolean)
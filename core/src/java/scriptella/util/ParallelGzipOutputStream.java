@@ -0,0 +1,211 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip output stream which compresses blocks of data on multiple threads.
+ * <p>The content is split into fixed size blocks, each block is compressed independently
+ * into a separate gzip member. Compressed members are written to the underlying stream
+ * in the original order, so the result is a standard multi-member gzip stream
+ * (RFC 1952) which can be read by any gzip decompressor.
+ * <p>The number of blocks in flight is bounded, so memory usage does not depend on the content size.
+ * <p><em>Note:</em> This class is not thread safe.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+    static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final OutputStream out;
+    private final ExecutorService executor;
+    private final int maxPending;
+    private final int blockSize;
+    private final Queue<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+    private byte[] block;
+    private int count;
+    private int members;
+    private boolean closed;
+
+    /**
+     * Creates a stream with a default block size.
+     *
+     * @param out     stream to write the compressed content.
+     * @param threads number of compression threads.
+     */
+    public ParallelGzipOutputStream(OutputStream out, int threads) {
+        this(out, threads, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates a stream.
+     *
+     * @param out       stream to write the compressed content.
+     * @param threads   number of compression threads.
+     * @param blockSize size of uncompressed block.
+     */
+    public ParallelGzipOutputStream(OutputStream out, int threads, int blockSize) {
+        if (threads <= 0 || blockSize <= 0) {
+            throw new IllegalArgumentException("Number of threads and block size must be positive");
+        }
+        this.out = out;
+        this.blockSize = blockSize;
+        maxPending = threads * 2;
+        block = new byte[blockSize];
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Scriptella gzip compressor #" + THREAD_COUNTER.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == blockSize) {
+            submit();
+        }
+        block[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == blockSize) {
+                submit();
+            }
+            int n = Math.min(len, blockSize - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Writes the blocks which have already been compressed and flushes the underlying stream.
+     * <p>The partially filled block is not compressed until it is full or the stream is closed,
+     * so frequent flushes do not produce small gzip members.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty() && pending.peek().isDone()) {
+            writeNext();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (count > 0 || members == 0) { //Empty gzip member for empty content
+                submit();
+            }
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+            out.flush();
+        } finally {
+            closed = true;
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void submit() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        final byte[] data = block;
+        final int len = count;
+        pending.add(executor.submit(new Callable<byte[]>() {
+            public byte[] call() {
+                return compress(data, len);
+            }
+        }));
+        block = new byte[blockSize];
+        count = 0;
+        members++;
+        while (pending.size() >= maxPending) {
+            writeNext();
+        }
+    }
+
+    private void writeNext() throws IOException {
+        try {
+            out.write(pending.remove().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for compression");
+        } catch (ExecutionException e) {
+            throw (IOException) new IOException("Compression failed").initCause(e.getCause());
+        }
+    }
+
+    /**
+     * Compresses a block into a complete gzip member.
+     */
+    static byte[] compress(byte[] data, int len) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(len / 2 + HEADER.length + 8);
+        bos.write(HEADER, 0, HEADER.length);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(data, 0, len);
+            deflater.finish();
+            byte[] buf = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                bos.write(buf, 0, n);
+            }
+        } finally {
+            deflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, len);
+        writeIntLE(bos, (int) crc.getValue());
+        writeIntLE(bos, len);
+        return bos.toByteArray();
+    }
+
+    private static void writeIntLE(ByteArrayOutputStream bos, int v) {
+        bos.write(v & 0xff);
+        bos.write((v >> 8) & 0xff);
+        bos.write((v >> 16) & 0xff);
+        bos.write((v >> 24) & 0xff);
+    }
+}
@@ -17,6 +17,7 @@ package scriptella;
 
 import scriptella.execution.EtlExecutor;
 import scriptella.execution.EtlExecutorException;
+import scriptella.execution.ExecutionStatistics;
 import scriptella.jdbc.JdbcUtils;
 
 import java.sql.Connection;
@@ -39,7 +40,17 @@ public class ConditionsTest extends DBTestCase {
     public void test() throws EtlExecutorException, SQLException {
         final Connection con = getConnection("conditionstest");
         final EtlExecutor se = newEtlExecutor();
-        se.execute();
+        ExecutionStatistics st = se.execute();
+        //Skipped element is reported with zero executions
+        int skipped = 0;
+        for (ExecutionStatistics.ElementInfo ei : st.getElements()) {
+            if ("/etl/script[2]".equals(ei.getId())) {
+                assertEquals(0, ei.getSuccessfulExecutionCount());
+                assertEquals(0, ei.getFailedExecutionCount());
+                skipped++;
+            }
+        }
+        assertEquals(1, skipped);
 
         PreparedStatement ps = null;
         ResultSet rs = null;
@@ -17,8 +17,13 @@ package scriptella.configuration;
 
 import scriptella.AbstractTestCase;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 
 /**
@@ -38,6 +43,27 @@ public class XIncludeTest extends AbstractTestCase {
         test(u);
     }
 
+    public void testCompressed() throws IOException {
+        File f = File.createTempFile("xinclude", ".sql.gz");
+        f.deleteOnExit();
+        OutputStream out = new GZIPOutputStream(new FileOutputStream(f));
+        out.write("insert into test values (1);".getBytes());
+        out.close();
+        String href = f.toURI().toString();
+        IncludeEl plain = new IncludeEl(XmlElementTest.asElement("<include href='" + href + "'/>"));
+        assertFalse(asString(plain).contains("insert"));
+        IncludeEl gzip = new IncludeEl(XmlElementTest.asElement("<include href='" + href + "' compression='gzip'/>"));
+        assertEquals("insert into test values (1);", asString(gzip));
+        IncludeEl auto = new IncludeEl(XmlElementTest.asElement("<include href='" + href + "' compression='auto'/>"));
+        assertEquals("insert into test values (1);", asString(auto));
+        try {
+            new IncludeEl(XmlElementTest.asElement("<include href='" + href + "' compression='zip'/>"));
+            fail("Unsupported compression must be rejected");
+        } catch (ConfigurationException e) {
+            //OK
+        }
+    }
+
     private void test(final URL url) {
         ConfigurationFactory cf = new ConfigurationFactory();
         cf.setResourceURL(url);
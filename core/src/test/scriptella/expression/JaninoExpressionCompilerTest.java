@@ -0,0 +1,163 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.expression;
+
+import scriptella.AbstractTestCase;
+import scriptella.spi.MockParametersCallbacks;
+import scriptella.spi.ParametersCallback;
+
+import java.util.Collections;
+
+/**
+ * Tests for {@link JaninoExpressionCompiler}.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+public class JaninoExpressionCompilerTest extends AbstractTestCase {
+    private String oldCompiler;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        oldCompiler = System.getProperty(Expression.COMPILER_PROPERTY);
+        System.setProperty(Expression.COMPILER_PROPERTY, "janino");
+    }
+
+    protected void tearDown() throws Exception {
+        if (oldCompiler == null) {
+            System.clearProperty(Expression.COMPILER_PROPERTY);
+        } else {
+            System.setProperty(Expression.COMPILER_PROPERTY, oldCompiler);
+        }
+        super.tearDown();
+    }
+
+    /**
+     * Tests if hot expressions are compiled and produce the same results as interpreted ones.
+     */
+    public void testSameResults() {
+        assertTrue(JaninoExpressionCompiler.isAvailable());
+        ParametersCallback callback = SimpleJexlEvaluatorTest.newCallback();
+        for (String s : SimpleJexlEvaluatorTest.SIMPLE) {
+            JexlExpression e = new JexlExpression(s);
+            Object expected = e.evaluate(callback);
+            for (int i = 1; i < JexlExpression.COMPILE_THRESHOLD; i++) {
+                e.evaluate(callback);
+            }
+            assertNotNull(s, e.getGenerated());
+            assertEquals(s, expected, e.evaluate(callback));
+        }
+    }
+
+    /**
+     * Tests if an expression shared by several threads is compiled after the threshold.
+     */
+    public void testCompileThreshold() throws InterruptedException {
+        final JexlExpression e = new JexlExpression("a > 1 && (b ?: 'x') == 'x' ? 'yes' : 'no'");
+        final ParametersCallback callback = MockParametersCallbacks.fromMap(Collections.<String, Object>singletonMap("a", 2));
+        for (int i = 0; i < JexlExpression.COMPILE_THRESHOLD - 1; i++) {
+            assertEquals("yes", e.evaluate(callback));
+        }
+        assertNull(e.getGenerated());
+        final int n = 4;
+        final int[] errors = new int[1];
+        Thread[] threads = new Thread[n];
+        for (int t = 0; t < n; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < JexlExpression.COMPILE_THRESHOLD; i++) {
+                        if (!"yes".equals(e.evaluate(callback))) {
+                            synchronized (errors) {
+                                errors[0]++;
+                            }
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(0, errors[0]);
+        assertNotNull(e.getGenerated());
+    }
+
+    public void testCounters() {
+        JexlExpression e = new JexlExpression("a > 1 && (b ?: 'x') == 'x' ? 'yes' : 'no'");
+        ParametersCallback callback = MockParametersCallbacks.fromMap(Collections.<String, Object>singletonMap("a", 2));
+        long compiled = Expression.getCompiledEvaluations();
+        long interpreted = Expression.getInterpretedEvaluations();
+        for (int i = 0; i < JexlExpression.COMPILE_THRESHOLD + 9; i++) {
+            assertEquals("yes", e.evaluate(callback));
+        }
+        assertTrue(Expression.getCompiledEvaluations() - compiled >= 10);
+        assertTrue(Expression.getInterpretedEvaluations() - interpreted >= JexlExpression.COMPILE_THRESHOLD - 1);
+    }
+
+    /**
+     * Tests if errors in compiled code are reported without evaluating the expression again.
+     */
+    public void testErrors() {
+        final int[] reads = new int[1];
+        ParametersCallback callback = new ParametersCallback() {
+            public Object getParameter(String name) {
+                reads[0]++;
+                if (reads[0] > JexlExpression.COMPILE_THRESHOLD) {
+                    throw new IllegalStateException("Failing parameter");
+                }
+                return 1;
+            }
+        };
+        JexlExpression e = new JexlExpression("a == 1");
+        for (int i = 0; i < JexlExpression.COMPILE_THRESHOLD; i++) {
+            assertEquals(Boolean.TRUE, e.evaluate(callback));
+        }
+        assertNotNull(e.getGenerated());
+        try {
+            e.evaluate(callback);
+            fail("Parameter error expected");
+        } catch (Expression.EvaluationException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(JexlExpression.COMPILE_THRESHOLD + 1, reads[0]);
+    }
+
+    /**
+     * Tests if failed property getters in compiled code are evaluated to null as by JEXL interpreter.
+     */
+    public void testFallback() {
+        JexlExpression e = new JexlExpression("v.failing");
+        ParametersCallback callback = MockParametersCallbacks.fromMap(
+                Collections.<String, Object>singletonMap("v", new SimpleJexlEvaluatorTest.Bean()));
+        for (int i = 0; i <= JexlExpression.COMPILE_THRESHOLD; i++) {
+            assertNull(e.evaluate(callback));
+        }
+        assertNotNull(e.getGenerated());
+    }
+
+    /**
+     * Tests if unsupported expressions are interpreted.
+     */
+    public void testUnsupported() {
+        JexlExpression e = new JexlExpression("a + 1");
+        ParametersCallback callback = MockParametersCallbacks.fromMap(Collections.<String, Object>singletonMap("a", 2));
+        for (int i = 0; i <= JexlExpression.COMPILE_THRESHOLD; i++) {
+            assertEquals(3, e.evaluate(callback));
+        }
+        assertNull(e.getGenerated());
+    }
+}
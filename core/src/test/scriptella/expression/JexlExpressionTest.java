@@ -0,0 +1,41 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.expression;
+
+import scriptella.AbstractTestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+/**
+ * Tests for {@link JexlExpression}.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+public class JexlExpressionTest extends AbstractTestCase {
+    public void testGetVariables() {
+        assertEquals(Collections.emptySet(), Expression.compile("1 == 2").getVariables());
+        assertEquals(new HashSet<String>(Arrays.asList("mode", "n")),
+                Expression.compile("mode == 'full' && n + 1 > 5").getVariables());
+        assertEquals(new HashSet<String>(Arrays.asList("load", "load.mode")),
+                Expression.compile("load.mode ?: 'full'").getVariables());
+        assertNull(Expression.compile("mode.startsWith('f')").getVariables());
+        assertNull(Expression.compile("date:now() != null").getVariables());
+        assertNull(Expression.compile("a = 1").getVariables());
+    }
+}
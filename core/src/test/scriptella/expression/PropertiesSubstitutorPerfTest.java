@@ -18,6 +18,7 @@ package scriptella.expression;
 import scriptella.AbstractTestCase;
 import scriptella.spi.MockParametersCallbacks;
 
+import java.io.IOException;
 import java.util.Arrays;
 
 /**
@@ -50,4 +51,29 @@ public class PropertiesSubstitutorPerfTest extends AbstractTestCase {
             assertEquals(exp, s);
         }
     }
+
+    /**
+     * Same as {@link #test()}, but the template is compiled once.
+     * History:
+     * 19.10.2026 - Xeon JDK17 - 285 ms (test() - 608 ms)
+     */
+    public void testCompiled() throws IOException {
+        PropertiesSubstitutor ps = new PropertiesSubstitutor(MockParametersCallbacks.NAME);
+
+        char[] fillC = new char[1000];
+        Arrays.fill(fillC, '-');
+        String fill = new String(fillC);
+
+        CompiledTemplate line = CompiledTemplate.compile("Text ${subst1} $subst2 " + fill + ":$end //");
+        String exp = "Text subst1 subst2 " + fill + ":end //";
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < 100000; i++) {
+            String s = ps.substitute(line);
+            assertEquals(exp, s);
+            sb.setLength(0);
+            ps.substitute(line, sb);
+            assertEquals(exp.length(), sb.length());
+        }
+    }
 }
@@ -76,4 +76,47 @@ public class PropertiesSubstitutorTest extends AbstractTestCase {
         final String s = ps.substitute(ex);
         assertEquals("test 1", s);
     }
+
+    /**
+     * Tests if compiled templates produce the same result as substitution of strings.
+     */
+    public void testCompiledTemplate() throws IOException {
+        String[] templates = {"", "No params", "$", "$$$", "$$ Text${subst1}${subst2}$subst3$subst4 End of test",
+                "${unclosed $a", "a$", "$a.b-$c_1;${a+'$'}", "${v==null?1:v}$"};
+        PropertiesSubstitutor ps = new PropertiesSubstitutor(MockParametersCallbacks.SIMPLE);
+        PropertiesSubstitutor nullPs = new PropertiesSubstitutor(MockParametersCallbacks.NULL);
+        for (String t : templates) {
+            CompiledTemplate ct = CompiledTemplate.compile(t);
+            assertEquals(t, ps.substitute(t), ps.substitute(ct));
+            assertEquals(t, nullPs.substitute(t), nullPs.substitute(ct));
+            StringBuilder sb = new StringBuilder(">");
+            ct.render(MockParametersCallbacks.SIMPLE, sb);
+            assertEquals(t, ">" + ps.substitute(t), sb.toString());
+        }
+        assertTrue(CompiledTemplate.compile("$$ no params$").isConstant());
+        assertFalse(CompiledTemplate.compile("$a").isConstant());
+        assertNull(ps.substitute(CompiledTemplate.compile(null)));
+        //Null string is used for null values
+        nullPs.setNullString("NULL");
+        assertEquals("$$ NULL-NULL", nullPs.substitute(CompiledTemplate.compile("$$ $a-${b}")));
+    }
+
+    /**
+     * Tests if templates are assembled from several parts.
+     */
+    public void testCompiledTemplateBuilder() {
+        CompiledTemplate ct = new CompiledTemplate.Builder().append("$subst1 ").appendLiteral("$a\n")
+                .append("${subst2}").appendLiteral("\n").build();
+        PropertiesSubstitutor ps = new PropertiesSubstitutor(MockParametersCallbacks.SIMPLE);
+        assertEquals("*subst1* $a\n*subst2*\n", ps.substitute(ct));
+        assertTrue(new CompiledTemplate.Builder().append("text").appendLiteral("$a").build().isConstant());
+        //Expressions are compiled on first use
+        ct = CompiledTemplate.compile("${a+}");
+        try {
+            ps.substitute(ct);
+            fail("Invalid expression must be reported when rendered");
+        } catch (Expression.ParseException e) {
+            //OK
+        }
+    }
 }
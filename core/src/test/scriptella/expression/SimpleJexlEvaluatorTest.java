@@ -0,0 +1,159 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.expression;
+
+import org.apache.commons.jexl2.JexlContext;
+import org.apache.commons.jexl2.JexlEngine;
+import org.apache.commons.jexl2.JexlException;
+import scriptella.AbstractTestCase;
+import scriptella.spi.MockParametersCallbacks;
+import scriptella.spi.ParametersCallback;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests for {@link SimpleJexlEvaluator}.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+public class SimpleJexlEvaluatorTest extends AbstractTestCase {
+    static final String[] SIMPLE = {"id", "row.name", "row.name.bytes.length", "etl.globals", "a.b",
+            "x.y.z", "missing.property", "bean.value", "bean.missing", "'str'", "\"s\\\"q\"", "10", "1.5", "null", "true",
+            "false", "id == 5", "id == '5'", "id != null", "n < 10", "n >= 10.5", "str > 'abc'", "row.name == 'John'",
+            "missing ?: 'default'", "flag ?: 'default'", "id ?: 'default'", "missing == null ? 'none' : missing",
+            "id > 1 && flag", "flag || id", "!flag", "!missing"};
+
+    private static final String[] COMPLEX = {"id + 1", "row.name.length()", "size(row)", "text:ifNull(a)",
+            "row['name']", "a = 1", "-1", "a;b"};
+
+    private ParametersCallback callback;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        callback = newCallback();
+    }
+
+    /**
+     * @return parameters for evaluation of {@link #SIMPLE} expressions.
+     */
+    static ParametersCallback newCallback() {
+        Map<String, Object> row = new HashMap<String, Object>();
+        row.put("name", "John");
+        Map<String, Object> m = new HashMap<String, Object>();
+        m.put("id", 5);
+        m.put("n", 10.5);
+        m.put("str", "abcd");
+        m.put("flag", false);
+        m.put("row", row);
+        m.put("etl.globals", "globals");
+        m.put("b", "B");
+        m.put("y", "Y");
+        m.put("x.y.z", "XYZ");
+        m.put("bean", new Bean());
+        return MockParametersCallbacks.fromMap(m);
+    }
+
+    /**
+     * Tests if simple expressions are compiled and produce the same results as JEXL interpreter.
+     */
+    public void testSameResults() {
+        JexlEngine engine = JexlExpression.newJexlEngine();
+        JexlContext ctx = new JexlContext() {
+            public Object get(String name) {
+                return callback.getParameter(name);
+            }
+
+            public void set(String name, Object value) {
+                throw new UnsupportedOperationException();
+            }
+
+            public boolean has(String name) {
+                return true;
+            }
+        };
+        for (String s : SIMPLE) {
+            JexlExpression e = (JexlExpression) Expression.compile(s);
+            assertNotNull(s, e.getSimpleEvaluator());
+            Object expected = engine.createExpression(s).evaluate(ctx);
+            assertEquals(s, expected, e.evaluate(callback));
+        }
+        for (String s : COMPLEX) {
+            assertNull(s, ((JexlExpression) Expression.compile(s)).getSimpleEvaluator());
+        }
+    }
+
+    /**
+     * Tests if cached property accessors handle different classes at the same path.
+     */
+    public void testPolymorphicPath() {
+        Expression e = Expression.compile("v.value");
+        assertEquals("bean", e.evaluate(MockParametersCallbacks.fromMap(Collections.singletonMap("v", new Bean()))));
+        assertEquals("map", e.evaluate(MockParametersCallbacks.fromMap(Collections.singletonMap("v",
+                Collections.singletonMap("value", "map")))));
+        assertEquals("bean", e.evaluate(MockParametersCallbacks.fromMap(Collections.singletonMap("v", new Bean()))));
+    }
+
+    /**
+     * Tests if failed property getters are evaluated to null as by JEXL interpreter.
+     */
+    public void testFallback() {
+        Expression e = Expression.compile("v.failing");
+        assertNull(e.evaluate(MockParametersCallbacks.fromMap(Collections.singletonMap("v", new Bean()))));
+    }
+
+    /**
+     * Tests if errors are wrapped the same way as errors of JEXL interpreter and parameters are read once.
+     */
+    public void testErrors() {
+        final int[] reads = new int[1];
+        ParametersCallback pc = new ParametersCallback() {
+            public Object getParameter(String name) {
+                reads[0]++;
+                if ("failing".equals(name)) {
+                    throw new IllegalStateException("Failing parameter");
+                }
+                return new Object();
+            }
+        };
+        Expression e = Expression.compile("v < 1");
+        try {
+            e.evaluate(pc);
+            fail("Comparison error expected");
+        } catch (Expression.EvaluationException ex) {
+            assertTrue(ex.getCause() instanceof JexlException);
+        }
+        assertEquals(1, reads[0]);
+        try {
+            Expression.compile("failing == 1").evaluate(pc);
+            fail("Parameter error expected");
+        } catch (Expression.EvaluationException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    public static class Bean {
+        public String getValue() {
+            return "bean";
+        }
+
+        public String getFailing() {
+            throw new IllegalStateException("Failing property");
+        }
+    }
+}
@@ -118,8 +118,11 @@ public class StatementCacheTest extends DBTestCase {
         }
         assertEquals(20, preparedCleared);
         assertEquals(0, preparedClosed); //no closed stmt if cache is working
+        sc.releaseStatement(sc.prepare(sb.toString(), params));
+        assertEquals(1, sc.getStats().getHits());
+        assertEquals(20, sc.getStats().getMisses());
         sc.close();
-        assertEquals(20, preparedCleared);
+        assertEquals(21, preparedCleared);
         assertEquals(20, preparedClosed);
 
     }
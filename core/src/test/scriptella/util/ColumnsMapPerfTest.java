@@ -47,6 +47,8 @@ public class ColumnsMapPerfTest extends AbstractTestCase {
      * History:
      * 06.09.2006 - Duron 1.7Mhz - 1046 ms
      * 11.09.2006 - Duron 1.7Mhz - 422 ms
+     * 19.10.2026 - Xeon JDK17 - 359 ms (TreeMap, 3M lookups after warmup)
+     * 19.10.2026 - Xeon JDK17 - 96 ms (open addressing, 3M lookups after warmup)
      */
     public void testNamedSearch() {
         for (int i=1;i<SEARCH_LOOP_COUNT;i++) {
@@ -58,6 +60,8 @@ public class ColumnsMapPerfTest extends AbstractTestCase {
      * History:
      * 06.09.2006 - Duron 1.7Mhz - 563 ms
      * 11.09.2006 - Duron 1.7Mhz - 25 ms
+     * 19.10.2026 - Xeon JDK17 - 220 ms (TreeMap, 3M lookups after warmup)
+     * 19.10.2026 - Xeon JDK17 - 58 ms (open addressing, 3M lookups after warmup)
      */
     public void testIndexedSearch() {
         for (int i=1;i<SEARCH_LOOP_COUNT;i++) {
@@ -17,6 +17,8 @@ package scriptella.util;
 
 import scriptella.AbstractTestCase;
 
+import java.util.Map;
+
 /**
  * Tests for {@link ColumnsMap}.
  *
@@ -42,4 +44,29 @@ public class ColumnsMapTest extends AbstractTestCase {
         assertEquals(4, map.find("CoL4").intValue());
         assertEquals(3, map.find("3").intValue());
     }
+
+    /**
+     * Tests if cached lookups of unregistered names do not affect registered columns.
+     */
+    public void testCachedLookups() {
+        ColumnsMap map = new ColumnsMap();
+        assertEquals(-1, map.indexOf("name"));
+        assertEquals(7, map.indexOf("7"));
+        assertTrue(map.asIndexNameMap().isEmpty());
+        map.registerColumn("NAME", 2);
+        map.registerColumn("7", 1);
+        assertEquals(2, map.indexOf("name"));
+        assertEquals(1, map.indexOf("7"));
+        for (int i = 1; i <= 1000; i++) {
+            map.registerColumn("c" + i, i);
+            assertEquals(-1, map.indexOf("x" + i));
+        }
+        for (int i = 1; i <= 1000; i++) {
+            assertEquals(i, map.indexOf("C" + i));
+        }
+        assertEquals(2, map.indexOf("Name"));
+        Map<Integer, String> m = map.asIndexNameMap();
+        assertEquals(1000, m.size());
+        assertEquals("c500", m.get(500));
+    }
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.util;
+
+import scriptella.AbstractTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests for {@link ConcurrentCache}.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+public class ConcurrentCacheTest extends AbstractTestCase {
+    public void testGetPut() {
+        ConcurrentCache<String, Integer> cache = new ConcurrentCache<String, Integer>(10);
+        assertNull(cache.get("a"));
+        assertTrue(cache.put("a", 1));
+        assertEquals(1, (int) cache.get("a"));
+        assertTrue(cache.put("a", 2));
+        assertEquals(2, (int) cache.get("a"));
+        assertEquals(1, cache.size());
+        assertEquals(2, (int) cache.remove("a"));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+        ConcurrentCache.Stats stats = cache.getStats();
+        assertEquals(2, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(2 / 3d, stats.getHitRate(), 1e-6);
+        stats = stats.add(stats);
+        assertEquals(4, stats.getHits());
+        assertEquals(2, stats.getMisses());
+    }
+
+    /**
+     * Tests if size bound is respected and evicted entries are reported.
+     */
+    public void testSizeBound() {
+        final List<Integer> evicted = new ArrayList<Integer>();
+        ConcurrentCache<Integer, Integer> cache = new ConcurrentCache<Integer, Integer>(10) {
+            @Override
+            protected void onEviction(Integer key, Integer value) {
+                evicted.add(value);
+            }
+        };
+        for (int i = 0; i < 100; i++) {
+            cache.get(i);
+            cache.put(i, i);
+            assertTrue(cache.size() <= 10);
+        }
+        ConcurrentCache.Stats stats = cache.getStats();
+        assertEquals(evicted.size(), stats.getEvictions());
+        assertEquals(90, stats.getEvictions() + stats.getRejections());
+    }
+
+    /**
+     * Tests if frequently used entries survive a scan of one-off keys.
+     */
+    public void testFrequentEntriesRetained() {
+        ConcurrentCache<Integer, Integer> cache = new ConcurrentCache<Integer, Integer>(100);
+        for (int r = 0; r < 5; r++) {
+            for (int i = 0; i < 50; i++) {
+                if (cache.get(i) == null) {
+                    cache.put(i, i);
+                }
+            }
+        }
+        for (int i = 1000; i < 2000; i++) { //scan
+            if (cache.get(i) == null) {
+                cache.put(i, i);
+            }
+        }
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, (int) cache.get(i));
+        }
+        assertTrue(cache.getStats().getRejections() > 0);
+    }
+
+    public void testWeightBound() {
+        ConcurrentCache<String, String> cache = new ConcurrentCache<String, String>(100, 10) {
+            @Override
+            protected int weigh(String key, String value) {
+                return value.length();
+            }
+
+            @Override
+            protected boolean admit(int candidateFrequency, int victimFrequency) {
+                return true;
+            }
+        };
+        cache.put("a", "12345");
+        cache.put("b", "1234");
+        assertEquals(9, cache.weight());
+        cache.put("c", "123");
+        assertTrue(cache.weight() <= 10);
+        assertEquals("123", cache.get("c"));
+    }
+
+    /**
+     * Tests concurrent access to the cache.
+     */
+    public void testConcurrent() throws InterruptedException {
+        final ConcurrentCache<Integer, Integer> cache = new ConcurrentCache<Integer, Integer>(64);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 20000; i++) {
+                            int k = (i * 31 + seed) % 200;
+                            Integer v = cache.get(k);
+                            if (v == null) {
+                                cache.put(k, k);
+                            } else if (v != k) {
+                                throw new IllegalStateException("Wrong value " + v + " for " + k);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        error.set(e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertNull(error.get());
+        assertTrue(cache.size() <= 64);
+        assertEquals(cache.size(), cache.weight());
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.util;
+
+import scriptella.AbstractTestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Tests for {@link ParallelGzipOutputStream} and {@link CompressionCodec}.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+public class ParallelGzipOutputStreamTest extends AbstractTestCase {
+    /**
+     * Tests if the multi-member output is readable by a standard gzip decompressor.
+     */
+    public void testCompress() throws IOException {
+        byte[] data = new byte[300000];
+        Random rnd = new Random(1);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + rnd.nextInt(4));
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        OutputStream out = new ParallelGzipOutputStream(bos, 3, 10000);
+        out.write(data, 0, 12345);
+        out.write(data[12345]);
+        out.flush();
+        out.write(data, 12346, data.length - 12346);
+        out.close();
+        assertTrue("Content must be compressed", bos.size() < data.length / 2);
+        byte[] actual = IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(bos.toByteArray())));
+        assertTrue(Arrays.equals(data, actual));
+    }
+
+    /**
+     * Tests if flushes, e.g. after each row, do not split the content into small gzip members.
+     */
+    public void testFlush() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        OutputStream out = new ParallelGzipOutputStream(bos, 2, 100000);
+        byte[] row = "1,row,value\n".getBytes();
+        for (int i = 0; i < 1000; i++) {
+            out.write(row);
+            out.flush();
+        }
+        out.close();
+        assertTrue("Single gzip member expected, but was " + bos.size() + " bytes", bos.size() < 200);
+        byte[] actual = IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(bos.toByteArray())));
+        assertEquals(row.length * 1000, actual.length);
+    }
+
+    public void testEmpty() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new ParallelGzipOutputStream(bos, 2).close();
+        byte[] actual = IOUtils.toByteArray(CompressionCodec.GZIP.decompress(new ByteArrayInputStream(bos.toByteArray())));
+        assertEquals(0, actual.length);
+    }
+
+    public void testCodecs() throws IOException {
+        assertEquals(CompressionCodec.GZIP, CompressionCodec.detect("data.csv.GZ"));
+        assertEquals(CompressionCodec.DEFLATE, CompressionCodec.detect("data.xml.zz"));
+        assertEquals(CompressionCodec.NONE, CompressionCodec.detect("data.csv"));
+        assertEquals(CompressionCodec.GZIP, CompressionCodec.forName("gzip"));
+        assertEquals(CompressionCodec.NONE, CompressionCodec.forNameOrUrl("none", IOUtils.toUrl(new java.io.File("a.gz"))));
+        try {
+            CompressionCodec.forName("lzma");
+            fail("Unsupported codec must be rejected");
+        } catch (IllegalArgumentException e) {
+            //OK
+        }
+        byte[] data = "Compressed content".getBytes();
+        for (CompressionCodec codec : CompressionCodec.values()) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            OutputStream out = codec.compress(bos, 1);
+            out.write(data);
+            out.close();
+            byte[] actual = IOUtils.toByteArray(codec.decompress(new ByteArrayInputStream(bos.toByteArray())));
+            assertTrue(codec.name(), Arrays.equals(data, actual));
+        }
+    }
+}
@@ -19,17 +19,24 @@ import scriptella.core.EtlCancelledException;
 import scriptella.driver.csv.opencsv.CSVReader;
 import scriptella.driver.csv.opencsv.CSVWriter;
 import scriptella.driver.text.AbstractTextConnection;
+import scriptella.driver.text.OutputFiles;
+import scriptella.expression.CompiledTemplate;
 import scriptella.expression.PropertiesSubstitutor;
 import scriptella.spi.ConnectionParameters;
 import scriptella.spi.ParametersCallback;
 import scriptella.spi.ProviderException;
 import scriptella.spi.QueryCallback;
 import scriptella.spi.Resource;
+import scriptella.util.IOUtils;
 import scriptella.util.StringUtils;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -43,8 +50,8 @@ import java.util.logging.Logger;
  */
 public class CsvConnection extends AbstractTextConnection {
     protected static final Logger LOG = Logger.getLogger(CsvConnection.class.getName());
-    private CSVWriter out;
-    private Writer writer;
+    private OutputFiles<CSVWriter> out;
+    private final Map<Resource, CompiledTemplate[][]> scripts = new IdentityHashMap<Resource, CompiledTemplate[][]>();
 
     /**
      * Name of the <code>separator</code> connection property.
@@ -83,37 +90,58 @@ public class CsvConnection extends AbstractTextConnection {
     }
 
     public void executeScript(Resource scriptContent, ParametersCallback parametersCallback) throws ProviderException {
-        final CSVReader r;
-        try {
-            r = getScriptingElementReader(scriptContent);
-        } catch (IOException e) {
-            throw new CsvProviderException("Cannot open CSV script content.", e);
+        CompiledTemplate[][] script = scripts.get(scriptContent);
+        if (script == null) {
+            CSVReader r = null;
+            try {
+                r = getScriptingElementReader(scriptContent);
+                script = compileScript(r);
+            } catch (IOException e) {
+                throw new CsvProviderException("Cannot open CSV script content.", e);
+            } finally {
+                IOUtils.closeSilently(r);
+            }
+            scripts.put(scriptContent, script);
         }
         try {
-            executeScript(r, parametersCallback);
+            executeScript(script, parametersCallback);
         } catch (IOException e) {
             throw new CsvProviderException("Cannot output CSV script.", e);
         }
     }
 
+    /**
+     * Parses CSV script content and compiles fields.
+     */
+    CompiledTemplate[][] compileScript(CSVReader reader) throws IOException {
+        final boolean trimLines = getConnectionParameters().isTrimLines();
+        List<CompiledTemplate[]> rows = new ArrayList<CompiledTemplate[]>();
+        for (String[] row; (row = reader.readNext()) != null;) {
+            CompiledTemplate[] compiledRow = new CompiledTemplate[row.length];
+            for (int i = 0; i < row.length; i++) {
+                String field = row[i];
+                if (field != null && trimLines) {//removing extra whitespaces by default
+                    field = field.trim();
+                }
+                compiledRow[i] = CompiledTemplate.compile(field);
+            }
+            rows.add(compiledRow);
+        }
+        return rows.toArray(new CompiledTemplate[rows.size()][]);
+    }
 
-    void executeScript(CSVReader reader, ParametersCallback parametersCallback) throws IOException {
-        CSVWriter out = getOut();
+    void executeScript(CompiledTemplate[][] script, ParametersCallback parametersCallback) throws IOException {
+        CSVWriter out = getOut(parametersCallback);
+        long statements = counter.statements;
         final CsvConnectionParameters csvParams = getConnectionParameters();
         ParametersCallback formattingCallback = csvParams.getPropertyFormatter().format(parametersCallback);
-        final boolean trimLines = csvParams.isTrimLines();
         final boolean quoteall = csvParams.isQuoteall();
         PropertiesSubstitutor ps = new PropertiesSubstitutor(formattingCallback);
-        for (String[] row; (row = reader.readNext()) != null;) {
+        for (CompiledTemplate[] compiledRow : script) {
             EtlCancelledException.checkEtlCancelled();
+            String[] row = new String[compiledRow.length];
             for (int i = 0; i < row.length; i++) {
-                String field = row[i];
-                if (field != null) {
-                    if (trimLines) {//removing extra whitespaces by default
-                        field = field.trim();
-                    }
-                    row[i] = ps.substitute(field);
-                }
+                row[i] = ps.substitute(compiledRow[i]);
             }
             //If only one column and empty - skip this row
             if (row.length == 1 && StringUtils.isAsciiWhitespacesOnly(row[0])) {
@@ -133,8 +161,9 @@ public class CsvConnection extends AbstractTextConnection {
                 }
             }
         }
+        this.out.rowsWritten(counter.statements - statements);
         if (csvParams.isFlush()) {
-            writer.flush();
+            this.out.flush();
         }
     }
 
@@ -166,16 +195,30 @@ public class CsvConnection extends AbstractTextConnection {
      * @return lazily intialized writer.
      */
     protected CSVWriter getOut() {
+        return getOut(null);
+    }
+
+    /**
+     * Returns a writer for the row.
+     * <p>For partitioned output the file is selected by the row parameters.
+     *
+     * @param parametersCallback row parameters.
+     * @return lazily intialized writer.
+     */
+    protected CSVWriter getOut(ParametersCallback parametersCallback) {
+        final CsvConnectionParameters csvParams = getConnectionParameters();
         if (out == null) {
-            final CsvConnectionParameters csvParams = getConnectionParameters();
-            try {
-                writer = newOutputWriter();
-                out = new CSVWriter(writer, csvParams.getSeparator(), csvParams.getQuote(), csvParams.getEscape(), csvParams.getEol());
-            } catch (IOException e) {
-                throw new CsvProviderException("Unable to open URL " + csvParams.getUrl() + " for output", e);
-            }
+            out = new OutputFiles<CSVWriter>(this) {
+                protected CSVWriter newOutput(Writer writer) {
+                    return new CSVWriter(writer, csvParams.getSeparator(), csvParams.getQuote(), csvParams.getEscape(), csvParams.getEol());
+                }
+            };
+        }
+        try {
+            return out.get(parametersCallback);
+        } catch (IOException e) {
+            throw new CsvProviderException("Unable to open URL " + csvParams.getUrl() + " for output", e);
         }
-        return out;
     }
 
     /**
@@ -194,11 +237,12 @@ public class CsvConnection extends AbstractTextConnection {
         if (out != null) {
             try {
                 out.close();
-                writer = null;
+                out = null;
             } catch (Exception e) {
                 LOG.log(Level.INFO, "A problem occured while trying to close CSV writer", e);
             }
         }
+        scripts.clear();
     }
 
     @Override
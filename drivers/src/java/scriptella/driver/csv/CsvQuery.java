@@ -237,8 +237,8 @@ public class CsvQuery implements ParametersCallback {
         if (columnsMap == null) {
             throw new IllegalStateException("CSV Resultset is closed");
         }
-        Integer col = columnsMap.find(name);
-        if (col != null && col > 0 && col <= row.length) { //If col is not null and in range
+        int col = columnsMap.indexOf(name);
+        if (col > 0 && col <= row.length) { //If col is found and in range
             return getCurrentRowValueAt(col, name);
         } else { //otherwise call parent context.
             return substitutor.getParameters().getParameter(name);
@@ -16,6 +16,7 @@
 package scriptella.driver.csv.opencsv;
 
 import java.io.Closeable;
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.Writer;
 
@@ -27,7 +28,7 @@ import java.io.Writer;
  * @author Sean Summers
  *
  */
-public class CSVWriter implements Closeable {
+public class CSVWriter implements Closeable, Flushable {
 
     private Writer writer;
 
@@ -201,6 +202,15 @@ public class CSVWriter implements Closeable {
 
     }
 
+    /**
+     * Flushes the underlying writer.
+     *
+     * @throws java.io.IOException if bad things happen
+     */
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
     /**
      * Close the underlying stream writer flushing any buffered content.
      *
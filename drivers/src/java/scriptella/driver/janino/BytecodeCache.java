@@ -0,0 +1,213 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.driver.janino;
+
+import org.codehaus.janino.ScriptEvaluator;
+import scriptella.util.IOUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.Manifest;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * On-disk cache of classes generated by Janino.
+ * <p>Classes are stored in zip files named by a SHA-256 hash of the script source, the base class,
+ * debugging mode and Janino version, so any change of these invalidates the cached entry.
+ * Cached classes are defined by a dedicated class loader, compilation is skipped completely.
+ * <p>I/O errors are not fatal, they are logged and the script is compiled as usual.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+final class BytecodeCache {
+    private static final Logger LOG = Logger.getLogger(BytecodeCache.class.getName());
+    static final String JANINO_VERSION = getJaninoVersion();
+    private static final String SUFFIX = ".zip";
+    private final File dir;
+
+    /**
+     * Creates a cache stored in a specified directory.
+     *
+     * @param dir cache directory. Created if necessary.
+     */
+    BytecodeCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Computes the key of a script.
+     *
+     * @param source    script source.
+     * @param baseClass base class of the generated class.
+     * @param debug     true if debugging information is generated.
+     * @return hex-encoded key.
+     */
+    static String key(String source, Class<?> baseClass, boolean debug) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+        md.update((JANINO_VERSION + '\n' + baseClass.getName() + '\n' + debug + '\n').getBytes(StandardCharsets.UTF_8));
+        byte[] hash = md.digest(source.getBytes(StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Loads a generated class from the cache.
+     *
+     * @param key       key of the script.
+     * @param className name of the generated class.
+     * @return loaded class or null if the script is not cached.
+     */
+    Class<?> load(String key, String className) {
+        File file = new File(dir, key + SUFFIX);
+        if (!file.isFile()) {
+            return null;
+        }
+        Map<String, byte[]> classes = new HashMap<String, byte[]>();
+        ZipInputStream in = null;
+        try {
+            in = new ZipInputStream(new FileInputStream(file));
+            byte[] buf = new byte[4096];
+            for (ZipEntry e; (e = in.getNextEntry()) != null; ) {
+                ByteArrayOutputStream b = new ByteArrayOutputStream();
+                for (int n; (n = in.read(buf)) >= 0; ) {
+                    b.write(buf, 0, n);
+                }
+                classes.put(e.getName(), b.toByteArray());
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to read cached classes from " + file + ", the script will be recompiled", e);
+            return null;
+        } finally {
+            IOUtils.closeSilently(in);
+        }
+        try {
+            return new BytecodeClassLoader(classes, CodeCompiler.class.getClassLoader()).loadClass(className);
+        } catch (ClassNotFoundException e) {
+            LOG.log(Level.WARNING, "Cached classes in " + file + " are invalid, the script will be recompiled", e);
+            return null;
+        } catch (LinkageError e) {
+            LOG.log(Level.WARNING, "Cached classes in " + file + " are invalid, the script will be recompiled", e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores generated classes in the cache.
+     * <p>Classes are written to a temporary file which is renamed when complete,
+     * so concurrent processes never read partially written entries.
+     *
+     * @param key     key of the script.
+     * @param classes map of class names to class files.
+     */
+    void store(String key, Map<String, byte[]> classes) {
+        File file = new File(dir, key + SUFFIX);
+        File tmp = null;
+        ZipOutputStream out = null;
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+                throw new IOException("Unable to create directory " + dir);
+            }
+            tmp = File.createTempFile(key, ".tmp", dir);
+            out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file) && !file.isFile()) {
+                throw new IOException("Unable to rename " + tmp + " to " + file);
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to cache compiled classes in " + dir, e);
+        } finally {
+            IOUtils.closeSilently(out);
+            if (tmp != null && tmp.exists() && !tmp.delete()) {
+                tmp.deleteOnExit();
+            }
+        }
+    }
+
+    private static String getJaninoVersion() {
+        Package p = ScriptEvaluator.class.getPackage();
+        if (p != null && p.getImplementationVersion() != null) {
+            return p.getImplementationVersion();
+        }
+        //Janino jars only have OSGi headers
+        URL u = ScriptEvaluator.class.getResource("ScriptEvaluator.class");
+        try {
+            URLConnection c = u == null ? null : u.openConnection();
+            if (c instanceof JarURLConnection) {
+                c.setUseCaches(false);
+                Manifest m = ((JarURLConnection) c).getManifest();
+                String v = m == null ? null : m.getMainAttributes().getValue("Bundle-Version");
+                if (v != null) {
+                    return v;
+                }
+            }
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Unable to read Janino manifest", e);
+        }
+        return "unknown";
+    }
+
+    /**
+     * Defines classes loaded from the cache.
+     */
+    static final class BytecodeClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classes;
+
+        BytecodeClassLoader(Map<String, byte[]> classes, ClassLoader parent) {
+            super(parent);
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] b = classes.remove(name);
+            if (b == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, b, 0, b.length);
+        }
+    }
+}
@@ -19,11 +19,14 @@ import org.codehaus.commons.compiler.LocatedException;
 import org.codehaus.janino.ScriptEvaluator;
 import scriptella.expression.LineIterator;
 import scriptella.spi.Resource;
+import scriptella.spi.support.CompiledScriptCache;
 import scriptella.util.ExceptionUtils;
 import scriptella.util.IOUtils;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringReader;
 import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.logging.Level;
@@ -40,8 +43,23 @@ final class CodeCompiler {
     private static final boolean DEBUG = LOG.isLoggable(Level.FINE);
     //Allowed exceptions to be thrown by a script
     private static final Class[] THROWN_EXCEPTIONS = new Class[]{Exception.class};
+    private static final String GENERATED_SUFFIX = "_Generated";
     //Compiled scripts(Static methods) cache
     private Map<Resource, Object> objectCache = new IdentityHashMap<Resource, Object>();
+    private final BytecodeCache bytecodeCache;
+
+    CodeCompiler() {
+        this(null);
+    }
+
+    /**
+     * Creates a compiler.
+     *
+     * @param cacheDir directory to store compiled classes between runs or null to disable the on-disk cache.
+     */
+    CodeCompiler(File cacheDir) {
+        bytecodeCache = cacheDir == null ? null : new BytecodeCache(cacheDir);
+    }
 
     public JaninoScript compileScript(final Resource resource) {
         return (JaninoScript) compile(resource, false);
@@ -54,29 +72,32 @@ final class CodeCompiler {
     private Object compile(final Resource content, final boolean query) {
         Object ctx = objectCache.get(content);
         if (ctx == null) {
-            ScriptEvaluator evaluator = new ScriptEvaluator();
-            //Exception are not required to be handled
-            evaluator.setThrownExceptions(THROWN_EXCEPTIONS);
-            evaluator.setParentClassLoader(getClass().getClassLoader());
             Class<?> type = query ? JaninoQuery.class : JaninoScript.class;
-            evaluator.setExtendedClass(type);
-            evaluator.setStaticMethod(false);
-            evaluator.setMethodName("execute");
-            evaluator.setClassName(type.getName() + "_Generated");
-            if (DEBUG) {
-                evaluator.setDebuggingInformation(true, true, true);
-            }
-
-            Reader r = null;
+            String source;
             try {
-                r = content.open();
-                evaluator.cook(content.toString(), r);
-            } catch (Exception e) {
-                throw guessErrorStatement(new JaninoProviderException("Compilation failed", e), content);
-            } finally {
-                IOUtils.closeSilently(r);
+                source = IOUtils.toString(content.open());
+            } catch (IOException e) {
+                throw new JaninoProviderException("Unable to read script " + content, e);
+            }
+            boolean debug = DEBUG || Boolean.getBoolean("org.codehaus.janino.source_debugging.enable");
+            //Generated classes are shared by all connections, instances are not, because they hold a state
+            String namespace = "janino:" + type.getName() + (debug ? ":debug" : "");
+            Class<?> cl = (Class<?>) CompiledScriptCache.get(namespace, source);
+            if (cl == null) {
+                String key = null;
+                if (bytecodeCache != null) {
+                    key = BytecodeCache.key(source, type, debug);
+                    cl = bytecodeCache.load(key, type.getName() + GENERATED_SUFFIX);
+                }
+                if (cl == null) {
+                    ScriptEvaluator evaluator = cook(content, source, type);
+                    cl = evaluator.getMethod().getDeclaringClass();
+                    if (bytecodeCache != null) {
+                        bytecodeCache.store(key, evaluator.getBytecodes());
+                    }
+                }
+                CompiledScriptCache.put(namespace, source, cl);
             }
-            Class<?> cl = evaluator.getMethod().getDeclaringClass();
             try {
                 ctx = cl.newInstance();
             } catch (Exception e) {
@@ -87,6 +108,39 @@ final class CodeCompiler {
         return ctx;
     }
 
+    /**
+     * Compiles a script.
+     *
+     * @param content script resource.
+     * @param source  script source.
+     * @param type    base class of the script.
+     * @return evaluator with compiled script.
+     */
+    private static ScriptEvaluator cook(Resource content, String source, Class<?> type) {
+        ScriptEvaluator evaluator = new ScriptEvaluator();
+        //Exception are not required to be handled
+        evaluator.setThrownExceptions(THROWN_EXCEPTIONS);
+        evaluator.setParentClassLoader(CodeCompiler.class.getClassLoader());
+        evaluator.setExtendedClass(type);
+        evaluator.setStaticMethod(false);
+        evaluator.setMethodName("execute");
+        evaluator.setClassName(type.getName() + GENERATED_SUFFIX);
+        if (DEBUG) {
+            evaluator.setDebuggingInformation(true, true, true);
+        }
+
+        Reader r = null;
+        try {
+            r = new StringReader(source);
+            evaluator.cook(content.toString(), r);
+        } catch (Exception e) {
+            throw guessErrorStatement(new JaninoProviderException("Compilation failed", e), content);
+        } finally {
+            IOUtils.closeSilently(r);
+        }
+        return evaluator;
+    }
+
     /**
      * Finds error statement which caused compilation error.
      */
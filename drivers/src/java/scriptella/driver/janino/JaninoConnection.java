@@ -15,6 +15,7 @@
  */
 package scriptella.driver.janino;
 
+import scriptella.configuration.ConfigurationException;
 import scriptella.spi.AbstractConnection;
 import scriptella.spi.ConnectionParameters;
 import scriptella.spi.ParametersCallback;
@@ -22,6 +23,10 @@ import scriptella.spi.ProviderException;
 import scriptella.spi.QueryCallback;
 import scriptella.spi.Resource;
 
+import java.io.File;
+import java.net.URISyntaxException;
+import java.net.URL;
+
 /**
  * Scriptella connection adapter for Janino Script Evaluator.
  * <p>For configuration details and examples see <a href="package-summary.html">overview page</a>.
@@ -30,7 +35,12 @@ import scriptella.spi.Resource;
  * @version 1.0
  */
 public class JaninoConnection extends AbstractConnection {
-    private CodeCompiler compiler = new CodeCompiler();
+    /**
+     * Name of the <code>cache_dir</code> connection property.
+     * Directory to store compiled classes between runs. By default classes are not stored.
+     */
+    public static final String CACHE_DIR = "cache_dir";
+    private CodeCompiler compiler;
 
     /**
      * Instantiates a new connection to Janino Script Evaluator.
@@ -38,6 +48,19 @@ public class JaninoConnection extends AbstractConnection {
      */
     public JaninoConnection(ConnectionParameters parameters) {
         super(Driver.DIALECT_IDENTIFIER, parameters);
+        URL cacheDir = parameters.getUrlProperty(CACHE_DIR);
+        if (cacheDir == null) {
+            compiler = new CodeCompiler();
+        } else {
+            if (!"file".equals(cacheDir.getProtocol())) {
+                throw new ConfigurationException(CACHE_DIR + " must be a local directory, but was " + cacheDir);
+            }
+            try {
+                compiler = new CodeCompiler(new File(cacheDir.toURI()));
+            } catch (URISyntaxException e) {
+                throw new ConfigurationException("Invalid " + CACHE_DIR + " " + cacheDir, e);
+            }
+        }
     }
 
     public void executeScript(Resource scriptContent, ParametersCallback parametersCallback) throws ProviderException {
@@ -17,9 +17,20 @@ package scriptella.driver.janino;
 
 import scriptella.spi.ParametersCallback;
 
+import java.util.Arrays;
+
 /**
  * A base class for Janino &lt;script&gt; elements.
  * <p>Public members of this class are available in Janino scripting elements.
+ * <p>Parameters used several times may be accessed by slots resolved with {@link #slot(String)}.
+ * A parameter value is fetched from the parameters callback only on the first access to the slot
+ * during an execution, subsequent accesses and typed getters use the fetched value:
+ * <code><pre>
+ * int amount = slot("amount");
+ * if (!isNull(amount) &amp;&amp; getLong(amount) &gt; 0) {
+ *     total += getLong(amount);
+ * }
+ * </pre></code>
  *
  * @author Fyodor Kupolov
  * @version 1.0
@@ -29,6 +40,15 @@ public abstract class JaninoScript {
      * This field in not a part of the public API.
      */
     private ParametersCallback parametersCallback;
+    /**
+     * Slots data is not a part of the public API.
+     * Values are valid only if the slot generation equals to the current generation.
+     */
+    private String[] slotNames = new String[4];
+    private Object[] slotValues = new Object[4];
+    private int[] slotGenerations = new int[4];
+    private int slotsCount;
+    private int generation = 1;
 
     /**
      * This method in not a part of the public API.
@@ -42,6 +62,10 @@ public abstract class JaninoScript {
      */
     final void setParametersCallback(ParametersCallback parametersCallback) {
         this.parametersCallback = parametersCallback;
+        if (++generation == 0) { //Overflow, invalidate all slots
+            Arrays.fill(slotGenerations, 0);
+            generation = 1;
+        }
     }
 
     /**
@@ -61,5 +85,121 @@ public abstract class JaninoScript {
         return parametersCallback.getParameter(name);
     }
 
+    /**
+     * Resolves a slot for a parameter.
+     * <p>Slots are resolved once per script, repeated calls with the same name return the same slot.
+     * <p>This method is available inside Janino &lt;script&gt; element.
+     *
+     * @param name parameter name.
+     * @return slot index to use in {@link #get(int)} and typed getters.
+     */
+    public final int slot(String name) {
+        for (int i = 0; i < slotsCount; i++) { //String literals are interned, so compare references first
+            if (slotNames[i] == name) {
+                return i;
+            }
+        }
+        for (int i = 0; i < slotsCount; i++) {
+            if (slotNames[i].equals(name)) {
+                return i;
+            }
+        }
+        if (slotsCount == slotNames.length) {
+            int n = slotsCount * 2;
+            slotNames = Arrays.copyOf(slotNames, n);
+            slotValues = Arrays.copyOf(slotValues, n);
+            slotGenerations = Arrays.copyOf(slotGenerations, n);
+        }
+        slotNames[slotsCount] = name;
+        return slotsCount++;
+    }
+
+    /**
+     * Obtains a parameter value for specified slot.
+     * <p>This method is available inside Janino &lt;script&gt; element.
+     *
+     * @param slot slot returned by {@link #slot(String)}.
+     * @return parameter value.
+     */
+    public final Object get(int slot) {
+        if (slotGenerations[slot] != generation) {
+            slotValues[slot] = parametersCallback.getParameter(slotNames[slot]);
+            slotGenerations[slot] = generation;
+        }
+        return slotValues[slot];
+    }
+
+    /**
+     * Checks if a parameter value is null.
+     * <p>This method is available inside Janino &lt;script&gt; element.
+     *
+     * @param slot slot returned by {@link #slot(String)}.
+     * @return true if the parameter value is null.
+     */
+    public final boolean isNull(int slot) {
+        return get(slot) == null;
+    }
+
+    /**
+     * Obtains a parameter value for specified slot as long.
+     * <p>Numbers are converted using {@link Number#longValue()}, other values are parsed from their
+     * string representation. As in JDBC, null values are returned as 0.
+     * <p>This method is available inside Janino &lt;script&gt; element.
+     *
+     * @param slot slot returned by {@link #slot(String)}.
+     * @return parameter value.
+     * @throws NumberFormatException if value cannot be converted.
+     */
+    public final long getLong(int slot) {
+        Object v = get(slot);
+        if (v instanceof Number) {
+            return ((Number) v).longValue();
+        }
+        return v == null ? 0 : Long.parseLong(v.toString().trim());
+    }
+
+    /**
+     * Obtains a parameter value for specified slot as int.
+     *
+     * @param slot slot returned by {@link #slot(String)}.
+     * @return parameter value.
+     * @throws NumberFormatException if value cannot be converted.
+     * @see #getLong(int)
+     */
+    public final int getInt(int slot) {
+        Object v = get(slot);
+        if (v instanceof Number) {
+            return ((Number) v).intValue();
+        }
+        return v == null ? 0 : Integer.parseInt(v.toString().trim());
+    }
+
+    /**
+     * Obtains a parameter value for specified slot as double.
+     *
+     * @param slot slot returned by {@link #slot(String)}.
+     * @return parameter value.
+     * @throws NumberFormatException if value cannot be converted.
+     * @see #getLong(int)
+     */
+    public final double getDouble(int slot) {
+        Object v = get(slot);
+        if (v instanceof Number) {
+            return ((Number) v).doubleValue();
+        }
+        return v == null ? 0 : Double.parseDouble(v.toString().trim());
+    }
+
+    /**
+     * Obtains a parameter value for specified slot as string.
+     *
+     * @param slot slot returned by {@link #slot(String)}.
+     * @return string representation of parameter value or null.
+     */
+    public final String getString(int slot) {
+        Object v = get(slot);
+        return v == null ? null : v.toString();
+    }
+
 
 }
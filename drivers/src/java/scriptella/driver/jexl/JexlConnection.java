@@ -26,6 +26,7 @@ import scriptella.spi.ParametersCallback;
 import scriptella.spi.ProviderException;
 import scriptella.spi.QueryCallback;
 import scriptella.spi.Resource;
+import scriptella.spi.support.CompiledScriptCache;
 import scriptella.util.IOUtils;
 
 import java.io.IOException;
@@ -40,6 +41,7 @@ import java.util.Map;
  * @version 1.0
  */
 public class JexlConnection extends AbstractConnection {
+    private static final String CACHE_NAMESPACE = "jexl";
     private Map<Resource, Script> cache = new IdentityHashMap<Resource, Script>();
     //Use the same factory method as in JexlExpression to share functions etc. 
     private static final JexlEngine jexlEngine = JexlExpression.newJexlEngine();
@@ -76,11 +78,17 @@ public class JexlConnection extends AbstractConnection {
                 throw new JexlProviderException("Unable to open resource", e);
             }
 
-            try {
-                cache.put(resource, script = jexlEngine.createScript(s));
-            } catch (Exception e) {
-                throw new JexlProviderException("Failed to compile JEXL script", e);
+            //Scripts are stateless and created by the shared engine, so they are reused by all connections
+            script = (Script) CompiledScriptCache.get(CACHE_NAMESPACE, s);
+            if (script == null) {
+                try {
+                    script = jexlEngine.createScript(s);
+                } catch (Exception e) {
+                    throw new JexlProviderException("Failed to compile JEXL script", e);
+                }
+                CompiledScriptCache.put(CACHE_NAMESPACE, s, script);
             }
+            cache.put(resource, script);
         }
         try {
             script.execute(ctx);
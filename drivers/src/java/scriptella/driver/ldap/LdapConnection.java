@@ -27,11 +27,14 @@ import scriptella.util.IOUtils;
 import javax.naming.Context;
 import javax.naming.NamingException;
 import javax.naming.directory.DirContext;
-import javax.naming.directory.InitialDirContext;
 import javax.naming.directory.SearchControls;
+import javax.naming.ldap.InitialLdapContext;
 import java.io.IOException;
 import java.io.Reader;
+import java.net.URL;
+import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -49,6 +52,11 @@ public class LdapConnection extends AbstractConnection {
     private final Long maxFileLength;
     private final String baseDn;
     private final DriverContext driverContext;
+    private final int pageSize;
+    private final Hashtable<String, Object> env;
+    private final int ldifThreads;
+    private final LdifRejects rejects;
+    private List<DirContext> loaderContexts;
 
 
     /**
@@ -86,16 +94,52 @@ public class LdapConnection extends AbstractConnection {
 
     /**
      * Names of the Max File Length connection property.
-     * <p>This property specifies the maximum size in Kb of the external files referenced from LDIFs.
+     * <p>This property specifies the maximum size in Kb of the external files referenced from LDIFs
+     * and of base64 encoded values. Base64 encoded values are not limited if the property is not specified.
      * The default value is 10000 (10MB)
      */
     public static final String FILE_MAXLENGTH_KEY = "file.maxlength";
 
+    /**
+     * Name of the <em>Page Size</em> connection property.
+     * <p>If specified, search results are requested by pages of the specified size
+     * using paged results control (RFC 2696). By default results are returned by a single request.
+     *
+     * @see javax.naming.ldap.PagedResultsControl
+     */
+    public static final String SEARCH_PAGESIZE_KEY = "search.pagesize";
+
+    /**
+     * Name of the <em>Returning Attributes</em> connection property.
+     * <p>Comma separated list of attributes to return for found entries. By default all attributes are returned.
+     *
+     * @see SearchControls#setReturningAttributes(String[])
+     */
+    public static final String SEARCH_ATTRIBUTES_KEY = "search.attributes";
+
+    /**
+     * Name of the <em>LDIF Threads</em> connection property.
+     * <p>Number of threads applying LDIF entries, each thread uses its own directory context.
+     * The default value is 1, i.e. entries are applied sequentially.
+     */
+    public static final String LDIF_THREADS_KEY = "ldif.threads";
+
+    /**
+     * Name of the <em>LDIF Reject File</em> connection property.
+     * <p>If specified, LDIF entries which failed to be applied are written to this file and
+     * the script continues. By default the first failure stops the script.
+     */
+    public static final String LDIF_REJECT_KEY = "ldif.reject";
+
     public LdapConnection() {
         this.searchControls = null;
         this.maxFileLength = null;
         this.baseDn = null;
         this.driverContext = null;
+        this.pageSize = 0;
+        this.env = null;
+        this.ldifThreads = 1;
+        this.rejects = null;
     }
 
     /**
@@ -146,10 +190,26 @@ public class LdapConnection extends AbstractConnection {
         if (cl != null) {
             searchControls.setCountLimit(cl);
         }
+        String attrs = parameters.getStringProperty(SEARCH_ATTRIBUTES_KEY);
+        if (attrs != null) {
+            String[] names = attrs.trim().split("\\s*,\\s*");
+            searchControls.setReturningAttributes(names.length == 1 && names[0].length() == 0 ? new String[0] : names);
+        }
+        pageSize = parameters.getIntegerProperty(SEARCH_PAGESIZE_KEY, 0);
+        if (pageSize < 0) {
+            throw new LdapProviderException(SEARCH_PAGESIZE_KEY + " must not be negative, but was " + pageSize);
+        }
+        ldifThreads = parameters.getIntegerProperty(LDIF_THREADS_KEY, 1);
+        if (ldifThreads <= 0) {
+            throw new LdapProviderException(LDIF_THREADS_KEY + " must be positive, but was " + ldifThreads);
+        }
+        URL rejectUrl = parameters.getUrlProperty(LDIF_REJECT_KEY);
+        rejects = rejectUrl == null ? null : new LdifRejects(rejectUrl);
         Number mfl = parameters.getNumberProperty(FILE_MAXLENGTH_KEY, null);
         maxFileLength = mfl == null ? null : mfl.longValue();
 
         driverContext = parameters.getContext();
+        this.env = env;
         initializeContext(env); //Initializing context
     }
 
@@ -163,7 +223,8 @@ public class LdapConnection extends AbstractConnection {
             LOG.fine("Creating initial context, environment: " + env);
         }
         try {
-            ctx = new InitialDirContext(env);
+            //LDAP context is required for paged results
+            ctx = new InitialLdapContext(env, null);
         } catch (NamingException e) {
             throw new LdapProviderException("Unable to establish directory connection", e);
         }
@@ -173,10 +234,57 @@ public class LdapConnection extends AbstractConnection {
         return ctx;
     }
 
+    /**
+     * Creates a new directory context with the environment of this connection.
+     *
+     * @return new directory context.
+     * @throws NamingException if context cannot be created.
+     */
+    DirContext createContext() throws NamingException {
+        return new InitialLdapContext(env, null);
+    }
+
+    /**
+     * Returns contexts for parallel loading of LDIF entries.
+     * <p>Contexts are created on the first call and closed together with the connection.
+     *
+     * @return list of {@link #getLdifThreads()} contexts.
+     */
+    List<DirContext> getLoaderContexts() {
+        if (loaderContexts == null) {
+            List<DirContext> contexts = new ArrayList<DirContext>(ldifThreads);
+            try {
+                for (int i = 0; i < ldifThreads; i++) {
+                    contexts.add(createContext());
+                }
+            } catch (NamingException e) {
+                closeContexts(contexts);
+                throw new LdapProviderException("Unable to establish directory connection", e);
+            }
+            loaderContexts = contexts;
+        }
+        return loaderContexts;
+    }
+
+    int getLdifThreads() {
+        return ldifThreads;
+    }
+
+    LdifRejects getRejects() {
+        return rejects;
+    }
+
     SearchControls getSearchControls() {
         return searchControls;
     }
 
+    /**
+     * @return size of search results pages or 0 if paging is not used.
+     */
+    int getPageSize() {
+        return pageSize;
+    }
+
     Long getMaxFileLength() {
         return maxFileLength;
     }
@@ -214,7 +322,27 @@ public class LdapConnection extends AbstractConnection {
         q.execute(filter);
     }
 
+    private static void closeContexts(List<DirContext> contexts) {
+        for (DirContext c : contexts) {
+            try {
+                c.close();
+            } catch (NamingException e) {
+                LOG.log(Level.FINE, "Unable to close directory context", e);
+            }
+        }
+    }
+
     public void close() throws ProviderException {
+        if (loaderContexts != null) {
+            closeContexts(loaderContexts);
+            loaderContexts = null;
+        }
+        if (rejects != null) {
+            if (rejects.getCount() > 0) {
+                LOG.warning(rejects.getCount() + " LDIF entries have been rejected to " + rejects.getUrl());
+            }
+            IOUtils.closeSilently(rejects);
+        }
         if (ctx != null) {
             try {
                 ctx.close();
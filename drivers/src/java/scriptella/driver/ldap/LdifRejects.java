@@ -0,0 +1,87 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.driver.ldap;
+
+import scriptella.util.IOUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+
+/**
+ * Collects LDIF entries which failed to be applied to a reject LDIF file.
+ * <p>Each rejected entry is preceded by a comment with the error message, so the file can be fixed
+ * and loaded again. The file is opened on the first rejected entry.
+ * <p>This class is thread-safe.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+final class LdifRejects implements Closeable {
+    private static final String ENCODING = "UTF-8";
+    private final URL url;
+    private Writer writer;
+    private int count;
+
+    /**
+     * Creates a rejects collector.
+     *
+     * @param url URL of the reject file.
+     */
+    LdifRejects(URL url) {
+        this.url = url;
+    }
+
+    /**
+     * Writes a rejected entry.
+     *
+     * @param entry LDIF text of the entry.
+     * @param cause cause of the failure.
+     */
+    synchronized void reject(String entry, Throwable cause) {
+        try {
+            if (writer == null) {
+                writer = IOUtils.getWriter(IOUtils.getOutputStream(url), ENCODING);
+            }
+            String message = String.valueOf(cause.getMessage()).replace('\r', ' ').replace('\n', ' ');
+            writer.write("# Rejected: " + message + '\n');
+            writer.write(entry);
+            writer.write('\n');
+            count++;
+        } catch (IOException e) {
+            throw new LdapProviderException("Unable to write rejected entry to " + url, e);
+        }
+    }
+
+    /**
+     * @return number of rejected entries.
+     */
+    synchronized int getCount() {
+        return count;
+    }
+
+    URL getUrl() {
+        return url;
+    }
+
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
@@ -84,18 +84,37 @@ public class LdifScript {
         }
         TrackingLineIterator in = new TrackingLineIterator(reader, parameters);
         AbstractConnection.StatementCounter counter = connection.getStatementCounter();
+        ParallelLdifExecutor parallel = null;
         try {
             in.trackLines();
+            //Root DN is parsed once for all entries
+            Name root = new CompoundName(ctx.getNameInNamespace(), DN_SYNTAX);
+            LdifRejects rejects = getRejects();
+            if (getThreads() > 1 && !isReadonly()) {
+                parallel = new ParallelLdifExecutor(connection.getLoaderContexts(), root, rejects);
+            }
             for (LdifIterator it = newLdifIterator(in); it.hasNext(); in.trackLines()) {
                 EtlCancelledException.checkEtlCancelled();
                 Entry e = it.next();
                 if (isReadonly()) {
                     LOG.info("Readonly Mode - " + e + " has been skipped.");
+                } else if (parallel != null) {
+                    parallel.submit(ctx, e, in.getTrackedLines());
                 } else {
-                    modify(ctx, e);
+                    try {
+                        modify(ctx, root, e);
+                    } catch (NamingException ex) {
+                        if (rejects == null) {
+                            throw ex;
+                        }
+                        rejects.reject(in.getTrackedLines(), ex);
+                    }
                 }
                 counter.statements++;
             }
+            if (parallel != null) {
+                parallel.await();
+            }
         } catch (LdifParseException e) {
             if (e.getErrorStatement() == null) {
                 e.setErrorStatement(in.getTrackedLines());
@@ -105,6 +124,10 @@ public class LdifScript {
             LdapProviderException ex = new LdapProviderException("Failed to execute LDIF entry", e);
             ex.setErrorStatement(in.getTrackedLines());
             throw ex;
+        } finally {
+            if (parallel != null) {
+                parallel.close();
+            }
         }
     }
 
@@ -116,11 +139,22 @@ public class LdifScript {
      * @throws NamingException if operation with directory failed.
      */
     static void modify(DirContext ctx, final Entry e) throws NamingException {
+        modify(ctx, new CompoundName(ctx.getNameInNamespace(), DN_SYNTAX), e);
+    }
+
+    /**
+     * Adds/modifies ctx using entry information.
+     *
+     * @param ctx    directory context to use for change.
+     * @param rootDn parsed DN of the directory context.
+     * @param e      entry with change description.
+     * @throws NamingException if operation with directory failed.
+     */
+    static void modify(DirContext ctx, final Name rootDn, final Entry e) throws NamingException {
         if (LOG.isLoggable(Level.FINE)) {
             LOG.fine("Processing " + e);
         }
         Attributes atts = e.getAttributes();
-        final String rootDn = ctx.getNameInNamespace();
         if (atts != null) { //If add entry
             ctx.createSubcontext(getRelativeDN(rootDn, e.getDn()), e.getAttributes());
         } else if (e.isChangeDelete()) {
@@ -152,10 +186,18 @@ public class LdifScript {
      * @return name relative to a root context DN.
      */
     static Name getRelativeDN(final String rootDn, final String dn) throws NamingException {
-        CompoundName root = new CompoundName(rootDn, DN_SYNTAX);
+        return getRelativeDN(new CompoundName(rootDn, DN_SYNTAX), dn);
+    }
+
+    /**
+     * @param root parsed root context DN.
+     * @param dn   DN to compute a relative name. DN must starts with root.
+     * @return name relative to a root context DN.
+     */
+    static Name getRelativeDN(final Name root, final String dn) throws NamingException {
         CompoundName entry = new CompoundName(dn, DN_SYNTAX);
         if (!entry.startsWith(root)) {
-            throw new NamingException("Dn " + dn + " is not from root DN " + rootDn);
+            throw new NamingException("Dn " + dn + " is not from root DN " + root);
         }
         return entry.getSuffix(root.size());
     }
@@ -171,6 +213,20 @@ public class LdifScript {
         return connection != null && connection.isReadonly();
     }
 
+    /**
+     * @return number of threads to apply entries.
+     */
+    protected int getThreads() {
+        return connection == null ? 1 : connection.getLdifThreads();
+    }
+
+    /**
+     * @return rejects collector or null if failures should stop the script.
+     */
+    LdifRejects getRejects() {
+        return connection == null ? null : connection.getRejects();
+    }
+
     private LdifIterator newLdifIterator(LineIterator in) {
         Long mx = getMaxFileLength();
         return mx == null ? new LdifIterator(in) : new LdifIterator(in, mx);
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.driver.ldap;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Search results requested page by page using paged results control (RFC 2696).
+ * <p>The next page is requested only when the current page has been iterated, so only one page
+ * of results is held in memory. The search runs in a separate instance of the directory context,
+ * so request controls do not affect other operations of the connection.
+ * <p>If the server does not support paging, all results are returned as a single page.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+final class PagedSearchResults implements NamingEnumeration<SearchResult> {
+    private static final Logger LOG = Logger.getLogger(PagedSearchResults.class.getName());
+    private final LdapContext ctx;
+    private final String baseDn;
+    private final String filter;
+    private final SearchControls searchControls;
+    private final int pageSize;
+    private NamingEnumeration<SearchResult> page;
+    private int pages;
+
+    /**
+     * Runs a search and requests the first page.
+     *
+     * @param ctx            LDAP context of the connection.
+     * @param baseDn         base DN for search.
+     * @param filter         search filter.
+     * @param searchControls search controls.
+     * @param pageSize       number of entries per page.
+     * @throws NamingException if search failed.
+     */
+    PagedSearchResults(LdapContext ctx, String baseDn, String filter, SearchControls searchControls, int pageSize)
+            throws NamingException {
+        this.ctx = ctx.newInstance(null);
+        this.baseDn = baseDn;
+        this.filter = filter;
+        this.searchControls = searchControls;
+        this.pageSize = pageSize;
+        try {
+            page = search(null);
+        } catch (NamingException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private NamingEnumeration<SearchResult> search(byte[] cookie) throws NamingException {
+        try {
+            ctx.setRequestControls(new Control[]{new PagedResultsControl(pageSize, cookie, Control.NONCRITICAL)});
+        } catch (IOException e) {
+            throw new LdapProviderException("Unable to create paged results control", e);
+        }
+        pages++;
+        if (LOG.isLoggable(Level.FINE)) {
+            LOG.fine("Requesting page #" + pages + " of search results for filter " + filter);
+        }
+        return ctx.search(baseDn, filter, searchControls);
+    }
+
+    /**
+     * @return cookie for the next page or null if this was the last page.
+     */
+    private byte[] getCookie() throws NamingException {
+        Control[] controls = ctx.getResponseControls();
+        if (controls != null) {
+            for (Control control : controls) {
+                if (control instanceof PagedResultsResponseControl) {
+                    byte[] cookie = ((PagedResultsResponseControl) control).getCookie();
+                    return cookie == null || cookie.length == 0 ? null : cookie;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return number of pages requested so far.
+     */
+    int getPages() {
+        return pages;
+    }
+
+    public boolean hasMore() throws NamingException {
+        while (page != null && !page.hasMore()) {
+            //Response controls are available after the page has been iterated
+            byte[] cookie = getCookie();
+            page.close();
+            page = cookie == null ? null : search(cookie);
+        }
+        return page != null;
+    }
+
+    public SearchResult next() throws NamingException {
+        if (!hasMore()) {
+            throw new NoSuchElementException("No more search results");
+        }
+        return page.next();
+    }
+
+    public boolean hasMoreElements() {
+        try {
+            return hasMore();
+        } catch (NamingException e) {
+            throw new LdapProviderException("Failed to fetch search results", e);
+        }
+    }
+
+    public SearchResult nextElement() {
+        try {
+            return next();
+        } catch (NamingException e) {
+            throw new LdapProviderException("Failed to fetch search results", e);
+        }
+    }
+
+    public void close() throws NamingException {
+        try {
+            if (page != null) {
+                page.close();
+                page = null;
+            }
+        } finally {
+            ctx.close();
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.driver.ldap;
+
+import scriptella.driver.ldap.ldif.Entry;
+
+import javax.naming.Name;
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Applies LDIF entries in parallel using a pool of directory contexts.
+ * <p>Entries are sharded by the parent DN, so changes of the same entry and its siblings are applied in
+ * the order of the LDIF file by the same thread. An entry is added only after its parent added earlier in
+ * the same LDIF has been applied. A child which precedes its parent in the file is not delayed, so it fails
+ * if the parent does not exist yet. Deletes, renames and changes of the root entry may affect whole subtrees,
+ * so they are applied by the calling thread after all previously submitted entries have been applied.
+ * <p>If a reject collector is specified, failed entries are written to it and loading continues,
+ * otherwise the first failure stops loading.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+final class ParallelLdifExecutor implements Closeable {
+    private static final Logger LOG = Logger.getLogger(ParallelLdifExecutor.class.getName());
+    private static final int QUEUE_SIZE = 1024;
+    private final Name root;
+    private final LdifRejects rejects;
+    private final Shard[] shards;
+    //Latches of submitted entries to add, removed when applied
+    private final ConcurrentHashMap<Name, CountDownLatch> pendingAdds = new ConcurrentHashMap<Name, CountDownLatch>();
+    private final Object lock = new Object();
+    private long outstanding; //guarded by lock
+    private volatile LdapProviderException failure;
+
+    /**
+     * Creates an executor and starts a thread per context.
+     *
+     * @param contexts contexts to use for applying entries, each context is used by a single thread.
+     * @param root     DN of the contexts.
+     * @param rejects  rejects collector or null to stop on the first failure.
+     */
+    ParallelLdifExecutor(List<DirContext> contexts, Name root, LdifRejects rejects) {
+        this.root = root;
+        this.rejects = rejects;
+        shards = new Shard[contexts.size()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(contexts.get(i), i);
+            shards[i].start();
+        }
+    }
+
+    /**
+     * Submits an entry.
+     *
+     * @param ctx   context to use for entries applied by the calling thread.
+     * @param e     entry.
+     * @param entry LDIF text of the entry for error reporting.
+     * @throws NamingException        if the entry DN is invalid or the entry cannot be applied by the calling thread.
+     * @throws LdapProviderException if a previously submitted entry failed.
+     */
+    void submit(DirContext ctx, Entry e, String entry) throws NamingException {
+        checkFailure();
+        Name dn;
+        try {
+            dn = LdifScript.getRelativeDN(root, e.getDn());
+        } catch (NamingException ex) {
+            reject(entry, ex);
+            return;
+        }
+        if (dn.isEmpty() || e.isChangeDelete() || e.isChangeModDn() || e.isChangeModRdn()) {
+            await();
+            try {
+                LdifScript.modify(ctx, root, e);
+            } catch (NamingException ex) {
+                reject(entry, ex);
+            }
+            return;
+        }
+        Name parent = dn.getPrefix(dn.size() - 1);
+        CountDownLatch done = null;
+        CountDownLatch parentDone = null;
+        if (e.isChangeAdd()) {
+            //Only adds submitted before this entry are awaited, otherwise shards may wait for each other
+            parentDone = pendingAdds.get(parent);
+            done = new CountDownLatch(1);
+            pendingAdds.put(dn, done);
+        }
+        synchronized (lock) {
+            outstanding++;
+        }
+        try {
+            shards[(parent.hashCode() & Integer.MAX_VALUE) % shards.length].queue.put(new Task(e, entry, dn, done, parentDone));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new LdapProviderException("LDIF loading was interrupted", ex);
+        }
+    }
+
+    /**
+     * Waits until all submitted entries have been applied.
+     *
+     * @throws LdapProviderException if an entry failed.
+     */
+    void await() {
+        synchronized (lock) {
+            while (outstanding > 0) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new LdapProviderException("LDIF loading was interrupted", e);
+                }
+            }
+        }
+        checkFailure();
+    }
+
+    private void reject(String entry, NamingException e) throws NamingException {
+        if (rejects == null) {
+            throw e;
+        }
+        rejects.reject(entry, e);
+    }
+
+    private void checkFailure() {
+        LdapProviderException f = failure;
+        if (f != null) {
+            throw f;
+        }
+    }
+
+    /**
+     * Stops the threads. Entries which have not been applied yet are discarded.
+     */
+    public void close() {
+        for (Shard shard : shards) {
+            shard.interrupt();
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    private void apply(DirContext ctx, Task t) throws InterruptedException {
+        if (failure != null) { //Skip remaining entries
+            return;
+        }
+        if (t.parentDone != null) {
+            t.parentDone.await();
+        }
+        try {
+            LdifScript.modify(ctx, root, t.e);
+        } catch (NamingException e) {
+            fail(t, e);
+        } catch (RuntimeException e) {
+            fail(t, e);
+        }
+    }
+
+    private void fail(Task t, Exception e) {
+        if (rejects != null) {
+            try {
+                rejects.reject(t.entry, e);
+                return;
+            } catch (LdapProviderException ex) {
+                e = ex;
+            }
+        }
+        synchronized (lock) {
+            if (failure == null) {
+                LdapProviderException ex = e instanceof LdapProviderException ? (LdapProviderException) e :
+                        new LdapProviderException("Failed to execute LDIF entry", e);
+                ex.setErrorStatement(t.entry);
+                failure = ex;
+            }
+        }
+    }
+
+    private static final class Task {
+        final Entry e;
+        final String entry;
+        final Name dn;
+        final CountDownLatch done;
+        final CountDownLatch parentDone; //latch of the parent add submitted before this entry or null
+
+        Task(Entry e, String entry, Name dn, CountDownLatch done, CountDownLatch parentDone) {
+            this.e = e;
+            this.entry = entry;
+            this.dn = dn;
+            this.done = done;
+            this.parentDone = parentDone;
+        }
+    }
+
+    private final class Shard extends Thread {
+        private final BlockingQueue<Task> queue = new ArrayBlockingQueue<Task>(QUEUE_SIZE);
+        private final DirContext ctx;
+
+        Shard(DirContext ctx, int n) {
+            super("LDIF loader #" + n);
+            setDaemon(true);
+            this.ctx = ctx;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (;;) {
+                    Task t = queue.take();
+                    try {
+                        apply(ctx, t);
+                    } finally {
+                        if (t.done != null) {
+                            pendingAdds.remove(t.dn, t.done);
+                            t.done.countDown();
+                        }
+                        synchronized (lock) {
+                            outstanding--;
+                            lock.notifyAll();
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                LOG.log(Level.FINE, getName() + " has been stopped");
+            }
+        }
+    }
+}
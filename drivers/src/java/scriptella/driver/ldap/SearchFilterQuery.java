@@ -25,6 +25,7 @@ import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.DirContext;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapContext;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,6 +36,7 @@ import java.util.logging.Logger;
  * <p>The {@link javax.naming.directory.SearchResult#getAttributes()} produces
  * columns for a virtual row. The virtual row also contains <code>dn</code> and <code>rdn</code>
  * columns representing a found entry DN and a relative DN respectively.
+ * <p>If {@link LdapConnection#SEARCH_PAGESIZE_KEY page size} is specified, results are fetched page by page.
  *
  * @author Fyodor Kupolov
  * @version 1.0
@@ -126,7 +128,14 @@ public class SearchFilterQuery implements ParametersCallback {
     }
 
     protected NamingEnumeration<SearchResult> query(final LdapConnection connection, final String filter) throws NamingException {
-        NamingEnumeration<SearchResult> en = connection.getCtx().search(connection.getBaseDn(), filter, connection.getSearchControls());
+        DirContext ctx = connection.getCtx();
+        NamingEnumeration<SearchResult> en;
+        if (connection.getPageSize() > 0 && ctx instanceof LdapContext) {
+            en = new PagedSearchResults((LdapContext) ctx, connection.getBaseDn(), filter,
+                    connection.getSearchControls(), connection.getPageSize());
+        } else {
+            en = ctx.search(connection.getBaseDn(), filter, connection.getSearchControls());
+        }
         connection.getStatementCounter().statements++;
         return en;
     }
@@ -136,6 +136,27 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
      */
     private final List<String> lines=new ArrayList<String>();
 
+    /**
+     * Values of base64 encoded lines decoded while reading, null for other lines.
+     * Only the attribute description part is stored in {@link #lines} for decoded lines.
+     */
+    private final List<byte[]> values=new ArrayList<byte[]>();
+
+    /**
+     * Index of the next line to parse
+     */
+    private int cursor;
+
+    /**
+     * Buffer for unfolding continuation lines, reused for all lines
+     */
+    private final StringBuilder buffer=new StringBuilder(128);
+
+    /**
+     * Decoder of base64 values, the output buffer is reused for all values
+     */
+    private final Utils.Base64Decoder decoder=new Utils.Base64Decoder(1024);
+
     /**
      * The ldif file version default value
      */
@@ -160,6 +181,11 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
      */
     private final long sizeLimit;
 
+    /**
+     * Size limit for base64 encoded values, unlimited unless the size limit is specified explicitly
+     */
+    private final long base64SizeLimit;
+
     /**
      * The default size limit : 1Mo
      */
@@ -202,18 +228,24 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
      * @throws LdifParseException If the file cannot be processed or if the format is incorrect
      */
     public LdifReader(LineIterator in) {
-        this(in, SIZE_LIMIT_DEFAULT);
+        this(in, SIZE_LIMIT_DEFAULT, Long.MAX_VALUE);
     }
 
     /**
      * * A constructor which takes a line iterator and a size limit.
      *
      * @param in A Reader containing ldif formated input
-     * @param sizeLimit maximum file size that can be accepted for an attribute value
+     * @param sizeLimit maximum file size that can be accepted for an attribute value.
+     *                  Also limits the size of base64 encoded values.
      */
     public LdifReader(LineIterator in, long sizeLimit) {
+        this(in, sizeLimit, sizeLimit);
+    }
+
+    private LdifReader(LineIterator in, long sizeLimit, long base64SizeLimit) {
         this.in = in;
         this.sizeLimit = sizeLimit;
+        this.base64SizeLimit = base64SizeLimit;
         // First get the version - if any -
         version = parseVersion();
         prefetched = parseEntry();
@@ -272,12 +304,10 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
      * @param line The line to parse
      * @return A DN
      */
-    private String parseDn(String line) {
+    private String parseDn(String line, byte[] decoded) {
         String dn = null;
 
-        String lowerLine = line.toLowerCase();
-
-        if (lowerLine.startsWith("dn:") || lowerLine.startsWith("DN:")) {
+        if (startsWithIgnoreCase(line, "dn:")) {
             // Ok, we have a DN. Is it base 64 encoded ?
             int length = line.length();
 
@@ -285,12 +315,10 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
                 // The DN is empty : error
                 throw new LdifParseException("No DN for entry", line);
             } else if (line.charAt(3) == ':') {
-                if (length > 4) {
+                if (length > 4 || decoded != null) {
                     // This is a base 64 encoded DN.
-                    String trimmedLine = line.substring(4).trim();
-
                     try {
-                        dn = new String(Utils.base64Decode(trimmedLine.toCharArray()), "UTF-8");
+                        dn = new String(decoded != null ? decoded : Utils.base64Decode(line, 4, length), "UTF-8");
                     }
                     catch (UnsupportedEncodingException uee) {
                         // The DN is not base 64 encoded
@@ -313,34 +341,79 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
     /**
      * Parse the value part.
      *
-     * @param line The line which contains the value
-     * @param pos  The starting position in the line
+     * @param line    The line which contains the value
+     * @param pos     The starting position in the line
+     * @param decoded The value decoded while reading the line or null
      * @return A String or a byte[], depending of the kind of value we get
      * @throws LdifParseException If something went wrong
      */
-    private Object parseValue(String line, int pos) {
+    private Object parseValue(String line, int pos, byte[] decoded) {
+        if (decoded != null) {
+            return decoded;
+        }
         if (line.length() > pos + 1) {
             char c = line.charAt(pos + 1);
 
             if (c == ':') {
-                String value = line.substring(pos + 2).trim();
-
-                return Utils.base64Decode(value.toCharArray());
+                return Utils.base64Decode(line, pos + 2, line.length());
             } else if (c == '<') {
-                String urlName = line.substring(pos + 2).trim();
+                String urlName = trim(line, pos + 2);
                 try {
                     return Utils.toByteArray(getUriStream(urlName), sizeLimit);
                 } catch (IOException e) {
                     throw new LdifParseException("Failed to read \""+urlName+"\" file content",line,e);
                 }
             } else {
-                return line.substring(pos + 1).trim();
+                return trim(line, pos + 1);
             }
         } else {
             return null;
         }
     }
 
+    /**
+     * Returns a trimmed substring without creating an intermediate untrimmed string.
+     *
+     * @param s     string.
+     * @param start start index of the substring.
+     * @return trimmed substring.
+     */
+    private static String trim(String s, int start) {
+        int end = s.length();
+        while (start < end && s.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && s.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return s.substring(start, end);
+    }
+
+    private static boolean startsWithIgnoreCase(String s, String prefix) {
+        return s.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+
+    /**
+     * @return true if the current entry has more lines to parse.
+     */
+    private boolean hasNextLine() {
+        return cursor < lines.size();
+    }
+
+    /**
+     * @return the next line of the current entry.
+     */
+    private String nextLine() {
+        return lines.get(cursor++);
+    }
+
+    /**
+     * @return the value decoded while reading the last line returned by {@link #nextLine()} or null.
+     */
+    private byte[] currentValue() {
+        return values.get(cursor - 1);
+    }
+
     /**
      * Resolves URI to URL and returns a content stream.
      * This method just creates a new URL, subclasses may chnange this behaviour.
@@ -454,6 +527,10 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
      * @param line      The line to parse
      */
     public void parseAttributeValue(Entry entry, String line) {
+        parseAttributeValue(entry, line, null);
+    }
+
+    private void parseAttributeValue(Entry entry, String line, byte[] decoded) {
         int colonIndex = line.indexOf(':');
 
         String attributeType = line.substring(0, colonIndex);
@@ -463,7 +540,7 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
             throw new LdifParseException("A ldif entry should not have two DN", line);
         }
 
-        Object attributeValue = parseValue(line, colonIndex);
+        Object attributeValue = parseValue(line, colonIndex, decoded);
 
         // Update the entry
         entry.addAttribute(attributeType, attributeValue);
@@ -473,18 +550,16 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
      * Parse a ModRDN operation
      *
      * @param entry The entry to update
-     * @param iter  The lines iterator
      */
-    private void parseModRdn(Entry entry, Iterator iter) {
+    private void parseModRdn(Entry entry) {
         // We must have two lines : one starting with "newrdn:" or "newrdn::",
         // and the second starting with "deleteoldrdn:"
-        if (iter.hasNext()) {
-            String line = (String) iter.next();
-            String lowerLine = line.toLowerCase();
+        if (hasNextLine()) {
+            String line = nextLine();
 
-            if (lowerLine.startsWith("newrdn::") || lowerLine.startsWith("newrdn:")) {
+            if (startsWithIgnoreCase(line, "newrdn:")) {
                 int colonIndex = line.indexOf(':');
-                Object attributeValue = parseValue(line, colonIndex);
+                Object attributeValue = parseValue(line, colonIndex, currentValue());
                 entry.setNewRdn(attributeValue instanceof String ? (String) attributeValue : Utils
                         .utf8ToString((byte[]) attributeValue));
             } else {
@@ -495,13 +570,12 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
             throw new LdifParseException("Bad modrdn operation, no newrdn");
         }
 
-        if (iter.hasNext()) {
-            String line = (String) iter.next();
-            String lowerLine = line.toLowerCase();
+        if (hasNextLine()) {
+            String line = nextLine();
 
-            if (lowerLine.startsWith("deleteoldrdn:")) {
+            if (startsWithIgnoreCase(line, "deleteoldrdn:")) {
                 int colonIndex = line.indexOf(':');
-                Object attributeValue = parseValue(line, colonIndex);
+                Object attributeValue = parseValue(line, colonIndex, currentValue());
                 entry.setDeleteOldRdn("1".equals(attributeValue));
             } else {
                 throw new LdifParseException("Bad modrdn operation, no deleteoldrdn", line);
@@ -524,9 +598,8 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
      * ATTRVAL-SPEC <attrval-specs> | e *
      *
      * @param entry The entry to feed
-     * @param iter  The lines
      */
-    private void parseModify(Entry entry, Iterator iter) {
+    private void parseModify(Entry entry) {
         int state = MOD_SPEC;
         String modified = null;
         int modification = 0;
@@ -534,11 +607,10 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
         // The following flag is used to deal with empty modifications
         boolean isEmptyValue = true;
 
-        while (iter.hasNext()) {
-            String line = (String) iter.next();
-            String lowerLine = line.toLowerCase();
+        while (hasNextLine()) {
+            String line = nextLine();
 
-            if (lowerLine.startsWith("-")) {
+            if (line.startsWith("-")) {
                 if (state != ATTRVAL_SPEC_OR_SEP) {
                     throw new LdifParseException("Bad modify separator", line);
                 } else {
@@ -551,7 +623,7 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
                     isEmptyValue = true;
                     continue;
                 }
-            } else if (lowerLine.startsWith("add:")) {
+            } else if (startsWithIgnoreCase(line, "add:")) {
                 if ((state != MOD_SPEC) && (state != ATTRVAL_SPEC)) {
                     throw new LdifParseException("Bad modify state", line);
                 }
@@ -560,7 +632,7 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
                 modification = DirContext.ADD_ATTRIBUTE;
 
                 state = ATTRVAL_SPEC;
-            } else if (lowerLine.startsWith("delete:")) {
+            } else if (startsWithIgnoreCase(line, "delete:")) {
                 if ((state != MOD_SPEC) && (state != ATTRVAL_SPEC)) {
                     throw new LdifParseException("Bad modify state", line);
                 }
@@ -569,7 +641,7 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
                 modification = DirContext.REMOVE_ATTRIBUTE;
 
                 state = ATTRVAL_SPEC_OR_SEP;
-            } else if (lowerLine.startsWith("replace:")) {
+            } else if (startsWithIgnoreCase(line, "replace:")) {
                 if ((state != MOD_SPEC) && (state != ATTRVAL_SPEC)) {
                     throw new LdifParseException("Bad modify state", line);
                 }
@@ -597,7 +669,7 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
                     throw new LdifParseException("A ldif entry should not have two DN", line);
                 }
 
-                Object attributeValue = parseValue(line, colonIndex);
+                Object attributeValue = parseValue(line, colonIndex, currentValue());
 
                 // Update the entry
                 entry.addModificationItem(modification, attributeType, attributeValue);
@@ -630,11 +702,10 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
      * <attrval-specs-e> ::= ATTRVAL-SPEC <attrval-specs> | e
      *
      * @param entry     The entry to feed
-     * @param iter      The lines iterator
      * @param operation The change operation (add, modify, delete, moddn or modrdn)
      * @param control   The associated control, if any
      */
-    private void parseChange(Entry entry, Iterator iter, int operation, Control control) {
+    private void parseChange(Entry entry, int operation, Control control) {
         // The changetype and operation has already been parsed.
         entry.setChangeType(operation);
 
@@ -646,30 +717,29 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
 
             case Entry.ADD:
                 // We will iterate through all attribute/value pairs
-                while (iter.hasNext()) {
-                    String line = (String) iter.next();
-                    parseAttributeValue(entry, line);
+                while (hasNextLine()) {
+                    String line = nextLine();
+                    parseAttributeValue(entry, line, currentValue());
                 }
 
                 return;
 
             case Entry.MODIFY:
-                parseModify(entry, iter);
+                parseModify(entry);
                 return;
 
             case Entry.MODRDN:// They are supposed to have the same syntax ???
             case Entry.MODDN:
                 // First, parse the modrdn part
-                parseModRdn(entry, iter);
+                parseModRdn(entry);
 
                 // The next line should be the new superior
-                if (iter.hasNext()) {
-                    String line = (String) iter.next();
-                    String lowerLine = line.toLowerCase();
+                if (hasNextLine()) {
+                    String line = nextLine();
 
-                    if (lowerLine.startsWith("newsuperior:")) {
+                    if (startsWithIgnoreCase(line, "newsuperior:")) {
                         int colonIndex = line.indexOf(':');
-                        Object attributeValue = parseValue(line, colonIndex);
+                        Object attributeValue = parseValue(line, colonIndex, currentValue());
                         entry.setNewSuperior(attributeValue instanceof String ? (String) attributeValue : Utils
                                 .utf8ToString((byte[]) attributeValue));
                     } else {
@@ -702,24 +772,20 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
      * <changerecord> ::= "changetype:" <fill> <change-op>
      */
     private Entry parseEntry() {
-        if ((lines == null) || (lines.size() == 0)) {
+        if (!hasNextLine()) {
             return null;
         }
 
         // The entry must start with a dn: or a dn::
-        String line = lines.get(0);
+        String line = nextLine();
 
-        String dn = parseDn(line);
+        String dn = parseDn(line, currentValue());
 
         // Ok, we have found a DN
         Entry entry = new Entry();
         entry.setDn(dn);
 
-        // We remove this dn from the lines
-        lines.remove(0);
-
         // Now, let's iterate through the other lines
-        Iterator iter = lines.iterator();
 
         // This flag is used to distinguish between an entry and a change
         int type = UNKNOWN;
@@ -733,20 +799,18 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
         boolean changeTypeSeen = false;
 
         int operation = Entry.ADD;
-        String lowerLine = null;
         Control control = null;
 
-        while (iter.hasNext()) {
+        while (hasNextLine()) {
             // Each line could start either with an OID, an attribute type, with
             // "control:" or with "changetype:"
-            line = (String) iter.next();
-            lowerLine = line.toLowerCase();
+            line = nextLine();
 
             // We have three cases :
             // 1) The first line after the DN is a "control:"
             // 2) The first line after the DN is a "changeType:"
             // 3) The first line after the DN is anything else
-            if (lowerLine.startsWith("control:")) {
+            if (startsWithIgnoreCase(line, "control:")) {
                 if (containsEntries) {
                     throw new LdifParseException("No changes withing entries", line);
                 }
@@ -761,7 +825,7 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
                 control = parseControl(line.substring("control:".length()));
                 entry.setControl(control);
 
-            } else if (lowerLine.startsWith("changetype:")) {
+            } else if (startsWithIgnoreCase(line, "changetype:")) {
                 if (containsEntries) {
                     throw new LdifParseException("No changes withing entries", line);
                 }
@@ -779,7 +843,7 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
                 operation = parseChangeType(line);
 
                 // Parse the change operation in a separate function
-                parseChange(entry, iter, operation, control);
+                parseChange(entry, operation, control);
                 changeTypeSeen = true;
             } else if (line.indexOf(':') > 0) {
                 if (containsChanges) {
@@ -792,7 +856,7 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
                     throw new LdifParseException("AttributeType misplaced", line);
                 }
 
-                parseAttributeValue(entry, line);
+                parseAttributeValue(entry, line, currentValue());
                 type = ENTRY;
             } else {
                 // Invalid attribute Value
@@ -830,7 +894,7 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
         // First, read a list of lines
         readLines();
 
-        if (lines.size() == 0) {
+        if (!hasNextLine()) {
             return DEFAULT_VERSION;
         }
 
@@ -843,18 +907,18 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
 
         if (versionMatcher.matches()) {
             versionStr=versionMatcher.group(1);
-            // We have found the version, just discard the line from the list
-            lines.remove(0);
+            // We have found the version, just skip the line
+            cursor++;
         } else {
             versionMatcher = VERSION_PATTERN_LINE1.matcher(line);
             if (versionMatcher.matches()) {
-                lines.remove(0);
-                if (!lines.isEmpty()) {
-                    versionMatcher = VERSION_PATTERN_LINE2.matcher(lines.get(1));
+                cursor++;
+                if (hasNextLine()) {
+                    versionMatcher = VERSION_PATTERN_LINE2.matcher(lines.get(cursor + 1));
                     if (versionMatcher.matches()) {
                         versionStr=versionMatcher.group(1);
                     }
-                    lines.remove(0);
+                    cursor++;
                 }
 
             }
@@ -877,7 +941,10 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
      * comments, and unfolded.
      * <p/>
      * The lines represent *one* entry.
-     *
+     * <p/>
+     * Lines without continuations are stored as is, continuation lines are unfolded into a reusable buffer.
+     * Base64 encoded values are decoded line by line while reading, so folded values are never materialized
+     * as strings, and the size limit is checked as the value grows.
      */
     private void readLines() {
         String line;
@@ -885,7 +952,14 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
         boolean isFirstLine = true;
 
         lines.clear();
-        StringBuilder sb = new StringBuilder(128);
+        values.clear();
+        cursor = 0;
+        // The first physical line of the current logical line
+        String first = null;
+        // true if the current logical line is unfolded into the buffer
+        boolean folded = false;
+        // true if the current logical line has a base64 value decoded by the decoder
+        boolean decoding = false;
 
         while (in.hasNext()) { //while not EOF
             line = in.next();
@@ -914,10 +988,18 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
                 case ' ':
                     if (insideComment) {
                         continue;
-                    } else if (sb.length() == 0) {
+                    } else if (first == null) {
                         throw new LdifParseException("Ldif Parsing error: Cannot have an empty continuation line");
+                    } else if (decoding) {
+                        decoder.decode(line, 1, line.length());
+                        checkSize(first);
                     } else {
-                        sb.append(line.substring(1));
+                        if (!folded) {
+                            buffer.setLength(0);
+                            buffer.append(first);
+                            folded = true;
+                        }
+                        buffer.append(line, 1, line.length());
                     }
 
                     insideComment = false;
@@ -926,21 +1008,57 @@ public class LdifReader implements Iterator<Entry>, Iterable<Entry> {
                 default:
                     // We have found a new entry
                     // First, stores the previous one if any.
-                    if (sb.length() != 0) {
-                        lines.add(sb.toString());
+                    addLine(first, folded, decoding);
+
+                    first = line;
+                    folded = false;
+                    int colonIndex = line.indexOf(':');
+                    // Base64 value spec "attr:: value"
+                    decoding = colonIndex > 0 && line.length() > colonIndex + 2 && line.charAt(colonIndex + 1) == ':';
+                    if (decoding) {
+                        first = line.substring(0, colonIndex + 2);
+                        decoder.reset();
+                        decoder.decode(line, colonIndex + 2, line.length());
+                        checkSize(first);
                     }
-
-                    sb = new StringBuilder(line);
                     insideComment = false;
                     break;
             }
         }
 
         // Stores the current line if necessary.
-        if (sb.length() != 0) {
-            lines.add(sb.toString());
+        addLine(first, folded, decoding);
+    }
+
+    /**
+     * Stores a logical line read by {@link #readLines()}.
+     *
+     * @param first    the first physical line or null if there is no line to store.
+     * @param folded   true if the line has been unfolded into the buffer.
+     * @param decoding true if the line has a base64 value decoded by the decoder.
+     */
+    private void addLine(String first, boolean folded, boolean decoding) {
+        if (first == null) {
+            return;
         }
+        if (decoding) {
+            lines.add(first);
+            values.add(decoder.toByteArray());
+        } else {
+            lines.add(folded ? buffer.toString() : first);
+            values.add(null);
+        }
+    }
 
+    /**
+     * Checks if the size of a decoded base64 value does not exceed the size limit.
+     *
+     * @param line the attribute description part of the line.
+     */
+    private void checkSize(String line) {
+        if (decoder.size() > base64SizeLimit) {
+            throw new LdifParseException("Base64 encoded value is too long, maximum size is " + base64SizeLimit + " bytes", line);
+        }
     }
 
 
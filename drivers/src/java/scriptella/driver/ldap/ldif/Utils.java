@@ -21,6 +21,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 
+import java.util.Arrays;
+
 /**
  * Utility methods from the following apache classes:
  * <ul>
@@ -147,77 +149,127 @@ class Utils {
      */
     public static byte[] base64Decode( char[] a_data )
     {
-        // as our input could contain non-BASE64 data (newlines,
-        // whitespace of any sort, whatever) we must first adjust
-        // our count of USABLE data so that...
-        // (a) we don't misallocate the output array, and
-        // (b) think that we miscalculated our data length
-        // just because of extraneous throw-away junk
-
-        int l_tempLen = a_data.length;
-        for (char anA_data1 : a_data) {
-            if ((anA_data1 > 255) || s_codes[anA_data1] < 0) {
-                --l_tempLen; // ignore non-valid chars and padding
-            }
-        }
-        // calculate required length:
-        // -- 3 bytes for every 4 valid base64 chars
-        // -- plus 2 bytes if there are 3 extra base64 chars,
-        // or plus 1 byte if there are 2 extra.
+        Base64Decoder decoder = new Base64Decoder( a_data.length / 4 * 3 + 3 );
+        decoder.decode( a_data, 0, a_data.length );
+        return decoder.toByteArray();
+    }
 
-        int l_len = ( l_tempLen / 4 ) * 3;
+    /**
+     * Decodes a region of BASE-64 encoded characters. Non-BASE64 characters
+     * and padding are skipped.
+     *
+     * @param s     characters to decode.
+     * @param start start index, inclusive.
+     * @param end   end index, exclusive.
+     * @return the decoded binary data.
+     */
+    public static byte[] base64Decode( String s, int start, int end )
+    {
+        Base64Decoder decoder = new Base64Decoder( ( end - start ) / 4 * 3 + 3 );
+        decoder.decode( s, start, end );
+        return decoder.toByteArray();
+    }
 
-        if ( ( l_tempLen % 4 ) == 3 )
+    /**
+     * Incremental BASE-64 decoder.
+     * <p>Encoded data may be passed in several chunks, e.g. LDIF continuation lines,
+     * so the whole encoded value is never materialized. The output buffer is reused after {@link #reset()}.
+     */
+    static final class Base64Decoder
+    {
+        private byte[] buffer;
+        private char[] chars = new char[128];
+        private int size;
+        private int accum; // excess bits
+        private int shift; // # of excess bits stored in accum
+
+        Base64Decoder( int capacity )
         {
-            l_len += 2;
+            buffer = new byte[Math.max( capacity, 16 )];
         }
 
-        if ( ( l_tempLen % 4 ) == 2 )
+        /**
+         * Clears decoded data and the decoder state.
+         */
+        void reset()
         {
-            l_len += 1;
+            size = 0;
+            accum = 0;
+            shift = 0;
         }
 
-        byte[] l_out = new byte[l_len];
-
-        int l_shift = 0; // # of excess bits stored in accum
-        int l_accum = 0; // excess bits
-        int l_index = 0;
-
-        // we now go through the entire array (NOT using the 'tempLen' value)
-        for (char anA_data : a_data) {
-            int l_value = (anA_data > 255) ? -1 : s_codes[anA_data];
+        /**
+         * Decodes a chunk of characters and appends the result to the decoded data.
+         *
+         * @param s     characters to decode.
+         * @param start start index, inclusive.
+         * @param end   end index, exclusive.
+         */
+        void decode( String s, int start, int end )
+        {
+            int length = end - start;
+            if ( chars.length < length )
+            {
+                chars = new char[Math.max( length, chars.length * 2 )];
+            }
+            s.getChars( start, end, chars, 0 );
+            decode( chars, 0, length );
+        }
 
-            if (l_value >= 0) // skip over non-code
+        /**
+         * Decodes a chunk of characters and appends the result to the decoded data.
+         *
+         * @param a     characters to decode.
+         * @param start start index, inclusive.
+         * @param end   end index, exclusive.
+         */
+        void decode( char[] a, int start, int end )
+        {
+            // 3 bytes for every 4 chars, so the buffer is checked once per chunk
+            int required = size + ( end - start ) / 4 * 3 + 3;
+            if ( required > buffer.length )
+            {
+                buffer = Arrays.copyOf( buffer, Math.max( required, buffer.length * 2 ) );
+            }
+            byte[] out = buffer;
+            int n = size;
+            int bits = accum;
+            int excess = shift;
+            for ( int i = start; i < end; i++ )
             {
-                l_accum <<= 6; // bits shift up by 6 each time thru
-                l_shift += 6; // loop, with new bits being put in
-                l_accum |= l_value; // at the bottom. whenever there
-                if (l_shift >= 8) // are 8 or more shifted in, write them
+                char c = a[i];
+                int value = c > 255 ? -1 : s_codes[c];
+                if ( value >= 0 ) // skip over non-code and padding
                 {
-                    l_shift -= 8; // out (from the top, leaving any excess
-                    l_out[l_index++] = // at the bottom for next iteration.
-                            (byte) ((l_accum >> l_shift) & 0xff);
+                    bits = ( ( bits << 6 ) | value ) & 0xFFFF;
+                    excess += 6;
+                    if ( excess >= 8 ) // whenever there are 8 or more bits shifted in, write them
+                    {
+                        excess -= 8;
+                        out[n++] = ( byte ) ( bits >> excess );
+                    }
                 }
             }
-            // we will also have skipped processing a padding null byte ('=')
-            // here;
-            // these are used ONLY for padding to an even length and do not
-            // legally
-            // occur as encoded data. for this reason we can ignore the fact
-            // that
-            // no index++ operation occurs in that special case: the out[] array
-            // is
-            // initialized to all-zero bytes to start with and that works to our
-            // advantage in this combination.
+            size = n;
+            accum = bits;
+            shift = excess;
         }
 
-        // if there is STILL something wrong we just have to throw up now!
-        if ( l_index != l_out.length )
+        /**
+         * @return number of decoded bytes.
+         */
+        int size()
         {
-            throw new Error( "Miscalculated data length (wrote " + l_index + " instead of " + l_out.length + ")" );
+            return size;
         }
 
-        return l_out;
+        /**
+         * @return decoded data.
+         */
+        byte[] toByteArray()
+        {
+            return Arrays.copyOf( buffer, size );
+        }
     }
 
     /** lookup table for converting base64 characters to value in range 0..63 */
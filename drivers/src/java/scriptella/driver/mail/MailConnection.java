@@ -26,10 +26,12 @@ import scriptella.spi.Resource;
 import scriptella.util.CollectionUtils;
 import scriptella.util.StringUtils;
 
+import javax.mail.Address;
 import javax.mail.BodyPart;
 import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.Multipart;
+import javax.mail.SendFailedException;
 import javax.mail.Session;
 import javax.mail.Transport;
 import javax.mail.internet.AddressException;
@@ -39,6 +41,8 @@ import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimeMultipart;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -48,11 +52,13 @@ import java.util.regex.Pattern;
 /**
  * Represents a JavaMail connection.
  * <p>For configuration details and examples see <a href="package-summary.html">overview page</a>.
+ * <p>SMTP connections are kept open between messages and reused
+ * up to {@link #TRANSPORT_MESSAGES} times. If sending over a reused connection fails,
+ * e.g. because the server closed the idle connection, the message is sent once again over a new connection.
  * <p/>
  * <p>TODO:
  * <ul>
  * <li>Support for attachments
- * <li>Increase batch send performance by reusing tranport connection
  * </ul>
  *
  * @author Fyodor Kupolov
@@ -73,6 +79,32 @@ public class MailConnection extends AbstractConnection {
      */
     public static final String SUBJECT = "subject";
 
+    /**
+     * Name of the <code>transport.messages</code> connection property.
+     * Specifies maximum number of messages sent over a single SMTP connection,
+     * 0 means no limit. The default value is 100.
+     */
+    public static final String TRANSPORT_MESSAGES = "transport.messages";
+
+    /**
+     * Name of the <code>send.threads</code> connection property.
+     * Specifies number of threads sending messages. The default value is 1,
+     * i.e. messages are sent by the ETL thread.
+     */
+    public static final String SEND_THREADS = "send.threads";
+
+    /**
+     * Name of the <code>send.queue</code> connection property.
+     * Specifies maximum number of messages waiting to be sent by sending threads. The default value is 100.
+     */
+    public static final String SEND_QUEUE = "send.queue";
+
+    /**
+     * Name of the <code>send.rate</code> connection property.
+     * Specifies maximum number of messages sent per second. The default value is 0, i.e. no limit.
+     */
+    public static final String SEND_RATE = "send.rate";
+
     public static final String TYPE_TEXT = "text";
     public static final String TYPE_HTML = "html";
 
@@ -81,6 +113,11 @@ public class MailConnection extends AbstractConnection {
     private Session session;
     private String type;
     private String subject;
+    private int messagesPerConnection;
+    //Idle SMTP connections, connections are not shared by threads
+    private final Deque<PooledTransport> idleTransports = new ArrayDeque<PooledTransport>();
+    private RateLimiter rateLimiter;
+    private MailSender sender;
 
 
     /**
@@ -122,7 +159,29 @@ public class MailConnection extends AbstractConnection {
             LOG.fine("EMail subject is not set for connection!");
         }
 
+        messagesPerConnection = getIntProperty(properties, TRANSPORT_MESSAGES, 100, 0);
+        int threads = getIntProperty(properties, SEND_THREADS, 1, 1);
+        int queueSize = getIntProperty(properties, SEND_QUEUE, 100, 1);
+        String rate = properties.getProperty(SEND_RATE);
+        if (rate != null) {
+            double r;
+            try {
+                r = Double.parseDouble(rate.trim());
+            } catch (NumberFormatException e) {
+                throw new ConfigurationException(SEND_RATE + " must be a number, but was " + rate, e);
+            }
+            if (r < 0) {
+                throw new ConfigurationException(SEND_RATE + " must not be negative, but was " + rate);
+            }
+            if (r > 0) {
+                rateLimiter = new RateLimiter(r);
+            }
+        }
+
         session = Session.getInstance(properties);
+        if (threads > 1) {
+            sender = new MailSender(this, threads, queueSize);
+        }
 
         if (LOG.isLoggable(Level.FINE)) {
             LOG.fine("Mail session initialized");
@@ -154,14 +213,38 @@ public class MailConnection extends AbstractConnection {
             if (LOG.isLoggable(Level.FINE)) {
                 LOG.fine("Sending a message to " + addresslist);
             }
-            try {
-                send(mimeMessage);
-            } catch (MessagingException e) {
-                throw new MailProviderException("Failed to send message", e);
+            if (rateLimiter != null) {
+                rateLimiter.acquire();
+            }
+            if (sender != null) {
+                sender.submit(mimeMessage);
+            } else {
+                try {
+                    send(mimeMessage);
+                } catch (MessagingException e) {
+                    throw new MailProviderException("Failed to send message", e);
+                }
             }
         }
     }
 
+    private static int getIntProperty(Properties properties, String name, int defaultValue, int min) {
+        String v = properties.getProperty(name);
+        if (v == null) {
+            return defaultValue;
+        }
+        int n;
+        try {
+            n = Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            throw new ConfigurationException(name + " must be an integer, but was " + v, e);
+        }
+        if (n < min) {
+            throw new ConfigurationException(name + " must be at least " + min + ", but was " + v);
+        }
+        return n;
+    }
+
     protected MimeMessage format(Reader reader, PropertiesSubstitutor ps) throws MessagingException, IOException {
         //Read message body content
         String text = ps.substitute(reader);
@@ -188,17 +271,110 @@ public class MailConnection extends AbstractConnection {
 
     /**
      * Template method to decouple transport dependency, overriden in test classes.
+     * <p>The message is sent over an idle SMTP connection of this connection or a new one.
+     * This method may be called concurrently by sending threads.
      *
      * @param message message to send.
      */
     protected void send(MimeMessage message) throws MessagingException {
-        Transport.send(message);
+        PooledTransport transport;
+        synchronized (idleTransports) {
+            transport = idleTransports.poll();
+        }
+        if (transport == null) {
+            transport = new PooledTransport();
+        }
+        boolean sent = false;
+        try {
+            message.saveChanges();
+            transport.send(message);
+            sent = true;
+        } finally {
+            //SMTP connection state is unknown after a failure, so it is not reused
+            if (!sent || (messagesPerConnection > 0 && transport.messages >= messagesPerConnection)) {
+                transport.close();
+            }
+            synchronized (idleTransports) {
+                idleTransports.push(transport);
+            }
+        }
     }
 
     public void executeQuery(Resource queryContent, ParametersCallback parametersCallback, QueryCallback queryCallback) throws ProviderException {
         throw new MailProviderException("Queries are not supported");
     }
 
+    /**
+     * Waits for messages queued for sending threads and reports their failures.
+     * Failures reported by {@link #close()} are only logged by the ETL engine.
+     */
+    @Override
+    public void commit() throws ProviderException {
+        if (sender != null) {
+            sender.await();
+        }
+    }
+
     public void close() throws ProviderException {
+        try {
+            if (sender != null) {
+                sender.close();
+            }
+        } finally {
+            synchronized (idleTransports) {
+                for (PooledTransport transport : idleTransports) {
+                    transport.close();
+                }
+                idleTransports.clear();
+            }
+        }
+    }
+
+    /**
+     * SMTP connection which is opened on demand and reused for subsequent messages.
+     * <p>Idle connections are not checked before use, because NOOP command costs a round trip per message.
+     * Instead a failed message is resent once over a new connection.
+     */
+    private final class PooledTransport {
+        private Transport transport;
+        private int messages;
+
+        void send(MimeMessage message) throws MessagingException {
+            Address[] recipients = message.getAllRecipients();
+            if (recipients == null || recipients.length == 0) {
+                throw new SendFailedException("No recipient addresses");
+            }
+            if (transport != null) {
+                try {
+                    transport.sendMessage(message, recipients);
+                    messages++;
+                    return;
+                } catch (SendFailedException e) {
+                    throw e; //Addresses were rejected, resending would not help
+                } catch (MessagingException e) {
+                    LOG.log(Level.FINE, "Failed to send a message over a reused SMTP connection, reconnecting", e);
+                    close();
+                }
+            }
+            if (transport == null) {
+                Transport t = session.getTransport(recipients[0]);
+                t.connect();
+                transport = t;
+                messages = 0;
+            }
+            transport.sendMessage(message, recipients);
+            messages++;
+        }
+
+        void close() {
+            if (transport != null) {
+                try {
+                    transport.close();
+                } catch (MessagingException e) {
+                    LOG.log(Level.FINE, "Failed to close SMTP connection", e);
+                }
+                transport = null;
+            }
+        }
     }
 }
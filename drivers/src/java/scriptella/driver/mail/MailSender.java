@@ -0,0 +1,179 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.driver.mail;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends messages by a pool of threads.
+ * <p>Messages are queued to a bounded queue, the submitting thread is blocked while the queue is full.
+ * Each thread sends messages using {@link MailConnection#send(MimeMessage)}, so the threads use
+ * their own SMTP connections.
+ * <p>The first failure stops sending, remaining messages are discarded and the failure is reported
+ * by the next call to {@link #submit(MimeMessage)}, {@link #await()} or {@link #close()}.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+final class MailSender {
+    private final MailConnection connection;
+    private final ThreadPoolExecutor executor;
+    private volatile MailProviderException failure;
+    private int pending; //guarded by this
+
+    /**
+     * Creates a sender and starts its threads.
+     *
+     * @param connection connection to send messages.
+     * @param threads    number of sending threads.
+     * @param queueSize  maximum number of messages waiting to be sent.
+     */
+    MailSender(MailConnection connection, int threads, int queueSize) {
+        this.connection = connection;
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new SenderThreadFactory(), new BlockingPolicy());
+        executor.prestartAllCoreThreads();
+    }
+
+    /**
+     * Queues a message for sending.
+     *
+     * @param message message to send.
+     * @throws MailProviderException if a previously submitted message failed.
+     */
+    void submit(final MimeMessage message) throws MailProviderException {
+        checkFailure();
+        synchronized (this) {
+            pending++;
+        }
+        try {
+            execute(message);
+        } catch (RuntimeException e) {
+            done(); //The message is not queued, otherwise await would never return
+            throw e;
+        }
+    }
+
+    private void execute(final MimeMessage message) {
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    if (failure == null) { //Skip remaining messages after a failure
+                        connection.send(message);
+                    }
+                } catch (MessagingException e) {
+                    fail(new MailProviderException("Failed to send message", e));
+                } catch (RuntimeException e) {
+                    fail(new MailProviderException("Failed to send message", e));
+                } finally {
+                    done();
+                }
+            }
+        });
+    }
+
+    private synchronized void done() {
+        if (--pending == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until all queued messages are sent.
+     *
+     * @throws MailProviderException if a message failed.
+     */
+    void await() throws MailProviderException {
+        synchronized (this) {
+            try {
+                while (pending > 0) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MailProviderException("Interrupted while waiting for messages to be sent", e);
+            }
+        }
+        checkFailure();
+    }
+
+    /**
+     * Waits until all queued messages are sent and stops the threads.
+     *
+     * @throws MailProviderException if a message failed.
+     */
+    void close() throws MailProviderException {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                //Wait for queued messages
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new MailProviderException("Interrupted while waiting for messages to be sent", e);
+        }
+        checkFailure();
+    }
+
+    private synchronized void fail(MailProviderException e) {
+        if (failure == null) {
+            failure = e;
+        }
+    }
+
+    private void checkFailure() {
+        MailProviderException f = failure;
+        if (f != null) {
+            throw f;
+        }
+    }
+
+    /**
+     * Blocks the submitting thread until the queue has free space.
+     */
+    private static class BlockingPolicy implements RejectedExecutionHandler {
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Mail sender is closed");
+            }
+            try {
+                executor.getQueue().put(r);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MailProviderException("Interrupted while waiting for a free slot in the mail queue", e);
+            }
+        }
+    }
+
+    private static class SenderThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Mail sender #" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
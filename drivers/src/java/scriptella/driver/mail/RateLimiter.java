@@ -0,0 +1,58 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.driver.mail;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of sent messages.
+ * <p>Messages are evenly spaced, i.e. for a rate of 10 messages per second a message is sent every 100 ms.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+final class RateLimiter {
+    private final long intervalNanos;
+    private long next; //guarded by this
+
+    /**
+     * @param rate maximum number of messages per second.
+     */
+    RateLimiter(double rate) {
+        intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        next = System.nanoTime();
+    }
+
+    /**
+     * Blocks until the next message is allowed to be sent.
+     *
+     * @throws MailProviderException if the thread was interrupted.
+     */
+    synchronized void acquire() throws MailProviderException {
+        long now = System.nanoTime();
+        if (next - now > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(next - now);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MailProviderException("Interrupted while waiting to send a message", e);
+            }
+        } else {
+            next = now; //Unused time is not accumulated, so bursts are not allowed
+        }
+        next += intervalNanos;
+    }
+}
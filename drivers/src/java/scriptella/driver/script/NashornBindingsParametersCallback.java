@@ -44,6 +44,12 @@ public class NashornBindingsParametersCallback extends BindingsParametersCallbac
         super(parentParameters, queryCallback);
     }
 
+    @Override
+    public void reset(ParametersCallback parentParameters, QueryCallback queryCallback) {
+        nashornGlobal = null;
+        super.reset(parentParameters, queryCallback);
+    }
+
     @Override
     public Object getParameter(String name) {
         if (nashornGlobal != null && nashornGlobal.containsKey(name)) {
@@ -143,6 +143,23 @@ public class ParametersCallbackMap implements ParametersCallback, Map<String, Ob
     }
 
 
+    /**
+     * Rebinds this instance to other parameters, so the same bindings can be reused for subsequent executions.
+     * <p>Local variables and the query mode are reset.
+     *
+     * @param parentParameters parent parameters.
+     * @param queryCallback    callback to notify on row iteration or null if the query mode is not required.
+     */
+    public void reset(ParametersCallback parentParameters, QueryCallback queryCallback) {
+        this.parentParameters = parentParameters;
+        this.queryCallback = null;
+        nextCalled = false;
+        clear();
+        if (queryCallback != null) {
+            setQueryCallback(queryCallback);
+        }
+    }
+
     /**
      * Sets query callback and enables the query mode, i.e. query variable is exposed.
      * @param queryCallback query callback.
@@ -43,10 +43,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.logging.Logger;
 
 /**
@@ -61,8 +61,10 @@ public class ScriptConnection extends AbstractConnection {
     private static final Logger LOG = Logger.getLogger(ScriptConnection.class.getName());
     private static final String RHINO_ENGINE_COORDINATE = "org.mozilla:rhino-engine:1.9.1";
     private static final String RHINO_RUNTIME_COORDINATE = "org.mozilla:rhino:1.9.1";
-    private Map<Resource, CompiledScript> cache;
-    private ScriptEngineWrapper engineWrapper;
+    private final ScriptEngineWrapper[] engines;
+    private final BlockingQueue<ScriptEngineWrapper> idleEngines;
+    private final ThreadLocal<ScriptEngineWrapper> currentEngine = new ThreadLocal<ScriptEngineWrapper>();
+    private final boolean compilable;
     private String encoding;
     private URL url;
     private Writer out;
@@ -77,6 +79,12 @@ public class ScriptConnection extends AbstractConnection {
      */
     static final String ENCODING = "encoding";
 
+    /**
+     * Name of the <code>engines</code> connection property.
+     * Number of script engine instances used by concurrent executions. Default value is 1.
+     */
+    static final String ENGINES = "engines";
+
     /**
      * Default language when the connection property is omitted (historical JavaScript default).
      */
@@ -120,11 +128,23 @@ public class ScriptConnection extends AbstractConnection {
         if (engine == null) {
             throw new ConfigurationException(unsupportedLanguageMessage(scriptEngineManager, lang));
         }
-        engineWrapper = new ScriptEngineWrapper(engine);
+        int enginesCount = parameters.getIntegerProperty(ENGINES, 1);
+        if (enginesCount <= 0) {
+            throw new ConfigurationException(ENGINES + " must be positive, but was " + enginesCount);
+        }
+        engines = new ScriptEngineWrapper[enginesCount];
+        //A single engine is used without synchronization as before
+        idleEngines = enginesCount == 1 ? null : new ArrayBlockingQueue<ScriptEngineWrapper>(enginesCount);
+        for (int i = 0; i < enginesCount; i++) {
+            engines[i] = new ScriptEngineWrapper(i == 0 ? engine : engine.getFactory().getScriptEngine());
+            if (idleEngines != null) {
+                idleEngines.add(engines[i]);
+            }
+        }
+        ScriptEngineWrapper engineWrapper = engines[0];
         LOG.fine("Script engine selected: " + engine.getFactory().getEngineName());
-        if (engineWrapper.isCompilable()) {
-            cache = new IdentityHashMap<>();
-        } else {
+        compilable = engineWrapper.isCompilable();
+        if (!compilable) {
             LOG.info("Engine " + engine.getFactory().getEngineName() + " does not support compilation. Running in interpreted mode.");
         }
         if (engineWrapper.isNashornScriptEngine()) {
@@ -133,11 +153,15 @@ public class ScriptConnection extends AbstractConnection {
         }
         if (!StringUtils.isEmpty(parameters.getUrl())) { //if url is specified
             url = parameters.getResolvedUrl();
-            //setUp reader and writer for it
-            ScriptContext ctx = engine.getContext();
-            ctx.setReader(new LazyReader());
+            //setUp reader and writer for it, all engines share the same streams
+            Reader reader = new LazyReader();
             //JS engine bug - we have to wrap with PrintWriter, because otherwise print function won't work.
-            ctx.setWriter(new PrintWriter(new LazyWriter()));
+            Writer writer = new PrintWriter(new LazyWriter());
+            for (ScriptEngineWrapper e : engines) {
+                ScriptContext ctx = e.getScriptEngine().getContext();
+                ctx.setReader(reader);
+                ctx.setWriter(writer);
+            }
         }
         encoding = parameters.getCharsetProperty(ENCODING);
         ScriptEngineFactory f = engine.getFactory();
@@ -211,43 +235,79 @@ public class ScriptConnection extends AbstractConnection {
     }
 
     public void executeScript(Resource scriptContent, ParametersCallback parametersCallback) throws ScriptProviderException, ConfigurationException {
-        run(scriptContent, engineWrapper.newBindingsParametersCallback(parametersCallback));
+        run(scriptContent, parametersCallback, null);
     }
 
     public void executeQuery(Resource queryContent, ParametersCallback parametersCallback, QueryCallback queryCallback) throws ScriptProviderException, ConfigurationException {
-        final BindingsParametersCallback bindingsParametersCallback = engineWrapper.newBindingsParametersCallback(parametersCallback, queryCallback);
-        MissingQueryNextCallDetector detector = new MissingQueryNextCallDetector(bindingsParametersCallback, queryContent);
-        run(queryContent, bindingsParametersCallback);
-        detector.detectMissingQueryNextCall();
+        run(queryContent, parametersCallback, queryCallback);
     }
 
     /**
      * Compiles and runs the specified resource.
+     * <p>If the connection has several engines, the resource is executed by an engine owned by the current thread.
+     * Nested executions, e.g. scripts invoked by query.next(), use the same engine. If all engines are busy,
+     * the method waits until an engine is released.
      *
      * @param resource           resource to compile.
      * @param parametersCallback parameters callback.
+     * @param queryCallback      query callback or null for scripts.
      */
-    private void run(Resource resource, BindingsParametersCallback parametersCallback) {
+    private void run(Resource resource, ParametersCallback parametersCallback, QueryCallback queryCallback) {
+        ScriptEngineWrapper engine = acquireEngine();
+        BindingsParametersCallback bindings = engine.acquireBindings(parametersCallback, queryCallback);
         try {
-            if (!engineWrapper.isCompilable()) {
-                engineWrapper.evalNoCompile(resource.open(), parametersCallback);
-                return;
-            }
-            CompiledScript script = cache.get(resource);
-            if (script == null) {
+            if (!compilable) {
+                Reader reader = resource.open();
                 try {
-                    cache.put(resource, script = engineWrapper.compile(resource.open()));
+                    engine.evalNoCompile(reader, bindings);
+                } finally {
+                    IOUtils.closeSilently(reader);
+                }
+            } else {
+                CompiledScript script;
+                try {
+                    script = engine.getCompiledScript(resource);
                 } catch (ScriptException e) {
                     throw new ScriptProviderException("Failed to compile script", e, getErrorStatement(resource, e));
                 }
+                script.eval(bindings);
+            }
+            if (queryCallback != null) {
+                new MissingQueryNextCallDetector(bindings, resource).detectMissingQueryNextCall();
             }
-            script.eval(parametersCallback);
         } catch (IOException e) {
             throw new ScriptProviderException("Failed to open script for reading", e);
         } catch (ScriptException e) {
             throw new ScriptProviderException("Failed to execute script", e, getErrorStatement(resource, e));
+        } finally {
+            engine.releaseBindings(bindings);
+            releaseEngine(engine);
         }
+    }
 
+    private ScriptEngineWrapper acquireEngine() {
+        if (idleEngines == null) {
+            return engines[0];
+        }
+        ScriptEngineWrapper engine = currentEngine.get();
+        if (engine == null) {
+            try {
+                engine = idleEngines.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ScriptProviderException("Interrupted while waiting for a script engine", e);
+            }
+            currentEngine.set(engine);
+        }
+        engine.depth++;
+        return engine;
+    }
+
+    private void releaseEngine(ScriptEngineWrapper engine) {
+        if (idleEngines != null && --engine.depth == 0) {
+            currentEngine.remove();
+            idleEngines.add(engine);
+        }
     }
 
     static String getErrorStatement(Resource resource, ScriptException exception) {
@@ -268,8 +328,11 @@ public class ScriptConnection extends AbstractConnection {
      * Closes the connection and releases all related resources.
      */
     public void close() throws ProviderException {
-        IOUtils.closeSilently(engineWrapper);
-        cache = null;
+        for (ScriptEngineWrapper engine : engines) {
+            IOUtils.closeSilently(engine);
+        }
+        //The writer is shared by all engines if url is specified, so it is closed once
+        IOUtils.closeSilently(engines[0].getScriptEngine().getContext().getWriter());
     }
 
     /**
@@ -17,6 +17,8 @@ package scriptella.driver.script;
 
 import scriptella.spi.ParametersCallback;
 import scriptella.spi.QueryCallback;
+import scriptella.spi.Resource;
+import scriptella.util.IOUtils;
 
 import javax.script.Compilable;
 import javax.script.CompiledScript;
@@ -25,9 +27,14 @@ import javax.script.ScriptException;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 /**
  * Adaptor {@link javax.script.ScriptEngine}. Provides helper methods and feature detection.
+ * <p>The wrapper also keeps compiled scripts and a pool of reusable bindings of the engine.
+ * It is used by one thread at a time.
  *
  * @author Fyodor Kupolov
  */
@@ -35,6 +42,16 @@ class ScriptEngineWrapper implements Closeable {
     private ScriptEngine scriptEngine;
     private Compilable compilable;
     private boolean nashornScriptEngine;
+    private final Map<Resource, CompiledScript> cache = new IdentityHashMap<Resource, CompiledScript>();
+    /**
+     * Bindings released by completed executions. Nested executions, e.g. scripts invoked by query.next(),
+     * take separate instances.
+     */
+    private final ArrayDeque<BindingsParametersCallback> freeBindings = new ArrayDeque<BindingsParametersCallback>();
+    /**
+     * Number of executions in progress on the thread which owns the engine.
+     */
+    int depth;
 
     public ScriptEngineWrapper(ScriptEngine scriptEngine) {
         this.scriptEngine = scriptEngine;
@@ -69,6 +86,33 @@ class ScriptEngineWrapper implements Closeable {
                 : new BindingsParametersCallback(parentParameters);
     }
 
+    /**
+     * Returns bindings for an execution. Released bindings are reused.
+     *
+     * @param parentParameters parent parameters.
+     * @param queryCallback    query callback or null for scripts.
+     * @return bindings bound to the specified parameters.
+     */
+    public BindingsParametersCallback acquireBindings(ParametersCallback parentParameters, QueryCallback queryCallback) {
+        BindingsParametersCallback bindings = freeBindings.pollLast();
+        if (bindings == null) {
+            return queryCallback == null ? newBindingsParametersCallback(parentParameters) :
+                    newBindingsParametersCallback(parentParameters, queryCallback);
+        }
+        bindings.reset(parentParameters, queryCallback);
+        return bindings;
+    }
+
+    /**
+     * Returns bindings to the pool after the execution has completed.
+     *
+     * @param bindings bindings to release.
+     */
+    public void releaseBindings(BindingsParametersCallback bindings) {
+        bindings.reset(null, null); //do not hold references to rows
+        freeBindings.addLast(bindings);
+    }
+
     public void evalNoCompile(Reader reader, BindingsParametersCallback bindings) throws ScriptException {
         scriptEngine.eval(reader, bindings);
     }
@@ -77,8 +121,39 @@ class ScriptEngineWrapper implements Closeable {
         return getCompilable().compile(reader);
     }
 
+    /**
+     * Returns the compiled script for the resource. The resource is compiled once per engine.
+     *
+     * @param resource script resource.
+     * @return compiled script.
+     * @throws IOException     if the resource cannot be read.
+     * @throws ScriptException if compilation fails.
+     */
+    public CompiledScript getCompiledScript(Resource resource) throws IOException, ScriptException {
+        CompiledScript script = cache.get(resource);
+        if (script == null) {
+            Reader reader = resource.open();
+            try {
+                script = compile(reader);
+            } finally {
+                IOUtils.closeSilently(reader);
+            }
+            cache.put(resource, script);
+        }
+        return script;
+    }
+
+    public ScriptEngine getScriptEngine() {
+        return scriptEngine;
+    }
+
+    /**
+     * Releases compiled scripts and bindings. The writer of the engine context is closed by the connection,
+     * because it may be shared by several engines.
+     */
     @Override
     public void close() throws IOException {
-        scriptEngine.getContext().getWriter().close();
+        cache.clear();
+        freeBindings.clear();
     }
 }
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2006-2020 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.driver.shell;
+
+import scriptella.util.StringUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executes shell commands concurrently by a bounded pool of {@link ShellCommandRunner runners}.
+ * <p>The submitting thread is blocked while all runners are busy. Output of each command is captured and written
+ * either in the order of submission or in the order of completion, so outputs of different commands are not mixed.
+ * In the order of submission, outputs of completed commands are kept until preceding commands complete, so
+ * the submitting thread is also blocked while {@link #PENDING_PER_RUNNER} commands per runner are pending.
+ * <p>A command fails if its output cannot be processed or, if <code>fail_on_exit_code</code> is set,
+ * if it has a non-zero exit code. Failures are collected with stderr of the commands and reported
+ * by the next call to {@link #submit(String)} or {@link #await()}.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+final class ParallelShellExecutor {
+    private static final Logger LOG = Logger.getLogger(ParallelShellExecutor.class.getName());
+    private static final int MAX_REPORTED_FAILURES = 10;
+    /**
+     * Maximum number of pending commands per runner.
+     */
+    static final int PENDING_PER_RUNNER = 4;
+    private final BufferedWriter out;
+    private final boolean rowOrder;
+    private final boolean flush;
+    private final boolean failOnExitCode;
+    private final BlockingQueue<ShellCommandRunner> runners;
+    private final int maxPending;
+    private final ExecutorService executor;
+    //Commands in the order of submission which are running or waiting for the output of preceding commands
+    private final Deque<Command> pending = new ArrayDeque<>();
+    private final List<String> failures = new ArrayList<>();
+    private Throwable failureCause;
+    private int failed;
+    private int completed;
+    private int running;
+    private int submitted;
+
+    /**
+     * Creates an executor.
+     *
+     * @param out    writer for output of commands.
+     * @param params connection parameters.
+     */
+    ParallelShellExecutor(BufferedWriter out, ShellConnectionParameters params) {
+        this.out = out;
+        rowOrder = params.isRowOrder();
+        flush = params.isFlush();
+        failOnExitCode = params.isFailOnExitCode();
+        int n = params.getParallelism();
+        runners = new ArrayBlockingQueue<>(n);
+        maxPending = n * PENDING_PER_RUNNER;
+        for (int i = 0; i < n; i++) {
+            runners.add(new ShellCommandRunner(params.getShellCommandArgs(), null, params.isPersistent()));
+        }
+        executor = Executors.newFixedThreadPool(n, new CommandThreadFactory());
+    }
+
+    /**
+     * Submits a command for execution, waits for a free runner or for output of preceding commands if necessary.
+     *
+     * @param cmdText command text.
+     * @throws ShellProviderException if previously submitted commands failed.
+     */
+    void submit(String cmdText) throws ShellProviderException {
+        checkFailures();
+        final ShellCommandRunner runner;
+        try {
+            runner = runners.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ShellProviderException("Interrupted while waiting for a shell command to finish", e);
+        }
+        final Command command;
+        synchronized (this) {
+            try {
+                while (pending.size() >= maxPending) { //the first pending command is still running
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                runners.add(runner);
+                Thread.currentThread().interrupt();
+                throw new ShellProviderException("Interrupted while waiting for a shell command to finish", e);
+            }
+            command = new Command(++submitted, cmdText);
+            pending.add(command);
+            running++;
+        }
+        executor.execute(() -> {
+            try {
+                BufferedWriter commandOut = new BufferedWriter(command.output);
+                runner.exec(command.text, commandOut, command.err);
+                runner.waitForAndCheckExceptions();
+                commandOut.flush();
+                command.exitCode = runner.getExitCode();
+            } catch (ExecutionException e) {
+                command.error = e.getCause();
+            } catch (Throwable e) {
+                command.error = e;
+            }
+            runners.add(runner);
+            complete(command);
+        });
+    }
+
+    private synchronized void complete(Command command) {
+        command.done = true;
+        if (rowOrder) {
+            while (!pending.isEmpty() && pending.peek().done) {
+                emit(pending.poll());
+            }
+        } else {
+            pending.remove(command);
+            emit(command);
+        }
+        running--;
+        notifyAll();
+    }
+
+    private void emit(Command command) {
+        completed++;
+        try {
+            out.write(command.output.toString());
+            if (flush) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (command.error == null) {
+                command.error = e;
+            }
+        }
+        if (command.err.length() > 0) {
+            System.err.print(command.err);
+        }
+        if (command.error != null || (failOnExitCode && command.exitCode != 0)) {
+            failed++;
+            if (failureCause == null) {
+                failureCause = command.error;
+            }
+            if (failures.size() < MAX_REPORTED_FAILURES) {
+                failures.add(command.describeFailure());
+            }
+        }
+    }
+
+    /**
+     * Waits for all submitted commands to finish.
+     *
+     * @throws ShellProviderException if commands failed.
+     */
+    void await() throws ShellProviderException {
+        synchronized (this) {
+            try {
+                while (running > 0) {
+                    wait();
+                }
+                if (failed == 0) { //Failures are reported for commands since the previous await
+                    completed = 0;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ShellProviderException("Interrupted while waiting for shell commands to finish", e);
+            }
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new ShellProviderException("Failed to produce output", e);
+        }
+        checkFailures();
+    }
+
+    private synchronized void checkFailures() {
+        if (failed == 0) {
+            return;
+        }
+        StringBuilder msg = new StringBuilder().append(failed).append(" of ").append(completed)
+                .append(" shell commands failed:");
+        for (String f : failures) {
+            msg.append('\n').append(f);
+        }
+        if (failed > failures.size()) {
+            msg.append("\n...");
+        }
+        Throwable cause = failureCause;
+        failed = 0;
+        completed = 0;
+        failures.clear();
+        failureCause = null;
+        throw new ShellProviderException(msg.toString(), cause);
+    }
+
+    /**
+     * Waits for submitted commands and releases the runners.
+     * <p>Failures are logged, because commands are usually awaited by {@link #await()} before closing.
+     */
+    void close() {
+        try {
+            await();
+        } catch (ShellProviderException e) {
+            LOG.log(Level.WARNING, e.getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+            for (ShellCommandRunner runner : runners) {
+                runner.close();
+            }
+        }
+    }
+
+    private static class Command {
+        private static final int MAX_LENGTH = 200;
+        final int number;
+        final String text;
+        final StringWriter output = new StringWriter();
+        final StringBuilder err = new StringBuilder();
+        volatile int exitCode;
+        volatile Throwable error;
+        boolean done;
+
+        Command(int number, String text) {
+            this.number = number;
+            this.text = text;
+        }
+
+        String describeFailure() {
+            StringBuilder sb = new StringBuilder("  #").append(number);
+            if (error != null) {
+                sb.append(" failed: ").append(error.getMessage());
+            } else {
+                sb.append(" exited with code ").append(exitCode);
+            }
+            sb.append(". Command: ").append(StringUtils.consoleFormat(text, MAX_LENGTH));
+            if (err.length() > 0) {
+                sb.append(". Stderr: ").append(StringUtils.consoleFormat(err.toString(), MAX_LENGTH));
+            }
+            return sb.toString();
+        }
+    }
+
+    private static class CommandThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Shell command #" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -21,66 +21,173 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Runner for shell commands, abstracting threading and process details.
+ * <p>By default a new shell process is started for each command. In persistent mode commands are written to
+ * stdin of a single long-lived shell process. The end of the command output is marked by a sentinel line
+ * echoed by the shell to stdout and stderr after the command.
+ * <p>Output streams are pumped by a daemon thread pool shared by all runners.
  */
 public class ShellCommandRunner {
-    private final ExecutorService execService;
-    private String[] fullArgs;
+    private static final ExecutorService PUMPS = Executors.newCachedThreadPool(new PumpThreadFactory());
+    private final String[] fullArgs;
     private final BufferedWriter out;
+    private final boolean persistent;
+    private final String sentinelPrefix;
+    private int commands;
     private Process proc;
     protected BufferedReader procOutputReader;
     protected BufferedReader procErrReader;
+    protected BufferedWriter procInputWriter;
     private AtomicReference<Throwable> readInputError;
     private AtomicReference<Throwable> readErrError;
     private CountDownLatch finishedProcessingStreamsSignal;
+    private volatile int exitCode;
+    private final List<Future<?>> tasks = new ArrayList<>();
 
     public ShellCommandRunner(final String[] shellCmdArgs, final BufferedWriter out) {
-        fullArgs = Arrays.copyOf(shellCmdArgs, shellCmdArgs.length + 1);
+        this(shellCmdArgs, out, false);
+    }
+
+    /**
+     * Creates a runner.
+     *
+     * @param shellCmdArgs shell executable and its arguments. The last argument is an option for passing
+     *                     a command, e.g. <code>-c</code>, it is omitted in persistent mode.
+     * @param out          default writer for stdout of commands.
+     * @param persistent   true if commands should be executed by a single shell process.
+     */
+    public ShellCommandRunner(final String[] shellCmdArgs, final BufferedWriter out, boolean persistent) {
+        this.persistent = persistent;
+        fullArgs = persistent ? Arrays.copyOf(shellCmdArgs, shellCmdArgs.length - 1) :
+                Arrays.copyOf(shellCmdArgs, shellCmdArgs.length + 1);
         this.out = out;
-        execService = Executors.newFixedThreadPool(2);
+        sentinelPrefix = persistent ? "#scriptella-" + Long.toHexString(ThreadLocalRandom.current().nextLong()) + '-' : null;
     }
 
     public void exec(String cmdText) throws IOException {
-        // Change the actual command as a last arg
-        fullArgs[fullArgs.length - 1] = cmdText;
-        execAndInitReaders(fullArgs);
-        readInputError = new AtomicReference<>();
-        readErrError = new AtomicReference<>();
-        finishedProcessingStreamsSignal = new CountDownLatch(2);
-        execService.submit(() -> {
-            String s;
+        exec(cmdText, out);
+    }
+
+    /**
+     * Executes a command.
+     *
+     * @param cmdText command text.
+     * @param out     writer for stdout of the command.
+     */
+    public void exec(String cmdText, final BufferedWriter out) throws IOException {
+        exec(cmdText, out, null);
+    }
+
+    /**
+     * Executes a command.
+     *
+     * @param cmdText command text.
+     * @param out     writer for stdout of the command.
+     * @param err     buffer to collect stderr of the command or null to forward it to <code>System.err</code>.
+     */
+    void exec(String cmdText, final BufferedWriter out, final StringBuilder err) throws IOException {
+        tasks.clear();
+        exitCode = 0;
+        final String sentinel = persistent ? writeCommand(cmdText) : startProcess(cmdText);
+        //Pumps report errors of this command only, even if the fields are reset by the next command
+        final AtomicReference<Throwable> inputError = readInputError = new AtomicReference<>();
+        final AtomicReference<Throwable> errError = readErrError = new AtomicReference<>();
+        final CountDownLatch signal = new CountDownLatch(2);
+        finishedProcessingStreamsSignal = signal;
+        final BufferedReader outputReader = procOutputReader;
+        final BufferedReader errReader = procErrReader;
+        tasks.add(PUMPS.submit(() -> {
             try {
-                while ((s = procOutputReader.readLine()) != null) {
+                String status = pump(outputReader, sentinel, s -> {
                     out.write(s);
                     out.newLine();
-                }
+                });
                 out.flush();
-                procOutputReader.close();
+                if (status != null) {
+                    exitCode = Integer.parseInt(status.trim());
+                }
             } catch (Throwable throwable) {
-                readInputError.set(throwable);
+                inputError.set(throwable);
             }
-            finishedProcessingStreamsSignal.countDown();
-        });
-        execService.submit(() -> {
-            String s;
+            signal.countDown();
+        }));
+        tasks.add(PUMPS.submit(() -> {
             try {
-                while ((s = procErrReader.readLine()) != null) {
-                    System.err.println(s);
-                }
-                procErrReader.close();
+                pump(errReader, sentinel, err == null ? System.err::println : s -> err.append(s).append('\n'));
             } catch (Throwable throwable) {
-                readErrError.set(throwable);
+                errError.set(throwable);
             }
-            finishedProcessingStreamsSignal.countDown();
-        });
+            signal.countDown();
+        }));
+    }
+
+    private String startProcess(String cmdText) throws IOException {
+        // Change the actual command as a last arg
+        fullArgs[fullArgs.length - 1] = cmdText;
+        execAndInitReaders(fullArgs);
+        return null;
+    }
+
+    /**
+     * Writes a command to the shell process, the process is started on first use
+     * or restarted if the output of the previous command was not terminated by the sentinel.
+     *
+     * @return sentinel which marks the end of the command output.
+     */
+    private String writeCommand(String cmdText) throws IOException {
+        boolean failed = readInputError != null && (readInputError.get() != null || readErrError.get() != null);
+        if (procInputWriter == null || failed || !isProcAlive()) {
+            closeProc();
+            execAndInitReaders(fullArgs);
+        }
+        String sentinel = sentinelPrefix + (++commands) + '#';
+        // Commands are grouped to run in the current shell, stdin is redirected to keep the command stream intact
+        procInputWriter.write("{\n");
+        procInputWriter.write(cmdText);
+        procInputWriter.write("\n} </dev/null\necho '" + sentinel + "'$?; echo '" + sentinel + "' >&2\n");
+        procInputWriter.flush();
+        return sentinel;
+    }
+
+    /**
+     * Reads lines until the end of stream or the sentinel.
+     * The sentinel is echoed on a new line, but it may follow an incomplete last line of the output.
+     *
+     * @return the rest of the sentinel line or null if the stream was read to the end.
+     */
+    private static String pump(BufferedReader reader, String sentinel, LineConsumer consumer) throws IOException {
+        String s;
+        while ((s = reader.readLine()) != null) {
+            int i = sentinel == null ? -1 : s.indexOf(sentinel);
+            if (i >= 0) {
+                if (i > 0) {
+                    consumer.accept(s.substring(0, i));
+                }
+                return s.substring(i + sentinel.length());
+            }
+            consumer.accept(s);
+        }
+        if (sentinel != null) {
+            throw new IOException("Shell process terminated before the end of the command. " +
+                    "Commands in persistent mode must not exit the shell or have syntax errors");
+        }
+        reader.close();
+        return null;
     }
 
     /**
@@ -89,7 +196,9 @@ public class ShellCommandRunner {
      * @throws ExecutionException if an error occurred during processing output of the process (srdin/stderr)
      */
     public void waitForAndCheckExceptions() throws InterruptedException, ExecutionException {
-        waitForProc();
+        if (!persistent) { // The persistent process remains alive after the command
+            waitForProc();
+        }
         // Even though the process is done, we may still be processing buffered output from it
         finishedProcessingStreamsSignal.await();
         if (readInputError.get() != null) {
@@ -100,21 +209,45 @@ public class ShellCommandRunner {
         }
     }
 
+    /**
+     * @return exit code of the last command, available after {@link #waitForAndCheckExceptions()}.
+     */
+    int getExitCode() {
+        return exitCode;
+    }
+
     public void executeAfterStdoutStderrConsumed(Runnable runnable) {
-        execService.submit(() -> {
+        final CountDownLatch signal = finishedProcessingStreamsSignal;
+        tasks.add(PUMPS.submit(() -> {
             try {
-                finishedProcessingStreamsSignal.await();
+                signal.await();
                 runnable.run();
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
-        });
+        }));
+    }
+
+    /**
+     * @return true if the output of the last command is still being processed.
+     */
+    boolean isBusy() {
+        return finishedProcessingStreamsSignal != null && finishedProcessingStreamsSignal.getCount() > 0;
     }
 
     public void close() {
-        execService.shutdownNow();
+        for (Future<?> task : tasks) {
+            task.cancel(true);
+        }
+        tasks.clear();
+        closeProc();
+    }
+
+    private void closeProc() {
+        IOUtils.closeSilently(procInputWriter); //Persistent shell exits at the end of input
         IOUtils.closeSilently(procErrReader);
         IOUtils.closeSilently(procOutputReader);
+        procInputWriter = null;
         if (proc != null) {
             proc.destroy();
             proc = null;
@@ -128,10 +261,28 @@ public class ShellCommandRunner {
         proc = Runtime.getRuntime().exec(args);
         procOutputReader = new BufferedReader(new InputStreamReader(proc.getInputStream()));
         procErrReader = new BufferedReader(new InputStreamReader(proc.getErrorStream()));
+        procInputWriter = new BufferedWriter(new OutputStreamWriter(proc.getOutputStream()));
     }
 
     protected void waitForProc() throws InterruptedException {
-        proc.waitFor();
+        exitCode = proc.waitFor();
     }
 
+    protected boolean isProcAlive() {
+        return proc != null && proc.isAlive();
+    }
+
+    private interface LineConsumer {
+        void accept(String line) throws IOException;
+    }
+
+    private static class PumpThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Shell stream pump #" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
 }
@@ -16,6 +16,7 @@
 package scriptella.driver.shell;
 
 import scriptella.driver.text.AbstractTextConnection;
+import scriptella.expression.CompiledTemplate;
 import scriptella.expression.PropertiesSubstitutor;
 import scriptella.spi.ParametersCallback;
 import scriptella.spi.ProviderException;
@@ -25,6 +26,8 @@ import scriptella.util.IOUtils;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 /**
  * Represents a shell script connection.
@@ -35,6 +38,8 @@ import java.io.Reader;
  */
 public class ShellConnection extends AbstractTextConnection {
     private ShellScriptExecutor out;
+    private ShellCommandRunner persistentRunner;
+    private final Map<Resource, CompiledTemplate> scripts = new IdentityHashMap<Resource, CompiledTemplate>();
 
     public ShellConnection(ShellConnectionParameters parameters) {
         super(parameters.getDialectIdentifier(), parameters);
@@ -42,17 +47,26 @@ public class ShellConnection extends AbstractTextConnection {
 
     public void executeScript(final Resource scriptContent, final ParametersCallback parametersCallback) throws ProviderException {
         initScriptExecutor();
-        Reader reader = null;
+        CompiledTemplate script = scripts.get(scriptContent);
+        if (script == null) {
+            Reader reader = null;
+            try {
+                reader = scriptContent.open();
+                script = ShellScriptExecutor.compile(reader);
+            } catch (IOException e) {
+                throw new ShellProviderException("Failed reading a script file", e);
+            } finally {
+                IOUtils.closeSilently(reader);
+            }
+            scripts.put(scriptContent, script);
+        }
         try {
-            reader = scriptContent.open();
-            out.execute(reader, parametersCallback, counter);
+            out.execute(script, parametersCallback, counter);
             if (getConnectionParameters().isFlush()) {
                 out.flush();
             }
         } catch (IOException e) {
             throw new ShellProviderException("Failed to produce output", e);
-        } finally {
-            IOUtils.closeSilently(reader);
         }
     }
 
@@ -62,7 +76,7 @@ public class ShellConnection extends AbstractTextConnection {
     protected void initScriptExecutor() {
         if (out == null) {
             try {
-                this.out = new ShellScriptExecutor(newOutputWriter(), getConnectionParameters());
+                this.out = new ShellScriptExecutor(newOutputWriter(), getConnectionParameters(), getPersistentRunner());
             } catch (IOException e) {
                 throw new ShellProviderException("Unable to open file " + getConnectionParameters().getUrl() + " for writing", e);
             }
@@ -70,6 +84,10 @@ public class ShellConnection extends AbstractTextConnection {
     }
 
     public void executeQuery(Resource queryContent, ParametersCallback parametersCallback, QueryCallback queryCallback) throws ProviderException {
+        // Query may depend on results of scripts executed concurrently
+        if (out != null) {
+            out.await();
+        }
         Reader q;
         try {
             q = queryContent.open();
@@ -78,16 +96,43 @@ public class ShellConnection extends AbstractTextConnection {
         }
 
         try {
-            new ShellQueryExecutor(q, new PropertiesSubstitutor(parametersCallback), getConnectionParameters()).
-                    execute(queryCallback, counter);
+            new ShellQueryExecutor(q, new PropertiesSubstitutor(parametersCallback), getConnectionParameters(),
+                    getPersistentRunner()).execute(queryCallback, counter);
         } finally {
             IOUtils.closeSilently(q);
         }
     }
 
+    /**
+     * Lazily initializes a runner of the persistent shell process.
+     *
+     * @return runner or null if persistent mode is disabled.
+     */
+    private ShellCommandRunner getPersistentRunner() {
+        if (persistentRunner == null && getConnectionParameters().isPersistent()) {
+            persistentRunner = new ShellCommandRunner(getConnectionParameters().getShellCommandArgs(), null, true);
+        }
+        return persistentRunner;
+    }
+
+    /**
+     * Waits for scripts executed concurrently and reports their failures.
+     */
+    @Override
+    public void commit() throws ProviderException {
+        if (out != null) {
+            out.await();
+        }
+    }
+
     public void close() throws ProviderException {
         IOUtils.closeSilently(out);
         out = null;
+        if (persistentRunner != null) {
+            persistentRunner.close();
+            persistentRunner = null;
+        }
+        scripts.clear();
     }
 
     @Override
@@ -16,6 +16,7 @@
 
 package scriptella.driver.shell;
 
+import scriptella.configuration.ConfigurationException;
 import scriptella.driver.text.TextConnectionParameters;
 import scriptella.spi.ConnectionParameters;
 import scriptella.spi.DialectIdentifier;
@@ -30,6 +31,10 @@ public class ShellConnectionParameters extends TextConnectionParameters {
     private ShellOs osBehavior;
     private DialectIdentifier dialectIdentifier;
     private String[] shellCommandArgs;
+    private boolean persistent;
+    private int parallelism;
+    private boolean rowOrder;
+    private boolean failOnExitCode;
 
     ShellConnectionParameters(ConnectionParameters parameters) {
         super(parameters);
@@ -52,6 +57,20 @@ public class ShellConnectionParameters extends TextConnectionParameters {
         } else if (osBehavior == ShellOs.WINDOWS) {
             shellCommandArgs = new String[] {"cmd.exe", "/c"};
         }
+        persistent = parameters.getBooleanProperty("persistent", false);
+        if (persistent && osBehavior == ShellOs.WINDOWS) {
+            throw new ConfigurationException("Persistent mode is only supported for Unix shells");
+        }
+        parallelism = parameters.getIntegerProperty("parallelism", 1);
+        if (parallelism <= 0) {
+            throw new ConfigurationException("parallelism must be positive");
+        }
+        String outputOrder = parameters.getStringProperty("output_order");
+        rowOrder = outputOrder == null || "row".equalsIgnoreCase(outputOrder);
+        if (!rowOrder && !"completion".equalsIgnoreCase(outputOrder)) {
+            throw new ConfigurationException("output_order must be row or completion, but was " + outputOrder);
+        }
+        failOnExitCode = parameters.getBooleanProperty("fail_on_exit_code", false);
     }
 
     ShellOs getOsBehavior() {
@@ -65,4 +84,33 @@ public class ShellConnectionParameters extends TextConnectionParameters {
     String[] getShellCommandArgs() {
         return shellCommandArgs;
     }
+
+    /**
+     * @return true if commands should be executed by a single long-lived shell process.
+     */
+    boolean isPersistent() {
+        return persistent;
+    }
+
+    /**
+     * @return maximum number of scripts executed concurrently.
+     */
+    int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return true if output of concurrently executed scripts should be written in the order of execution,
+     * false if in the order of completion.
+     */
+    boolean isRowOrder() {
+        return rowOrder;
+    }
+
+    /**
+     * @return true if scripts with a non-zero exit code should fail.
+     */
+    boolean isFailOnExitCode() {
+        return failOnExitCode;
+    }
 }
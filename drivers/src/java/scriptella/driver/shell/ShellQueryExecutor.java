@@ -53,6 +53,19 @@ class ShellQueryExecutor implements ParametersCallback {
 
     public ShellQueryExecutor(final Reader queryReader, final PropertiesSubstitutor substitutor,
                              final ShellConnectionParameters shellParams) {
+        this(queryReader, substitutor, shellParams, null);
+    }
+
+    /**
+     * Creates an executor.
+     *
+     * @param queryReader      query content.
+     * @param substitutor      substitutor of properties.
+     * @param shellParams      connection parameters.
+     * @param persistentRunner runner of the persistent shell process or null to start a process for the query.
+     */
+    ShellQueryExecutor(final Reader queryReader, final PropertiesSubstitutor substitutor,
+                       final ShellConnectionParameters shellParams, final ShellCommandRunner persistentRunner) {
         this.shellParams = shellParams;
         ps = substitutor;
         String queryStr;
@@ -71,7 +84,9 @@ class ShellQueryExecutor implements ParametersCallback {
             throw new IllegalStateException(e);
         }
         shellCommandOutWriter = new BufferedWriter(pipedWriter);
-        shellCommandRunner = new ShellCommandRunner(shellParams.getShellCommandArgs(), shellCommandOutWriter);
+        // Nested queries cannot use the persistent shell while it is producing rows
+        shellCommandRunner = persistentRunner == null || persistentRunner.isBusy() ?
+                new ShellCommandRunner(shellParams.getShellCommandArgs(), shellCommandOutWriter) : persistentRunner;
     }
 
     /**
@@ -82,7 +97,7 @@ class ShellQueryExecutor implements ParametersCallback {
      */
     public void execute(final QueryCallback qc, AbstractConnection.StatementCounter counter) {
         try {
-            shellCommandRunner.exec(query);
+            shellCommandRunner.exec(query, shellCommandOutWriter);
         } catch (IOException e) {
             throw new ShellProviderException("Unable to execute the query", e);
         }
@@ -15,6 +15,7 @@
  */
 package scriptella.driver.shell;
 
+import scriptella.expression.CompiledTemplate;
 import scriptella.expression.PropertiesSubstitutor;
 import scriptella.spi.AbstractConnection;
 import scriptella.spi.ParametersCallback;
@@ -42,6 +43,8 @@ public class ShellScriptExecutor implements Closeable, Flushable {
     private PropertiesSubstitutor ps;
     private ShellConnectionParameters shellParams;
     private final ShellCommandRunner shellCommandRunner;
+    private final ShellCommandRunner persistentRunner;
+    private final ParallelShellExecutor parallelExecutor;
 
     /**
      * Creates an executor.
@@ -50,10 +53,23 @@ public class ShellScriptExecutor implements Closeable, Flushable {
      * @param params     connection parameters.
      */
     public ShellScriptExecutor(Writer out, ShellConnectionParameters params) {
+        this(out, params, null);
+    }
+
+    /**
+     * Creates an executor.
+     *
+     * @param out              writer for output.
+     * @param params           connection parameters.
+     * @param persistentRunner runner of the persistent shell process or null to start a process per script.
+     */
+    ShellScriptExecutor(Writer out, ShellConnectionParameters params, ShellCommandRunner persistentRunner) {
         ps = new PropertiesSubstitutor();
         this.out = IOUtils.asBuffered(out);
         this.shellParams = params;
+        this.persistentRunner = persistentRunner;
         shellCommandRunner = new ShellCommandRunner(shellParams.getShellCommandArgs(), this.out);
+        parallelExecutor = params.getParallelism() > 1 ? new ParallelShellExecutor(this.out, params) : null;
     }
 
     /**
@@ -64,36 +80,79 @@ public class ShellScriptExecutor implements Closeable, Flushable {
      * @param counter statements counter.
      */
     public void execute(Reader reader, ParametersCallback pc, AbstractConnection.StatementCounter counter) {
-        ps.setParameters(shellParams.getPropertyFormatter().format(pc));
-        String scriptText;
+        execute(compile(reader), pc, counter);
+    }
+
+    /**
+     * Reads and compiles a script.
+     *
+     * @param reader script content.
+     * @return compiled script.
+     */
+    static CompiledTemplate compile(Reader reader) {
         try {
-            scriptText = IOUtils.toString(reader, MAX_LENGTH);
+            return CompiledTemplate.compile(IOUtils.toString(reader, MAX_LENGTH));
         } catch (IOException e) {
             throw new ShellProviderException("Failed reading a script file", e);
         }
-        scriptText = ps.substitute(scriptText);
+    }
+
+    /**
+     * Expands properties in a compiled script and executes it.
+     *
+     * @param script  compiled script content.
+     * @param pc      parameters for substitution.
+     * @param counter statements counter.
+     */
+    void execute(CompiledTemplate script, ParametersCallback pc, AbstractConnection.StatementCounter counter) {
+        ps.setParameters(shellParams.getPropertyFormatter().format(pc));
+        String scriptText = ps.substitute(script);
+        if (parallelExecutor != null) {
+            parallelExecutor.submit(scriptText);
+            counter.statements++;
+            return;
+        }
+        // The persistent shell is busy if the script is executed for rows of a query on the same connection
+        ShellCommandRunner runner = persistentRunner == null || persistentRunner.isBusy() ? shellCommandRunner : persistentRunner;
         try {
-            shellCommandRunner.exec(scriptText);
+            runner.exec(scriptText, out);
         } catch (IOException e) {
             throw new ShellProviderException("Failed executing a script", e);
         }
 
         try {
-            shellCommandRunner.waitForAndCheckExceptions();
+            runner.waitForAndCheckExceptions();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new ShellProviderException("Interrupted while waiting for the script to finish", e);
         } catch (ExecutionException e) {
             throw new ShellProviderException(e.getMessage(), e);
         }
+        if (shellParams.isFailOnExitCode() && runner.getExitCode() != 0) {
+            throw new ShellProviderException("Script exited with code " + runner.getExitCode());
+        }
         counter.statements++;
     }
 
+    /**
+     * Waits for scripts executed concurrently.
+     *
+     * @throws ShellProviderException if scripts failed.
+     */
+    void await() throws ShellProviderException {
+        if (parallelExecutor != null) {
+            parallelExecutor.await();
+        }
+    }
+
     public void flush() throws IOException {
         out.flush();
     }
 
     public void close() {
+        if (parallelExecutor != null) {
+            parallelExecutor.close();
+        }
         IOUtils.closeSilently(out);
         shellCommandRunner.close();
         out = null;
@@ -19,12 +19,15 @@ import scriptella.spi.AbstractConnection;
 import scriptella.spi.ConnectionParameters;
 import scriptella.spi.DialectIdentifier;
 import scriptella.text.PropertyFormatInfo;
+import scriptella.util.CompressionCodec;
 import scriptella.util.IOUtils;
 
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * Base class for Text/CSV connections.
@@ -80,6 +83,65 @@ public abstract class AbstractTextConnection extends AbstractConnection {
      */
     public static final String FORMAT_PREFIX = "format.";
 
+    /**
+     * Name of the <code>async</code> connection property.
+     * Value of <code>true</code> specifies that the output should be encoded and written
+     * to the file by a dedicated thread. Default value is false.
+     */
+    public static final String ASYNC = "async";
+
+    /**
+     * Name of the <code>async_buffer_size</code> connection property.
+     * Size of a buffer chunk in characters used by the asynchronous output.
+     */
+    public static final String ASYNC_BUFFER_SIZE = "async_buffer_size";
+
+    /**
+     * Name of the <code>fsync</code> connection property.
+     * Specifies when the asynchronously written file content is forced to the storage device:
+     * <code>none</code>(default), <code>flush</code> or <code>close</code>.
+     */
+    public static final String FSYNC = "fsync";
+
+    /**
+     * Name of the <code>compression</code> connection property.
+     * Compression codec of the file: <code>none</code>, <code>gzip</code> or <code>deflate</code>.
+     * By default the codec is detected from the file extension.
+     */
+    public static final String COMPRESSION = "compression";
+
+    /**
+     * Name of the <code>compression_threads</code> connection property.
+     * Number of threads used to compress gzip output. Default value is 1.
+     */
+    public static final String COMPRESSION_THREADS = "compression_threads";
+
+    /**
+     * Name of the <code>roll_rows</code> connection property.
+     * Maximum number of rows in an output file. When the limit is reached, the output
+     * continues in the next file. The URL must contain a sequence number pattern, e.g. <code>file-%05d.csv</code>.
+     */
+    public static final String ROLL_ROWS = "roll_rows";
+
+    /**
+     * Name of the <code>roll_bytes</code> connection property.
+     * Approximate maximum size of an output file, measured in characters written before encoding and compression.
+     * The URL must contain a sequence number pattern, e.g. <code>file-%05d.csv</code>.
+     */
+    public static final String ROLL_BYTES = "roll_bytes";
+
+    /**
+     * Name of the <code>output_header</code> connection property.
+     * A line written at the beginning of each output file.
+     */
+    public static final String OUTPUT_HEADER = "output_header";
+
+    /**
+     * Name of the <code>max_open_files</code> connection property.
+     * Maximum number of simultaneously open partition files. Default value is 64.
+     */
+    public static final String MAX_OPEN_FILES = "max_open_files";
+
     /**
      * For testing only.
      */
@@ -111,9 +173,32 @@ public abstract class AbstractTextConnection extends AbstractConnection {
      */
     protected Writer newOutputWriter() throws IOException {
         final URL url = connectionParameters.getUrl();
+        if (url == null) {
+            return ConsoleAdapters.getConsoleWriter(connectionParameters.getEncoding());
+        }
+        return newOutputWriter(url, false);
+    }
+
+    /**
+     * Creates a new writer for the specified file.
+     * <p>Used for rolling and partitioned output, when a connection writes to more than one file.
+     *
+     * @param url    file URL.
+     * @param append true if the content should be appended to the existing file.
+     * @return writer for output.
+     * @throws IOException if IO error occured.
+     */
+    protected Writer newOutputWriter(URL url, boolean append) throws IOException {
         final String encoding = connectionParameters.getEncoding();
-        return url == null ? ConsoleAdapters.getConsoleWriter(encoding) :
-                IOUtils.getWriter(IOUtils.getOutputStream(url), encoding);
+        final CompressionCodec codec = connectionParameters.getCompression();
+        if (connectionParameters.isAsync()) {
+            //Compression is performed by the writer thread
+            WritableByteChannel channel = codec == CompressionCodec.NONE ? IOUtils.getOutputChannel(url, append) :
+                    Channels.newChannel(codec.compress(IOUtils.getOutputStream(url, append), connectionParameters.getCompressionThreads()));
+            return new AsyncWriter(channel, encoding,
+                    connectionParameters.getAsyncBufferSize(), connectionParameters.getFsync());
+        }
+        return IOUtils.getWriter(codec.compress(IOUtils.getOutputStream(url, append), connectionParameters.getCompressionThreads()), encoding);
     }
 
     /**
@@ -126,7 +211,7 @@ public abstract class AbstractTextConnection extends AbstractConnection {
         final URL url = connectionParameters.getUrl();
         final String encoding = connectionParameters.getEncoding();
         return url == null ? ConsoleAdapters.getConsoleReader(encoding) :
-                IOUtils.getReader(url.openStream(), encoding);
+                IOUtils.getReader(connectionParameters.getCompression().decompress(url.openStream()), encoding);
     }
 
     protected TextConnectionParameters getConnectionParameters() {
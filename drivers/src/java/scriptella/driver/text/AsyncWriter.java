@@ -0,0 +1,333 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.driver.text;
+
+import scriptella.util.IOUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writer which encodes and writes the content on a dedicated thread.
+ * <p>Characters are accumulated in reusable chunks. Filled chunks are passed to the writer thread
+ * through a blocking queue and returned to the pool after the content has been written to the channel.
+ * The number of chunks is limited, so a slow output blocks the producer instead of exhausting memory.
+ * <p>{@link #flush()} and {@link #close()} act as barriers, i.e. they return only after all the previously
+ * written content has been passed to the channel. I/O errors on the writer thread are rethrown
+ * by subsequent calls of this writer.
+ * <p><em>Note:</em> This class is intended to be used by a single producer thread.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+class AsyncWriter extends Writer {
+    static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_CHUNKS = 4;
+    //Interval to check if the writer thread is alive while waiting for it
+    private static final long CHECK_INTERVAL_MILLIS = 1000;
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final BlockingQueue<Chunk> filled = new LinkedBlockingQueue<Chunk>();
+    private final BlockingQueue<Chunk> free = new LinkedBlockingQueue<Chunk>();
+    private final int bufferSize;
+    private final Thread writerThread;
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder;
+    private final TextConnectionParameters.FsyncPolicy fsync;
+    private int chunks;
+    private Chunk current;
+    private volatile IOException error;
+    private boolean closed;
+
+    /**
+     * Creates an asynchronous writer.
+     *
+     * @param channel    channel to write bytes to. Closed when this writer is closed.
+     * @param charset    charset name, null means default.
+     * @param bufferSize size of a chunk in characters.
+     * @param fsync      policy for forcing the content to a storage device, only applicable to file channels.
+     */
+    public AsyncWriter(WritableByteChannel channel, String charset, int bufferSize, TextConnectionParameters.FsyncPolicy fsync) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        this.channel = channel;
+        this.bufferSize = bufferSize;
+        this.fsync = fsync;
+        encoder = (charset == null ? Charset.defaultCharset() : Charset.forName(charset)).newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        current = newChunk();
+        writerThread = new Thread(new Runnable() {
+            public void run() {
+                consume();
+            }
+        }, "Scriptella async writer #" + THREAD_COUNTER.incrementAndGet());
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        ensureOpen();
+        if (current.length == bufferSize) {
+            submit();
+        }
+        current.data[current.length++] = (char) c;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (current.length == bufferSize) {
+                submit();
+            }
+            int n = Math.min(len, bufferSize - current.length);
+            System.arraycopy(cbuf, off, current.data, current.length, n);
+            current.length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (current.length == bufferSize) {
+                submit();
+            }
+            int n = Math.min(len, bufferSize - current.length);
+            str.getChars(off, off + n, current.data, current.length);
+            current.length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        barrier(Chunk.FLUSH);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            barrier(Chunk.CLOSE);
+        } finally {
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            IOUtils.closeSilently(channel);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Writer closed");
+        }
+        checkError();
+    }
+
+    private void checkError() throws IOException {
+        IOException e = error;
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    /**
+     * Submits the content of the current chunk and waits until all submitted chunks are processed.
+     */
+    private void barrier(int type) throws IOException {
+        Chunk marker = new Chunk(0);
+        marker.type = type;
+        marker.done = new CountDownLatch(1);
+        try {
+            if (current.length > 0) {
+                submit();
+            }
+        } finally {
+            //The marker is queued even if submit fails, otherwise the writer thread never stops on close
+            filled.add(marker);
+        }
+        try {
+            while (!marker.done.await(CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS) && writerThread.isAlive()) {
+                //Wait for the writer thread
+            }
+        } catch (InterruptedException e) {
+            throw interrupted();
+        }
+        checkError();
+    }
+
+    /**
+     * Passes the current chunk to the writer thread and obtains an empty one.
+     */
+    private void submit() throws IOException {
+        filled.add(current);
+        current = free.poll();
+        if (current == null && chunks < MAX_CHUNKS) {
+            current = newChunk();
+        }
+        try {
+            while (current == null) {
+                checkError();
+                if (!writerThread.isAlive()) {
+                    throw new IOException("Writer thread has terminated");
+                }
+                current = free.poll(CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            throw interrupted();
+        }
+        checkError();
+    }
+
+    private static InterruptedIOException interrupted() {
+        Thread.currentThread().interrupt();
+        return new InterruptedIOException("Interrupted while waiting for the output to be written");
+    }
+
+    private Chunk newChunk() {
+        chunks++;
+        return new Chunk(bufferSize);
+    }
+
+    /**
+     * Writer thread loop.
+     */
+    private void consume() {
+        CharBuffer in = CharBuffer.allocate(bufferSize + 1);
+        ByteBuffer out = ByteBuffer.allocateDirect((int) Math.ceil(in.capacity() * encoder.maxBytesPerChar()));
+        for (; ;) {
+            Chunk c;
+            try {
+                c = filled.take();
+            } catch (InterruptedException e) {
+                error = new InterruptedIOException("Writer thread was interrupted");
+                return;
+            }
+            try {
+                if (error == null) {
+                    switch (c.type) {
+                        case Chunk.DATA:
+                            in.put(c.data, 0, c.length);
+                            in.flip();
+                            encode(in, out, false);
+                            //Unpaired surrogate at the end of the chunk is kept for the next one
+                            in.compact();
+                            break;
+                        case Chunk.FLUSH:
+                            if (fsync == TextConnectionParameters.FsyncPolicy.FLUSH) {
+                                force();
+                            }
+                            break;
+                        case Chunk.CLOSE:
+                            in.flip();
+                            encode(in, out, true);
+                            for (CoderResult r = encoder.flush(out); r.isOverflow(); r = encoder.flush(out)) {
+                                drain(out);
+                            }
+                            drain(out);
+                            if (fsync != TextConnectionParameters.FsyncPolicy.NONE) {
+                                force();
+                            }
+                            break;
+                    }
+                }
+            } catch (IOException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                error = new IOException("Unable to write output", e);
+            }
+            if (c.type == Chunk.DATA) {
+                c.length = 0;
+                free.add(c);
+            } else {
+                c.done.countDown();
+            }
+            if (c.type == Chunk.CLOSE) {
+                return;
+            }
+        }
+    }
+
+    private void encode(CharBuffer in, ByteBuffer out, boolean endOfInput) throws IOException {
+        for (; ;) {
+            CoderResult r = encoder.encode(in, out, endOfInput);
+            if (r.isOverflow()) {
+                drain(out);
+            } else {
+                break;
+            }
+        }
+        drain(out);
+    }
+
+    private void drain(ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    private void force() throws IOException {
+        if (channel instanceof FileChannel) {
+            ((FileChannel) channel).force(false);
+        }
+    }
+
+    /**
+     * Unit of work for the writer thread.
+     */
+    private static class Chunk {
+        static final int DATA = 0;
+        static final int FLUSH = 1;
+        static final int CLOSE = 2;
+        final char[] data;
+        int length;
+        int type = DATA;
+        CountDownLatch done; //Signalled when a barrier is processed
+
+        Chunk(int size) {
+            data = new char[size];
+        }
+    }
+}
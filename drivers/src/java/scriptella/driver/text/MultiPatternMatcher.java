@@ -0,0 +1,426 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.driver.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Literal prefilter for a set of case-insensitive regex patterns.
+ * <p>For each pattern the longest literal which must be present in any match is extracted.
+ * All extracted literals are combined into an Aho-Corasick automaton, so a single pass over a line
+ * finds the patterns which can possibly match it. Only these candidates have to be checked with
+ * a full regex {@link java.util.regex.Matcher#find()}.
+ * <p>Patterns without a required literal (e.g. <code>.*</code> or top-level alternations)
+ * are always reported as candidates.
+ * <p>Literals are matched ignoring ASCII case, which is consistent with
+ * {@link Pattern#CASE_INSENSITIVE} without {@link Pattern#UNICODE_CASE}.
+ * <p><em>Note:</em> This class is not thread safe.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+class MultiPatternMatcher {
+    private final int patternsCount;
+    private final boolean[] candidates;
+    //Indexes of patterns which are always candidates
+    private final int[] unfiltered;
+    //Aho-Corasick automaton in a DFA form. Row size is alphabet size
+    private final int[] transitions;
+    private final int alphabetSize;
+    //Alphabet index for ASCII chars, other chars are looked up in a map
+    private final int[] asciiAlphabet = new int[128];
+    private final Map<Character, Integer> alphabet = new HashMap<Character, Integer>();
+    //Patterns matched in each state(including suffix matches)
+    private final int[][] outputs;
+
+    /**
+     * Creates a matcher for specified patterns.
+     *
+     * @param patterns patterns compiled with {@link Pattern#CASE_INSENSITIVE} flag.
+     */
+    public MultiPatternMatcher(Pattern[] patterns) {
+        patternsCount = patterns.length;
+        candidates = new boolean[patternsCount];
+        String[] literals = new String[patternsCount];
+        List<Integer> unfilteredList = new ArrayList<Integer>();
+        for (int i = 0; i < patternsCount; i++) {
+            String literal = patterns[i].flags() == Pattern.CASE_INSENSITIVE ? extractLiteral(patterns[i].pattern()) : null;
+            if (literal == null) {
+                unfilteredList.add(i);
+            } else {
+                literals[i] = fold(literal);
+            }
+        }
+        unfiltered = new int[unfilteredList.size()];
+        for (int i = 0; i < unfiltered.length; i++) {
+            unfiltered[i] = unfilteredList.get(i);
+        }
+
+        //Building alphabet. Index 0 is reserved for chars not present in literals
+        Arrays.fill(asciiAlphabet, 0);
+        int size = 1;
+        for (String literal : literals) {
+            if (literal == null) {
+                continue;
+            }
+            for (int j = 0; j < literal.length(); j++) {
+                char c = literal.charAt(j);
+                if (c < 128) {
+                    if (asciiAlphabet[c] == 0) {
+                        asciiAlphabet[c] = size++;
+                    }
+                } else if (!alphabet.containsKey(c)) {
+                    alphabet.put(c, size++);
+                }
+            }
+        }
+        alphabetSize = size;
+
+        //Building a trie
+        List<int[]> gotoList = new ArrayList<int[]>();
+        List<List<Integer>> outList = new ArrayList<List<Integer>>();
+        gotoList.add(newRow());
+        outList.add(new ArrayList<Integer>());
+        for (int i = 0; i < patternsCount; i++) {
+            String literal = literals[i];
+            if (literal == null) {
+                continue;
+            }
+            int state = 0;
+            for (int j = 0; j < literal.length(); j++) {
+                int a = alphabetIndex(literal.charAt(j));
+                int next = gotoList.get(state)[a];
+                if (next < 0) {
+                    next = gotoList.size();
+                    gotoList.add(newRow());
+                    outList.add(new ArrayList<Integer>());
+                    gotoList.get(state)[a] = next;
+                }
+                state = next;
+            }
+            outList.get(state).add(i);
+        }
+
+        //Computing failure links in BFS order and converting the trie to a DFA
+        int states = gotoList.size();
+        int[] fail = new int[states];
+        transitions = new int[states * alphabetSize];
+        int[] queue = new int[states];
+        int head = 0, tail = 0;
+        int[] root = gotoList.get(0);
+        for (int a = 0; a < alphabetSize; a++) {
+            int s = root[a];
+            if (s < 0) {
+                transitions[a] = 0;
+            } else {
+                transitions[a] = s;
+                fail[s] = 0;
+                queue[tail++] = s;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            outList.get(state).addAll(outList.get(fail[state]));
+            int[] row = gotoList.get(state);
+            for (int a = 0; a < alphabetSize; a++) {
+                int s = row[a];
+                if (s < 0) {
+                    transitions[state * alphabetSize + a] = transitions[fail[state] * alphabetSize + a];
+                } else {
+                    transitions[state * alphabetSize + a] = s;
+                    fail[s] = transitions[fail[state] * alphabetSize + a];
+                    queue[tail++] = s;
+                }
+            }
+        }
+        outputs = new int[states][];
+        for (int i = 0; i < states; i++) {
+            List<Integer> out = outList.get(i);
+            outputs[i] = new int[out.size()];
+            for (int j = 0; j < outputs[i].length; j++) {
+                outputs[i][j] = out.get(j);
+            }
+        }
+    }
+
+    private int[] newRow() {
+        int[] row = new int[alphabetSize];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    private int alphabetIndex(char c) {
+        if (c < 128) {
+            return asciiAlphabet[c];
+        }
+        Integer ind = alphabet.get(c);
+        return ind == null ? 0 : ind;
+    }
+
+    /**
+     * Finds the patterns which may match the specified line.
+     * <p>The returned array is reused between invocations.
+     *
+     * @param line line to check.
+     * @return array of flags, true value means the pattern with this index is a candidate.
+     */
+    public boolean[] candidates(CharSequence line) {
+        Arrays.fill(candidates, false);
+        for (int i : unfiltered) {
+            candidates[i] = true;
+        }
+        if (unfiltered.length == patternsCount) {
+            return candidates;
+        }
+        int state = 0;
+        for (int i = 0, n = line.length(); i < n; i++) {
+            char c = line.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            state = transitions[state * alphabetSize + alphabetIndex(c)];
+            for (int p : outputs[state]) {
+                candidates[p] = true;
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Folds ASCII characters to lower case.
+     */
+    static String fold(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            sb.append(c >= 'A' && c <= 'Z' ? (char) (c + 'a' - 'A') : c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Extracts the longest literal which must be present in any substring matched by the regex.
+     * <p>Only top-level sequences are analyzed, groups and character classes break a literal.
+     * The extraction is conservative, unsupported constructs produce null result.
+     *
+     * @param regex regular expression.
+     * @return required literal or null if the literal cannot be determined.
+     */
+    static String extractLiteral(String regex) {
+        String best = "";
+        StringBuilder run = new StringBuilder();
+        int n = regex.length();
+        int i = 0;
+        while (i < n) {
+            char c = regex.charAt(i);
+            boolean literal = false;
+            switch (c) {
+                case '\\':
+                    if (i + 1 >= n) {
+                        return null;
+                    }
+                    char e = regex.charAt(i + 1);
+                    if (Character.isLetterOrDigit(e)) {
+                        if (e == 'Q') { //Quoting is not supported
+                            return null;
+                        }
+                        //Metacharacter or escape sequence
+                        i = skipEscape(regex, i);
+                    } else {
+                        run.append(e);
+                        i += 2;
+                        literal = true;
+                    }
+                    break;
+                case '[':
+                    i = skipClass(regex, i);
+                    if (i < 0) {
+                        return null;
+                    }
+                    break;
+                case '(':
+                    if (i + 2 < n && regex.charAt(i + 1) == '?' && Character.isLetter(regex.charAt(i + 2))) {
+                        return null; //Inline flags may change matching semantics
+                    }
+                    i = skipGroup(regex, i);
+                    if (i < 0) {
+                        return null;
+                    }
+                    break;
+                case '|':
+                    return null; //Top-level alternation
+                case ')':
+                    return null;
+                case '.':
+                case '^':
+                case '$':
+                    i++;
+                    break;
+                case '*':
+                case '?':
+                case '{':
+                case '+':
+                    return null; //Dangling quantifier
+                default:
+                    run.append(c);
+                    i++;
+                    literal = true;
+            }
+            //Check if a quantifier follows
+            if (i < n) {
+                char q = regex.charAt(i);
+                if (q == '*' || q == '?' || q == '{' || q == '+') {
+                    if (literal && q != '+') { //The last char is optional
+                        run.setLength(run.length() - 1);
+                    }
+                    best = longest(best, run);
+                    run.setLength(0);
+                    i = skipQuantifier(regex, i);
+                    if (i < 0) {
+                        return null;
+                    }
+                    continue;
+                }
+            }
+            if (!literal) {
+                best = longest(best, run);
+                run.setLength(0);
+            }
+        }
+        best = longest(best, run);
+        return best.length() > 0 ? best : null;
+    }
+
+    private static String longest(String best, StringBuilder run) {
+        return run.length() > best.length() ? run.toString() : best;
+    }
+
+    /**
+     * Skips an escape sequence including its arguments, e.g. <code>\x41</code>, <code>&#92;u0041</code>,
+     * <code>\0101</code>, <code>\cA</code> or <code>\p{Lu}</code>.
+     * Digits after a back reference are skipped too, so they are never treated as a required literal.
+     */
+    private static int skipEscape(String regex, int i) {
+        int n = regex.length();
+        char e = regex.charAt(i + 1);
+        i += 2;
+        if ((e == 'p' || e == 'P' || e == 'x' || e == 'N' || e == 'k') && i < n && regex.charAt(i) == '{'
+                || e == 'k' && i < n && regex.charAt(i) == '<') {
+            char close = regex.charAt(i) == '{' ? '}' : '>';
+            int end = regex.indexOf(close, i);
+            return end < 0 ? n : end + 1;
+        }
+        switch (e) {
+            case 'x':
+                return Math.min(i + 2, n);
+            case 'u':
+                return Math.min(i + 4, n);
+            case 'c':
+                return Math.min(i + 1, n);
+            case '0':
+                //Up to 3 octal digits, the 3-digit form is allowed only if the first digit is at most 3
+                int max = i < n && regex.charAt(i) <= '3' ? 3 : 2;
+                for (int j = 0; j < max && i < n && regex.charAt(i) >= '0' && regex.charAt(i) <= '7'; j++) {
+                    i++;
+                }
+                return i;
+            default:
+                if (e >= '1' && e <= '9') { //Back reference
+                    while (i < n && Character.isDigit(regex.charAt(i))) {
+                        i++;
+                    }
+                }
+                return i;
+        }
+    }
+
+    private static int skipClass(String regex, int i) {
+        int depth = 0;
+        int n = regex.length();
+        for (; i < n; i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                depth++;
+                //A closing bracket right after the opening one (or after negation) is a literal
+                if (i + 1 < n && regex.charAt(i + 1) == '^') {
+                    i++;
+                }
+                if (i + 1 < n && regex.charAt(i + 1) == ']') {
+                    i++;
+                }
+            } else if (c == ']') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int skipGroup(String regex, int i) {
+        int depth = 0;
+        int n = regex.length();
+        for (; i < n; i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < n && regex.charAt(i + 1) == 'Q') {
+                    return -1;
+                }
+                i++;
+            } else if (c == '[') {
+                i = skipClass(regex, i);
+                if (i < 0) {
+                    return -1;
+                }
+                i--;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int skipQuantifier(String regex, int i) {
+        if (regex.charAt(i) == '{') {
+            int end = regex.indexOf('}', i);
+            if (end < 0) {
+                return -1;
+            }
+            i = end + 1;
+        } else {
+            i++;
+        }
+        //Reluctant or possessive modifier
+        if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+            i++;
+        }
+        return i;
+    }
+
+}
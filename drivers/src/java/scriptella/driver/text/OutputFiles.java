@@ -0,0 +1,383 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.driver.text;
+
+import scriptella.expression.CompiledTemplate;
+import scriptella.expression.PropertiesSubstitutor;
+import scriptella.spi.ParametersCallback;
+import scriptella.util.CompressionCodec;
+import scriptella.util.LRUMap;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Manages output files of a text connection.
+ * <p>By default all the output goes to a single file specified by the connection URL. Additionally
+ * the following modes are supported:
+ * <ul>
+ * <li><b>Rolling</b> - when the number of rows or characters in the current file reaches the limit,
+ * the output continues in the next file. The file name is produced by replacing a sequence number pattern
+ * in the URL, e.g. <code>file-%05d.csv</code> produces <code>file-00001.csv</code>, <code>file-00002.csv</code> etc.</li>
+ * <li><b>Partitioning</b> - if the URL contains property references, e.g. <code>${region}.csv</code>, they are
+ * expanded for each row and the row is written to the corresponding file. Partition files are opened lazily,
+ * the number of simultaneously open files is bounded, least recently used files are closed and reopened
+ * in append mode when necessary. Deflate compressed files cannot be appended, so they are never reopened.
+ * Partition values must be specified, must not contain path separators, <code>%</code> or refer to
+ * the parent directory. The number of partitions is limited by {@link #MAX_PARTITIONS}.</li>
+ * </ul>
+ * <p>If an output header is configured, it is written at the beginning of each file.
+ * <p>With <code>async=true</code> each open file has its own writer thread.
+ *
+ * @param <T> type of output produced by the connection for a writer, e.g. CSV writer.
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+public abstract class OutputFiles<T extends Closeable & Flushable> implements Closeable {
+    private static final Logger LOG = Logger.getLogger(OutputFiles.class.getName());
+    static final int DEFAULT_MAX_OPEN_FILES = 64;
+    /**
+     * Maximum number of partitions of an output.
+     * <p>The state of each partition is kept until the connection is closed to append to its file
+     * after the file was closed.
+     */
+    public static final int MAX_PARTITIONS = 100000;
+    //%d or zero padded %05d. %d followed by a hex digit and %2d etc. are URL escapes
+    private static final Pattern SEQUENCE_PTR = Pattern.compile("%(?:0\\d+d|d(?![0-9a-fA-F]))");
+    //% is also rejected, because it starts URL escapes and sequence number patterns
+    private static final String ILLEGAL_PARTITION_CHARS = "/\\?#%";
+
+    private final AbstractTextConnection connection;
+    private final TextConnectionParameters params;
+    private final String urlTemplate;
+    private final boolean partitioned;
+    private final CompiledTemplate partitionTemplate;
+    private final PropertiesSubstitutor partitionSubstitutor;
+    private final Map<String, Target> targets = new HashMap<String, Target>();
+    private final LRUMap<String, Target> openTargets;
+    private Target last;
+    private boolean nullPartition; //true if a partition reference of the current row has no value
+
+    /**
+     * Creates output files for the connection.
+     *
+     * @param connection text connection.
+     */
+    protected OutputFiles(AbstractTextConnection connection) {
+        this.connection = connection;
+        params = connection.getConnectionParameters();
+        URL url = params.getUrl();
+        urlTemplate = url == null ? null : url.toString();
+        partitioned = PropertiesSubstitutor.hasProperties(urlTemplate);
+        partitionTemplate = partitioned ? CompiledTemplate.compile(urlTemplate) : null;
+        partitionSubstitutor = new PropertiesSubstitutor() {
+            @Override
+            protected String toString(Object o) {
+                String s = super.toString(o);
+                if (s == null) {
+                    nullPartition = true;
+                } else {
+                    checkPartitionValue(s);
+                }
+                return s;
+            }
+        };
+        openTargets = new LRUMap<String, Target>(params.getMaxOpenFiles()) {
+            @Override
+            protected void onEldestEntryRemove(Map.Entry<String, Target> eldest) {
+                try {
+                    eldest.getValue().closeOutput();
+                } catch (IOException e) {
+                    throw new TextProviderException("Failed to close output file " + eldest.getKey(), e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates an output for the specified writer.
+     *
+     * @param writer writer for the file.
+     * @return output to use for the file.
+     */
+    protected abstract T newOutput(Writer writer);
+
+    /**
+     * Returns the output for a row.
+     * <p>Opens a file if necessary or switches to the next one if the current file has reached the limit.
+     *
+     * @param parameters row parameters used to determine a partition. May be null if output is not partitioned.
+     * @return output for the row.
+     * @throws IOException if I/O error occurs.
+     */
+    public T get(ParametersCallback parameters) throws IOException {
+        String key = "";
+        if (partitioned) {
+            if (parameters == null) {
+                throw new IllegalArgumentException("Row parameters are required for partitioned output " + urlTemplate);
+            }
+            partitionSubstitutor.setParameters(parameters);
+            nullPartition = false;
+            key = partitionSubstitutor.substitute(partitionTemplate);
+            if (nullPartition) {
+                throw new TextProviderException("Partition property " + partitionTemplate.getNullReference(parameters) +
+                        " of output " + urlTemplate + " has no value");
+            }
+        }
+        Target t = last;
+        if (t == null || !t.key.equals(key)) {
+            t = targets.get(key);
+            if (t == null) {
+                if (targets.size() >= MAX_PARTITIONS) {
+                    throw new TextProviderException("Number of partitions of output " + urlTemplate +
+                            " exceeds " + MAX_PARTITIONS + ". Cannot write to " + key);
+                }
+                t = new Target(key);
+                targets.put(key, t);
+            }
+        }
+        if (params.isRolling() && t.isFull()) {
+            t.closeOutput();
+            openTargets.remove(key);
+            t.next();
+        }
+        if (t.output == null) {
+            t.open();
+            openTargets.put(key, t);
+        } else if (partitioned) {
+            openTargets.get(key); //Update access order
+        }
+        last = t;
+        return t.output;
+    }
+
+    /**
+     * Notifies about rows written to the output returned by the last {@link #get(ParametersCallback)} call.
+     *
+     * @param rows number of written rows.
+     */
+    public void rowsWritten(long rows) {
+        if (last != null) {
+            last.rows += rows;
+        }
+    }
+
+    /**
+     * Flushes the output returned by the last {@link #get(ParametersCallback)} call.
+     *
+     * @throws IOException if I/O error occurs.
+     */
+    public void flush() throws IOException {
+        if (last != null && last.output != null) {
+            last.output.flush();
+        }
+    }
+
+    /**
+     * Closes all open files.
+     *
+     * @throws IOException the first error occured when closing the files.
+     */
+    public void close() throws IOException {
+        IOException error = null;
+        List<Target> open = new ArrayList<Target>(openTargets.values());
+        openTargets.clear();
+        for (Target t : open) {
+            try {
+                t.closeOutput();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                } else {
+                    LOG.log(Level.INFO, "Failed to close output file " + t.key, e);
+                }
+            }
+        }
+        targets.clear();
+        last = null;
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Checks if a partition value can be safely used as a part of a file name.
+     *
+     * @param value value to check.
+     * @throws TextProviderException if the value contains path separators or refers to the parent directory.
+     */
+    static void checkPartitionValue(String value) {
+        boolean illegal = value.equals(".") || value.equals("..");
+        for (int i = 0, n = value.length(); i < n && !illegal; i++) {
+            illegal = ILLEGAL_PARTITION_CHARS.indexOf(value.charAt(i)) >= 0;
+        }
+        if (illegal) {
+            throw new TextProviderException("Partition value \"" + value +
+                    "\" must not contain " + ILLEGAL_PARTITION_CHARS + " characters or refer to a directory");
+        }
+    }
+
+    /**
+     * Checks if the string contains a sequence number pattern, e.g. %05d or %d.
+     * <p>Width must be zero padded, because patterns like %2d are URL escapes.
+     *
+     * @param url URL to check.
+     * @return true if pattern is present.
+     */
+    public static boolean hasSequencePattern(String url) {
+        return url != null && SEQUENCE_PTR.matcher(url).find();
+    }
+
+    /**
+     * Replaces sequence number patterns in the URL with the specified number.
+     */
+    static String formatSequence(String url, int sequence) {
+        Matcher m = SEQUENCE_PTR.matcher(url);
+        StringBuffer sb = new StringBuffer(url.length());
+        while (m.find()) {
+            m.appendReplacement(sb, String.format(m.group(), sequence));
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Output file state. Preserved when the file is closed to allow appending to it later.
+     */
+    private class Target {
+        final String key;
+        int sequence = 1;
+        long rows;
+        long chars;
+        boolean created;
+        CountingWriter writer;
+        T output;
+
+        Target(String key) {
+            this.key = key;
+        }
+
+        boolean isFull() {
+            long rollRows = params.getRollRows();
+            long rollBytes = params.getRollBytes();
+            return (rollRows > 0 && rows >= rollRows) || (rollBytes > 0 && chars() >= rollBytes);
+        }
+
+        long chars() {
+            return writer == null ? chars : chars + writer.count;
+        }
+
+        void next() {
+            sequence++;
+            rows = 0;
+            chars = 0;
+            created = false;
+        }
+
+        void open() throws IOException {
+            Writer w;
+            if (urlTemplate == null) {
+                w = connection.newOutputWriter();
+            } else {
+                String u = partitioned ? key : urlTemplate;
+                if (params.isRolling()) {
+                    u = formatSequence(u, sequence);
+                }
+                //InflaterInputStream reads only the first zlib stream of a file
+                if (created && params.getCompression() == CompressionCodec.DEFLATE) {
+                    throw new TextProviderException("Deflate compressed output file " + u +
+                            " cannot be reopened for appending. Increase " + AbstractTextConnection.MAX_OPEN_FILES +
+                            " to at least the number of partitions");
+                }
+                if (LOG.isLoggable(Level.FINE)) {
+                    LOG.fine((created ? "Reopening" : "Opening") + " output file " + u);
+                }
+                w = connection.newOutputWriter(new URL(u), created);
+            }
+            writer = new CountingWriter(w);
+            if (!created) {
+                String header = params.getOutputHeader();
+                if (header != null) {
+                    writer.write(header);
+                    writer.write(params.getEol());
+                }
+                created = true;
+            }
+            output = newOutput(writer);
+        }
+
+        void closeOutput() throws IOException {
+            if (output != null) {
+                chars += writer.count;
+                T o = output;
+                output = null;
+                writer = null;
+                o.close();
+            }
+        }
+    }
+
+    /**
+     * Counts characters passed to the underlying writer.
+     */
+    private static class CountingWriter extends Writer {
+        private final Writer out;
+        long count;
+
+        CountingWriter(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            out.write(c);
+            count++;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            out.write(cbuf, off, len);
+            count += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            out.write(str, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -25,6 +25,9 @@ import scriptella.util.IOUtils;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.io.Writer;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 /**
  * Represents a connection to a Text file.
@@ -34,7 +37,8 @@ import java.io.Reader;
  * @version 1.0
  */
 public class TextConnection extends AbstractTextConnection {
-    private TextScriptExecutor out;
+    private OutputFiles<TextScriptExecutor> out;
+    private final Map<Resource, TextScriptTemplate> templates = new IdentityHashMap<Resource, TextScriptTemplate>();
 
     /**
      * For testing purposes only.
@@ -48,30 +52,55 @@ public class TextConnection extends AbstractTextConnection {
 
     public void executeScript(final Resource scriptContent, final ParametersCallback parametersCallback) throws ProviderException {
         initOut();
-        Reader reader = null;
+        TextScriptExecutor executor;
         try {
-            reader = scriptContent.open();
-            out.execute(reader, parametersCallback, counter);
+            executor = out.get(parametersCallback);
+        } catch (IOException e) {
+            throw new TextProviderException("Unable to open file " + getConnectionParameters().getUrl() + " for writing", e);
+        }
+        try {
+            long statements = counter.statements;
+            executor.execute(getTemplate(scriptContent), parametersCallback, counter);
+            out.rowsWritten(counter.statements - statements);
             if (getConnectionParameters().isFlush()) {
                 out.flush();
             }
         } catch (IOException e) {
             throw new TextProviderException("Failed to produce a text file", e);
-        } finally {
-            IOUtils.closeSilently(reader);
         }
     }
 
     /**
-     * Lazily initializes script writer.
+     * Returns a compiled script for the resource.
+     * <p>The script is compiled once and reused for subsequent executions.
      */
-    protected void initOut() {
-        if (out == null) {
+    private TextScriptTemplate getTemplate(Resource scriptContent) {
+        TextScriptTemplate template = templates.get(scriptContent);
+        if (template == null) {
+            Reader reader = null;
             try {
-                this.out = new TextScriptExecutor(newOutputWriter(), getConnectionParameters());
+                reader = scriptContent.open();
+                template = TextScriptTemplate.compile(reader, getConnectionParameters());
             } catch (IOException e) {
-                throw new TextProviderException("Unable to open file " + getConnectionParameters().getUrl() + " for writing", e);
+                throw new TextProviderException("Failed reading a script file", e);
+            } finally {
+                IOUtils.closeSilently(reader);
             }
+            templates.put(scriptContent, template);
+        }
+        return template;
+    }
+
+    /**
+     * Lazily initializes script writer.
+     */
+    protected void initOut() {
+        if (out == null) {
+            out = new OutputFiles<TextScriptExecutor>(this) {
+                protected TextScriptExecutor newOutput(Writer writer) {
+                    return new TextScriptExecutor(writer, getConnectionParameters());
+                }
+            };
         }
     }
 
@@ -105,5 +134,6 @@ public class TextConnection extends AbstractTextConnection {
     public void close() throws ProviderException {
         IOUtils.closeSilently(out);
         out = null;
+        templates.clear();
     }
 }
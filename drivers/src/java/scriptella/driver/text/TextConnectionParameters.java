@@ -16,9 +16,11 @@
 
 package scriptella.driver.text;
 
+import scriptella.configuration.ConfigurationException;
 import scriptella.spi.ConnectionParameters;
 import scriptella.text.PropertyFormatInfo;
 import scriptella.text.PropertyFormatter;
+import scriptella.util.CompressionCodec;
 
 import java.net.URL;
 
@@ -37,6 +39,22 @@ public class TextConnectionParameters {
     private int skipLines;
     private boolean trimLines;
     private PropertyFormatter propertyFormatter;
+    private boolean async;
+    private int asyncBufferSize;
+    private FsyncPolicy fsync;
+    private CompressionCodec compression;
+    private int compressionThreads;
+    private long rollRows;
+    private long rollBytes;
+    private String outputHeader;
+    private int maxOpenFiles;
+
+    /**
+     * Policy of forcing the written content to the storage device.
+     */
+    public enum FsyncPolicy {
+        NONE, FLUSH, CLOSE
+    }
 
     protected TextConnectionParameters() {
         encoding = null;
@@ -46,6 +64,12 @@ public class TextConnectionParameters {
         this.skipLines = 0;
         trimLines = true;
         this.propertyFormatter = new PropertyFormatter(PropertyFormatInfo.createEmpty());
+        async = false;
+        asyncBufferSize = AsyncWriter.DEFAULT_BUFFER_SIZE;
+        fsync = FsyncPolicy.NONE;
+        compression = CompressionCodec.NONE;
+        compressionThreads = 1;
+        maxOpenFiles = OutputFiles.DEFAULT_MAX_OPEN_FILES;
     }
 
     public TextConnectionParameters(ConnectionParameters parameters) {
@@ -60,6 +84,41 @@ public class TextConnectionParameters {
         skipLines = parameters.getIntegerProperty(AbstractTextConnection.SKIP_LINES, 0);
         trimLines = parameters.getBooleanProperty(AbstractTextConnection.TRIM, true);
         propertyFormatter = new PropertyFormatter(PropertyFormatInfo.parse(parameters, AbstractTextConnection.FORMAT_PREFIX));
+        async = url != null && parameters.getBooleanProperty(AbstractTextConnection.ASYNC, false);
+        asyncBufferSize = parameters.getIntegerProperty(AbstractTextConnection.ASYNC_BUFFER_SIZE, AsyncWriter.DEFAULT_BUFFER_SIZE);
+        if (asyncBufferSize <= 0) {
+            throw new ConfigurationException(AbstractTextConnection.ASYNC_BUFFER_SIZE + " must be positive");
+        }
+        String fsyncStr = parameters.getStringProperty(AbstractTextConnection.FSYNC);
+        if (fsyncStr == null) {
+            fsync = FsyncPolicy.NONE;
+        } else {
+            try {
+                fsync = FsyncPolicy.valueOf(fsyncStr.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new ConfigurationException("Unsupported " + AbstractTextConnection.FSYNC + " value " + fsyncStr +
+                        ". Valid values are none, flush or close");
+            }
+        }
+        try {
+            compression = CompressionCodec.forNameOrUrl(parameters.getStringProperty(AbstractTextConnection.COMPRESSION), url);
+        } catch (IllegalArgumentException e) {
+            throw new ConfigurationException(e.getMessage());
+        }
+        compressionThreads = parameters.getIntegerProperty(AbstractTextConnection.COMPRESSION_THREADS, 1);
+        if (compressionThreads <= 0) {
+            throw new ConfigurationException(AbstractTextConnection.COMPRESSION_THREADS + " must be positive");
+        }
+        rollRows = parameters.getNumberProperty(AbstractTextConnection.ROLL_ROWS, 0).longValue();
+        rollBytes = parameters.getNumberProperty(AbstractTextConnection.ROLL_BYTES, 0).longValue();
+        if (isRolling() && (url == null || !OutputFiles.hasSequencePattern(url.toString()))) {
+            throw new ConfigurationException("Rolling output requires a sequence number pattern in the URL, e.g. file-%05d.csv");
+        }
+        outputHeader = parameters.getStringProperty(AbstractTextConnection.OUTPUT_HEADER);
+        maxOpenFiles = parameters.getIntegerProperty(AbstractTextConnection.MAX_OPEN_FILES, OutputFiles.DEFAULT_MAX_OPEN_FILES);
+        if (maxOpenFiles <= 0) {
+            throw new ConfigurationException(AbstractTextConnection.MAX_OPEN_FILES + " must be positive");
+        }
     }
 
     public ConnectionParameters getConnectionParameters() {
@@ -123,4 +182,103 @@ public class TextConnectionParameters {
     public void setTrimLines(boolean trimLines) {
         this.trimLines = trimLines;
     }
+
+    /**
+     * Returns true if the output should be written by a dedicated thread.
+     * <p>Asynchronous mode is never used for the console output.
+     *
+     * @return true if asynchronous output is enabled.
+     */
+    public boolean isAsync() {
+        return async;
+    }
+
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    public int getAsyncBufferSize() {
+        return asyncBufferSize;
+    }
+
+    public void setAsyncBufferSize(int asyncBufferSize) {
+        this.asyncBufferSize = asyncBufferSize;
+    }
+
+    public FsyncPolicy getFsync() {
+        return fsync;
+    }
+
+    public void setFsync(FsyncPolicy fsync) {
+        this.fsync = fsync;
+    }
+
+    /**
+     * Returns compression codec of the file.
+     *
+     * @return configured or detected by URL compression codec.
+     */
+    public CompressionCodec getCompression() {
+        return compression;
+    }
+
+    public void setCompression(CompressionCodec compression) {
+        this.compression = compression;
+    }
+
+    public int getCompressionThreads() {
+        return compressionThreads;
+    }
+
+    public void setCompressionThreads(int compressionThreads) {
+        this.compressionThreads = compressionThreads;
+    }
+
+    /**
+     * @return maximum number of rows in a file, 0 means no limit.
+     */
+    public long getRollRows() {
+        return rollRows;
+    }
+
+    public void setRollRows(long rollRows) {
+        this.rollRows = rollRows;
+    }
+
+    /**
+     * @return approximate maximum number of characters in a file, 0 means no limit.
+     */
+    public long getRollBytes() {
+        return rollBytes;
+    }
+
+    public void setRollBytes(long rollBytes) {
+        this.rollBytes = rollBytes;
+    }
+
+    /**
+     * @return true if output should be split into a sequence of files.
+     */
+    public boolean isRolling() {
+        return rollRows > 0 || rollBytes > 0;
+    }
+
+    /**
+     * @return line to write at the beginning of each output file or null.
+     */
+    public String getOutputHeader() {
+        return outputHeader;
+    }
+
+    public void setOutputHeader(String outputHeader) {
+        this.outputHeader = outputHeader;
+    }
+
+    public int getMaxOpenFiles() {
+        return maxOpenFiles;
+    }
+
+    public void setMaxOpenFiles(int maxOpenFiles) {
+        this.maxOpenFiles = maxOpenFiles;
+    }
 }
@@ -67,6 +67,8 @@ import java.util.regex.Pattern;
  * </tr>
  * </table>
  * Where column name corresponds to the matched regex group name.
+ * <p>Lines are prefiltered by literals extracted from the query patterns,
+ * see {@link MultiPatternMatcher}.
  *
  * @author Fyodor Kupolov
  * @version 1.0
@@ -77,6 +79,7 @@ class TextQueryExecutor implements ParametersCallback {
 
     private final PropertiesSubstitutor ps;
     private Pattern[] query;
+    private MultiPatternMatcher prefilter;
     private Matcher result;
     private TextConnectionParameters textParams;
 
@@ -110,6 +113,7 @@ class TextQueryExecutor implements ParametersCallback {
             result.add(Pattern.compile(".*"));
         }
         query = result.toArray(new Pattern[result.size()]);
+        prefilter = new MultiPatternMatcher(query);
     }
 
     /**
@@ -129,7 +133,11 @@ class TextQueryExecutor implements ParametersCallback {
         }
         while (it.hasNext()) {
             String line = it.next();
+            boolean[] candidates = prefilter.candidates(line);
             for (int i = 0; i < qCount; i++) {
+                if (!candidates[i]) { //Required literal is missing, skip the regex
+                    continue;
+                }
                 Matcher m = matchers[i];
                 if (m == null) { //First time initialization
                     m = query[i].matcher(line);
@@ -21,7 +21,6 @@ import scriptella.spi.AbstractConnection;
 import scriptella.spi.ParametersCallback;
 import scriptella.util.IOUtils;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.Closeable;
 import java.io.Flushable;
@@ -65,7 +64,6 @@ import java.io.Writer;
  */
 public class TextScriptExecutor implements Closeable, Flushable {
     private BufferedWriter out;
-    private PropertiesSubstitutor ps;
     private TextConnectionParameters textParams;
 
     /**
@@ -75,7 +73,6 @@ public class TextScriptExecutor implements Closeable, Flushable {
      * @param textParams text connection parameters.
      */
     public TextScriptExecutor(Writer out, TextConnectionParameters textParams) {
-        ps = new PropertiesSubstitutor();
         this.out = IOUtils.asBuffered(out);
         this.textParams = textParams;
     }
@@ -88,29 +85,29 @@ public class TextScriptExecutor implements Closeable, Flushable {
      * @param counter statements counter.
      */
     public void execute(Reader reader, ParametersCallback pc, AbstractConnection.StatementCounter counter) {
-        ps.setParameters(textParams.getPropertyFormatter().format(pc));
-        BufferedReader r = IOUtils.asBuffered(reader);
-        final boolean trimLines = textParams.isTrimLines();
+        TextScriptTemplate template;
         try {
-            for (String line; (line = r.readLine()) != null;) {
-                EtlCancelledException.checkEtlCancelled();
-                if (trimLines) {
-                    line = line.trim();
-                }
-                //If trimming is disabled (keeping format) or if line is not empty 
-                if (!trimLines || line.length() > 0) {
-                    try {
-                        out.write(ps.substitute(line));
-                        out.write(textParams.getEol());
-                        counter.statements++;
-                    } catch (IOException e) {
-                        throw new TextProviderException("Failed writing to a text file", e);
-                    }
-                }
-            }
+            template = TextScriptTemplate.compile(reader, textParams);
         } catch (IOException e) {
             throw new TextProviderException("Failed reading a script file", e);
         }
+        execute(template, pc, counter);
+    }
+
+    /**
+     * Produces the output for a compiled script.
+     *
+     * @param template compiled script content.
+     * @param pc       parameters for substitution.
+     * @param counter  statements counter.
+     */
+    void execute(TextScriptTemplate template, ParametersCallback pc, AbstractConnection.StatementCounter counter) {
+        EtlCancelledException.checkEtlCancelled();
+        try {
+            counter.statements += template.render(textParams.getPropertyFormatter().format(pc), out);
+        } catch (IOException e) {
+            throw new TextProviderException("Failed writing to a text file", e);
+        }
     }
 
 
@@ -121,6 +118,5 @@ public class TextScriptExecutor implements Closeable, Flushable {
     public void close() throws IOException {
         IOUtils.closeSilently(out);
         out = null;
-        ps = null;
     }
 }
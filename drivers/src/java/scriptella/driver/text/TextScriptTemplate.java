@@ -0,0 +1,88 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.driver.text;
+
+import scriptella.expression.CompiledTemplate;
+import scriptella.expression.PropertiesSubstitutor;
+import scriptella.spi.ParametersCallback;
+import scriptella.util.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Compiled text script.
+ * <p>The script is compiled once into a single {@link CompiledTemplate} of literal text and
+ * property/expression references. Lines are trimmed and empty lines are skipped at compile time
+ * according to the connection parameters, EOL suffixes are merged into literal segments.
+ * Rendering simply writes segments to the output.
+ * <p>Substitution rules are the same as in {@link PropertiesSubstitutor}, i.e. if a reference has no value
+ * it is written as is.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+class TextScriptTemplate {
+    private final CompiledTemplate template;
+    private final int lines;
+
+    private TextScriptTemplate(CompiledTemplate template, int lines) {
+        this.template = template;
+        this.lines = lines;
+    }
+
+    /**
+     * Compiles a text script.
+     *
+     * @param reader     script content.
+     * @param textParams connection parameters.
+     * @return compiled script.
+     * @throws IOException if I/O error occurs.
+     */
+    public static TextScriptTemplate compile(Reader reader, TextConnectionParameters textParams) throws IOException {
+        final boolean trimLines = textParams.isTrimLines();
+        final String eol = textParams.getEol();
+        BufferedReader r = IOUtils.asBuffered(reader);
+        CompiledTemplate.Builder builder = new CompiledTemplate.Builder();
+        int lines = 0;
+        for (String line; (line = r.readLine()) != null;) {
+            if (trimLines) {
+                line = line.trim();
+            }
+            //If trimming is disabled (keeping format) or if line is not empty
+            if (!trimLines || line.length() > 0) {
+                builder.append(line).appendLiteral(eol);
+                lines++;
+            }
+        }
+        return new TextScriptTemplate(builder.build(), lines);
+    }
+
+    /**
+     * Writes the script content for the specified parameters.
+     *
+     * @param params parameters to substitute.
+     * @param out    output writer.
+     * @return number of produced lines.
+     * @throws IOException if I/O error occurs.
+     */
+    public int render(ParametersCallback params, Writer out) throws IOException {
+        template.render(params, out);
+        return lines;
+    }
+}
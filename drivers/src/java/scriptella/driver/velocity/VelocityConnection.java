@@ -15,10 +15,12 @@
  */
 package scriptella.driver.velocity;
 
-import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.context.Context;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeInstance;
 import org.apache.velocity.runtime.RuntimeServices;
 import org.apache.velocity.runtime.log.LogSystem;
+import org.apache.velocity.runtime.parser.node.SimpleNode;
 import scriptella.driver.text.AbstractTextConnection;
 import scriptella.spi.ConnectionParameters;
 import scriptella.spi.ParametersCallback;
@@ -32,6 +34,7 @@ import java.io.Reader;
 import java.io.Writer;
 import java.net.URL;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.logging.Level;
 
@@ -39,8 +42,9 @@ import java.util.logging.Level;
  * Represents a session to velocity engine.
  */
 public class VelocityConnection extends AbstractTextConnection {
-    private final VelocityEngine engine;
+    private final RuntimeInstance engine;
     private final VelocityContextAdapter adapter;
+    private final Map<Resource, SimpleNode> templates = new IdentityHashMap<Resource, SimpleNode>();
     private Writer writer;//lazy initialized
 
     /**
@@ -50,8 +54,8 @@ public class VelocityConnection extends AbstractTextConnection {
      */
     public VelocityConnection(ConnectionParameters parameters) {
         super(Driver.DIALECT, parameters);
-        engine = new VelocityEngine();
-        engine.setProperty(VelocityEngine.RUNTIME_LOG_LOGSYSTEM, LOG_SYSTEM);
+        engine = new RuntimeInstance();
+        engine.setProperty(RuntimeConstants.RUNTIME_LOG_LOGSYSTEM, LOG_SYSTEM);
         engine.setProperty("velocimacro.library", "");//unnecessary file in our case
         try {
             engine.init();
@@ -63,8 +67,8 @@ public class VelocityConnection extends AbstractTextConnection {
 
     /**
      * Executes a script specified by its content.
-     * <p>scriptContent may be used as a key for caching purposes, i.e.
-     * provider may precompile scripts and use compiled versions for subsequent executions.
+     * <p>scriptContent is used as a key for caching purposes, i.e. the template is parsed
+     * on the first execution and the parsed tree is merged for subsequent executions.
      * <p>This method is synchronized to to prevent multiple threads from working with the same writer.
      * Additionally single velocityEngine and context adapter instances are used.
      *
@@ -72,15 +76,14 @@ public class VelocityConnection extends AbstractTextConnection {
      * @param parametersCallback callback to get parameter values.
      */
     public void executeScript(Resource scriptContent, ParametersCallback parametersCallback) throws ProviderException {
-        //todo Current solution is slow, use per scriptContent caching by providing a custom Velocity ResourceLoader
-        //todo also make Resource identifiable, i.e. replace url.getFile with resource name/location
+        //todo make Resource identifiable, i.e. replace url.getFile with resource name/location
         adapter.setCallback(parametersCallback);//we may use single context+engine because method is synchronized
-        Reader reader = null;
         try {
-            reader = scriptContent.open();
-            Writer w = getWriter();
             final URL url = getConnectionParameters().getUrl();
-            engine.evaluate(adapter, w, url == null ? "System.out" : url.getFile(), reader);
+            final String logTag = url == null ? "System.out" : url.getFile();
+            SimpleNode template = getTemplate(scriptContent, logTag);
+            Writer w = getWriter();
+            engine.render(adapter, w, logTag, template);
             if (getConnectionParameters().isFlush()) {
                 w.flush();
             }
@@ -88,10 +91,28 @@ public class VelocityConnection extends AbstractTextConnection {
             throw new VelocityProviderException("Unable to execute script", e);
         } finally {
             adapter.setCallback(null);//cleaning up to avoid mem leaks
-            IOUtils.closeSilently(reader);
         }
     }
 
+    /**
+     * Returns a parsed template for the resource.
+     * <p>The template is parsed once and reused for subsequent executions.
+     */
+    private SimpleNode getTemplate(Resource scriptContent, String logTag) throws Exception {
+        SimpleNode template = templates.get(scriptContent);
+        if (template == null) {
+            Reader reader = null;
+            try {
+                reader = scriptContent.open();
+                template = engine.parse(reader, logTag);
+            } finally {
+                IOUtils.closeSilently(reader);
+            }
+            templates.put(scriptContent, template);
+        }
+        return template;
+    }
+
     /**
      * Executes a query specified by its content.
      * <p/>
@@ -120,6 +141,7 @@ public class VelocityConnection extends AbstractTextConnection {
      * Closes the connection and releases all related resources.
      */
     public synchronized void close() throws ProviderException {
+        templates.clear();
         if (writer != null) {
             IOUtils.closeSilently(writer);
             writer = null;
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.driver.xml;
+
+import scriptella.driver.text.AbstractTextConnection;
+import scriptella.spi.ConnectionParameters;
+import scriptella.spi.ParametersCallback;
+import scriptella.spi.ProviderException;
+import scriptella.spi.QueryCallback;
+import scriptella.spi.Resource;
+import scriptella.util.IOUtils;
+import scriptella.util.StringUtils;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Represents a connection to an XML file produced by {@link XMLStreamWriter}.
+ * <p>The output file is opened on the first script execution and all scripts append their elements to
+ * the document. The document is completed when the connection is closed.
+ * <p>If <code>root</code> is not specified, scripts may produce only one top-level element and no text outside
+ * of it, otherwise the document would not be well-formed. If <code>root</code> is specified and no scripts
+ * were executed, an empty root element is written on close.
+ * <p>For configuration details and examples see <a href="package-summary.html">overview page</a>.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+public class XmlConnection extends AbstractTextConnection {
+    /**
+     * Name of the <code>root</code> connection property.
+     * Name of the document element which encloses the content produced by scripts.
+     */
+    public static final String ROOT = "root";
+
+    private static final XMLOutputFactory XOF = XMLOutputFactory.newInstance();
+    private final Map<Resource, XmlScriptTemplate> templates = new IdentityHashMap<Resource, XmlScriptTemplate>();
+    private final String root;
+    private Writer writer; //lazy initialized
+    private XMLStreamWriter out;
+    private int elements; //number of top-level elements written without root
+
+    /**
+     * Instantiates an XML connection.
+     *
+     * @param parameters connection parameters.
+     */
+    public XmlConnection(ConnectionParameters parameters) {
+        super(Driver.DIALECT, parameters);
+        root = parameters.getStringProperty(ROOT);
+    }
+
+    public void executeScript(Resource scriptContent, ParametersCallback parametersCallback) throws ProviderException {
+        XmlScriptTemplate template = getTemplate(scriptContent);
+        if (StringUtils.isEmpty(root)) {
+            if (template.hasTopLevelText() || elements + template.getElementsCount() > 1) {
+                throw new XmlProviderException("Only one top-level element can be produced if " + ROOT +
+                        " property is not specified");
+            }
+            elements += template.getElementsCount();
+        }
+        try {
+            XMLStreamWriter w = getOut();
+            counter.statements += template.render(getConnectionParameters().getPropertyFormatter().format(parametersCallback), w);
+            if (getConnectionParameters().isFlush()) {
+                w.flush();
+                writer.flush();
+            }
+        } catch (XMLStreamException e) {
+            throw new XmlProviderException("Failed to produce an XML file", e);
+        } catch (IOException e) {
+            throw new XmlProviderException("Failed to produce an XML file", e);
+        }
+    }
+
+    /**
+     * Returns a compiled script for the resource.
+     * <p>The script is compiled once and reused for subsequent executions.
+     */
+    private XmlScriptTemplate getTemplate(Resource scriptContent) {
+        XmlScriptTemplate template = templates.get(scriptContent);
+        if (template == null) {
+            try {
+                template = XmlScriptTemplate.compile(IOUtils.toString(scriptContent.open()),
+                        getConnectionParameters().isTrimLines());
+            } catch (IOException e) {
+                throw new XmlProviderException("Failed reading a script file", e);
+            }
+            templates.put(scriptContent, template);
+        }
+        return template;
+    }
+
+    public void executeQuery(Resource queryContent, ParametersCallback parametersCallback, QueryCallback queryCallback) throws ProviderException {
+        throw new XmlProviderException("Queries are not supported by XML driver. Use XPath driver to query XML files");
+    }
+
+    /**
+     * Lazily opens the output and writes the XML declaration and the root element.
+     */
+    private XMLStreamWriter getOut() throws XMLStreamException {
+        if (out == null) {
+            try {
+                writer = IOUtils.asBuffered(newOutputWriter());
+            } catch (IOException e) {
+                throw new XmlProviderException("Unable to open URL " + getConnectionParameters().getUrl() + " for output", e);
+            }
+            out = XOF.createXMLStreamWriter(writer);
+            String encoding = getConnectionParameters().getEncoding();
+            out.writeStartDocument(encoding == null ? Charset.defaultCharset().name() : encoding, "1.0");
+            if (!StringUtils.isEmpty(root)) {
+                out.writeStartElement(root);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Completes the document and closes the output.
+     * <p>If root is specified the document is written even if no scripts were executed.
+     */
+    public void close() throws ProviderException {
+        templates.clear();
+        if (out == null && StringUtils.isEmpty(root)) {
+            return;
+        }
+        try {
+            getOut();
+            if (!StringUtils.isEmpty(root)) {
+                out.writeEndElement();
+            }
+            out.writeEndDocument();
+            out.close(); //Does not close the underlying writer
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new XmlProviderException("Failed to complete an XML file", e);
+        } catch (IOException e) {
+            throw new XmlProviderException("Failed to complete an XML file", e);
+        } finally {
+            IOUtils.closeSilently(writer);
+            out = null;
+            writer = null;
+        }
+    }
+}
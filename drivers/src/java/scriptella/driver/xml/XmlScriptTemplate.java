@@ -0,0 +1,255 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.driver.xml;
+
+import scriptella.expression.CompiledTemplate;
+import scriptella.spi.ParametersCallback;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiled XML script.
+ * <p>The script content is an XML fragment, i.e. a sequence of elements, which is parsed once.
+ * Attribute values and text are compiled into {@link CompiledTemplate templates}, element names are static.
+ * Rendering replays the parsed fragment to {@link XMLStreamWriter}, so elements written by the script are always
+ * balanced and substituted values are escaped by the writer.
+ * <p>Substitution rules are the same as in {@link scriptella.expression.PropertiesSubstitutor},
+ * i.e. if a reference has no value it is written as is. Values are formatted by the callback passed
+ * to {@link #render(ParametersCallback, XMLStreamWriter)}.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+class XmlScriptTemplate {
+    private static final XMLInputFactory XIF = createInputFactory();
+    private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+    private static final String FRAGMENT = "fragment";
+    private static final Object END = new Object();
+    /**
+     * Sequence of {@link StartElement}, {@link #END}, {@link Text} and {@link Comment} instances.
+     */
+    private final Object[] ops;
+    private final int elements;
+    private final boolean topLevelText;
+
+    private XmlScriptTemplate(Object[] ops, int elements, boolean topLevelText) {
+        this.ops = ops;
+        this.elements = elements;
+        this.topLevelText = topLevelText;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory f = XMLInputFactory.newInstance();
+        f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        f.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        if (f.isPropertySupported(REPORT_CDATA)) { //JDK parser reports CDATA as characters by default
+            f.setProperty(REPORT_CDATA, Boolean.TRUE);
+        }
+        return f;
+    }
+
+    /**
+     * Compiles an XML script.
+     *
+     * @param content script content.
+     * @param trim    true if text should be trimmed and whitespace-only text should be skipped.
+     * @return compiled script.
+     * @throws XmlProviderException if the script is not a well-formed XML fragment.
+     */
+    public static XmlScriptTemplate compile(String content, boolean trim) throws XmlProviderException {
+        List<Object> ops = new ArrayList<Object>();
+        int elements = 0;
+        boolean topLevelText = false;
+        XMLStreamReader r = null;
+        try {
+            //The content is wrapped into an element to allow multiple top-level elements
+            r = XIF.createXMLStreamReader(new StringReader('<' + FRAGMENT + '>' + content + "</" + FRAGMENT + '>'));
+            int depth = 0;
+            StringBuilder text = new StringBuilder();
+            while (r.hasNext()) {
+                int event = r.next();
+                //Adjacent character events are merged, CDATA sections are kept
+                if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.SPACE) {
+                    text.append(r.getTextCharacters(), r.getTextStart(), r.getTextLength());
+                    continue;
+                }
+                if (text.length() > 0) {
+                    String s = trim ? text.toString().trim() : text.toString();
+                    if (s.length() > 0) {
+                        ops.add(new Text(s, false));
+                        topLevelText |= depth == 1;
+                    }
+                    text.setLength(0);
+                }
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        if (depth++ > 0) {
+                            ops.add(new StartElement(r));
+                            if (depth == 2) {
+                                elements++;
+                            }
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (--depth > 0) {
+                            ops.add(END);
+                        }
+                        break;
+                    case XMLStreamConstants.CDATA:
+                        ops.add(new Text(r.getText(), true));
+                        topLevelText |= depth == 1;
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        ops.add(new Comment(r.getText()));
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new XmlProviderException("XML script is not a well-formed XML fragment: " + e.getMessage(), e);
+        } finally {
+            if (r != null) {
+                try {
+                    r.close();
+                } catch (XMLStreamException e) {
+                    //Ignore
+                }
+            }
+        }
+        return new XmlScriptTemplate(ops.toArray(), elements, topLevelText);
+    }
+
+    /**
+     * @return number of top-level elements produced by each execution of the script.
+     */
+    public int getElementsCount() {
+        return elements;
+    }
+
+    /**
+     * @return true if the script has text or CDATA outside of elements.
+     */
+    public boolean hasTopLevelText() {
+        return topLevelText;
+    }
+
+    /**
+     * Writes the script content for the specified parameters.
+     *
+     * @param params parameters to substitute.
+     * @param out    output writer.
+     * @return number of produced top-level elements.
+     * @throws XMLStreamException if output fails.
+     */
+    public int render(ParametersCallback params, XMLStreamWriter out) throws XMLStreamException {
+        for (Object op : ops) {
+            if (op == END) {
+                out.writeEndElement();
+            } else if (op instanceof StartElement) {
+                ((StartElement) op).render(params, out);
+            } else if (op instanceof Text) {
+                ((Text) op).render(params, out);
+            } else {
+                out.writeComment(((Comment) op).text);
+            }
+        }
+        return elements;
+    }
+
+    private static final class StartElement {
+        final String prefix;
+        final String localName;
+        final String namespaceURI;
+        final String[] namespaces; //prefix, URI pairs
+        final String[] attributes; //prefix, local name, URI triples
+        final CompiledTemplate[] values;
+
+        StartElement(XMLStreamReader r) {
+            prefix = nullToEmpty(r.getPrefix());
+            localName = r.getLocalName();
+            namespaceURI = nullToEmpty(r.getNamespaceURI());
+            int n = r.getNamespaceCount();
+            namespaces = new String[n * 2];
+            for (int i = 0; i < n; i++) {
+                namespaces[i * 2] = nullToEmpty(r.getNamespacePrefix(i));
+                namespaces[i * 2 + 1] = nullToEmpty(r.getNamespaceURI(i));
+            }
+            n = r.getAttributeCount();
+            attributes = new String[n * 3];
+            values = new CompiledTemplate[n];
+            for (int i = 0; i < n; i++) {
+                attributes[i * 3] = nullToEmpty(r.getAttributePrefix(i));
+                attributes[i * 3 + 1] = r.getAttributeLocalName(i);
+                attributes[i * 3 + 2] = nullToEmpty(r.getAttributeNamespace(i));
+                values[i] = CompiledTemplate.compile(r.getAttributeValue(i));
+            }
+        }
+
+        void render(ParametersCallback params, XMLStreamWriter out) throws XMLStreamException {
+            out.writeStartElement(prefix, localName, namespaceURI);
+            for (int i = 0; i < namespaces.length; i += 2) {
+                if (namespaces[i].length() == 0) {
+                    out.writeDefaultNamespace(namespaces[i + 1]);
+                } else {
+                    out.writeNamespace(namespaces[i], namespaces[i + 1]);
+                }
+            }
+            for (int i = 0; i < values.length; i++) {
+                out.writeAttribute(attributes[i * 3], attributes[i * 3 + 2], attributes[i * 3 + 1],
+                        values[i].render(params));
+            }
+        }
+    }
+
+    private static final class Text {
+        final CompiledTemplate template;
+        final boolean cdata;
+
+        Text(String text, boolean cdata) {
+            template = CompiledTemplate.compile(text);
+            this.cdata = cdata;
+        }
+
+        void render(ParametersCallback params, XMLStreamWriter out) throws XMLStreamException {
+            String s = template.render(params);
+            if (cdata && s.indexOf("]]>") < 0) { //substituted value may terminate the section
+                out.writeCData(s);
+            } else {
+                out.writeCharacters(s);
+            }
+        }
+    }
+
+    private static final class Comment {
+        final String text;
+
+        Comment(String text) {
+            this.text = text;
+        }
+    }
+
+    private static String nullToEmpty(String s) {
+        return s == null ? "" : s;
+    }
+}
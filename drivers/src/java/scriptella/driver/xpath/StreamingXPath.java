@@ -0,0 +1,236 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.driver.xpath;
+
+import javax.xml.stream.XMLStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Forward-only subset of XPath which can be evaluated on a stream of XML elements.
+ * <p>Supported expressions are absolute location paths consisting of child (<code>/</code>)
+ * and descendant (<code>//</code>) steps. A step is an element name or <code>*</code> optionally followed
+ * by attribute predicates: <code>[@attr]</code>, <code>[@attr='value']</code> or <code>[@attr!='value']</code>.
+ * <p><u>Examples:</u> <code>/catalog/item</code>, <code>//item[@type='book']</code>,
+ * <code>/export//record[@id][@status!='deleted']</code>.
+ * <p>Matching is performed by a state machine: the state of an element is a set of steps which may be matched
+ * by its children. The state is represented as a bit mask, so the number of steps is limited by 63.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+final class StreamingXPath {
+    private static final int MAX_STEPS = 63;
+    private final String expression;
+    private final Step[] steps;
+
+    private StreamingXPath(String expression, Step[] steps) {
+        this.expression = expression;
+        this.steps = steps;
+    }
+
+    /**
+     * Compiles an XPath expression.
+     *
+     * @param expression XPath expression.
+     * @return compiled expression.
+     * @throws XPathProviderException if expression is not supported.
+     */
+    static StreamingXPath compile(String expression) throws XPathProviderException {
+        String s = expression.trim();
+        List<Step> steps = new ArrayList<Step>();
+        int pos = 0;
+        int n = s.length();
+        if (n == 0 || s.charAt(0) != '/') {
+            throw unsupported(expression, "Only absolute location paths are supported");
+        }
+        while (pos < n) {
+            if (s.charAt(pos) != '/') {
+                throw unsupported(expression, "Step separator expected at position " + pos);
+            }
+            pos++;
+            boolean descendant = pos < n && s.charAt(pos) == '/';
+            if (descendant) {
+                pos++;
+            }
+            int start = pos;
+            while (pos < n && isNameChar(s.charAt(pos))) {
+                pos++;
+            }
+            String name = s.substring(start, pos);
+            if (name.length() == 0 || name.charAt(0) == '.' || name.charAt(0) == '-') {
+                throw unsupported(expression, "Element name expected at position " + start);
+            }
+            List<Predicate> predicates = new ArrayList<Predicate>();
+            while (pos < n && s.charAt(pos) == '[') {
+                int end = s.indexOf(']', pos);
+                if (end < 0) {
+                    throw unsupported(expression, "Unterminated predicate at position " + pos);
+                }
+                predicates.add(Predicate.parse(expression, s.substring(pos + 1, end).trim()));
+                pos = end + 1;
+            }
+            steps.add(new Step(name, descendant, predicates.toArray(new Predicate[predicates.size()])));
+        }
+        if (steps.size() > MAX_STEPS) {
+            throw unsupported(expression, "Too many steps");
+        }
+        return new StreamingXPath(expression, steps.toArray(new Step[steps.size()]));
+    }
+
+    private static boolean isNameChar(char c) {
+        return c == '*' || c == ':' || c == '-' || c == '_' || c == '.' || Character.isLetterOrDigit(c);
+    }
+
+    private static XPathProviderException unsupported(String expression, String reason) {
+        return new XPathProviderException("XPath query \"" + expression.trim() +
+                "\" is not supported in streaming mode. " + reason +
+                ". Supported syntax: /a/b, //b, /a//b[@attr], /a/*[@attr='value']");
+    }
+
+    /**
+     * @return initial state for the document node.
+     */
+    long initialState() {
+        return 1L;
+    }
+
+    /**
+     * Computes the state of an element.
+     *
+     * @param parentState state of the parent element.
+     * @param reader      reader positioned at the start of the element.
+     * @return state of the element.
+     */
+    long childState(long parentState, XMLStreamReader reader) {
+        long state = 0;
+        for (int i = 0; i < steps.length; i++) {
+            if ((parentState & (1L << i)) != 0) {
+                Step step = steps[i];
+                if (step.descendant) { //Descendant steps may also be matched deeper
+                    state |= 1L << i;
+                }
+                if (step.matches(reader)) {
+                    state |= 1L << (i + 1);
+                }
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Checks if an element with the specified state is selected by the expression.
+     */
+    boolean isMatch(long state) {
+        return (state & (1L << steps.length)) != 0;
+    }
+
+    public String toString() {
+        return expression;
+    }
+
+    private static final class Step {
+        final String name;
+        final boolean descendant;
+        final Predicate[] predicates;
+
+        Step(String name, boolean descendant, Predicate[] predicates) {
+            this.name = name;
+            this.descendant = descendant;
+            this.predicates = predicates;
+        }
+
+        boolean matches(XMLStreamReader reader) {
+            if (!"*".equals(name) && !nameMatches(name, reader.getPrefix(), reader.getLocalName())) {
+                return false;
+            }
+            for (Predicate p : predicates) {
+                if (!p.matches(reader)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Predicate {
+        final String attribute;
+        final String value;
+        final boolean negated;
+
+        Predicate(String attribute, String value, boolean negated) {
+            this.attribute = attribute;
+            this.value = value;
+            this.negated = negated;
+        }
+
+        static Predicate parse(String expression, String p) {
+            if (!p.startsWith("@")) {
+                throw unsupported(expression, "Only attribute predicates are supported: [" + p + "]");
+            }
+            int eq = p.indexOf('=');
+            if (eq < 0) {
+                return new Predicate(checkName(expression, p.substring(1).trim()), null, false);
+            }
+            boolean negated = p.charAt(eq - 1) == '!';
+            String name = p.substring(1, negated ? eq - 1 : eq).trim();
+            String v = p.substring(eq + 1).trim();
+            if (v.length() < 2 || (v.charAt(0) != '\'' && v.charAt(0) != '"') || v.charAt(v.length() - 1) != v.charAt(0)) {
+                throw unsupported(expression, "Quoted string literal expected in predicate [" + p + "]");
+            }
+            return new Predicate(checkName(expression, name), v.substring(1, v.length() - 1), negated);
+        }
+
+        private static String checkName(String expression, String name) {
+            for (int i = 0; i < name.length(); i++) {
+                if (!isNameChar(name.charAt(i)) || name.charAt(i) == '*') {
+                    throw unsupported(expression, "Invalid attribute name " + name);
+                }
+            }
+            if (name.length() == 0) {
+                throw unsupported(expression, "Attribute name expected");
+            }
+            return name;
+        }
+
+        boolean matches(XMLStreamReader reader) {
+            String v = null;
+            for (int i = 0, n = reader.getAttributeCount(); i < n; i++) {
+                if (nameMatches(attribute, reader.getAttributePrefix(i), reader.getAttributeLocalName(i))) {
+                    v = reader.getAttributeValue(i);
+                    break;
+                }
+            }
+            if (value == null) {
+                return v != null;
+            }
+            //As in XPath, comparison with a missing attribute is always false
+            return v != null && value.equals(v) != negated;
+        }
+    }
+
+    /**
+     * Matches a name specified in XPath expression. Names without a prefix match local names.
+     */
+    private static boolean nameMatches(String name, String prefix, String localName) {
+        int colon = name.indexOf(':');
+        if (colon < 0) {
+            return name.equals(localName);
+        }
+        return prefix != null && prefix.length() == colon && name.startsWith(prefix)
+                && name.length() - colon - 1 == localName.length() && name.endsWith(localName);
+    }
+}
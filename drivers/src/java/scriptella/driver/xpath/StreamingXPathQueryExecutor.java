@@ -0,0 +1,203 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.driver.xpath;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import scriptella.spi.AbstractConnection;
+import scriptella.spi.QueryCallback;
+import scriptella.spi.Resource;
+import scriptella.util.CompressionCodec;
+import scriptella.util.IOUtils;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * Executor for XPath queries in streaming mode.
+ * <p>Top-level queries are evaluated by {@link StreamingXPath} while the document is read by StAX parser,
+ * only the subtree of the matched element is loaded into memory for each row.
+ * Nested queries relative to the matched element are evaluated as usual XPath expressions on the loaded subtree.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+class StreamingXPathQueryExecutor extends XPathQueryExecutor {
+    private static final XMLInputFactory XIF = createInputFactory();
+    private final URL url;
+    private final CompressionCodec compression;
+    private Document rowDocument;
+
+    /**
+     * Crates executor to query document using a specified xpath expression.
+     *
+     * @param context       thread local for sharing current node between queries.
+     * @param url           URL of the document to query.
+     * @param compression   compression codec of the document.
+     * @param xpathResource resource with xpath expression.
+     * @param compiler      xpath expression compiler
+     * @param counter       statement counter.
+     * @param returnArrays  true if string arrays should be returned for variables.
+     */
+    StreamingXPathQueryExecutor(ThreadLocal<Node> context, URL url, CompressionCodec compression, Resource xpathResource,
+                                XPathExpressionCompiler compiler, AbstractConnection.StatementCounter counter, boolean returnArrays) {
+        this(context, url, compression, compile(xpathResource), compiler, counter, returnArrays);
+    }
+
+    StreamingXPathQueryExecutor(ThreadLocal<Node> context, URL url, CompressionCodec compression, Query query,
+                                XPathExpressionCompiler compiler, AbstractConnection.StatementCounter counter, boolean returnArrays) {
+        super(context, null, query, compiler, counter, returnArrays);
+        this.url = url;
+        this.compression = compression;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory f = XMLInputFactory.newInstance();
+        f.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return f;
+    }
+
+    @Override
+    protected void evaluate(String xpath, Node contextNode, QueryCallback queryCallback) {
+        if (contextNode != null) { //Nested query relative to the matched element
+            super.evaluate(xpath, contextNode, queryCallback);
+            return;
+        }
+        StreamingXPath path = StreamingXPath.compile(xpath);
+        InputStream in = null;
+        XMLStreamReader reader = null;
+        try {
+            in = compression.decompress(url.openStream());
+            reader = XIF.createXMLStreamReader(url.toString(), in);
+            counter.statements++;
+            long[] states = new long[16];
+            int depth = 0;
+            states[0] = path.initialState();
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    long state = path.childState(states[depth], reader);
+                    if (path.isMatch(state)) {
+                        //The subtree is consumed, so matches nested in the matched element are not reported
+                        processRow(load(reader), queryCallback);
+                    } else {
+                        if (++depth == states.length) {
+                            long[] a = new long[depth * 2];
+                            System.arraycopy(states, 0, a, 0, depth);
+                            states = a;
+                        }
+                        states[depth] = state;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new XPathProviderException("Unable to parse document " + url, e);
+        } catch (IOException e) {
+            throw new XPathProviderException("Unable to read document " + url, e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    //Ignore, the stream is closed below
+                }
+            }
+            IOUtils.closeSilently(in);
+        }
+    }
+
+    /**
+     * Loads the current element and its content.
+     * <p>The element replaces the root of the document used by previous rows,
+     * so the memory footprint does not depend on the number of rows.
+     *
+     * @param reader reader positioned at the start of the element.
+     * @return loaded element.
+     */
+    private Element load(XMLStreamReader reader) throws XMLStreamException {
+        if (rowDocument == null) {
+            try {
+                rowDocument = XPathConnection.DBF.newDocumentBuilder().newDocument();
+            } catch (ParserConfigurationException e) {
+                throw new XPathProviderException("Unable to create document", e);
+            }
+        }
+        Element root = createElement(reader);
+        Element old = rowDocument.getDocumentElement();
+        if (old == null) {
+            rowDocument.appendChild(root);
+        } else {
+            rowDocument.replaceChild(root, old);
+        }
+        Element current = root;
+        while (current != null) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    Element child = createElement(reader);
+                    current.appendChild(child);
+                    current = child;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    current = current == root ? null : (Element) current.getParentNode();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    current.appendChild(rowDocument.createTextNode(reader.getText()));
+                    break;
+                case XMLStreamConstants.CDATA:
+                    current.appendChild(rowDocument.createCDATASection(reader.getText()));
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    current.appendChild(rowDocument.createComment(reader.getText()));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Creates an element with the same qualified names and attributes as produced by the DOM parser
+     * of the XPath connection.
+     */
+    private Element createElement(XMLStreamReader reader) {
+        Element e = rowDocument.createElement(qName(reader.getPrefix(), reader.getLocalName()));
+        for (int i = 0, n = reader.getNamespaceCount(); i < n; i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            String uri = reader.getNamespaceURI(i);
+            e.setAttribute(prefix == null || prefix.length() == 0 ? "xmlns" : "xmlns:" + prefix, uri == null ? "" : uri);
+        }
+        for (int i = 0, n = reader.getAttributeCount(); i < n; i++) {
+            e.setAttribute(qName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), reader.getAttributeValue(i));
+        }
+        return e;
+    }
+
+    private static String qName(String prefix, String localName) {
+        return prefix == null || prefix.length() == 0 ? localName : prefix + ':' + localName;
+    }
+}
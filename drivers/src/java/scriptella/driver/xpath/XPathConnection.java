@@ -18,14 +18,18 @@ package scriptella.driver.xpath;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.xml.sax.InputSource;
+import scriptella.configuration.ConfigurationException;
 import scriptella.spi.AbstractConnection;
 import scriptella.spi.ConnectionParameters;
 import scriptella.spi.ParametersCallback;
 import scriptella.spi.ProviderException;
 import scriptella.spi.QueryCallback;
 import scriptella.spi.Resource;
+import scriptella.util.CompressionCodec;
+import scriptella.util.IOUtils;
 
 import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.IdentityHashMap;
 import java.util.Map;
@@ -52,15 +56,34 @@ public class XPathConnection extends AbstractConnection {
      * Value of <code>true</code> specifies that variables should return a string array, otherwise a single string is returned.
      */
     public static final String RETURN_ARRAYS = "return_arrays";
+
+    /**
+     * Name of the <code>compression</code> connection property.
+     * Compression codec of the XML file: <code>none</code>, <code>gzip</code> or <code>deflate</code>.
+     * By default the codec is detected from the file extension.
+     */
+    public static final String COMPRESSION = "compression";
+
+    /**
+     * Name of the <code>streaming</code> connection property.
+     * Value of <code>true</code> specifies that top-level queries should be evaluated while the document is read
+     * by StAX parser, so only the matched elements are loaded into memory.
+     * Only a forward-only subset of XPath is supported in this mode, see {@link StreamingXPath}.
+     */
+    public static final String STREAMING = "streaming";
     
     static final DocumentBuilderFactory DBF = DocumentBuilderFactory.newInstance();
 
     private Map<Resource, XPathQueryExecutor> queriesCache = new IdentityHashMap<Resource, XPathQueryExecutor>();
+    //Queries are compiled once per resource even if query executors are not cached
+    private Map<Resource, XPathQueryExecutor.Query> queries = new IdentityHashMap<Resource, XPathQueryExecutor.Query>();
     private XPathExpressionCompiler compiler = new XPathExpressionCompiler();
     private Document document;
     private ThreadLocal<Node> queryContext=new ThreadLocal<Node>();
     private URL url;
     private final boolean returnArrays;
+    private final boolean streaming;
+    private CompressionCodec compression = CompressionCodec.NONE;
     protected final boolean cache_queries;
     /**
      * For testing purposes only.
@@ -68,6 +91,7 @@ public class XPathConnection extends AbstractConnection {
     protected XPathConnection() {
         cache_queries = true;
         returnArrays = false;
+        streaming = false;
     }
 
     public XPathConnection(ConnectionParameters parameters) {
@@ -77,6 +101,12 @@ public class XPathConnection extends AbstractConnection {
         //TODO implement trim option
 
         returnArrays = parameters.getBooleanProperty(RETURN_ARRAYS, false);
+        streaming = parameters.getBooleanProperty(STREAMING, false);
+        try {
+            compression = CompressionCodec.forNameOrUrl(parameters.getStringProperty(COMPRESSION), url);
+        } catch (IllegalArgumentException e) {
+            throw new ConfigurationException(e.getMessage());
+        }
     }
 
     public void executeScript(final Resource scriptContent, final ParametersCallback parametersCallback) throws ProviderException {
@@ -86,7 +116,16 @@ public class XPathConnection extends AbstractConnection {
     public void executeQuery(Resource queryContent, ParametersCallback parametersCallback, QueryCallback queryCallback) throws ProviderException {
         XPathQueryExecutor exec = queriesCache.get(queryContent);
         if (exec == null) {
-            exec = new XPathQueryExecutor(queryContext, getDocument(), queryContent, compiler, counter, returnArrays);
+            XPathQueryExecutor.Query query = queries.get(queryContent);
+            if (query == null) {
+                query = XPathQueryExecutor.compile(queryContent);
+                queries.put(queryContent, query);
+            }
+            if (streaming) {
+                exec = new StreamingXPathQueryExecutor(queryContext, url, compression, query, compiler, counter, returnArrays);
+            } else {
+                exec = new XPathQueryExecutor(queryContext, getDocument(), query, compiler, counter, returnArrays);
+            }
             if (cache_queries) {
                 queriesCache.put(queryContent, exec);
             }
@@ -96,10 +135,18 @@ public class XPathConnection extends AbstractConnection {
 
     private Document getDocument() {
         if (document == null || (!cache_queries)) {
+            InputStream in = null;
             try {
-                document = DBF.newDocumentBuilder().parse(new InputSource(url.toString()));
+                InputSource source = new InputSource(url.toString());
+                if (compression != CompressionCodec.NONE) {
+                    in = compression.decompress(url.openStream());
+                    source.setByteStream(in);
+                }
+                document = DBF.newDocumentBuilder().parse(source);
             } catch (Exception e) {
                 throw new XPathProviderException("Unable to parse document " + url, e);
+            } finally {
+                IOUtils.closeSilently(in);
             }
         }
         return document;
@@ -107,6 +154,7 @@ public class XPathConnection extends AbstractConnection {
 
     public void close() throws ProviderException {
         queriesCache = null;
+        queries = null;
         document = null;
         queryContext.remove();
         queryContext = null;
@@ -15,12 +15,11 @@
  */
 package scriptella.driver.xpath;
 
-import scriptella.util.LRUMap;
+import scriptella.util.ConcurrentCache;
 
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
-import java.util.Map;
 
 /**
  * Represents a facade for compiling xpath expressions.
@@ -32,7 +31,7 @@ import java.util.Map;
 class XPathExpressionCompiler {
     private static final int DEFAULT_SIZE = 100;
     private static final XPathFactory XPATH_FACTORY = XPathFactory.newInstance();
-    private Map<String, XPathExpression> cache = new LRUMap<String, XPathExpression>(DEFAULT_SIZE);
+    private ConcurrentCache<String, XPathExpression> cache = new ConcurrentCache<String, XPathExpression>(DEFAULT_SIZE);
 
     public XPathExpression compile(final String expression) {
         String trimmedEx = expression.trim();
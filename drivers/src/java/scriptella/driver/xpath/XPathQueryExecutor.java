@@ -19,6 +19,7 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import scriptella.expression.CompiledTemplate;
 import scriptella.expression.PropertiesSubstitutor;
 import scriptella.spi.AbstractConnection;
 import scriptella.spi.ParametersCallback;
@@ -31,6 +32,10 @@ import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Executor for XPath queries.
@@ -43,11 +48,17 @@ public class XPathQueryExecutor implements ParametersCallback {
     private Node node;
     private PropertiesSubstitutor substitutor = new PropertiesSubstitutor();
     private Document document;
-    private String expressionStr;
+    private final Query query;
     private XPathExpressionCompiler compiler;
-    private AbstractConnection.StatementCounter counter;
+    AbstractConnection.StatementCounter counter;
     private boolean returnArrays;
     ThreadLocal<Node> context;
+    private NodeVariable nodeVariable;
+    /**
+     * Lazily built index of child elements of the current node.
+     * Values are either a single {@link Node} or a list of nodes with the same name.
+     */
+    private Map<String, Object> children;
 
     /**
      * Crates executor to query document using a specified xpath expression.
@@ -61,13 +72,33 @@ public class XPathQueryExecutor implements ParametersCallback {
      * @param returnArrays  true if string arrays should be returned for variables.
      */
     public XPathQueryExecutor(ThreadLocal<Node> context, Document document, Resource xpathResource, XPathExpressionCompiler compiler, AbstractConnection.StatementCounter counter, boolean returnArrays) {
+        this(context, document, compile(xpathResource), compiler, counter, returnArrays);
+    }
+
+    /**
+     * Crates executor to query document using a compiled xpath query.
+     *
+     * @param query compiled xpath query.
+     * @see #XPathQueryExecutor(ThreadLocal, Document, Resource, XPathExpressionCompiler, AbstractConnection.StatementCounter, boolean)
+     */
+    XPathQueryExecutor(ThreadLocal<Node> context, Document document, Query query, XPathExpressionCompiler compiler, AbstractConnection.StatementCounter counter, boolean returnArrays) {
         this.context = context;
         this.document = document;
+        this.query = query;
         this.compiler = compiler;
         this.counter = counter;
         this.returnArrays = returnArrays;
+    }
+
+    /**
+     * Reads and compiles xpath query.
+     *
+     * @param xpathResource resource with xpath expression.
+     * @return compiled query.
+     */
+    static Query compile(Resource xpathResource) {
         try {
-            expressionStr = IOUtils.toString(xpathResource.open());
+            return new Query(CompiledTemplate.compile(IOUtils.toString(xpathResource.open())));
         } catch (IOException e) {
             throw new XPathProviderException("Unable to read XPath query content");
         }
@@ -84,31 +115,56 @@ public class XPathQueryExecutor implements ParametersCallback {
         final Node contextNode = context.get();
         try {
             substitutor.setParameters(parentParameters);
-            XPathExpression xpathExpression = compiler.compile(substitutor.substitute(expressionStr));
+            evaluate(substitutor.substitute(query.template), contextNode, queryCallback);
+        } finally {
+            substitutor.setParameters(null);
+            context.set(contextNode); //restore ThreadLocal state
+        }
+    }
+
+    /**
+     * Evaluates XPath expression and notifies queryCallback for each found node.
+     *
+     * @param xpath         xpath expression with substituted properties.
+     * @param contextNode   node selected by the outer query or null for top-level queries.
+     * @param queryCallback callback to notify for each found node.
+     */
+    protected void evaluate(String xpath, Node contextNode, QueryCallback queryCallback) {
+        try {
+            XPathExpression xpathExpression = query.compile(xpath, compiler);
             NodeList nList = (NodeList) xpathExpression.evaluate(
                     contextNode == null ? document : contextNode, XPathConstants.NODESET);
             counter.statements++;
 
             int n = nList.getLength();
             for (int i = 0; i < n; i++) {
-                node = nList.item(i);
-                context.set(node); //store the context local to the current thread
-                queryCallback.processRow(this);
+                processRow(nList.item(i), queryCallback);
             }
         } catch (XPathExpressionException e) {
             throw new XPathProviderException("Failed to evaluate XPath query", e);
-        } finally {
-            substitutor.setParameters(null);
-            context.set(contextNode); //restore ThreadLocal state
         }
     }
 
+    /**
+     * Notifies queryCallback about a found node.
+     *
+     * @param node          found node.
+     * @param queryCallback callback to notify.
+     */
+    protected final void processRow(Node node, QueryCallback queryCallback) {
+        this.node = node;
+        nodeVariable = null;
+        children = null;
+        context.set(node); //store the context local to the current thread
+        queryCallback.processRow(this);
+    }
+
     public Object getParameter(final String name) {
         Object result = null;
         
-        if (name.equals("node")) {
+        if (name.equals(NodeVariable.NAME)) {
             // A helper object.
-            return new NodeVariable(compiler, node);
+            return getNodeVariable();
         }
         
         if (node instanceof Element) { //if element
@@ -120,11 +176,12 @@ public class XPathQueryExecutor implements ParametersCallback {
 
         if (result == null) {
             // Try to retrieve the text value(s) of the immediate child element(s) with the specified name
-            NodeVariable nodeVariable = new NodeVariable(compiler, node);
-            if (returnArrays) {
-                result = nodeVariable.getStringArray("./" + name);
+            if (isSimpleName(name)) {
+                result = getChildText(name);
+            } else if (returnArrays) {
+                result = getNodeVariable().getStringArray("./" + name);
             } else {
-                result = nodeVariable.getString("./" + name);
+                result = getNodeVariable().getString("./" + name);
             }
         }
 
@@ -136,4 +193,128 @@ public class XPathQueryExecutor implements ParametersCallback {
         //if result=null fallback to parent parameters
         return result == null ? substitutor.getParameters().getParameter(name) : result;
     }
+
+    private NodeVariable getNodeVariable() {
+        if (nodeVariable == null) {
+            nodeVariable = new NodeVariable(compiler, node);
+        }
+        return nodeVariable;
+    }
+
+    /**
+     * Returns the text of child elements with the specified name.
+     * <p>Produces the same result as evaluating <code>./name</code> XPath expression, but uses the index
+     * of child elements which is built once per node.
+     *
+     * @param name element name.
+     * @return trimmed text of the first element or array of texts if {@link #returnArrays} is true.
+     */
+    @SuppressWarnings("unchecked")
+    private Object getChildText(String name) {
+        if (children == null) {
+            children = new HashMap<String, Object>();
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child.getNodeType() == Node.ELEMENT_NODE) {
+                    String childName = getLocalName(child);
+                    Object prev = children.get(childName);
+                    if (prev == null) {
+                        children.put(childName, child);
+                    } else if (prev instanceof Node) {
+                        List<Node> list = new ArrayList<Node>(2);
+                        list.add((Node) prev);
+                        list.add(child);
+                        children.put(childName, list);
+                    } else {
+                        ((List<Node>) prev).add(child);
+                    }
+                }
+            }
+        }
+        Object found = children.get(name);
+        if (!returnArrays) {
+            if (found == null) {
+                return null;
+            }
+            Node first = found instanceof Node ? (Node) found : ((List<Node>) found).get(0);
+            return StringUtils.nullsafeTrim(first.getTextContent());
+        }
+        if (found == null) {
+            return new String[0];
+        }
+        if (found instanceof Node) {
+            return new String[]{StringUtils.nullsafeTrim(((Node) found).getTextContent())};
+        }
+        List<Node> list = (List<Node>) found;
+        String[] r = new String[list.size()];
+        for (int i = 0; i < r.length; i++) {
+            r[i] = StringUtils.nullsafeTrim(list.get(i).getTextContent());
+        }
+        return r;
+    }
+
+    /**
+     * Checks if the name is a simple element name without a namespace prefix,
+     * so <code>./name</code> selects child elements by name.
+     */
+    /**
+     * Returns the local name of the node, as XPath name tests match prefixed elements by the local part.
+     *
+     * @param node node.
+     * @return local name or the part of the node name after the prefix if the document is not namespace aware.
+     */
+    private static String getLocalName(Node node) {
+        String name = node.getLocalName();
+        if (name != null) {
+            return name;
+        }
+        name = node.getNodeName();
+        return name.substring(name.indexOf(':') + 1);
+    }
+
+    private static boolean isSimpleName(String name) {
+        int n = name.length();
+        if (n == 0 || !(Character.isLetter(name.charAt(0)) || name.charAt(0) == '_')) {
+            return false;
+        }
+        for (int i = 1; i < n; i++) {
+            char c = name.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * XPath query of a resource.
+     * <p>Compiled once per resource and reused by executors of the resource.
+     * The XPath expression of a query without properties is compiled only once.
+     */
+    static final class Query {
+        final CompiledTemplate template;
+        private final boolean constant;
+        private XPathExpression compiled;
+
+        Query(CompiledTemplate template) {
+            this.template = template;
+            constant = template.isConstant();
+        }
+
+        /**
+         * Returns the XPath expression for the substituted query.
+         *
+         * @param xpath    query with substituted properties.
+         * @param compiler compiler for queries with properties.
+         * @return compiled XPath expression.
+         */
+        XPathExpression compile(String xpath, XPathExpressionCompiler compiler) {
+            if (!constant) {
+                return compiler.compile(xpath);
+            }
+            if (compiled == null) {
+                compiled = compiler.compile(xpath);
+            }
+            return compiled;
+        }
+    }
 }
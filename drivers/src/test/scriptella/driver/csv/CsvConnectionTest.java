@@ -25,15 +25,18 @@ import scriptella.spi.MockDriverContext;
 import scriptella.spi.MockParametersCallbacks;
 import scriptella.spi.ParametersCallback;
 import scriptella.spi.QueryCallback;
+import scriptella.util.IOUtils;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Tests for {@link CsvConnection}.
@@ -194,6 +197,48 @@ public class CsvConnectionTest extends AbstractTestCase {
 
     }
 
+    /**
+     * Tests writing and reading a gzip compressed CSV file.
+     */
+    public void testGzip() throws IOException {
+        Map<String, String> props = new HashMap<String, String>();
+        props.put(CsvConnection.ENCODING, "UTF8");
+        props.put(AbstractTextConnection.COMPRESSION_THREADS, "2");
+        ConnectionParameters cp = new MockConnectionParameters(props, "tst://file/data.csv.gz");
+        CsvConnection con = new CsvConnection(cp);
+        con.executeScript(new StringResource("$a,bΔ"), MockParametersCallbacks.SIMPLE);
+        con.close();
+        final byte[] compressed = out.toByteArray();
+        String actual = IOUtils.toString(IOUtils.getReader(new GZIPInputStream(new ByteArrayInputStream(compressed)), "UTF8"));
+        assertEquals("\"*a*\",\"bΔ\"\n", actual);
+
+        testURLHandler = new TestURLHandler() {
+            public InputStream getInputStream(final URL u) {
+                return new ByteArrayInputStream(compressed);
+            }
+
+            public OutputStream getOutputStream(final URL u) {
+                throw new UnsupportedOperationException();
+            }
+
+            public int getContentLength(final URL u) {
+                return -1;
+            }
+        };
+        props.put(CsvConnection.HEADERS, "false");
+        con = new CsvConnection(new MockConnectionParameters(props, "tst://file/data.csv.gz"));
+        rows = 0;
+        con.executeQuery(new StringResource(""), MockParametersCallbacks.UNSUPPORTED, new QueryCallback() {
+            public void processRow(final ParametersCallback parameters) {
+                rows++;
+                assertEquals("*a*", parameters.getParameter("1"));
+                assertEquals("bΔ", parameters.getParameter("2"));
+            }
+        });
+        con.close();
+        assertEquals(1, rows);
+    }
+
     public void testAutoFlush() {
         //Create a configuration with non default values
         Map<String, String> props = new HashMap<String, String>();
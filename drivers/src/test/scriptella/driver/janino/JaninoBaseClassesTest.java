@@ -41,6 +41,57 @@ public class JaninoBaseClassesTest extends AbstractTestCase {
         js.setParametersCallback(MockParametersCallbacks.SIMPLE);
         assertEquals("*1*", js.get("1"));
     }
+
+    /**
+     * Tests slot-based access to parameters provided by {@link JaninoScript}.
+     */
+    public void testSlots() {
+        final int[] lookups = new int[1];
+        final Map<String, Object> params = new HashMap<String, Object>();
+        ParametersCallback pc = new ParametersCallback() {
+            public Object getParameter(final String name) {
+                lookups[0]++;
+                return params.get(name);
+            }
+        };
+        JaninoScript js = new JaninoScript() {
+            protected void execute() throws Exception {
+            }
+        };
+        int l = js.slot("l");
+        int s = js.slot("s");
+        int n = js.slot("n");
+        assertEquals(l, js.slot(new String("l")));
+        params.put("l", 10L);
+        params.put("s", " 20 ");
+        js.setParametersCallback(pc);
+        assertEquals(10L, js.getLong(l));
+        assertEquals(10, js.getInt(l));
+        assertEquals(10d, js.getDouble(l));
+        assertEquals("10", js.getString(l));
+        assertEquals(20L, js.getLong(s));
+        assertEquals(20d, js.getDouble(s));
+        assertTrue(js.isNull(n));
+        assertEquals(0, js.getLong(n));
+        assertNull(js.getString(n));
+        assertEquals(3, lookups[0]); //Values are fetched once per execution
+        //Next execution fetches new values
+        params.put("l", 11);
+        js.setParametersCallback(pc);
+        assertEquals(11L, js.getLong(l));
+        assertEquals(11, js.get(l));
+        assertEquals(4, lookups[0]);
+        params.put("s", "x");
+        try {
+            js.getLong(s);
+            fail("Non numeric values cannot be converted");
+        } catch (NumberFormatException e) {
+            //OK
+        }
+        for (int i = 0; i < 10; i++) { //Slots array grows
+            assertEquals(3 + i, js.slot("p" + i));
+        }
+    }
     /**
      * Tests public API methods provided by {@link JaninoQuery}.
      */
@@ -25,10 +25,15 @@ import scriptella.spi.MockParametersCallbacks;
 import scriptella.spi.ParametersCallback;
 import scriptella.spi.ProviderException;
 import scriptella.spi.QueryCallback;
+import scriptella.spi.support.CompiledScriptCache;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Tests Janino connection class.
@@ -77,6 +82,57 @@ public class JaninoConnectionTest extends AbstractTestCase {
         assertEquals(expected, rows);
     }
 
+    public void testBytecodeCache() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "scriptella-janino-" + System.nanoTime());
+        Map<String, String> props = new HashMap<String, String>();
+        props.put(JaninoConnection.CACHE_DIR, dir.toURI().toString());
+        StringResource script = new StringResource(JaninoConnectionTest.class.getName() + ".field++;");
+        try {
+            field = 0;
+            for (int i = 0; i < 2; i++) { //The second connection loads a cached class
+                CompiledScriptCache.clear(); //Emulates a new JVM
+                JaninoConnection c = new JaninoConnection(new ConnectionParameters(new MockConnectionEl(props, null), MockDriverContext.INSTANCE));
+                c.executeScript(script, MockParametersCallbacks.NULL);
+                c.close();
+            }
+            assertEquals(2, field);
+            File[] files = dir.listFiles();
+            assertEquals(1, files.length);
+            assertTrue(new CodeCompiler(dir).compileScript(script).getClass().getClassLoader() instanceof BytecodeCache.BytecodeClassLoader);
+            //Corrupted entries are recompiled
+            FileOutputStream out = new FileOutputStream(files[0]);
+            out.write("corrupted".getBytes());
+            out.close();
+            CompiledScriptCache.clear();
+            CodeCompiler compiler = new CodeCompiler(dir);
+            compiler.compileScript(script).execute();
+            assertEquals(3, field);
+            CompiledScriptCache.clear();
+            assertTrue(new CodeCompiler(dir).compileScript(script).getClass().getClassLoader() instanceof BytecodeCache.BytecodeClassLoader);
+            //Changed scripts are not taken from the cache
+            compiler = new CodeCompiler(dir);
+            compiler.compileScript(new StringResource(JaninoConnectionTest.class.getName() + ".field+=2;")).execute();
+            assertEquals(5, field);
+            assertEquals(2, dir.listFiles().length);
+        } finally {
+            File[] files = dir.listFiles();
+            for (int i = 0; files != null && i < files.length; i++) {
+                files[i].delete();
+            }
+            dir.delete();
+        }
+    }
+
+    public void testSharedClasses() {
+        StringResource script = new StringResource("int shared=1;");
+        JaninoScript s1 = new CodeCompiler().compileScript(script);
+        JaninoScript s2 = new CodeCompiler().compileScript(new StringResource("int shared=1;"));
+        assertNotSame("Instances hold a state and must not be shared", s1, s2);
+        assertSame("Classes must be shared by connections", s1.getClass(), s2.getClass());
+        //Query with the same text extends another base class
+        assertNotSame(s1.getClass(), new CodeCompiler().compileQuery(script).getClass());
+    }
+
     public void testErrorSourceCode() {
         JaninoConnection c = new JaninoConnection(new ConnectionParameters(new MockConnectionEl(), MockDriverContext.INSTANCE));
         //test compilation errors
@@ -24,6 +24,12 @@ import scriptella.spi.MockParametersCallbacks;
 import scriptella.spi.ParametersCallback;
 import scriptella.spi.QueryCallback;
 import scriptella.spi.Resource;
+import scriptella.spi.support.HierarchicalParametersCallback;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Tests Janino connection class.
@@ -49,6 +55,62 @@ public class JaninoPerfTest extends AbstractTestCase {
         c.close();
     }
 
+    /**
+     * Reads 3 parameters of an enclosing query 3 times per execution.
+     * History:
+     * 19.10.2026 - Xeon JDK17 - get(name) - 170 ms
+     * 19.10.2026 - Xeon JDK17 - slots - 120 ms
+     */
+    public void testSlots() {
+        JaninoConnection c = new JaninoConnection(new ConnectionParameters(new MockConnectionEl(), MockDriverContext.INSTANCE));
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("a", 1);
+        params.put("b", 2L);
+        params.put("c", 3);
+        //Parameters of enclosing queries
+        ParametersCallback pc = MockParametersCallbacks.fromMap(params);
+        for (int i = 0; i < 3; i++) {
+            pc = new HierarchicalParametersCallback(MockParametersCallbacks.fromMap(new HashMap<String, Object>()), pc);
+        }
+        Resource scriptContent = new StringResource("int a=slot(\"a\"), b=slot(\"b\"), c=slot(\"c\");" +
+                "long s=0;for (int i=0;i<3;i++) {s+=getLong(a)+getLong(b)+getLong(c);}");
+        for (int i = 0; i < 1000000; i++) {
+            c.executeScript(scriptContent, pc);
+        }
+        c.close();
+    }
+
+    /**
+     * Compiles 50 scripts by 5 connections sharing an on-disk cache. Only the first connection compiles the scripts.
+     * History:
+     * 19.10.2026 - Xeon JDK17 - Without cache - 850 ms
+     * 19.10.2026 - Xeon JDK17 - cache_dir - 367 ms
+     * 19.10.2026 - Xeon JDK17 - Classes shared by connections, without cache_dir - 290 ms
+     */
+    public void testCompileCached() {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "scriptella-janino-perf-" + System.nanoTime());
+        MockConnectionEl el = new MockConnectionEl(Collections.singletonMap(JaninoConnection.CACHE_DIR, dir.toURI().toString()), null);
+        Resource[] scripts = new Resource[50];
+        for (int i = 0; i < scripts.length; i++) {
+            scripts[i] = new StringResource("int n=" + i + ";\nfor (int j=0;j<n;j++) {\n  get(\"v\"+j);\n}");
+        }
+        try {
+            for (int run = 0; run < 5; run++) {
+                JaninoConnection c = new JaninoConnection(new ConnectionParameters(el, MockDriverContext.INSTANCE));
+                for (Resource script : scripts) {
+                    c.executeScript(script, MockParametersCallbacks.SIMPLE);
+                }
+                c.close();
+            }
+        } finally {
+            File[] files = dir.listFiles();
+            for (int i = 0; files != null && i < files.length; i++) {
+                files[i].delete();
+            }
+            dir.delete();
+        }
+    }
+
     /**
      * History:
      * 06.09.2006 - Duron 1.7Mhz - 844 ms
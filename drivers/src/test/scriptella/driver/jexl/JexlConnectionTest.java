@@ -22,6 +22,7 @@ import scriptella.spi.MockConnectionParameters;
 import scriptella.spi.MockParametersCallbacks;
 import scriptella.spi.ParametersCallback;
 import scriptella.spi.Resource;
+import scriptella.spi.support.CompiledScriptCache;
 
 import java.util.Collections;
 
@@ -60,4 +61,15 @@ public class JexlConnectionTest extends AbstractTestCase {
 
     }
 
+    public void testSharedScripts() {
+        String script = "obj.setValue('" + System.nanoTime() + "')";
+        long hits = CompiledScriptCache.getStats().getHits();
+        for (int i = 0; i < 3; i++) { //Connections of later runs reuse the compiled script
+            JexlConnection jc = new JexlConnection(new MockConnectionParameters());
+            jc.executeScript(new StringResource(script), MockParametersCallbacks.fromMap(Collections.singletonMap("obj", this)));
+            jc.close();
+        }
+        assertEquals(2, CompiledScriptCache.getStats().getHits() - hits);
+    }
+
 }
@@ -21,6 +21,7 @@ import scriptella.spi.MockConnectionParameters;
 
 import javax.naming.Context;
 import javax.naming.directory.SearchControls;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
@@ -43,6 +44,8 @@ public class LdapConnectionTest extends AbstractTestCase {
         params.put(LdapConnection.SEARCH_BASEDN_KEY, dn);
         params.put(LdapConnection.SEARCH_SCOPE_KEY, "subtree");
         params.put(LdapConnection.FILE_MAXLENGTH_KEY, "100");
+        params.put(LdapConnection.SEARCH_PAGESIZE_KEY, "500");
+        params.put(LdapConnection.SEARCH_ATTRIBUTES_KEY, " uid, cn ");
         final String url = "ldap://127.0.0.1:389/";
         ConnectionParameters cp = new MockConnectionParameters(params, url);
         ctxInitialized = false;
@@ -59,6 +62,8 @@ public class LdapConnectionTest extends AbstractTestCase {
         assertEquals(dn, con.getBaseDn());
         assertEquals(SearchControls.SUBTREE_SCOPE, con.getSearchControls().getSearchScope());
         assertEquals(100, (long) con.getMaxFileLength());
+        assertEquals(500, con.getPageSize());
+        assertTrue(Arrays.equals(new String[]{"uid", "cn"}, con.getSearchControls().getReturningAttributes()));
         assertTrue(ctxInitialized);
     }
 }
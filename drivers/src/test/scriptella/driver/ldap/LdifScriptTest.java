@@ -19,6 +19,7 @@ import scriptella.AbstractTestCase;
 import scriptella.driver.ldap.ldif.Entry;
 import scriptella.driver.ldap.ldif.LdifReader;
 import scriptella.spi.MockParametersCallbacks;
+import scriptella.util.IOUtils;
 import scriptella.util.ProxyAdapter;
 
 import javax.naming.CompoundName;
@@ -30,8 +31,16 @@ import javax.naming.directory.BasicAttribute;
 import javax.naming.directory.BasicAttributes;
 import javax.naming.directory.DirContext;
 import javax.naming.directory.ModificationItem;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Tests for {@link LdifScript}.
@@ -310,6 +319,155 @@ public class LdifScriptTest extends AbstractTestCase {
     }
 
 
+    /**
+     * Tests parallel loading: children are added after parents, sequential order of changes is preserved.
+     */
+    public void testParallelExecute() throws Exception {
+        StringBuilder ldif = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            ldif.append("dn: ou=o").append(i).append(", dc=scriptella\nchangetype: add\nou: o").append(i).append("\n\n");
+            for (int j = 0; j < 5; j++) {
+                ldif.append("dn: cn=c").append(j).append(", ou=o").append(i).append(", dc=scriptella\nchangetype: add\ncn: c")
+                        .append(j).append("\n\n");
+            }
+        }
+        ldif.append("dn: ou=o0, dc=scriptella\nchangetype: delete\n\n");
+        final Set<Name> added = Collections.synchronizedSet(new HashSet<Name>());
+        final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+        final List<DirContext> contexts = new ArrayList<DirContext>();
+        for (int i = 0; i < 4; i++) {
+            contexts.add(new ProxyAdapter<DirContext>(DirContext.class) {
+                public DirContext createSubcontext(Name name, Attributes attrs) throws InvalidNameException {
+                    if (name.size() > 1 && !added.contains(name.getPrefix(1))) {
+                        fail("Parent of " + name + " has not been added");
+                    }
+                    added.add(name);
+                    threads.add(Thread.currentThread().getName());
+                    return null;
+                }
+            }.getProxy());
+        }
+        DirContext mock = new ProxyAdapter<DirContext>(DirContext.class) {
+            public String getNameInNamespace() {
+                return "dc=scriptella";
+            }
+
+            public void destroySubcontext(Name name) throws NamingException {
+                assertEquals(newName("ou=o0"), name);
+                assertEquals("All entries must be added before delete", 120, added.size());
+                modified = true;
+            }
+        }.getProxy();
+        LdifScript ls = new LdifScript(new LdapConnection() {
+            @Override
+            int getLdifThreads() {
+                return contexts.size();
+            }
+
+            @Override
+            List<DirContext> getLoaderContexts() {
+                return contexts;
+            }
+        });
+        ls.execute(new StringReader(ldif.toString()), mock, MockParametersCallbacks.NULL);
+        assertEquals(120, added.size());
+        assertTrue("Delete must be applied", modified);
+        assertTrue("Entries should be applied by loader threads", threads.size() > 1);
+    }
+
+    /**
+     * Tests that children preceding their parents and DNs outside of the root are rejected in parallel mode
+     * without blocking loader threads.
+     */
+    public void testParallelRejects() throws Exception {
+        String ldif = "dn: cn=c, ou=p, dc=scriptella\nchangetype: add\ncn: c\n\n" +
+                "dn: cn=c, ou=q, dc=scriptella\nchangetype: add\ncn: c\n\n" +
+                "dn: ou=q, dc=scriptella\nchangetype: add\nou: q\n\n" +
+                "dn: ou=p, dc=scriptella\nchangetype: add\nou: p\n\n" +
+                "dn: cn=x, dc=other\nchangetype: add\ncn: x\n\n";
+        File file = File.createTempFile("rejects", ".ldif");
+        file.deleteOnExit();
+        final LdifRejects rejects = new LdifRejects(file.toURI().toURL());
+        final Set<Name> added = Collections.synchronizedSet(new HashSet<Name>());
+        final List<DirContext> contexts = new ArrayList<DirContext>();
+        for (int i = 0; i < 4; i++) {
+            contexts.add(new ProxyAdapter<DirContext>(DirContext.class) {
+                public DirContext createSubcontext(Name name, Attributes attrs) throws NamingException {
+                    if (name.size() > 1 && !added.contains(name.getPrefix(1))) {
+                        throw new NamingException("No parent");
+                    }
+                    added.add(name);
+                    return null;
+                }
+            }.getProxy());
+        }
+        DirContext mock = new ProxyAdapter<DirContext>(DirContext.class) {
+            public String getNameInNamespace() {
+                return "dc=scriptella";
+            }
+        }.getProxy();
+        LdifScript ls = new LdifScript(new LdapConnection() {
+            @Override
+            int getLdifThreads() {
+                return contexts.size();
+            }
+
+            @Override
+            List<DirContext> getLoaderContexts() {
+                return contexts;
+            }
+
+            @Override
+            LdifRejects getRejects() {
+                return rejects;
+            }
+        });
+        ls.execute(new StringReader(ldif), mock, MockParametersCallbacks.NULL);
+        rejects.close();
+        assertTrue(added.contains(newName("ou=p")));
+        assertTrue(added.contains(newName("ou=q")));
+        assertEquals(5, added.size() + rejects.getCount());
+        String rejected = IOUtils.toString(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        assertTrue(rejected, rejected.contains("dn: cn=x, dc=other\n"));
+    }
+
+    /**
+     * Tests if failed entries are written to a reject file.
+     */
+    public void testRejects() throws Exception {
+        String ldif = "dn: cn=ok, dc=scriptella\ncn: ok\n\n" +
+                "dn: cn=fail, dc=scriptella\ncn: fail\n\n" +
+                "dn: cn=ok2, dc=scriptella\ncn: ok2\n";
+        File file = File.createTempFile("rejects", ".ldif");
+        file.deleteOnExit();
+        final LdifRejects rejects = new LdifRejects(file.toURI().toURL());
+        DirContext mock = new ProxyAdapter<DirContext>(DirContext.class) {
+            public String getNameInNamespace() {
+                return "dc=scriptella";
+            }
+
+            public DirContext createSubcontext(Name name, Attributes attrs) throws NamingException {
+                if (name.equals(newName("cn=fail"))) {
+                    throw new NamingException("Entry already exists");
+                }
+                return null;
+            }
+        }.getProxy();
+        LdifScript ls = new LdifScript(new LdapConnection() {
+            @Override
+            LdifRejects getRejects() {
+                return rejects;
+            }
+        });
+        ls.execute(new StringReader(ldif), mock, MockParametersCallbacks.NULL);
+        rejects.close();
+        assertEquals(1, rejects.getCount());
+        String rejected = IOUtils.toString(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        assertTrue(rejected, rejected.startsWith("# Rejected: Entry already exists\n"));
+        assertTrue(rejected, rejected.contains("dn: cn=fail, dc=scriptella\ncn: fail\n"));
+        assertFalse(rejected, rejected.contains("ok"));
+    }
+
     /**
      * @param s ldif
      * @return entry from ldif
@@ -23,7 +23,14 @@ import scriptella.util.ProxyAdapter;
 
 import javax.naming.NamingEnumeration;
 import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -94,6 +101,112 @@ public class SearchFilterQueryTest extends AbstractTestCase {
         assertEquals(2, rows);
     }
 
+    /**
+     * Tests if results are requested page by page.
+     */
+    public void testPagedSearch() {
+        final int total = 7;
+        final int pageSize = 3;
+        final byte[] cookie = {1, 2, 3};
+        final int[] requests = new int[1];
+        final LdapContext ctx = new ProxyAdapter<LdapContext>(LdapContext.class) {
+            private int offset;
+            private boolean instance;
+
+            public LdapContext newInstance(Control[] controls) {
+                assertFalse("Paged search must use a separate context", instance);
+                instance = true;
+                return getProxy();
+            }
+
+            public void setRequestControls(Control[] controls) {
+                assertTrue(instance);
+                byte[] value = controls[0].getEncodedValue();
+                assertTrue(controls[0] instanceof PagedResultsControl);
+                //Cookie is the last element of the control value, the first request has an empty cookie
+                byte[] expected = requests[0] == 0 ? new byte[0] : cookie;
+                assertEquals(expected.length, value[value.length - expected.length - 1]);
+                for (int i = 0; i < expected.length; i++) {
+                    assertEquals(expected[i], value[value.length - expected.length + i]);
+                }
+            }
+
+            public NamingEnumeration<SearchResult> search(String name, String filter, SearchControls cons) {
+                assertEquals(0, rows % pageSize); //previous pages must be processed
+                requests[0]++;
+                List<SearchResult> res = new ArrayList<SearchResult>();
+                for (int i = offset; i < Math.min(total, offset + pageSize); i++) {
+                    SearchResult sr = new SearchResult("uid=" + i, null, new BasicAttributes("uid", "uid" + i));
+                    sr.setNameInNamespace(sr.getName());
+                    res.add(sr);
+                }
+                offset += pageSize;
+                return enumeration(res);
+            }
+
+            public Control[] getResponseControls() throws IOException {
+                byte[] c = offset < total ? cookie : new byte[0];
+                byte[] value = new byte[7 + c.length];
+                value[0] = 0x30; //SEQUENCE {INTEGER size, OCTET STRING cookie}
+                value[1] = (byte) (5 + c.length);
+                value[2] = 0x02;
+                value[3] = 0x01;
+                value[4] = total;
+                value[5] = 0x04;
+                value[6] = (byte) c.length;
+                System.arraycopy(c, 0, value, 7, c.length);
+                return new Control[]{new PagedResultsResponseControl(PagedResultsResponseControl.OID, false, value)};
+            }
+
+            public void close() {
+                closed = true;
+            }
+        }.getProxy();
+        LdapConnection con = new LdapConnection() {
+            @Override
+            DirContext getCtx() {
+                return ctx;
+            }
+
+            @Override
+            SearchControls getSearchControls() {
+                return new SearchControls();
+            }
+
+            @Override
+            int getPageSize() {
+                return pageSize;
+            }
+        };
+        QueryCallback qc = new QueryCallback() {
+            public void processRow(final ParametersCallback parameters) {
+                assertEquals("uid" + rows, parameters.getParameter("uid"));
+                rows++;
+            }
+        };
+        new SearchFilterQuery(con, MockParametersCallbacks.UNSUPPORTED, qc).execute("(uid=*)");
+        assertEquals(total, rows);
+        assertEquals(3, requests[0]);
+        assertTrue("Context instance must be closed after iteration", closed);
+        assertEquals(1, con.getExecutedStatementsCount());
+    }
+
+    private NamingEnumeration<SearchResult> enumeration(final List<SearchResult> results) {
+        final Iterator<SearchResult> it = results.iterator();
+        return new ProxyAdapter<NamingEnumeration<SearchResult>>(NamingEnumeration.class) {
+            public boolean hasMore() {
+                return it.hasNext();
+            }
+
+            public SearchResult next() {
+                return it.next();
+            }
+
+            public void close() {
+            }
+        }.getProxy();
+    }
+
     /**
      * Tests if variables are substituted in a passed filter.
      */
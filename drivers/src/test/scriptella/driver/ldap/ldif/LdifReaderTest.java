@@ -488,6 +488,60 @@ public class LdifReaderTest extends TestCase {
         assertNull(attr.get());
     }
 
+    /**
+     * Tests base64 values folded to several lines and a folded base64 DN.
+     */
+    public void testLdifParserBase64Folded() throws NamingException, UnsupportedEncodingException {
+        String ldif =
+                "dn:: dWlkPXJvZ2FzYXdhcmEsb3U95Za2\n" +
+                        " 5qWt6YOoLG89QWlyaXVz\n" +
+                        "cn:: RW1tY\n" +
+                        " W51ZWwg\n" +
+                        "  TMOpY2hhcm55\n" +
+                        "# comment\n" +
+                        "description:: \n" +
+                        "sn: L\n" +
+                        " \u00e9charny\n";
+
+        Entry entry = new LdifReader(ldif).next();
+        assertEquals("uid=rogasawara,ou=\u55b6\u696d\u90e8,o=Airius", entry.getDn());
+        assertTrue(Arrays.equals("Emmanuel L\u00e9charny".getBytes("UTF-8"), (byte[]) entry.get("cn").get()));
+        assertEquals(0, ((byte[]) entry.get("description").get()).length);
+        assertEquals("L\u00e9charny", entry.get("sn").get());
+    }
+
+    /**
+     * Tests if the size limit is applied to base64 values.
+     */
+    public void testLdifParserBase64WithSizeLimit() throws NamingException {
+        String ldif =
+                "dn: cn=app1,dc=apache,dc=org\n" +
+                        "cn:: RW1tYW51ZWwg\n" +
+                        " TMOpY2hhcm55ICA=\n";
+        Entry entry = new LdifReader(new LineIterator(new StringReader(ldif)), 20).next();
+        assertEquals(20, ((byte[]) entry.get("cn").get()).length);
+        try {
+            new LdifReader(new LineIterator(new StringReader(ldif)), 19);
+            fail("Base64 value exceeds the size limit");
+        } catch (LdifParseException e) {
+            assertTrue(e.getMessage(), e.getMessage().indexOf("too long") > 0);
+        }
+    }
+
+    /**
+     * Tests if base64 values are not limited by the default size limit.
+     */
+    public void testLdifParserBase64WithoutSizeLimit() throws NamingException {
+        StringBuilder ldif = new StringBuilder("dn: cn=app1,dc=apache,dc=org\njpegPhoto:: ");
+        int n = 2000000;
+        for (int i = 0; i < n / 3; i++) {
+            ldif.append(i == 0 ? "" : i % 19 == 0 ? "\n " : "").append("AAAA");
+        }
+        ldif.append('\n');
+        Entry entry = new LdifReader(ldif.toString()).next();
+        assertEquals(n / 3 * 3, ((byte[]) entry.get("jpegPhoto").get()).length);
+    }
+
     public void testLdifParserRFC2849Sample1() throws NamingException {
         String ldif =
                 "version: 1\n" +
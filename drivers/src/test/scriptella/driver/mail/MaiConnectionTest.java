@@ -24,10 +24,15 @@ import scriptella.spi.MockDriverContext;
 import scriptella.spi.MockParametersCallbacks;
 
 import javax.mail.Message;
+import javax.mail.MessagingException;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimeMultipart;
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Tests for {@link MailConnection}.
@@ -144,4 +149,162 @@ public class MaiConnectionTest extends AbstractTestCase {
 
     }
 
+    /**
+     * Tests if SMTP connections are reused for several messages.
+     */
+    public void testTransportReuse() throws IOException {
+        SmtpServerStub smtp = new SmtpServerStub();
+        try {
+            Map<String, String> parameters = smtpParameters(smtp);
+            parameters.put(MailConnection.TRANSPORT_MESSAGES, "10");
+            MailConnection mc = new MailConnection(new ConnectionParameters(new MockConnectionEl(parameters,
+                    "mailto:$address?subject=Hello"), MockDriverContext.INSTANCE));
+            sendMessages(mc, 25);
+            mc.close();
+            assertEquals(25, smtp.getRecipients().size());
+            assertEquals("user24@nosuchhost.com", smtp.getRecipients().get(24));
+            assertEquals("New connection is expected after each 10 messages", 3, smtp.getConnections());
+        } finally {
+            smtp.close();
+        }
+    }
+
+    /**
+     * Tests if a message is resent over a new connection when the server closed the idle one.
+     */
+    public void testDroppedTransport() throws IOException {
+        SmtpServerStub smtp = new SmtpServerStub();
+        try {
+            smtp.setDropAfter(2);
+            MailConnection mc = new MailConnection(new ConnectionParameters(new MockConnectionEl(smtpParameters(smtp),
+                    "mailto:$address?subject=Hello"), MockDriverContext.INSTANCE));
+            sendMessages(mc, 5);
+            mc.close();
+            List<String> recipients = smtp.getRecipients();
+            assertEquals(5, recipients.size());
+            assertEquals(5, new HashSet<String>(recipients).size());
+            assertEquals(3, smtp.getConnections());
+        } finally {
+            smtp.close();
+        }
+    }
+
+    /**
+     * Tests if a message which was not queued is not awaited.
+     */
+    public void testRejectedSubmit() {
+        MailConnection mc = new MailConnection(new ConnectionParameters(new MockConnectionEl(
+                new HashMap<String, String>(), "mailto:$address"), MockDriverContext.INSTANCE));
+        MailSender sender = new MailSender(mc, 1, 1);
+        sender.close();
+        try {
+            sender.submit(null);
+            fail("Closed sender must reject messages");
+        } catch (RejectedExecutionException e) {
+            //OK
+        }
+        sender.await();
+    }
+
+    /**
+     * Tests sending by a pool of threads.
+     */
+    public void testConcurrentSending() throws IOException {
+        SmtpServerStub smtp = new SmtpServerStub();
+        try {
+            Map<String, String> parameters = smtpParameters(smtp);
+            parameters.put(MailConnection.SEND_THREADS, "4");
+            parameters.put(MailConnection.SEND_QUEUE, "2");
+            MailConnection mc = new MailConnection(new ConnectionParameters(new MockConnectionEl(parameters,
+                    "mailto:$address?subject=Hello"), MockDriverContext.INSTANCE));
+            sendMessages(mc, 40);
+            mc.close();
+            List<String> recipients = smtp.getRecipients();
+            assertEquals(40, recipients.size());
+            assertEquals(40, new HashSet<String>(recipients).size());
+            assertTrue("At most one connection per thread", smtp.getConnections() <= 4);
+        } finally {
+            smtp.close();
+        }
+    }
+
+    /**
+     * Tests if failures of sending threads are reported.
+     */
+    public void testConcurrentSendingFailure() {
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put(MailConnection.SEND_THREADS, "2");
+        MailConnection mc = new MailConnection(new ConnectionParameters(new MockConnectionEl(parameters,
+                "mailto:$address"), MockDriverContext.INSTANCE)) {
+            @Override
+            protected void send(MimeMessage message) throws MessagingException {
+                throw new MessagingException("Failure");
+            }
+        };
+        sendMessages(mc, 1);
+        try {
+            mc.commit();
+            fail("Failure of a sending thread must be reported on commit");
+        } catch (MailProviderException e) {
+            assertEquals("Failure", e.getCause().getMessage());
+        }
+        try {
+            mc.close();
+            fail("Failure of a sending thread must be reported");
+        } catch (MailProviderException e) {
+            assertEquals("Failure", e.getCause().getMessage());
+        }
+    }
+
+    public void testRateLimit() {
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put(MailConnection.SEND_RATE, "100");
+        final int[] sent = new int[1];
+        MailConnection mc = new MailConnection(new ConnectionParameters(new MockConnectionEl(parameters,
+                "mailto:$address"), MockDriverContext.INSTANCE)) {
+            @Override
+            protected void send(MimeMessage message) {
+                sent[0]++;
+            }
+        };
+        long ti = System.currentTimeMillis();
+        sendMessages(mc, 21);
+        ti = System.currentTimeMillis() - ti;
+        assertEquals(21, sent[0]);
+        assertTrue("21 messages at 100 per second take at least 200 ms, but took " + ti, ti >= 190);
+    }
+
+    public void testSendingPropertiesValidation() {
+        String[][] invalid = {{MailConnection.SEND_THREADS, "0"}, {MailConnection.SEND_QUEUE, "x"},
+                {MailConnection.TRANSPORT_MESSAGES, "-1"}, {MailConnection.SEND_RATE, "-1"}};
+        for (String[] p : invalid) {
+            Map<String, String> parameters = new HashMap<String, String>();
+            parameters.put(p[0], p[1]);
+            try {
+                new MailConnection(new ConnectionParameters(new MockConnectionEl(parameters,
+                        "mailto:scriptella@gmail.com"), MockDriverContext.INSTANCE));
+                fail(p[0] + "=" + p[1] + " must be rejected");
+            } catch (ConfigurationException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith(p[0]));
+            }
+        }
+    }
+
+    static Map<String, String> smtpParameters(SmtpServerStub smtp) {
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("mail.smtp.host", "127.0.0.1");
+        parameters.put("mail.smtp.port", String.valueOf(smtp.getPort()));
+        parameters.put("mail.smtp.localhost", "localhost");
+        parameters.put("mail.from", "scriptella@nosuchhost.com");
+        return parameters;
+    }
+
+    static void sendMessages(MailConnection mc, int n) {
+        Map<String, String> params = new HashMap<String, String>();
+        for (int i = 0; i < n; i++) {
+            params.put("address", "user" + i + "@nosuchhost.com");
+            mc.executeScript(new StringResource("Message #" + i), MockParametersCallbacks.fromMap(params));
+        }
+    }
+
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.driver.mail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process SMTP server which accepts all messages.
+ * <p>Supports the minimal set of commands used by JavaMail.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+class SmtpServerStub {
+    private final ServerSocket server;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final AtomicInteger maxActiveConnections = new AtomicInteger();
+    private final List<String> recipients = Collections.synchronizedList(new ArrayList<String>());
+    private volatile int dropAfter;
+
+    SmtpServerStub() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread("SMTP stub") {
+            public void run() {
+                try {
+                    for (;;) {
+                        final Socket s = server.accept();
+                        Thread t = new Thread("SMTP stub connection") {
+                            public void run() {
+                                handle(s);
+                            }
+                        };
+                        t.setDaemon(true);
+                        t.start();
+                    }
+                } catch (IOException e) {
+                    //Server socket closed
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Makes the server close connections without QUIT after the specified number of messages.
+     *
+     * @param messages number of messages per connection, 0 means connections are not dropped.
+     */
+    void setDropAfter(int messages) {
+        dropAfter = messages;
+    }
+
+    int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * @return number of accepted connections.
+     */
+    int getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * @return maximum number of simultaneously open connections.
+     */
+    int getMaxActiveConnections() {
+        return maxActiveConnections.get();
+    }
+
+    /**
+     * @return recipients of received messages.
+     */
+    List<String> getRecipients() {
+        synchronized (recipients) {
+            return new ArrayList<String>(recipients);
+        }
+    }
+
+    void close() throws IOException {
+        server.close();
+    }
+
+    private void handle(Socket s) {
+        connections.incrementAndGet();
+        int active = activeConnections.incrementAndGet();
+        for (int max; active > (max = maxActiveConnections.get()); ) {
+            maxActiveConnections.compareAndSet(max, active);
+        }
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "ISO-8859-1"));
+            Writer out = new OutputStreamWriter(s.getOutputStream(), "ISO-8859-1");
+            reply(out, "220 localhost SMTP stub");
+            List<String> rcpt = new ArrayList<String>();
+            int messages = 0;
+            for (String line; (line = in.readLine()) != null; ) {
+                String cmd = line.toUpperCase();
+                if (cmd.startsWith("RCPT TO:")) {
+                    rcpt.add(line.substring(8).trim().replaceAll("[<>]", ""));
+                    reply(out, "250 OK");
+                } else if (cmd.startsWith("DATA")) {
+                    reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                    while ((line = in.readLine()) != null && !line.equals(".")) {
+                        //Skip message content
+                    }
+                    recipients.addAll(rcpt);
+                    rcpt.clear();
+                    reply(out, "250 OK");
+                    if (++messages == dropAfter) {
+                        break;
+                    }
+                } else if (cmd.startsWith("QUIT")) {
+                    reply(out, "221 Bye");
+                    break;
+                } else if (cmd.startsWith("EHLO") || cmd.startsWith("HELO") || cmd.startsWith("MAIL FROM:") ||
+                        cmd.startsWith("RSET") || cmd.startsWith("NOOP")) {
+                    reply(out, "250 OK");
+                } else {
+                    reply(out, "500 Command not recognized");
+                }
+            }
+        } catch (IOException e) {
+            //Connection closed by client
+        } finally {
+            activeConnections.decrementAndGet();
+            try {
+                s.close();
+            } catch (IOException e) {
+                //Ignore
+            }
+        }
+    }
+
+    private static void reply(Writer out, String reply) throws IOException {
+        out.write(reply);
+        out.write("\r\n");
+        out.flush();
+    }
+}
@@ -45,6 +45,22 @@ public class ScriptConnectionPerfTest extends AbstractTestCase {
         }
     }
 
+    /**
+     * Executes a short script many times, so the per-execution overhead dominates.
+     * History:
+     * 19.10.2026 - Xeon JDK17 - New bindings per execution - 32 ms
+     * 19.10.2026 - Xeon JDK17 - Reused bindings, engines pool - 34 ms
+     */
+    public void testExecuteShortScript() {
+        Resource r = new StringResource("y = x + 1;");
+        ScriptConnection c = ScriptConnectionTest.newConnection();
+        ParametersCallback params = MockParametersCallbacks.fromMap(Collections.singletonMap("x", 1));
+        for (int i = 0; i < 200000; i++) {
+            c.executeScript(r, params);
+        }
+        c.close();
+    }
+
     /**
      * History:
      * 13.05.2007 - Duron 1.7Mhz - 735 ms
@@ -36,8 +36,11 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Tests for {@link ScriptConnection}.
@@ -71,6 +74,72 @@ public class ScriptConnectionTest extends AbstractTestCase {
         }
     }
 
+    /**
+     * Tests that bindings are reused without leaking local variables between executions
+     * and that nested scripts run on the engine of the enclosing query.
+     */
+    public void testReusedBindings() {
+        final ScriptConnection c = newConnection();
+        Resource script = new StringResource("if (typeof local != 'undefined') {obj.setValue('leak')} else {local = step; obj.setValue(step)}");
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("obj", this);
+        for (int i = 0; i < 3; i++) {
+            params.put("step", i);
+            c.executeScript(script, MockParametersCallbacks.fromMap(params));
+            assertEquals(i, ((Number) v).intValue());
+        }
+        final Resource nested = new StringResource("obj.setValue(i * 10)");
+        final List<Object> values = new ArrayList<Object>();
+        IndexedQueryCallback callback = new IndexedQueryCallback() {
+            protected void processRow(final ParametersCallback parameters, final int rowNumber) {
+                c.executeScript(nested, parameters);
+                values.add(((Number) v).intValue());
+            }
+        };
+        c.executeQuery(new StringResource("for (var i = 1; i < 3; i++) {query.next();}"),
+                MockParametersCallbacks.fromMap(params), callback);
+        assertEquals(Arrays.asList(10, 20), values);
+        c.close();
+    }
+
+    /**
+     * Tests concurrent executions on a pool of engines.
+     */
+    public void testEngines() throws InterruptedException {
+        final ScriptConnection c = new ScriptConnection(new MockConnectionParameters(
+                Collections.singletonMap(ScriptConnection.ENGINES, "2"), null));
+        final Resource r = new StringResource("var s = 0; for (var j = 0; j < n; j++) {s += j;} result.add(s);");
+        final List<Object> result = Collections.synchronizedList(new ArrayList<Object>());
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    Map<String, Object> params = new HashMap<String, Object>();
+                    params.put("n", 100);
+                    params.put("result", result);
+                    for (int i = 0; i < 50; i++) {
+                        c.executeScript(r, MockParametersCallbacks.fromMap(params));
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        c.close();
+        assertEquals(200, result.size());
+        for (Object o : result) {
+            assertEquals(4950, ((Number) o).intValue());
+        }
+        try {
+            new ScriptConnection(new MockConnectionParameters(Collections.singletonMap(ScriptConnection.ENGINES, "0"), null));
+            fail("Non-positive number of engines must be rejected");
+        } catch (ConfigurationException e) {
+            //OK
+        }
+    }
+
     static ScriptConnection newConnection() {
         return new ScriptConnection(new MockConnectionParameters());
     }
@@ -16,6 +16,7 @@
 package scriptella.driver.shell;
 
 import scriptella.AbstractTestCase;
+import scriptella.configuration.ConfigurationException;
 import scriptella.spi.MockConnectionParameters;
 
 import java.util.Arrays;
@@ -50,4 +51,42 @@ public class ShellConnectionParametersTest extends AbstractTestCase {
         assertTrue("Unexpected result " + Arrays.toString(arr),
                 Arrays.equals(new String[] {"/bin/supershell", "--command"}, arr));
     }
-}
\ No newline at end of file
+
+    public void testPersistent() {
+        Map<String, String> props = new HashMap<>();
+        props.put("os_behavior", "linux");
+        props.put("persistent", "true");
+        assertTrue(new ShellConnectionParameters(new MockConnectionParameters(props, null)).isPersistent());
+        props.put("os_behavior", "windows");
+        try {
+            new ShellConnectionParameters(new MockConnectionParameters(props, null));
+            fail("Persistent mode is not supported for Windows");
+        } catch (ConfigurationException e) {
+            //OK
+        }
+    }
+
+    public void testParallelism() {
+        Map<String, String> props = new HashMap<>();
+        ShellConnectionParameters p = new ShellConnectionParameters(new MockConnectionParameters(props, null));
+        assertEquals(1, p.getParallelism());
+        assertTrue(p.isRowOrder());
+        assertFalse(p.isFailOnExitCode());
+        props.put("parallelism", "4");
+        props.put("output_order", "completion");
+        p = new ShellConnectionParameters(new MockConnectionParameters(props, null));
+        assertEquals(4, p.getParallelism());
+        assertFalse(p.isRowOrder());
+        String[][] invalid = {{"parallelism", "0"}, {"output_order", "random"}};
+        for (String[] prop : invalid) {
+            props.clear();
+            props.put(prop[0], prop[1]);
+            try {
+                new ShellConnectionParameters(new MockConnectionParameters(props, null));
+                fail(prop[0] + "=" + prop[1] + " must be rejected");
+            } catch (ConfigurationException e) {
+                //OK
+            }
+        }
+    }
+}
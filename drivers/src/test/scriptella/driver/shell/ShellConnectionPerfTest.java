@@ -0,0 +1,77 @@
+/*
+ * Copyright 2006-2020 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.driver.shell;
+
+import scriptella.AbstractTestCase;
+import scriptella.configuration.MockConnectionEl;
+import scriptella.configuration.StringResource;
+import scriptella.spi.ConnectionParameters;
+import scriptella.spi.MockDriverContext;
+import scriptella.spi.MockParametersCallbacks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Performance tests for {@link ShellConnection}.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+public class ShellConnectionPerfTest extends AbstractTestCase {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        testURLHandler = new TestURLHandler() {
+            public InputStream getInputStream(final URL u) {
+                throw new UnsupportedOperationException();
+            }
+
+            public OutputStream getOutputStream(final URL u) {
+                return out;
+            }
+
+            public int getContentLength(final URL u) {
+                return -1;
+            }
+        };
+    }
+
+    /**
+     * Executes a script 1000 times, e.g. once per row of a query.
+     * <p>History:
+     * 19.10.2026 - Xeon JDK17 - process per script - 2800 ms
+     * 19.10.2026 - Xeon JDK17 - persistent shell - 310 ms
+     */
+    public void testPersistentScript() {
+        Map<String, String> props = new HashMap<String, String>();
+        props.put("persistent", "true");
+        props.put("os_behavior", "linux");
+        ConnectionParameters p = new ConnectionParameters(new MockConnectionEl(props, "tst://out"), MockDriverContext.INSTANCE);
+        ShellConnection c = new ShellConnection(new ShellConnectionParameters(p));
+        StringResource script = new StringResource("echo Row $$");
+        for (int i = 0; i < 1000; i++) {
+            c.executeScript(script, MockParametersCallbacks.NULL);
+        }
+        c.close();
+        assertEquals(1000, out.toString().split("\n").length);
+    }
+}
@@ -22,6 +22,17 @@ import scriptella.driver.text.TextConnection;
 import scriptella.spi.ConnectionParameters;
 import scriptella.spi.MockDriverContext;
 import scriptella.spi.MockParametersCallbacks;
+import scriptella.spi.ParametersCallback;
+import scriptella.spi.QueryCallback;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Tests for {@link TextConnection}.
@@ -45,4 +56,190 @@ public class ShellConnectionTest extends AbstractTestCase {
         c.executeScript(new StringResource("command_ignore_error_just_for_testing"), MockParametersCallbacks.NULL);
         c.close();
     }
+
+    public void testPersistent() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        testURLHandler = new TestURLHandler() {
+            public InputStream getInputStream(final URL u) {
+                throw new UnsupportedOperationException();
+            }
+
+            public OutputStream getOutputStream(final URL u) {
+                return out;
+            }
+
+            public int getContentLength(final URL u) {
+                return -1;
+            }
+        };
+        Map<String, String> props = new HashMap<String, String>();
+        props.put("persistent", "true");
+        props.put("os_behavior", "linux");
+        props.put("flush", "true");
+        ConnectionParameters p = new ConnectionParameters(new MockConnectionEl(props, "tst://out"), MockDriverContext.INSTANCE);
+        final ShellConnection c = new ShellConnection(new ShellConnectionParameters(p));
+        //Shell state is preserved between scripts
+        c.executeScript(new StringResource("V=value\necho $$"), MockParametersCallbacks.NULL);
+        c.executeScript(new StringResource("echo $$ $V\nprintf incomplete"), MockParametersCallbacks.NULL);
+        String[] lines = out.toString().split("\r?\n");
+        assertEquals(3, lines.length);
+        assertEquals(lines[0] + " value", lines[1]);
+        assertEquals("incomplete", lines[2]);
+
+        //Rows of a query may be processed by scripts of the same connection
+        out.reset();
+        final List<String> rows = new ArrayList<String>();
+        c.executeQuery(new StringResource("echo r1; echo r2"), MockParametersCallbacks.NULL, new QueryCallback() {
+            public void processRow(final ParametersCallback parameters) {
+                rows.add((String) parameters.getParameter("row"));
+                c.executeScript(new StringResource("echo script"), MockParametersCallbacks.NULL);
+            }
+        });
+        assertEquals("[r1, r2]", rows.toString());
+        assertEquals("script\nscript", out.toString().trim());
+        c.executeScript(new StringResource("echo $V"), MockParametersCallbacks.NULL);
+        assertTrue(out.toString().endsWith("value\n"));
+
+        //The shell is restarted after it exits
+        try {
+            c.executeScript(new StringResource("exit 1"), MockParametersCallbacks.NULL);
+            fail("Exit of persistent shell must be reported");
+        } catch (ShellProviderException e) {
+            //OK
+        }
+        out.reset();
+        c.executeScript(new StringResource("echo restarted $V"), MockParametersCallbacks.NULL);
+        assertEquals("restarted", out.toString().trim());
+        c.close();
+    }
+
+    /**
+     * Tests if exit codes are checked only if fail_on_exit_code is set, regardless of parallelism.
+     */
+    public void testFailOnExitCode() {
+        for (String parallelism : new String[] {"1", "2"}) {
+            newOutput();
+            Map<String, String> props = new HashMap<String, String>();
+            props.put("parallelism", parallelism);
+            props.put("os_behavior", "linux");
+            ConnectionParameters p = new ConnectionParameters(new MockConnectionEl(props, "tst://out"), MockDriverContext.INSTANCE);
+            ShellConnection c = new ShellConnection(new ShellConnectionParameters(p));
+            c.executeScript(new StringResource("exit 3"), MockParametersCallbacks.NULL);
+            c.commit();
+            c.close();
+
+            props.put("fail_on_exit_code", "true");
+            p = new ConnectionParameters(new MockConnectionEl(props, "tst://out"), MockDriverContext.INSTANCE);
+            c = new ShellConnection(new ShellConnectionParameters(p));
+            try {
+                c.executeScript(new StringResource("exit 3"), MockParametersCallbacks.NULL);
+                c.commit();
+                fail("Exit code must be checked, parallelism=" + parallelism);
+            } catch (ShellProviderException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("exited with code 3"));
+            }
+            c.close();
+        }
+    }
+
+    public void testParallel() {
+        ByteArrayOutputStream out = newOutput();
+        Map<String, String> props = new HashMap<String, String>();
+        props.put("parallelism", "4");
+        props.put("os_behavior", "linux");
+        props.put("fail_on_exit_code", "true");
+        ConnectionParameters p = new ConnectionParameters(new MockConnectionEl(props, "tst://out"), MockDriverContext.INSTANCE);
+        ShellConnection c = new ShellConnection(new ShellConnectionParameters(p));
+        StringResource script = new StringResource("sleep 0.$d\necho row $i");
+        Map<String, Object> params = new HashMap<String, Object>();
+        long ti = System.currentTimeMillis();
+        for (int i = 0; i < 4; i++) {
+            params.put("i", i);
+            params.put("d", 4 - i);
+            c.executeScript(script, MockParametersCallbacks.fromMap(params));
+        }
+        c.commit();
+        ti = System.currentTimeMillis() - ti;
+        assertTrue("Scripts must be executed concurrently, but took " + ti + " ms", ti < 1000);
+        //Output is written in the row order
+        assertEquals("row 0\nrow 1\nrow 2\nrow 3", out.toString().trim());
+
+        c.executeScript(new StringResource("echo failure >&2; exit 3"), MockParametersCallbacks.NULL);
+        c.executeScript(new StringResource("echo ok"), MockParametersCallbacks.NULL);
+        try {
+            c.commit();
+            fail("Failed scripts must be reported");
+        } catch (ShellProviderException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("1 of 2 shell commands failed"));
+            assertTrue(e.getMessage(), e.getMessage().contains("exited with code 3"));
+            assertTrue(e.getMessage(), e.getMessage().contains("Stderr: failure"));
+        }
+        assertTrue(out.toString().endsWith("ok\n"));
+        c.close();
+    }
+
+    public void testParallelCompletionOrder() {
+        ByteArrayOutputStream out = newOutput();
+        Map<String, String> props = new HashMap<String, String>();
+        props.put("parallelism", "2");
+        props.put("output_order", "completion");
+        props.put("os_behavior", "linux");
+        ConnectionParameters p = new ConnectionParameters(new MockConnectionEl(props, "tst://out"), MockDriverContext.INSTANCE);
+        ShellConnection c = new ShellConnection(new ShellConnectionParameters(p));
+        c.executeScript(new StringResource("sleep 0.5; echo slow"), MockParametersCallbacks.NULL);
+        c.executeScript(new StringResource("echo fast"), MockParametersCallbacks.NULL);
+        //Query waits for the scripts
+        final List<String> rows = new ArrayList<String>();
+        c.executeQuery(new StringResource("echo query"), MockParametersCallbacks.NULL, new QueryCallback() {
+            public void processRow(final ParametersCallback parameters) {
+                rows.add((String) parameters.getParameter("row"));
+            }
+        });
+        assertEquals("fast\nslow", out.toString().trim());
+        assertEquals("[query]", rows.toString());
+        c.close();
+    }
+
+    public void testParallelBoundedOutput() {
+        ByteArrayOutputStream out = newOutput();
+        Map<String, String> props = new HashMap<String, String>();
+        props.put("parallelism", "2");
+        props.put("os_behavior", "linux");
+        ConnectionParameters p = new ConnectionParameters(new MockConnectionEl(props, "tst://out"), MockDriverContext.INSTANCE);
+        ShellConnection c = new ShellConnection(new ShellConnectionParameters(p));
+        c.executeScript(new StringResource("sleep 0.5; echo slow"), MockParametersCallbacks.NULL);
+        long ti = System.currentTimeMillis();
+        StringResource script = new StringResource("echo $i");
+        Map<String, Object> params = new HashMap<String, Object>();
+        StringBuilder expected = new StringBuilder("slow");
+        for (int i = 0; i < 20; i++) {
+            params.put("i", i);
+            c.executeScript(script, MockParametersCallbacks.fromMap(params));
+            expected.append('\n').append(i);
+        }
+        ti = System.currentTimeMillis() - ti;
+        //Completed outputs are buffered behind the slow script only up to a limit
+        assertTrue("Submission must wait for the slow script, but took " + ti + " ms", ti >= 300);
+        c.commit();
+        assertEquals(expected.toString(), out.toString().trim());
+        c.close();
+    }
+
+    private static ByteArrayOutputStream newOutput() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        testURLHandler = new TestURLHandler() {
+            public InputStream getInputStream(final URL u) {
+                throw new UnsupportedOperationException();
+            }
+
+            public OutputStream getOutputStream(final URL u) {
+                return out;
+            }
+
+            public int getContentLength(final URL u) {
+                return -1;
+            }
+        };
+        return out;
+    }
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.driver.text;
+
+import scriptella.AbstractTestCase;
+import scriptella.configuration.MockConnectionEl;
+import scriptella.configuration.StringResource;
+import scriptella.spi.ConnectionParameters;
+import scriptella.spi.MockDriverContext;
+import scriptella.spi.MockParametersCallbacks;
+import scriptella.util.IOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests for {@link AsyncWriter}.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+public class AsyncWriterTest extends AbstractTestCase {
+    /**
+     * Tests if content spanning many chunks is written in order,
+     * including surrogate pairs split by chunk boundaries.
+     */
+    public void testWrite() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        AsyncWriter w = new AsyncWriter(Channels.newChannel(bos), "UTF-8", 7, TextConnectionParameters.FsyncPolicy.NONE);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            String s = "row" + i + ";été;😀\n";
+            expected.append(s);
+            if (i % 2 == 0) {
+                w.write(s);
+            } else {
+                w.write(s.toCharArray(), 0, s.length());
+            }
+            w.write('#');
+            expected.append('#');
+        }
+        w.flush();
+        assertEquals(expected.toString(), bos.toString("UTF-8"));
+        w.write("tail");
+        w.close();
+        assertEquals(expected + "tail", bos.toString("UTF-8"));
+        try {
+            w.write("closed");
+            fail("Closed writer must reject writes");
+        } catch (IOException e) {
+            //OK
+        }
+    }
+
+    /**
+     * Tests if I/O errors from the writer thread are propagated to the producer.
+     */
+    public void testError() throws IOException {
+        AsyncWriter w = new AsyncWriter(new WritableByteChannel() {
+            public int write(ByteBuffer src) throws IOException {
+                throw new IOException("Disk full");
+            }
+
+            public boolean isOpen() {
+                return true;
+            }
+
+            public void close() {
+            }
+        }, null, 16, TextConnectionParameters.FsyncPolicy.NONE);
+        w.write("Some content");
+        try {
+            w.flush();
+            fail("Writer thread error must be rethrown");
+        } catch (IOException e) {
+            assertEquals("Disk full", e.getMessage());
+        }
+        try {
+            w.close();
+            fail("Writer thread error must be rethrown");
+        } catch (IOException e) {
+            assertEquals("Disk full", e.getMessage());
+        }
+    }
+
+    /**
+     * Tests if close returns with the error when the writer thread fails and the last chunk is not submitted yet.
+     */
+    public void testCloseAfterError() throws InterruptedException {
+        final AsyncWriter w = new AsyncWriter(new WritableByteChannel() {
+            public int write(ByteBuffer src) throws IOException {
+                throw new IOException("Disk full");
+            }
+
+            public boolean isOpen() {
+                return true;
+            }
+
+            public void close() {
+            }
+        }, null, 16, TextConnectionParameters.FsyncPolicy.NONE);
+        final IOException[] closeError = new IOException[1];
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    w.write("0123456789abcdef"); //fills the first chunk
+                    w.write("last"); //submits the first chunk
+                    Thread.sleep(200); //the writer thread fails on the first chunk
+                    w.close();
+                } catch (IOException e) {
+                    closeError[0] = e;
+                } catch (InterruptedException e) {
+                    //Test fails
+                }
+            }
+        };
+        t.start();
+        t.join(10000);
+        assertFalse("close() must not hang after the writer thread failed", t.isAlive());
+        assertNotNull("Writer thread error must be rethrown", closeError[0]);
+        assertEquals("Disk full", closeError[0].getMessage());
+    }
+
+    /**
+     * Tests text connection output with async=true.
+     */
+    public void testTextConnection() throws IOException {
+        File f = File.createTempFile("asyncwriter", ".txt");
+        f.deleteOnExit();
+        Map<String, String> props = new HashMap<String, String>();
+        props.put(AbstractTextConnection.ASYNC, "true");
+        props.put(AbstractTextConnection.ASYNC_BUFFER_SIZE, "64");
+        props.put(AbstractTextConnection.FSYNC, "close");
+        props.put(AbstractTextConnection.ENCODING, "UTF-8");
+        ConnectionParameters cp = new ConnectionParameters(new MockConnectionEl(props, IOUtils.toUrl(f).toString()),
+                MockDriverContext.INSTANCE);
+        TextConnection con = new TextConnection(cp);
+        assertTrue(con.getConnectionParameters().isAsync());
+        for (int i = 0; i < 100; i++) {
+            con.executeScript(new StringResource("line $col1"), MockParametersCallbacks.SIMPLE);
+        }
+        con.close();
+        String actual = IOUtils.toString(IOUtils.getReader(new FileInputStream(f), "UTF-8"));
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            expected.append("line *col1*\n");
+        }
+        assertEquals(expected.toString(), actual);
+        f.delete();
+    }
+}
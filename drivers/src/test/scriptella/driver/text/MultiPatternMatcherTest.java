@@ -0,0 +1,91 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.driver.text;
+
+import scriptella.AbstractTestCase;
+
+import java.util.regex.Pattern;
+
+/**
+ * Tests for {@link MultiPatternMatcher}.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+public class MultiPatternMatcherTest extends AbstractTestCase {
+    public void testExtractLiteral() {
+        assertEquals("error: ", MultiPatternMatcher.extractLiteral("error: (\\w+).*"));
+        assertEquals(",", MultiPatternMatcher.extractLiteral(".*,(.*2),.*"));
+        assertEquals(" warn", MultiPatternMatcher.extractLiteral("^\\d+ warn\\b"));
+        assertEquals("abc", MultiPatternMatcher.extractLiteral("abcd?"));
+        assertEquals("ab", MultiPatternMatcher.extractLiteral("ab+c"));
+        assertEquals("a.", MultiPatternMatcher.extractLiteral("x*a\\.b{1,2}"));
+        assertEquals(" id=", MultiPatternMatcher.extractLiteral("[a-z]+ id=[^\\]]*"));
+        assertEquals("(x)", MultiPatternMatcher.extractLiteral("\\(x\\)"));
+        assertEquals("bc", MultiPatternMatcher.extractLiteral("\\x41bc"));
+        assertEquals("bc", MultiPatternMatcher.extractLiteral("\\u0041bc"));
+        assertEquals("bc", MultiPatternMatcher.extractLiteral("\\0101bc"));
+        assertEquals("xyz", MultiPatternMatcher.extractLiteral("\\cAxyz"));
+        assertNull(MultiPatternMatcher.extractLiteral(".*"));
+        assertNull(MultiPatternMatcher.extractLiteral("error|warn"));
+        assertNull(MultiPatternMatcher.extractLiteral("(?x)a b"));
+        assertNull(MultiPatternMatcher.extractLiteral("\\Qa|b\\E"));
+        assertNull(MultiPatternMatcher.extractLiteral("(error|warn)"));
+    }
+
+    public void testCandidates() {
+        Pattern[] patterns = compile("ERROR: (\\w+)", "warn(ing)?", ".*", "id=(\\d+)", "ing");
+        MultiPatternMatcher m = new MultiPatternMatcher(patterns);
+        assertCandidates(m, "[Error: msg]", true, false, true, false, false);
+        assertCandidates(m, "WARNING id=5", false, true, true, true, true);
+        assertCandidates(m, "nothing", false, false, true, false, true);
+        assertCandidates(m, "", false, false, true, false, false);
+    }
+
+    /**
+     * Verifies that prefiltering never skips a pattern which actually matches.
+     */
+    public void testNoFalseNegatives() {
+        Pattern[] patterns = compile("a(b|c)d", "x+yz", "[0-9]{3}-key", "key\\.value", "été", "k[ae]y", "Ab{0}c",
+                "\\x41bc", "\\u0041bc", "\\0101bc", "\\cAxyz", "(q)\\12");
+        MultiPatternMatcher m = new MultiPatternMatcher(patterns);
+        String[] lines = {"abd", "acd", "xyz", "xxyz", "123-KEY", "Key.Value", "été", "kay", "key", "Ac", "none",
+                "Abc", "\001xyz", "qq2"};
+        for (String line : lines) {
+            boolean[] c = m.candidates(line);
+            for (int i = 0; i < patterns.length; i++) {
+                if (patterns[i].matcher(line).find()) {
+                    assertTrue("Pattern " + patterns[i] + " must be a candidate for " + line, c[i]);
+                }
+            }
+        }
+    }
+
+    private static Pattern[] compile(String... regex) {
+        Pattern[] res = new Pattern[regex.length];
+        for (int i = 0; i < regex.length; i++) {
+            res[i] = Pattern.compile(regex[i], Pattern.CASE_INSENSITIVE);
+        }
+        return res;
+    }
+
+    private static void assertCandidates(MultiPatternMatcher m, String line, boolean... expected) {
+        boolean[] actual = m.candidates(line);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("Pattern #" + i + " for line " + line, expected[i], actual[i]);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.driver.text;
+
+import scriptella.AbstractTestCase;
+import scriptella.configuration.ConfigurationException;
+import scriptella.configuration.MockConnectionEl;
+import scriptella.configuration.StringResource;
+import scriptella.spi.ConnectionParameters;
+import scriptella.spi.MockDriverContext;
+import scriptella.spi.ParametersCallback;
+import scriptella.util.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests for {@link OutputFiles}.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+public class OutputFilesTest extends AbstractTestCase {
+    private File dir;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = File.createTempFile("outputfiles", "");
+        dir.delete();
+        dir.mkdir();
+    }
+
+    protected void tearDown() throws Exception {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+        super.tearDown();
+    }
+
+    public void testSequencePattern() {
+        assertTrue(OutputFiles.hasSequencePattern("file:/out-%05d.csv"));
+        assertTrue(OutputFiles.hasSequencePattern("file:/out-%d.csv"));
+        assertFalse(OutputFiles.hasSequencePattern("file:/my%20file.csv"));
+        //URL escapes
+        assertFalse(OutputFiles.hasSequencePattern("file:/my%2dfile.csv"));
+        assertFalse(OutputFiles.hasSequencePattern("file:/my%dafile.csv"));
+        assertEquals("file:/my%2dfile-7.csv", OutputFiles.formatSequence("file:/my%2dfile-%d.csv", 7));
+        assertFalse(OutputFiles.hasSequencePattern(null));
+        assertEquals("file:/out-00012.csv", OutputFiles.formatSequence("file:/out-%05d.csv", 12));
+        assertEquals("file:/out-3.csv", OutputFiles.formatSequence("file:/out-%d.csv", 3));
+    }
+
+    /**
+     * Tests if output is split into files by the number of rows and the header is repeated in each file.
+     */
+    public void testRollRows() throws IOException {
+        Map<String, String> props = new HashMap<String, String>();
+        props.put(AbstractTextConnection.ROLL_ROWS, "2");
+        props.put(AbstractTextConnection.OUTPUT_HEADER, "id");
+        TextConnection con = newConnection(props, "out-%02d.txt");
+        for (int i = 1; i <= 5; i++) {
+            con.executeScript(new StringResource("$id"), row("id", i));
+        }
+        con.close();
+        assertEquals("id\n1\n2\n", read("out-01.txt"));
+        assertEquals("id\n3\n4\n", read("out-02.txt"));
+        assertEquals("id\n5\n", read("out-03.txt"));
+        assertFalse(new File(dir, "out-04.txt").exists());
+    }
+
+    /**
+     * Tests if rows are routed to partition files and evicted files are reopened in append mode.
+     */
+    public void testPartitions() throws IOException {
+        Map<String, String> props = new HashMap<String, String>();
+        props.put(AbstractTextConnection.MAX_OPEN_FILES, "1");
+        props.put(AbstractTextConnection.OUTPUT_HEADER, "header");
+        TextConnection con = newConnection(props, "${region}.txt");
+        String[] regions = {"eu", "us", "eu", "eu", "asia", "us"};
+        for (int i = 0; i < regions.length; i++) {
+            Map<String, Object> row = new HashMap<String, Object>();
+            row.put("region", regions[i]);
+            row.put("id", i);
+            con.executeScript(new StringResource("$id"), row(row));
+        }
+        con.close();
+        assertEquals("header\n0\n2\n3\n", read("eu.txt"));
+        assertEquals("header\n1\n5\n", read("us.txt"));
+        assertEquals("header\n4\n", read("asia.txt"));
+    }
+
+    /**
+     * Tests if partition values cannot escape the output directory.
+     */
+    public void testIllegalPartitionValues() throws IOException {
+        TextConnection con = newConnection(new HashMap<String, String>(), "${region}.txt");
+        String[] illegal = {"../eu", "..", "a/b", "a\\b", "a?b", "a#b", "50%done", "x%d"};
+        for (String v : illegal) {
+            try {
+                con.executeScript(new StringResource("$region"), row("region", v));
+                fail("Partition value " + v + " must be rejected");
+            } catch (TextProviderException e) {
+                //OK
+            }
+        }
+        con.executeScript(new StringResource("$region"), row("region", "a..b"));
+        con.close();
+        assertEquals("a..b\n", read("a..b.txt"));
+        assertEquals(1, dir.listFiles().length);
+    }
+
+    /**
+     * Tests if a partition property without a value is reported instead of being used as a file name.
+     */
+    public void testMissingPartitionValue() throws IOException {
+        TextConnection con = newConnection(new HashMap<String, String>(), "${region}.txt");
+        try {
+            con.executeScript(new StringResource("$id"), row("id", 1));
+            fail("Missing partition value must be reported");
+        } catch (TextProviderException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("${region}"));
+        }
+        con.close();
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    /**
+     * Tests if evicted deflate partitions are not appended with a second zlib stream.
+     */
+    public void testDeflatePartitionsReopen() throws IOException {
+        Map<String, String> props = new HashMap<String, String>();
+        props.put(AbstractTextConnection.MAX_OPEN_FILES, "1");
+        TextConnection con = newConnection(props, "${region}.txt.zz");
+        con.executeScript(new StringResource("$region"), row("region", "eu"));
+        con.executeScript(new StringResource("$region"), row("region", "us"));
+        try {
+            con.executeScript(new StringResource("$region"), row("region", "eu"));
+            fail("Deflate file cannot be reopened in append mode");
+        } catch (TextProviderException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(AbstractTextConnection.MAX_OPEN_FILES));
+        }
+        con.close();
+    }
+
+    public void testRollWithoutPattern() throws IOException {
+        Map<String, String> props = new HashMap<String, String>();
+        props.put(AbstractTextConnection.ROLL_BYTES, "100");
+        try {
+            newConnection(props, "out.txt");
+            fail("Sequence number pattern is required for rolling output");
+        } catch (ConfigurationException e) {
+            //OK
+        }
+        try {
+            newConnection(props, "out%2d.txt");
+            fail("%2d is a URL escape, not a sequence number pattern");
+        } catch (ConfigurationException e) {
+            //OK
+        }
+    }
+
+    private TextConnection newConnection(Map<String, String> props, String file) throws IOException {
+        props.put(AbstractTextConnection.ENCODING, "UTF-8");
+        props.put(AbstractTextConnection.EOL, "\n");
+        //Directory URL ends with a slash
+        String url = IOUtils.toUrl(dir).toString() + file;
+        return new TextConnection(new ConnectionParameters(new MockConnectionEl(props, url), MockDriverContext.INSTANCE));
+    }
+
+    private String read(String file) throws IOException {
+        return IOUtils.toString(IOUtils.getReader(new FileInputStream(new File(dir, file)), "UTF-8"));
+    }
+
+    private static ParametersCallback row(String name, Object value) {
+        Map<String, Object> row = new HashMap<String, Object>();
+        row.put(name, value);
+        return row(row);
+    }
+
+    private static ParametersCallback row(final Map<String, Object> row) {
+        return new ParametersCallback() {
+            public Object getParameter(final String name) {
+                return row.get(name);
+            }
+        };
+    }
+}
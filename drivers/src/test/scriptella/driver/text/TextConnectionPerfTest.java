@@ -95,6 +95,32 @@ public class TextConnectionPerfTest extends AbstractTestCase {
 
     }
 
+    /**
+     * Queries a file using a large number of patterns, only a few of them match.
+     * <p>Most of patterns are rejected by a literal prefilter without running a regex.
+     */
+    public void testMultiPatternQuery() {
+        Map<String, String> props = new HashMap<String, String>();
+        ConnectionParameters cp = new ConnectionParameters(new MockConnectionEl(props, "tst://file"), MockDriverContext.INSTANCE);
+
+        TextConnection con = new TextConnection(cp);
+        StringBuilder q = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            q.append(".*ERR").append(i).append(":(.*),.*\n");
+        }
+        q.append(".*,(.*2),.*\n");
+        for (int i = 0; i < 10; i++) {
+            rows = 0;
+            con.executeQuery(new StringResource(q.toString()), MockParametersCallbacks.NULL, new QueryCallback() {
+                public void processRow(final ParametersCallback parameters) {
+                    rows++;
+                    parameters.getParameter("1");
+                }
+            });
+            assertEquals(10000, rows);
+        }
+    }
+
     /**
      * History:
      * 03.12.2006 - Duron 1.7Mhz - 703 ms
@@ -86,5 +86,24 @@ public class TextScriptExecutorTest extends AbstractTestCase {
         assertEquals("1;Null;G\n", res);
     }
 
+    /**
+     * Tests if a compiled template produces the same output as properties substitution.
+     */
+    public void testTemplate() throws IOException {
+        String s = " $a-$missing $ ${a+'!'}$$b\n\n${unclosed $\nlast$";
+        TextConnectionParameters cp = new TextConnectionParameters();
+        TextScriptTemplate t = TextScriptTemplate.compile(new StringReader(s), cp);
+        Map<String, String> m = new HashMap<String, String>();
+        m.put("a", "1");
+        m.put("b", "2");
+        StringWriter out = new StringWriter();
+        assertEquals(3, t.render(MockParametersCallbacks.fromMap(m), out));
+        assertEquals("1-$missing $ 1!$2\n${unclosed $\nlast$\n", out.toString());
+        m.put("a", "x");
+        out = new StringWriter();
+        t.render(MockParametersCallbacks.fromMap(m), out);
+        assertEquals("x-$missing $ x!$2\n${unclosed $\nlast$\n", out.toString());
+    }
+
 
 }
@@ -21,6 +21,7 @@ import scriptella.configuration.StringResource;
 import scriptella.spi.ConnectionParameters;
 import scriptella.spi.MockDriverContext;
 import scriptella.spi.MockParametersCallbacks;
+import scriptella.spi.Resource;
 
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
@@ -29,6 +30,8 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLStreamHandler;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Tests velocity connection class.
@@ -94,6 +97,22 @@ public class VelocityConnectionTest extends AbstractTestCase {
 
 
     }
+    /**
+     * Tests that a cached template is merged with parameters of each execution.
+     */
+    public void testCachedTemplate() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        VelocityConnection c = createConnection(out);
+        Resource script = new StringResource("#set($x = \"[$v]\")$x");
+        Map<String, Object> params = new HashMap<String, Object>();
+        for (int i = 0; i < 3; i++) {
+            params.put("v", i);
+            c.executeScript(script, MockParametersCallbacks.fromMap(params));
+        }
+        c.close();
+        assertEquals("[0][1][2]", out.toString());
+    }
+
     //Methods shared with performance test
 
     static VelocityConnection createConnection(final OutputStream out) {
@@ -132,7 +151,9 @@ public class VelocityConnectionTest extends AbstractTestCase {
         }
     }
 
+    private static final Resource SCRIPT = new StringResource("$v1///$v2");
+
     static void run(VelocityConnection c) {
-        c.executeScript(new StringResource(("$v1///$v2")), MockParametersCallbacks.SIMPLE);
+        c.executeScript(SCRIPT, MockParametersCallbacks.SIMPLE);
     }
 }
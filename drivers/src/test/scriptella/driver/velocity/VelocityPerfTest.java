@@ -29,6 +29,9 @@ import java.util.concurrent.CountDownLatch;
 public class VelocityPerfTest extends AbstractTestCase {
     /**
      * This method tests velocity driver under load (5 threads * 5000 iterations).
+     * <p>History:
+     * 19.10.2026 - Xeon JDK17 - Template parsed per execution - 913 ms
+     * 19.10.2026 - Xeon JDK17 - Parsed templates cached per resource - 295 ms
      */
     public void test() throws InterruptedException {
         final CountDownLatch cdl = new CountDownLatch(5);
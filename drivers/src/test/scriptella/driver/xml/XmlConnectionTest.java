@@ -0,0 +1,158 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.driver.xml;
+
+import scriptella.AbstractTestCase;
+import scriptella.configuration.MockConnectionEl;
+import scriptella.configuration.StringResource;
+import scriptella.spi.ConnectionParameters;
+import scriptella.spi.MockDriverContext;
+import scriptella.spi.MockParametersCallbacks;
+import scriptella.spi.Resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests for {@link XmlConnection}.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+public class XmlConnectionTest extends AbstractTestCase {
+    private ByteArrayOutputStream out;
+
+    protected void setUp() throws Exception {
+        testURLHandler = new TestURLHandler() {
+            public InputStream getInputStream(final URL u) {
+                return new ByteArrayInputStream(new byte[0]);
+            }
+
+            public OutputStream getOutputStream(final URL u) {
+                return out = new ByteArrayOutputStream();
+            }
+
+            public int getContentLength(final URL u) {
+                return -1;
+            }
+        };
+    }
+
+    private XmlConnection newConnection(Map<String, String> props) {
+        props.put(XmlConnection.ENCODING, "UTF-8");
+        return new XmlConnection(new ConnectionParameters(new MockConnectionEl(props, "tst://out.xml"), MockDriverContext.INSTANCE));
+    }
+
+    public void test() throws Exception {
+        Map<String, String> props = new HashMap<String, String>();
+        props.put(XmlConnection.ROOT, "rows");
+        XmlConnection c = newConnection(props);
+        Resource script = new StringResource(
+                "<row id='$id'>\n" +
+                "    <!--row-->\n" +
+                "    <name>  $name  </name>\n" +
+                "    <note><![CDATA[$note]]></note>\n" +
+                "    <empty/>\n" +
+                "</row>");
+        Map<String, Object> params = new HashMap<String, Object>();
+        for (int i = 0; i < 2; i++) {
+            params.put("id", i);
+            params.put("name", "A&B <" + i + ">");
+            params.put("note", i == 0 ? "x < y" : "]]>");
+            c.executeScript(script, MockParametersCallbacks.fromMap(params));
+        }
+        c.close();
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><rows>" +
+                "<row id=\"0\"><!--row--><name>A&amp;B &lt;0&gt;</name><note><![CDATA[x < y]]></note><empty></empty></row>" +
+                "<row id=\"1\"><!--row--><name>A&amp;B &lt;1&gt;</name><note>]]&gt;</note><empty></empty></row>" +
+                "</rows>", out.toString("UTF-8"));
+    }
+
+    /**
+     * Tests if null_string and format.* properties are applied to substituted values.
+     */
+    public void testFormatting() throws Exception {
+        Map<String, String> props = new HashMap<String, String>();
+        props.put(XmlConnection.ROOT, "rows");
+        props.put(XmlConnection.NULL_STRING, "");
+        props.put(XmlConnection.FORMAT_PREFIX + "price.type", "number");
+        props.put(XmlConnection.FORMAT_PREFIX + "price.pattern", "0.00");
+        XmlConnection c = newConnection(props);
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("price", 1.5);
+        c.executeScript(new StringResource("<row price='$price'>$name</row>"), MockParametersCallbacks.fromMap(params));
+        c.close();
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><rows><row price=\"1.50\"></row></rows>",
+                out.toString("UTF-8"));
+    }
+
+    public void testMultipleElementsAndNamespaces() throws Exception {
+        Map<String, String> props = new HashMap<String, String>();
+        props.put(XmlConnection.ROOT, "r");
+        props.put(XmlConnection.TRIM, "false");
+        XmlConnection c = newConnection(props);
+        c.executeScript(new StringResource("<a:x xmlns:a='urn:a' a:v='\"$v\"'> $v </a:x><y/>"),
+                MockParametersCallbacks.SIMPLE);
+        c.close();
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><r>" +
+                "<a:x xmlns:a=\"urn:a\" a:v=\"&quot;*v*&quot;\"> *v* </a:x><y></y></r>", out.toString("UTF-8"));
+    }
+
+    public void testMalformedScript() {
+        XmlConnection c = newConnection(new HashMap<String, String>());
+        try {
+            c.executeScript(new StringResource("<a><b></a>"), MockParametersCallbacks.SIMPLE);
+            fail("Malformed script should be rejected");
+        } catch (XmlProviderException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("well-formed"));
+        }
+        c.close();
+        assertNull("Output should not be opened", out);
+    }
+
+    public void testSingleElementWithoutRoot() throws Exception {
+        XmlConnection c = newConnection(new HashMap<String, String>());
+        Resource script = new StringResource("<a/>");
+        c.executeScript(script, MockParametersCallbacks.SIMPLE);
+        try {
+            c.executeScript(script, MockParametersCallbacks.SIMPLE);
+            fail("Second top-level element should be rejected");
+        } catch (XmlProviderException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(XmlConnection.ROOT));
+        }
+        try {
+            c.executeScript(new StringResource("text"), MockParametersCallbacks.SIMPLE);
+            fail("Text outside of the element should be rejected");
+        } catch (XmlProviderException e) {
+            //OK
+        }
+        c.close();
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><a></a>", out.toString("UTF-8"));
+    }
+
+    public void testEmptyRoot() throws Exception {
+        Map<String, String> props = new HashMap<String, String>();
+        props.put(XmlConnection.ROOT, "rows");
+        XmlConnection c = newConnection(props);
+        c.close();
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><rows></rows>", out.toString("UTF-8"));
+    }
+}
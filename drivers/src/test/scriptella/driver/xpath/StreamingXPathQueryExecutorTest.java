@@ -0,0 +1,125 @@
+/*
+ * Copyright 2006-2012 The Scriptella Project Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package scriptella.driver.xpath;
+
+import org.w3c.dom.Node;
+import scriptella.AbstractTestCase;
+import scriptella.configuration.StringResource;
+import scriptella.spi.AbstractConnection;
+import scriptella.spi.IndexedQueryCallback;
+import scriptella.spi.MockParametersCallbacks;
+import scriptella.spi.ParametersCallback;
+import scriptella.util.CompressionCodec;
+
+import java.net.URL;
+
+/**
+ * Tests for {@link StreamingXPathQueryExecutor} and {@link StreamingXPath}.
+ *
+ * @author Fyodor Kupolov
+ * @version 1.0
+ */
+public class StreamingXPathQueryExecutorTest extends AbstractTestCase {
+    private ThreadLocal<Node> context;
+    private AbstractConnection.StatementCounter counter;
+
+    protected void setUp() throws Exception {
+        context = new ThreadLocal<Node>();
+        counter = new AbstractConnection.StatementCounter();
+    }
+
+    private StreamingXPathQueryExecutor newExecutor(String resource, String xpath, boolean returnArrays) {
+        URL url = getClass().getResource(resource);
+        return new StreamingXPathQueryExecutor(context, url, CompressionCodec.NONE, new StringResource(xpath),
+                new XPathExpressionCompiler(), counter, returnArrays);
+    }
+
+    public void test() {
+        XPathQueryExecutor exec = newExecutor("xml1.xml", "/html/body/table/tr", true);
+        IndexedQueryCallback callback = new IndexedQueryCallback() {
+            protected void processRow(final ParametersCallback parameters, final int rowNumber) {
+                if (rowNumber == 0) {
+                    assertEquals("red", parameters.getParameter("bgcolor"));
+                    assertEquals("Column1", ((String[]) parameters.getParameter("th"))[0]);
+                    assertEquals("Column2", ((String[]) parameters.getParameter("th"))[1]);
+                } else {
+                    assertEquals(String.valueOf(rowNumber * 2 - 1), ((String[]) parameters.getParameter("td"))[0]);
+                    assertEquals(String.valueOf(rowNumber * 2), ((String[]) parameters.getParameter("td"))[1]);
+                }
+            }
+        };
+        exec.execute(callback, MockParametersCallbacks.NULL);
+        assertEquals(3, callback.getRowsNumber());
+        assertEquals(1, counter.statements);
+    }
+
+    public void testPredicates() {
+        IndexedQueryCallback callback = new IndexedQueryCallback() {
+            protected void processRow(final ParametersCallback parameters, final int rowNumber) {
+                assertEquals("1", parameters.getParameter("attribute"));
+            }
+        };
+        newExecutor("xml2.xml", "//element[@attribute='1']", false).execute(callback, MockParametersCallbacks.NULL);
+        assertEquals(1, callback.getRowsNumber());
+
+        callback = new IndexedQueryCallback() {
+            protected void processRow(final ParametersCallback parameters, final int rowNumber) {
+                assertEquals(rowNumber == 0 ? "1" : "el2", parameters.getParameter("element2"));
+            }
+        };
+        newExecutor("xml2.xml", "/xml/*[@attribute!='1']", false).execute(callback, MockParametersCallbacks.NULL);
+        assertEquals(0, callback.getRowsNumber()); //Elements without attribute do not match
+        newExecutor("xml2.xml", " /xml/$element2 ", false).execute(callback, MockParametersCallbacks.NAME);
+        assertEquals(2, callback.getRowsNumber());
+    }
+
+    public void testNestedQuery() {
+        final XPathQueryExecutor nested = newExecutor("xml1.xml", "./td", false);
+        final IndexedQueryCallback nestedCallback = new IndexedQueryCallback() {
+            protected void processRow(final ParametersCallback parameters, final int rowNumber) {
+                assertEquals(String.valueOf(rowNumber + 1), parameters.getParameter("td"));
+            }
+        };
+        IndexedQueryCallback callback = new IndexedQueryCallback() {
+            protected void processRow(final ParametersCallback parameters, final int rowNumber) {
+                if (rowNumber == 1) {
+                    nested.execute(nestedCallback, parameters);
+                    assertNotNull(parameters.getParameter("node"));
+                }
+            }
+        };
+        newExecutor("xml1.xml", "//tr", false).execute(callback, MockParametersCallbacks.NULL);
+        assertEquals(3, callback.getRowsNumber());
+        assertEquals(2, nestedCallback.getRowsNumber());
+        assertNull(context.get());
+    }
+
+    public void testUnsupported() {
+        String[] unsupported = {"html", "/html/body/..", "/html[1]", "/html/body[text()='x']", "//tr[@a=1]", "/a|/b"};
+        for (String xpath : unsupported) {
+            try {
+                newExecutor("xml1.xml", xpath, false).execute(new IndexedQueryCallback() {
+                    protected void processRow(final ParametersCallback parameters, final int rowNumber) {
+                        fail("No rows expected");
+                    }
+                }, MockParametersCallbacks.NULL);
+                fail("Streaming mode should not support " + xpath);
+            } catch (XPathProviderException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("not supported in streaming mode"));
+            }
+        }
+    }
+}
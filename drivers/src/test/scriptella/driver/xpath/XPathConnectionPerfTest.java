@@ -91,5 +91,38 @@ public class XPathConnectionPerfTest extends AbstractTestCase {
 
     }
 
+    /**
+     * History:
+     * 19.10.2026 - Xeon JDK17 - XPath per lookup - 291064 ms
+     * 19.10.2026 - Xeon JDK17 - Child elements index - 586 ms
+     */
+    public void testChildElementsLookup() throws ParserConfigurationException {
+        Document doc = XPathConnection.DBF.newDocumentBuilder().newDocument();
+        Element root = doc.createElement("table");
+        doc.appendChild(root);
+        for (int i = 0; i < 2000; i++) {
+            Element row = doc.createElement("row");
+            for (int j = 0; j < 5; j++) {
+                Element cell = doc.createElement("c" + j);
+                cell.setTextContent(" " + i + " ");
+                row.appendChild(cell);
+            }
+            root.appendChild(row);
+        }
+        XPathQueryExecutor qe = new XPathQueryExecutor(new ThreadLocal<Node>(), doc, new StringResource("/table/row"), new XPathExpressionCompiler(), new AbstractConnection.StatementCounter(), false);
+        //Querying 20 times, 5 lookups per row.
+        for (int i = 0; i < 20; i++) {
+            IndexedQueryCallback queryCallback = new IndexedQueryCallback() {
+                protected void processRow(final ParametersCallback parameters, final int rowNumber) {
+                    for (int j = 0; j < 5; j++) {
+                        assertEquals(String.valueOf(rowNumber), parameters.getParameter("c" + j));
+                    }
+                }
+            };
+            qe.execute(queryCallback, MockParametersCallbacks.NULL);
+            assertEquals(2000, queryCallback.getRowsNumber());
+        }
+    }
+
 
 }
@@ -29,7 +29,9 @@ import scriptella.spi.Resource;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Tests for {@link XPathQueryExecutor}.
@@ -100,4 +102,59 @@ public class XPathQueryExecutorTest extends AbstractTestCase {
         assertEquals(2,callback.getRowsNumber());
     }
 
+    /**
+     * Tests lookups of child elements by name.
+     */
+    public void testChildElements() throws ParserConfigurationException, IOException, SAXException {
+        Document doc = documentBuilder.parse(getClass().getResourceAsStream("xml1.xml"));
+        Resource res = new StringResource("/html/body/table/tr");
+        XPathQueryExecutor exec = new XPathQueryExecutor(context, doc, res, new XPathExpressionCompiler(), new AbstractConnection.StatementCounter(), false);
+        IndexedQueryCallback callback = new IndexedQueryCallback() {
+            protected void processRow(final ParametersCallback parameters, final int rowNumber) {
+                if (rowNumber == 0) {
+                    assertEquals("Column1", parameters.getParameter("th"));
+                    assertEquals("td", parameters.getParameter("td")); //fallback to parent parameters
+                } else {
+                    assertEquals(String.valueOf(rowNumber * 2 - 1), parameters.getParameter("td"));
+                    assertEquals(String.valueOf(rowNumber * 2), parameters.getParameter("td[2]")); //evaluated as XPath
+                    assertEquals(String.valueOf(rowNumber * 2), ((NodeVariable) parameters.getParameter("node")).getString("./td[2]"));
+                }
+            }
+        };
+        exec.execute(callback, MockParametersCallbacks.NAME);
+        assertEquals(3, callback.getRowsNumber());
+
+        exec = new XPathQueryExecutor(context, doc, res, new XPathExpressionCompiler(), new AbstractConnection.StatementCounter(), true);
+        callback = new IndexedQueryCallback() {
+            protected void processRow(final ParametersCallback parameters, final int rowNumber) {
+                String[] td = (String[]) parameters.getParameter("td");
+                assertEquals(rowNumber == 0 ? 0 : 2, td.length);
+                assertEquals(rowNumber == 0 ? 2 : 0, ((String[]) parameters.getParameter("th[. != '']")).length);
+            }
+        };
+        exec.execute(callback, MockParametersCallbacks.NAME);
+        assertEquals(3, callback.getRowsNumber());
+    }
+
+    /**
+     * Tests if prefixed child elements are found by the local name the same way as by XPath.
+     */
+    public void testPrefixedChildElements() throws ParserConfigurationException, IOException, SAXException {
+        String xml = "<r xmlns:p='urn:p'><row><p:item>1</p:item><item>2</item><p:code>c</p:code></row></r>";
+        Document doc = documentBuilder.parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+        Resource res = new StringResource("/r/row");
+        XPathQueryExecutor exec = new XPathQueryExecutor(context, doc, res, new XPathExpressionCompiler(), new AbstractConnection.StatementCounter(), true);
+        IndexedQueryCallback callback = new IndexedQueryCallback() {
+            protected void processRow(final ParametersCallback parameters, final int rowNumber) {
+                NodeVariable node = (NodeVariable) parameters.getParameter("node");
+                assertEquals(Arrays.asList(node.getStringArray("./item")),
+                        Arrays.asList((String[]) parameters.getParameter("item")));
+                assertEquals(Arrays.asList("1", "2"), Arrays.asList((String[]) parameters.getParameter("item")));
+                assertEquals(Arrays.asList("c"), Arrays.asList((String[]) parameters.getParameter("code")));
+            }
+        };
+        exec.execute(callback, MockParametersCallbacks.NAME);
+        assertEquals(1, callback.getRowsNumber());
+    }
+
 }